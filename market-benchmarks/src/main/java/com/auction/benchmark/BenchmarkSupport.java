@@ -0,0 +1,87 @@
+package com.auction.benchmark;
+
+import java.util.SplittableRandom;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import com.auction.Bid;
+import com.auction.MarketplaceAuction;
+import com.auction.Offer;
+
+/**
+ * Shared set up for the benchmarks. Resting offers are priced from
+ * {@link #OFFER_PRICE} upwards and resting bids from {@link #BID_PRICE}
+ * downwards, over {@link #PRICE_LEVELS} levels, so passive orders never
+ * cross and aggressive orders priced at {@link #CROSSING_OFFER_PRICE} or
+ * {@link #CROSSING_BID_PRICE} always do.
+ * 
+ * @author Keith
+ *
+ */
+public final class BenchmarkSupport {
+
+	public static final int PRICE_LEVELS = 100;
+	public static final int OFFER_PRICE = 1000;
+	public static final int BID_PRICE = 999;
+	public static final int CROSSING_BID_PRICE = OFFER_PRICE + PRICE_LEVELS;
+	public static final int CROSSING_OFFER_PRICE = BID_PRICE - PRICE_LEVELS;
+	public static final int QUANTITY = 10;
+
+	private BenchmarkSupport() {
+	}
+
+	/**
+	 * The engine logs every order at INFO, which would dominate the
+	 * measurement unless it is what is being measured
+	 * 
+	 * @param enabled
+	 */
+	public static void configureLogging(boolean enabled) {
+		Logger.getRootLogger().setLevel(enabled ? Level.INFO : Level.WARN);
+	}
+
+	/**
+	 * Rest the given number of bids and of offers on each item
+	 */
+	public static void fillBook(MarketplaceAuction auction, int items, int depth) {
+		for (int item = 0; item < items; item++) {
+			for (int i = 0; i < depth; i++) {
+				auction.addBid(passiveBid(item, i, "Buyer" + (i % 100)));
+				auction.addOffer(passiveOffer(item, i, "Seller" + (i % 100)));
+			}
+		}
+	}
+
+	public static Bid passiveBid(int itemId, int sequence, String userId) {
+		return new Bid.BidBuilder().itemID(itemId)
+				.pricePerUnit(BID_PRICE - sequence % PRICE_LEVELS)
+				.quantity(QUANTITY).userId(userId).build();
+	}
+
+	public static Offer passiveOffer(int itemId, int sequence, String userId) {
+		return new Offer.OfferBuilder().itemID(itemId)
+				.pricePerUnit(OFFER_PRICE + sequence % PRICE_LEVELS)
+				.quantity(QUANTITY).userId(userId).build();
+	}
+
+	/**
+	 * Bid which fills exactly one resting offer
+	 */
+	public static Bid crossingBid(int itemId, String userId) {
+		return new Bid.BidBuilder().itemID(itemId).pricePerUnit(CROSSING_BID_PRICE)
+				.quantity(QUANTITY).userId(userId).build();
+	}
+
+	/**
+	 * Offer which fills exactly one resting bid
+	 */
+	public static Offer crossingOffer(int itemId, String userId) {
+		return new Offer.OfferBuilder().itemID(itemId).pricePerUnit(CROSSING_OFFER_PRICE)
+				.quantity(QUANTITY).userId(userId).build();
+	}
+
+	public static int nextItem(SplittableRandom random, int items) {
+		return items == 1 ? 0 : random.nextInt(items);
+	}
+}
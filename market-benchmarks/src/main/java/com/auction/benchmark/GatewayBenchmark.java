@@ -0,0 +1,87 @@
+package com.auction.benchmark;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.auction.EventLog;
+import com.auction.Gateway;
+import com.auction.GatewayClient;
+import com.auction.MarketplaceAuctionImpl;
+import com.auction.MarketplaceCacheImpl;
+
+/**
+ * Messages per second through a {@link Gateway} on loopback.
+ * 
+ * Each invocation pipelines a batch of crossing bids and offers from one
+ * client and waits until every one of them has been accepted, so the score
+ * counts requests, not the execution reports also sent back.
+ * 
+ * @author Keith
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GatewayBenchmark {
+
+	private static final int BATCH = 1000;
+
+	private Gateway gateway;
+	private GatewayClient client;
+	private final Acks acks = new Acks();
+
+	private static class Acks implements GatewayClient.Handler {
+		private int accepted;
+
+		@Override
+		public void onAccepted(int requestId, int id) {
+			accepted++;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		BenchmarkSupport.configureLogging(false);
+		MarketplaceAuctionImpl auction = new MarketplaceAuctionImpl(new MarketplaceCacheImpl(), 1, EventLog.DISABLED);
+		gateway = new Gateway(auction, new InetSocketAddress("127.0.0.1", 0));
+		client = new GatewayClient(gateway.getLocalAddress());
+		client.logon("Trader");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		client.close();
+		gateway.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(2 * BATCH)
+	public void pipelined() throws IOException {
+		for (int i = 0; i < BATCH; i++) {
+			client.bid(i, 1, BenchmarkSupport.QUANTITY, BenchmarkSupport.BID_PRICE);
+			client.offer(i, 1, BenchmarkSupport.QUANTITY, BenchmarkSupport.BID_PRICE);
+		}
+		acks.accepted = 0;
+		while (acks.accepted < 2 * BATCH) {
+			client.receive(acks);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package com.auction.benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.auction.Bid;
+import com.auction.BookEntry;
+import com.auction.MarketplaceAuctionImpl;
+import com.auction.Offer;
+
+/**
+ * Throughput and latency percentiles of {@link MarketplaceAuctionImpl#addBid}
+ * and {@link MarketplaceAuctionImpl#addOffer}.
+ * 
+ * Each invocation rests one passive order on one side and then enters an
+ * order on the other side, which with probability matchRatio crosses and
+ * fills the best resting order. Each thread cancels its oldest passive
+ * order once it has {@link #RESTING_PER_THREAD} of them, so whatever the
+ * matchRatio the book stays within bookDepth plus that many orders per
+ * thread instead of growing for the whole iteration. Cancelling an order
+ * which has already been filled is a cheap miss.
+ * 
+ * Run with -t to vary the number of submitting threads, e.g.
+ * java -jar target/benchmarks.jar MatchingBenchmark -t 4 -p items=100
+ * 
+ * @author Keith
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchingBenchmark {
+
+	public static final int RESTING_PER_THREAD = 1000;
+
+	// resting bids and offers per item before each iteration
+	@Param({ "0", "1000", "10000" })
+	public int bookDepth;
+
+	@Param({ "1", "100" })
+	public int items;
+
+	@Param({ "0.0", "0.5", "1.0" })
+	public double matchRatio;
+
+	@Param({ "1", "16" })
+	public int lockStripes;
+
+	@Param({ "false" })
+	public boolean logging;
+
+	private MarketplaceAuctionImpl auction;
+
+	@State(Scope.Thread)
+	public static class Flow {
+		private final SplittableRandom random = new SplittableRandom(42);
+		private int sequence;
+		// passive orders entered by this thread, oldest first
+		private final int[] resting = new int[RESTING_PER_THREAD];
+		private int next;
+		private int size;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			next = 0;
+			size = 0;
+		}
+
+		/**
+		 * Remember a passive order, cancelling the oldest if there are too many
+		 */
+		private void rested(MarketplaceAuctionImpl auction, BookEntry entry) {
+			if (size == resting.length) {
+				auction.cancel(resting[next]);
+			} else {
+				size++;
+			}
+			resting[next] = entry.getId();
+			next = (next + 1) % resting.length;
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		BenchmarkSupport.configureLogging(logging);
+		auction = new MarketplaceAuctionImpl(lockStripes);
+		BenchmarkSupport.fillBook(auction, items, bookDepth);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(2)
+	public void addBid(Flow flow) {
+		int item = BenchmarkSupport.nextItem(flow.random, items);
+		Offer offer = BenchmarkSupport.passiveOffer(item, flow.sequence++, "Seller");
+		auction.addOffer(offer);
+		flow.rested(auction, offer);
+		if (flow.random.nextDouble() < matchRatio) {
+			auction.addBid(BenchmarkSupport.crossingBid(item, "Buyer"));
+		} else {
+			Bid bid = BenchmarkSupport.passiveBid(item, flow.sequence++, "Buyer");
+			auction.addBid(bid);
+			flow.rested(auction, bid);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(2)
+	public void addOffer(Flow flow) {
+		int item = BenchmarkSupport.nextItem(flow.random, items);
+		Bid bid = BenchmarkSupport.passiveBid(item, flow.sequence++, "Buyer");
+		auction.addBid(bid);
+		flow.rested(auction, bid);
+		if (flow.random.nextDouble() < matchRatio) {
+			auction.addOffer(BenchmarkSupport.crossingOffer(item, "Seller"));
+		} else {
+			Offer offer = BenchmarkSupport.passiveOffer(item, flow.sequence++, "Seller");
+			auction.addOffer(offer);
+			flow.rested(auction, offer);
+		}
+	}
+}
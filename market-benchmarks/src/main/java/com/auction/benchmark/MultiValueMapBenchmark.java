@@ -0,0 +1,114 @@
+package com.auction.benchmark;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.auction.Bid;
+import com.auction.ConcurrentMultiValueMap;
+import com.auction.MultiValueMap;
+
+/**
+ * Compares {@link MultiValueMap} with {@link ConcurrentMultiValueMap} for a
+ * user with many resting bids: cancelling and replacing the oldest bid, and
+ * reading all of the user's bids.
+ * 
+ * @author Keith
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultiValueMapBenchmark {
+
+	private static final String USER = "Buyer";
+
+	@Param({ "MultiValueMap", "ConcurrentMultiValueMap" })
+	public String implementation;
+
+	@Param({ "10", "1000", "10000" })
+	public int valuesPerKey;
+
+	private MultiMap map;
+	// values in the order they were added
+	private ArrayDeque<Bid> values;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		if ("MultiValueMap".equals(implementation)) {
+			MultiValueMap<String, Bid> delegate = new MultiValueMap<>();
+			map = new MultiMap() {
+				public void put(Bid bid) { delegate.put(USER, bid); }
+				public void removeValue(Bid bid) { delegate.removeValue(USER, bid); }
+				public List<Bid> get() { return delegate.get(USER); }
+			};
+		} else {
+			ConcurrentMultiValueMap<String, Bid> delegate = new ConcurrentMultiValueMap<>();
+			map = new MultiMap() {
+				public void put(Bid bid) { delegate.put(USER, bid); }
+				public void removeValue(Bid bid) { delegate.removeValue(USER, bid); }
+				public List<Bid> get() { return delegate.get(USER); }
+			};
+		}
+		values = new ArrayDeque<>();
+		for (int i = 0; i < valuesPerKey; i++) {
+			Bid bid = BenchmarkSupport.passiveBid(1, i, USER);
+			map.put(bid);
+			values.addLast(bid);
+		}
+	}
+
+	/**
+	 * Cancel the newest bid and enter a replacement, the list scan worst
+	 * case for removal by equality
+	 */
+	@Benchmark
+	public void replaceNewest() {
+		Bid newest = values.pollLast();
+		map.removeValue(newest);
+		Bid replacement = BenchmarkSupport.passiveBid(1, 0, USER);
+		map.put(replacement);
+		values.addLast(replacement);
+	}
+
+	/**
+	 * Fill the oldest bid and enter a new one, the array shift worst case
+	 */
+	@Benchmark
+	public void replaceOldest() {
+		Bid oldest = values.pollFirst();
+		map.removeValue(oldest);
+		Bid replacement = BenchmarkSupport.passiveBid(1, 0, USER);
+		map.put(replacement);
+		values.addLast(replacement);
+	}
+
+	@Benchmark
+	public List<Bid> get() {
+		return map.get();
+	}
+
+	private interface MultiMap {
+		void put(Bid bid);
+
+		void removeValue(Bid bid);
+
+		List<Bid> get();
+	}
+}
@@ -0,0 +1,88 @@
+package com.auction.benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.auction.MarketplaceAuctionImpl;
+
+/**
+ * Cost of {@link MarketplaceAuctionImpl#getBidPrice} and
+ * {@link MarketplaceAuctionImpl#getOfferPrice}, alone and while a writer
+ * keeps matching on the same items.
+ * 
+ * @author Keith
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QuoteBenchmark {
+
+	@Param({ "10", "10000" })
+	public int bookDepth;
+
+	@Param({ "1", "100" })
+	public int items;
+
+	private MarketplaceAuctionImpl auction;
+
+	@State(Scope.Thread)
+	public static class Flow {
+		private final SplittableRandom random = new SplittableRandom(42);
+		private int sequence;
+	}
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		BenchmarkSupport.configureLogging(false);
+		auction = new MarketplaceAuctionImpl(16);
+		BenchmarkSupport.fillBook(auction, items, bookDepth);
+	}
+
+	@Benchmark
+	public Integer getBidPrice(Flow flow) {
+		return auction.getBidPrice(BenchmarkSupport.nextItem(flow.random, items));
+	}
+
+	@Benchmark
+	public Integer getOfferPrice(Flow flow) {
+		return auction.getOfferPrice(BenchmarkSupport.nextItem(flow.random, items));
+	}
+
+	@Benchmark
+	@Group("quotesUnderLoad")
+	@GroupThreads(3)
+	public Integer readQuotes(Flow flow) {
+		return auction.getBidPrice(BenchmarkSupport.nextItem(flow.random, items));
+	}
+
+	/**
+	 * Keeps the book depth constant: rests an offer then takes out the best
+	 */
+	@Benchmark
+	@Group("quotesUnderLoad")
+	@GroupThreads(1)
+	public void match(Flow flow) {
+		int item = BenchmarkSupport.nextItem(flow.random, items);
+		auction.addOffer(BenchmarkSupport.passiveOffer(item, flow.sequence++, "Seller"));
+		auction.addBid(BenchmarkSupport.crossingBid(item, "Buyer"));
+	}
+}
@@ -1,19 +1,13 @@
 package com.auction;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
-
 /**
  * Represents a bid
  * 
  * @author Keith
  *
  */
-public class Bid {
-	//generates unique id for bids (for simplicity)
-	private static AtomicInteger sequenceGenerator = new AtomicInteger();
-	
-	private final Integer id = sequenceGenerator.incrementAndGet();
+public class Bid implements BookEntry {
+	private final Integer id;
 	private Integer itemId;
 	private Integer quantity;
 	private Integer pricePerUnit;
@@ -21,12 +15,47 @@ public class Bid {
 	
 	public Bid(Integer itemId, Integer quantity, Integer pricePerUnit,
 			String userId) {
+		this(EntryIds.next(), itemId, quantity, pricePerUnit, userId);
+	}
+	
+	/**
+	 * Make sure IDs up to lastId, e.g. ones read back from storage, are never
+	 * generated again
+	 * 
+	 * @param lastId
+	 */
+	static void reserveIds(int lastId) {
+		EntryIds.reserve(lastId);
+	}
+	
+	/**
+	 * @return last ID generated or reserved
+	 */
+	static int getLastId() {
+		return EntryIds.getLast();
+	}
+	
+	/**
+	 * Recreate a bid with a known ID, e.g. when read back from storage
+	 */
+	Bid(Integer id, Integer itemId, Integer quantity, Integer pricePerUnit,
+			String userId) {
+		this.id = id;
 		this.itemId = itemId;
 		this.quantity = quantity;
 		this.pricePerUnit = pricePerUnit;
 		this.userId = userId;
 	}
 		
+	/**
+	 * Unique ID of this bid, never given to another bid or offer
+	 * 
+	 * @return
+	 */
+	public Integer getId() {
+		return id;
+	}
+	
 	public Integer getItemId() {
 		return itemId;
 	}
@@ -0,0 +1,27 @@
+package com.auction;
+
+/**
+ * A bid or offer which can rest in an order book
+ * 
+ * @author Keith
+ *
+ */
+public interface BookEntry {
+
+	/**
+	 * Unique ID among all bids and offers, which share one sequence
+	 * 
+	 * @return
+	 */
+	public Integer getId();
+
+	public Integer getItemId();
+
+	public Integer getQuantity();
+
+	public void setQuantity(Integer quantity);
+
+	public Integer getPricePerUnit();
+
+	public String getUserId();
+}
@@ -0,0 +1,171 @@
+package com.auction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * One side (bids or offers) of an order book. Entries are grouped into price
+ * levels sorted best price first, with a FIFO queue inside each level so that
+ * entries at the same price keep time priority.
+ * 
+ * Not thread safe, see {@link OrderBook}
+ * 
+ * @author Keith
+ *
+ */
+public class BookSide<T extends BookEntry> implements Iterable<T> {
+
+	// map of price -> entries at that price, best price first
+	private final NavigableMap<Integer, PriceLevel<T>> levels;
+
+	public BookSide(Comparator<Integer> priceOrder) {
+		levels = new TreeMap<>(priceOrder);
+	}
+
+	public void add(T entry) {
+		Integer price = entry.getPricePerUnit();
+		PriceLevel<T> level = levels.get(price);
+		if (level == null) {
+			level = new PriceLevel<>(price);
+			levels.put(price, level);
+		}
+		level.add(entry);
+	}
+
+	public boolean remove(T entry) {
+		Integer price = entry.getPricePerUnit();
+		PriceLevel<T> level = levels.get(price);
+		if (level == null) {
+			return false;
+		}
+		boolean removed = level.remove(entry);
+		if (level.isEmpty()) {
+			levels.remove(price);
+		}
+		return removed;
+	}
+
+	/**
+	 * Reduce the quantity of a resting entry, keeping the level total in step
+	 * 
+	 * @return false if the entry is not resting on this side
+	 */
+	public boolean reduce(T entry, int reduceBy) {
+		PriceLevel<T> level = levels.get(entry.getPricePerUnit());
+		if (level == null) {
+			return false;
+		}
+		level.reduce(entry, reduceBy);
+		return true;
+	}
+
+	/**
+	 * Get the entry with the highest priority
+	 * 
+	 * @return first entry at the best price, null if side is empty
+	 */
+	public T best() {
+		PriceLevel<T> level = bestLevel();
+		if (level == null) {
+			return null;
+		}
+		return level.first();
+	}
+
+	/**
+	 * Get the level at the best price
+	 * 
+	 * @return best level, null if side is empty
+	 */
+	public PriceLevel<T> bestLevel() {
+		Map.Entry<Integer, PriceLevel<T>> level = levels.firstEntry();
+		if (level == null) {
+			return null;
+		}
+		return level.getValue();
+	}
+
+	public boolean isEmpty() {
+		return levels.isEmpty();
+	}
+
+	/**
+	 * Get total quantity resting at a price
+	 * 
+	 * @param price
+	 * @return 0 if nothing rests at the price
+	 */
+	public long getQuantity(Integer price) {
+		PriceLevel<T> level = levels.get(price);
+		return level == null ? 0 : level.getQuantity();
+	}
+
+	/**
+	 * Get a copy of the total quantity of the best levels
+	 * 
+	 * @param count most levels to copy
+	 * @return price -> total quantity, best price first
+	 */
+	public SortedMap<Integer, Long> getLevels(int count) {
+		SortedMap<Integer, Long> copy = new TreeMap<>(levels.comparator());
+		for (PriceLevel<T> level : levels.values()) {
+			if (copy.size() == count) {
+				break;
+			}
+			copy.put(level.getPrice(), level.getQuantity());
+		}
+		return copy;
+	}
+
+	/**
+	 * Get a copy of all entries in price-time priority
+	 * 
+	 * @return
+	 */
+	public List<T> toList() {
+		List<T> list = new ArrayList<>();
+		for (PriceLevel<T> level : levels.values()) {
+			list.addAll(level.getEntries());
+		}
+		return list;
+	}
+
+	/**
+	 * Iterates over entries in price-time priority. Entries must not be added
+	 * or removed while iterating.
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return new PriorityIterator();
+	}
+
+	private class PriorityIterator implements Iterator<T> {
+
+		private final Iterator<PriceLevel<T>> levelIterator = levels.values().iterator();
+		private Iterator<T> current = Collections.emptyIterator();
+
+		@Override
+		public boolean hasNext() {
+			while (!current.hasNext() && levelIterator.hasNext()) {
+				current = levelIterator.next().getEntries().iterator();
+			}
+			return current.hasNext();
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return current.next();
+		}
+	}
+}
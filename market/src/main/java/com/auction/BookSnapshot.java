@@ -0,0 +1,217 @@
+package com.auction;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copy of the resting bids and offers of every item together with the ID
+ * sequences, written to a compact binary file so recovery only has to
+ * replay the journal written after it.
+ * 
+ * Items are copied one lock stripe at a time, so each stripe records the
+ * journal position it was copied at. Journal records for an item past the
+ * position of its stripe are not in the snapshot.
+ * 
+ * @author Keith
+ *
+ */
+public class BookSnapshot {
+
+	private static final int MAGIC = 0x41555331;
+
+	private static final byte BID = 1;
+	private static final byte OFFER = 2;
+
+	private final long[] journalPositions;
+	private final List<Bid> bids;
+	private final List<Offer> offers;
+	private int lastBidId;
+	private int lastOfferId;
+	private int lastOrderId;
+
+	BookSnapshot(int stripes) {
+		this.journalPositions = new long[stripes];
+		this.bids = new ArrayList<>();
+		this.offers = new ArrayList<>();
+	}
+
+	/**
+	 * Copy the bid, keeping its ID. Bids of an item must be added in
+	 * price-time priority.
+	 */
+	void addBid(Bid bid) {
+		bids.add(new Bid(bid.getId(), bid.getItemId(), bid.getQuantity(),
+				bid.getPricePerUnit(), bid.getUserId()));
+	}
+
+	/**
+	 * Copy the offer, keeping its ID. Offers of an item must be added in
+	 * price-time priority.
+	 */
+	void addOffer(Offer offer) {
+		offers.add(new Offer(offer.getId(), offer.getItemId(), offer.getQuantity(),
+				offer.getPricePerUnit(), offer.getUserId()));
+	}
+
+	void setJournalPosition(int stripe, long position) {
+		journalPositions[stripe] = position;
+	}
+
+	/**
+	 * Record the ID sequences, after every entry has been added
+	 */
+	void captureIds() {
+		lastBidId = Bid.getLastId();
+		lastOfferId = Offer.getLastId();
+		lastOrderId = Order.getLastId();
+	}
+
+	/**
+	 * @param itemId
+	 * @return journal position the book of the item was copied at
+	 */
+	public long getJournalPosition(Integer itemId) {
+		return journalPositions[Math.floorMod(itemId.hashCode(), journalPositions.length)];
+	}
+
+	/**
+	 * @return journal position the first stripe was copied at
+	 */
+	public long getFirstJournalPosition() {
+		long first = Long.MAX_VALUE;
+		for (long position : journalPositions) {
+			first = Math.min(first, position);
+		}
+		return first;
+	}
+
+	public List<Bid> getBids() {
+		return bids;
+	}
+
+	public List<Offer> getOffers() {
+		return offers;
+	}
+
+	/**
+	 * Add the entries to an empty cache and make sure their IDs are never
+	 * generated again
+	 * 
+	 * @param cache
+	 */
+	public void restore(MarketplaceCache cache) {
+		Bid.reserveIds(lastBidId);
+		Offer.reserveIds(lastOfferId);
+		Order.reserveIds(lastOrderId);
+		for (Bid bid : bids) {
+			cache.addBid(bid);
+		}
+		for (Offer offer : offers) {
+			cache.addOffer(offer);
+		}
+	}
+
+	/**
+	 * Write to a temporary file and move it over the given one, so a crash
+	 * while writing leaves the previous snapshot in place. The file is forced
+	 * to disk before the move and the directory after it, so the new
+	 * snapshot is never seen half written.
+	 * 
+	 * @param path
+	 * @throws IOException
+	 */
+	public void write(Path path) throws IOException {
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Channels.newOutputStream(channel)));
+			out.writeInt(MAGIC);
+			out.writeInt(journalPositions.length);
+			for (long position : journalPositions) {
+				out.writeLong(position);
+			}
+			out.writeInt(lastBidId);
+			out.writeInt(lastOfferId);
+			out.writeInt(lastOrderId);
+			out.writeInt(bids.size() + offers.size());
+			for (Bid bid : bids) {
+				writeEntry(out, BID, bid);
+			}
+			for (Offer offer : offers) {
+				writeEntry(out, OFFER, offer);
+			}
+			out.flush();
+			channel.force(true);
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		forceDirectory(path.toAbsolutePath().getParent());
+	}
+
+	/**
+	 * Make a rename in the directory durable
+	 */
+	private static void forceDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// not every platform can open a directory, e.g. Windows
+		}
+	}
+
+	/**
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static BookSnapshot read(Path path) throws IOException {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(path)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a snapshot: " + path);
+			}
+			BookSnapshot snapshot = new BookSnapshot(in.readInt());
+			for (int i = 0; i < snapshot.journalPositions.length; i++) {
+				snapshot.journalPositions[i] = in.readLong();
+			}
+			snapshot.lastBidId = in.readInt();
+			snapshot.lastOfferId = in.readInt();
+			snapshot.lastOrderId = in.readInt();
+			int entries = in.readInt();
+			for (int i = 0; i < entries; i++) {
+				byte type = in.readByte();
+				int id = in.readInt();
+				int itemId = in.readInt();
+				int price = in.readInt();
+				int quantity = in.readInt();
+				String userId = in.readUTF();
+				if (type == BID) {
+					snapshot.bids.add(new Bid(id, itemId, quantity, price, userId));
+				} else {
+					snapshot.offers.add(new Offer(id, itemId, quantity, price, userId));
+				}
+			}
+			return snapshot;
+		}
+	}
+
+	private static void writeEntry(DataOutputStream out, byte type, BookEntry entry) throws IOException {
+		out.writeByte(type);
+		out.writeInt(entry.getId());
+		out.writeInt(entry.getItemId());
+		out.writeInt(entry.getPricePerUnit());
+		out.writeInt(entry.getQuantity());
+		out.writeUTF(entry.getUserId());
+	}
+}
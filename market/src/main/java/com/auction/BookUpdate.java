@@ -0,0 +1,101 @@
+package com.auction;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Change to the book of an item: the new top of book and the new total
+ * quantity of every price level which changed, 0 for a level which is gone.
+ * 
+ * An image holds every level of the book instead, and replaces whatever the
+ * subscriber held for the item.
+ * 
+ * @author Keith
+ *
+ */
+public class BookUpdate {
+
+	private final Integer itemId;
+	private final boolean image;
+	private final TopOfBook topOfBook;
+	private final SortedMap<Integer, Long> bidLevels;
+	private final SortedMap<Integer, Long> offerLevels;
+
+	BookUpdate(Integer itemId, boolean image, TopOfBook topOfBook,
+			SortedMap<Integer, Long> bidLevels, SortedMap<Integer, Long> offerLevels) {
+		this.itemId = itemId;
+		this.image = image;
+		this.topOfBook = topOfBook;
+		this.bidLevels = Collections.unmodifiableSortedMap(bidLevels);
+		this.offerLevels = Collections.unmodifiableSortedMap(offerLevels);
+	}
+
+	public Integer getItemId() {
+		return itemId;
+	}
+
+	/**
+	 * @return true if the levels are the whole book rather than changes
+	 */
+	public boolean isImage() {
+		return image;
+	}
+
+	public TopOfBook getTopOfBook() {
+		return topOfBook;
+	}
+
+	/**
+	 * @return price -> total quantity, best price first
+	 */
+	public SortedMap<Integer, Long> getBidLevels() {
+		return bidLevels;
+	}
+
+	/**
+	 * @return price -> total quantity, best price first
+	 */
+	public SortedMap<Integer, Long> getOfferLevels() {
+		return offerLevels;
+	}
+
+	/**
+	 * Combine with a later update of the same item, as if both had been
+	 * applied in turn
+	 * 
+	 * @param later
+	 * @return
+	 */
+	BookUpdate merge(BookUpdate later) {
+		if (later.image) {
+			return later;
+		}
+		return new BookUpdate(itemId, image, later.topOfBook,
+				merge(bidLevels, later.bidLevels, Comparator.reverseOrder()),
+				merge(offerLevels, later.offerLevels, Comparator.naturalOrder()));
+	}
+
+	private SortedMap<Integer, Long> merge(SortedMap<Integer, Long> levels,
+			SortedMap<Integer, Long> later, Comparator<Integer> priceOrder) {
+		SortedMap<Integer, Long> merged = new TreeMap<>(priceOrder);
+		merged.putAll(levels);
+		for (Map.Entry<Integer, Long> level : later.entrySet()) {
+			if (image && level.getValue() == 0) {
+				// an image only holds levels which exist
+				merged.remove(level.getKey());
+			} else {
+				merged.put(level.getKey(), level.getValue());
+			}
+		}
+		return merged;
+	}
+
+	@Override
+	public String toString() {
+		return "[ItemID = " + itemId + ", Image = " + image + ", TopOfBook = " + topOfBook
+				+ ", BidLevels = " + bidLevels + ", OfferLevels = " + offerLevels + "]";
+	}
+}
@@ -0,0 +1,289 @@
+package com.auction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * 
+ * Concurrent multi-value map where key can be mapped to a list of values.
+ * 
+ * Values of a key are kept in a doubly linked list and indexed by the value
+ * itself (bids, offers and orders are equal by ID), so removing a value is
+ * constant time rather than a scan of the list. Writers lock one of a set of
+ * striped locks, so writes to different keys rarely contend.
+ * 
+ * Reads do not lock. {@link #get(Object)} walks the list optimistically and
+ * checks a per key version afterwards, retrying if a writer got in between,
+ * and the resulting immutable snapshot is kept until the key is next
+ * written, so repeated reads of an unchanged key cost nothing. Values which
+ * are changed in place can be copied into the snapshot as it is read, with
+ * {@link #touch(Object)} called after each change.
+ * 
+ * A value may be added to the same key more than once, in which case
+ * {@link #removeValue(Object, Object)} removes the first occurrence, but it
+ * must not be under two different keys at the same time.
+ * 
+ * @author Keith
+ *
+ */
+public class ConcurrentMultiValueMap<K, V> {
+
+	public static final int DEFAULT_STRIPES = 64;
+
+	// optimistic reads to attempt before falling back to the key's lock
+	private static final int MAX_OPTIMISTIC_READS = 8;
+
+	private final Map<K, Bucket<K, V>> buckets = new ConcurrentHashMap<>();
+	// value -> first node holding the value
+	private final Map<V, Node<K, V>> index = new ConcurrentHashMap<>();
+	private final Object[] locks;
+	// copies values into snapshots
+	private final UnaryOperator<V> copier;
+
+	public ConcurrentMultiValueMap() {
+		this(DEFAULT_STRIPES);
+	}
+
+	public ConcurrentMultiValueMap(int stripes) {
+		this(stripes, UnaryOperator.identity());
+	}
+
+	/**
+	 * @param stripes number of locks writers are spread over
+	 * @param copier copies each value into the snapshots returned by
+	 *        {@link #get(Object)}
+	 */
+	public ConcurrentMultiValueMap(int stripes, UnaryOperator<V> copier) {
+		this.copier = copier;
+		locks = new Object[stripes];
+		for (int i = 0; i < stripes; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	public void put(K key, V value) {
+		synchronized (lockFor(key)) {
+			Bucket<K, V> bucket = buckets.get(key);
+			if (bucket == null) {
+				bucket = new Bucket<>();
+				buckets.put(key, bucket);
+			}
+			Node<K, V> node = new Node<>(key, value);
+			bucket.append(node);
+
+			Node<K, V> first = index.putIfAbsent(value, node);
+			if (first != null) {
+				// value added again, chain after earlier occurrences
+				while (first.nextDuplicate != null) {
+					first = first.nextDuplicate;
+				}
+				first.nextDuplicate = node;
+			}
+		}
+	}
+
+	/**
+	 * Get immutable snapshot of the values of a key, in the order they were
+	 * added. Does not block writers.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public List<V> get(K key) {
+		Bucket<K, V> bucket = buckets.get(key);
+		if (bucket == null) {
+			return Collections.emptyList();
+		}
+		for (int attempt = 0; attempt < MAX_OPTIMISTIC_READS; attempt++) {
+			List<V> values = bucket.tryRead(copier);
+			if (values != null) {
+				return values;
+			}
+			Thread.yield();
+		}
+		// key is being written constantly, wait for a gap
+		synchronized (lockFor(key)) {
+			return bucket.tryRead(copier);
+		}
+	}
+
+	/**
+	 * Mark the values of a key as changed in place, so the next
+	 * {@link #get(Object)} copies them again and sees the change
+	 * 
+	 * @param key
+	 */
+	public void touch(K key) {
+		synchronized (lockFor(key)) {
+			Bucket<K, V> bucket = buckets.get(key);
+			if (bucket != null) {
+				bucket.touch();
+			}
+		}
+	}
+
+	public void remove(K key) {
+		synchronized (lockFor(key)) {
+			Bucket<K, V> bucket = buckets.remove(key);
+			if (bucket != null) {
+				for (Node<K, V> node = bucket.head; node != null; node = node.next) {
+					index.remove(node.value);
+				}
+				bucket.clear();
+			}
+		}
+	}
+
+	public void removeValue(K key, V value) {
+		synchronized (lockFor(key)) {
+			Node<K, V> node = index.get(value);
+			Bucket<K, V> bucket = buckets.get(key);
+			if (node == null || bucket == null || !Objects.equals(node.key, key)) {
+				return;
+			}
+			if (node.nextDuplicate == null) {
+				index.remove(value);
+			} else {
+				index.put(value, node.nextDuplicate);
+			}
+			bucket.unlink(node);
+			if (bucket.size() == 0) {
+				buckets.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Number of values of a key
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public int size(K key) {
+		synchronized (lockFor(key)) {
+			Bucket<K, V> bucket = buckets.get(key);
+			return bucket == null ? 0 : bucket.size();
+		}
+	}
+
+	private Object lockFor(K key) {
+		int hash = key == null ? 0 : key.hashCode();
+		return locks[Math.floorMod(hash ^ (hash >>> 16), locks.length)];
+	}
+
+	private static class Node<K, V> {
+		private final K key;
+		private final V value;
+		private volatile Node<K, V> prev;
+		private volatile Node<K, V> next;
+		// next node holding an equal value, only used under the lock
+		private Node<K, V> nextDuplicate;
+
+		private Node(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Values of a key. Changed under the key's lock, with the version odd
+	 * while a change is in progress.
+	 */
+	private static class Bucket<K, V> {
+		private volatile Node<K, V> head;
+		private volatile Node<K, V> tail;
+		private volatile int size;
+		private volatile int version;
+		private volatile Snapshot<V> snapshot;
+
+		private int size() {
+			return size;
+		}
+
+		private void append(Node<K, V> node) {
+			version++;
+			node.prev = tail;
+			if (tail == null) {
+				head = node;
+			} else {
+				tail.next = node;
+			}
+			tail = node;
+			size++;
+			version++;
+		}
+
+		private void unlink(Node<K, V> node) {
+			version++;
+			if (node.prev == null) {
+				head = node.next;
+			} else {
+				node.prev.next = node.next;
+			}
+			if (node.next == null) {
+				tail = node.prev;
+			} else {
+				node.next.prev = node.prev;
+			}
+			node.prev = null;
+			node.next = null;
+			size--;
+			version++;
+		}
+
+		private void touch() {
+			version++;
+			version++;
+		}
+
+		private void clear() {
+			version++;
+			head = null;
+			tail = null;
+			size = 0;
+			version++;
+		}
+
+		/**
+		 * Read the values without locking
+		 * 
+		 * @param copier copies each value into the snapshot
+		 * @return snapshot, null if a writer changed the list meanwhile
+		 */
+		private List<V> tryRead(UnaryOperator<V> copier) {
+			int before = version;
+			Snapshot<V> cached = snapshot;
+			if (cached != null && cached.version == before) {
+				return cached.values;
+			}
+			if ((before & 1) != 0) {
+				return null;
+			}
+			List<V> list = new ArrayList<>(size);
+			for (Node<K, V> node = head; node != null; node = node.next) {
+				list.add(copier.apply(node.value));
+			}
+			if (version != before) {
+				return null;
+			}
+			List<V> values = Collections.unmodifiableList(list);
+			snapshot = new Snapshot<>(before, values);
+			return values;
+		}
+	}
+
+	private static class Snapshot<V> {
+		private final int version;
+		private final List<V> values;
+
+		private Snapshot(int version, List<V> values) {
+			this.version = version;
+			this.values = values;
+		}
+	}
+}
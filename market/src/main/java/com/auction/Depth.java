@@ -0,0 +1,47 @@
+package com.auction;
+
+import java.util.Collections;
+import java.util.SortedMap;
+
+/**
+ * Total quantity at the best price levels of an item, bids and offers
+ * each ordered best price first
+ * 
+ * @author Keith
+ *
+ */
+public class Depth {
+
+	private final Integer itemId;
+	private final SortedMap<Integer, Long> bidLevels;
+	private final SortedMap<Integer, Long> offerLevels;
+
+	Depth(Integer itemId, SortedMap<Integer, Long> bidLevels, SortedMap<Integer, Long> offerLevels) {
+		this.itemId = itemId;
+		this.bidLevels = Collections.unmodifiableSortedMap(bidLevels);
+		this.offerLevels = Collections.unmodifiableSortedMap(offerLevels);
+	}
+
+	public Integer getItemId() {
+		return itemId;
+	}
+
+	/**
+	 * @return price -> total quantity, highest price first
+	 */
+	public SortedMap<Integer, Long> getBidLevels() {
+		return bidLevels;
+	}
+
+	/**
+	 * @return price -> total quantity, lowest price first
+	 */
+	public SortedMap<Integer, Long> getOfferLevels() {
+		return offerLevels;
+	}
+
+	@Override
+	public String toString() {
+		return "[ItemID = " + itemId + ", BidLevels = " + bidLevels + ", OfferLevels = " + offerLevels + "]";
+	}
+}
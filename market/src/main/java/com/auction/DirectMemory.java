@@ -0,0 +1,92 @@
+package com.auction;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Growable off-heap memory addressed by long offsets. Backed by a list of
+ * direct ByteBuffer chunks so it is not limited to the 2GB of a single
+ * buffer. Values must be aligned to their size so they never straddle a
+ * chunk. Not thread safe.
+ * 
+ * @author Keith
+ *
+ */
+public class DirectMemory {
+
+	// 4MB chunks
+	public static final int DEFAULT_CHUNK_BITS = 22;
+
+	private final int chunkBits;
+	private final long chunkMask;
+	private ByteBuffer[] chunks = new ByteBuffer[0];
+
+	public DirectMemory() {
+		this(DEFAULT_CHUNK_BITS);
+	}
+
+	/**
+	 * @param chunkBits log2 of the chunk size in bytes, at least 3
+	 */
+	public DirectMemory(int chunkBits) {
+		if (chunkBits < 3 || chunkBits > 30) {
+			throw new IllegalArgumentException("chunkBits out of range: " + chunkBits);
+		}
+		this.chunkBits = chunkBits;
+		this.chunkMask = (1L << chunkBits) - 1;
+	}
+
+	/**
+	 * @return bytes currently allocated
+	 */
+	public long capacity() {
+		return (long) chunks.length << chunkBits;
+	}
+
+	/**
+	 * Allocate chunks until at least the given number of bytes is addressable
+	 * 
+	 * @param bytes
+	 */
+	public void ensureCapacity(long bytes) {
+		if (bytes <= capacity()) {
+			return;
+		}
+		int required = (int) ((bytes + chunkMask) >>> chunkBits);
+		int allocated = chunks.length;
+		chunks = Arrays.copyOf(chunks, required);
+		for (int i = allocated; i < required; i++) {
+			chunks[i] = ByteBuffer.allocateDirect(1 << chunkBits).order(ByteOrder.nativeOrder());
+		}
+	}
+
+	public int getInt(long offset) {
+		return chunks[(int) (offset >>> chunkBits)].getInt((int) (offset & chunkMask));
+	}
+
+	public void putInt(long offset, int value) {
+		chunks[(int) (offset >>> chunkBits)].putInt((int) (offset & chunkMask), value);
+	}
+
+	public long getLong(long offset) {
+		return chunks[(int) (offset >>> chunkBits)].getLong((int) (offset & chunkMask));
+	}
+
+	public void putLong(long offset, long value) {
+		chunks[(int) (offset >>> chunkBits)].putLong((int) (offset & chunkMask), value);
+	}
+
+	/**
+	 * Set consecutive ints to the same value
+	 * 
+	 * @param offset first int
+	 * @param count number of ints
+	 * @param value
+	 */
+	public void fillInt(long offset, long count, int value) {
+		for (long i = 0; i < count; i++) {
+			putInt(offset + i * 4, value);
+		}
+	}
+}
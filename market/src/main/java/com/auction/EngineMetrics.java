@@ -0,0 +1,460 @@
+package com.auction;
+
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms of a {@link MarketplaceAuctionImpl}, see
+ * {@link MarketplaceAuctionImpl#enableMetrics()}. Until then the auction
+ * records to {@link #DISABLED}, which does not even read the clock.
+ * 
+ * Waiting for an item lock is timed apart from holding it, so contention
+ * shows up separately from the work done under the lock: matching, placing
+ * orders and updating the cache, which are each timed too. Counters are
+ * {@link LongAdder}s and histograms {@link LatencyHistogram}s, so recording
+ * from many threads does not contend. Read them through {@link #snapshot()}
+ * or over JMX once {@link #register(String)} is called.
+ * 
+ * @author Keith
+ *
+ */
+public class EngineMetrics implements EngineMetricsMXBean {
+
+	/**
+	 * Metrics which record nothing
+	 */
+	static final EngineMetrics DISABLED = new EngineMetrics(null, false);
+
+	private final boolean enabled;
+
+	private final LatencyHistogram addBid = new LatencyHistogram();
+	private final LatencyHistogram addOffer = new LatencyHistogram();
+	private final LatencyHistogram lockWait = new LatencyHistogram();
+	private final LatencyHistogram lockHold = new LatencyHistogram();
+	private final LatencyHistogram match = new LatencyHistogram();
+	private final LatencyHistogram placeOrder = new LatencyHistogram();
+	private final LatencyHistogram cacheUpdate = new LatencyHistogram();
+
+	private final LongAdder bids = new LongAdder();
+	private final LongAdder offers = new LongAdder();
+	private final LongAdder orders = new LongAdder();
+	private final LongAdder cancels = new LongAdder();
+	private final LongAdder amends = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+
+	private final MarketDataFeed marketData;
+	private final long startNanos = System.nanoTime();
+
+	EngineMetrics(MarketDataFeed marketData) {
+		this(marketData, true);
+	}
+
+	private EngineMetrics(MarketDataFeed marketData, boolean enabled) {
+		this.marketData = marketData;
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @return time to pass to the recording methods, 0 when disabled
+	 */
+	long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * @param start time before lock() was called
+	 * @return time the lock was acquired
+	 */
+	long lockAcquired(long start) {
+		if (!enabled) {
+			return 0;
+		}
+		long now = System.nanoTime();
+		lockWait.record(now - start);
+		return now;
+	}
+
+	void lockReleased(long acquired) {
+		if (enabled && acquired != 0) {
+			lockHold.record(System.nanoTime() - acquired);
+		}
+	}
+
+	void bidAdded(long start) {
+		record(addBid, start);
+	}
+
+	void offerAdded(long start) {
+		record(addOffer, start);
+	}
+
+	void matched(long start) {
+		record(match, start);
+	}
+
+	void orderPlaced(long start) {
+		if (enabled) {
+			orders.increment();
+			record(placeOrder, start);
+		}
+	}
+
+	void cacheUpdated(long start) {
+		record(cacheUpdate, start);
+	}
+
+	void bidEntered() {
+		count(bids);
+	}
+
+	void offerEntered() {
+		count(offers);
+	}
+
+	void cancelled() {
+		count(cancels);
+	}
+
+	void amended() {
+		count(amends);
+	}
+
+	void rejected() {
+		count(rejected);
+	}
+
+	private void record(LatencyHistogram histogram, long start) {
+		if (enabled) {
+			histogram.record(System.nanoTime() - start);
+		}
+	}
+
+	private void count(LongAdder counter) {
+		if (enabled) {
+			counter.increment();
+		}
+	}
+
+	/**
+	 * Copy the metrics as they are now
+	 * 
+	 * @return
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	/**
+	 * Register with the platform MBean server
+	 * 
+	 * @param name distinguishes the auction, e.g. when a JVM runs several
+	 * @return name registered under
+	 * @throws JMException
+	 */
+	public ObjectName register(String name) throws JMException {
+		if (!enabled) {
+			throw new IllegalStateException("Metrics are disabled");
+		}
+		ObjectName objectName = new ObjectName("com.auction:type=EngineMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	@Override
+	public long getBids() {
+		return bids.sum();
+	}
+
+	@Override
+	public long getOffers() {
+		return offers.sum();
+	}
+
+	@Override
+	public long getOrders() {
+		return orders.sum();
+	}
+
+	@Override
+	public long getCancels() {
+		return cancels.sum();
+	}
+
+	@Override
+	public long getAmends() {
+		return amends.sum();
+	}
+
+	@Override
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	@Override
+	public double getOrdersPerSecond() {
+		return perSecond(orders.sum(), System.nanoTime() - startNanos);
+	}
+
+	@Override
+	public double getEntriesPerSecond() {
+		return perSecond(bids.sum() + offers.sum(), System.nanoTime() - startNanos);
+	}
+
+	@Override
+	public Latency getAddBidLatency() {
+		return new Latency(addBid);
+	}
+
+	@Override
+	public Latency getAddOfferLatency() {
+		return new Latency(addOffer);
+	}
+
+	@Override
+	public Latency getLockWaitLatency() {
+		return new Latency(lockWait);
+	}
+
+	@Override
+	public Latency getLockHoldLatency() {
+		return new Latency(lockHold);
+	}
+
+	@Override
+	public Latency getMatchLatency() {
+		return new Latency(match);
+	}
+
+	@Override
+	public Latency getPlaceOrderLatency() {
+		return new Latency(placeOrder);
+	}
+
+	@Override
+	public Latency getCacheUpdateLatency() {
+		return new Latency(cacheUpdate);
+	}
+
+	@Override
+	public Map<Integer, Integer> getBidLevels() {
+		return marketData == null ? Collections.emptyMap() : marketData.getLevelCounts(true);
+	}
+
+	@Override
+	public Map<Integer, Integer> getOfferLevels() {
+		return marketData == null ? Collections.emptyMap() : marketData.getLevelCounts(false);
+	}
+
+	private static double perSecond(long count, long nanos) {
+		return nanos <= 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+	}
+
+	/**
+	 * Summary of a latency histogram in nanoseconds, shown over JMX as
+	 * composite data
+	 */
+	public static class Latency {
+		private final long count;
+		private final double mean;
+		private final long p50;
+		private final long p99;
+		private final long p999;
+		private final long max;
+
+		@ConstructorProperties({ "count", "mean", "p50", "p99", "p999", "max" })
+		public Latency(long count, double mean, long p50, long p99, long p999, long max) {
+			this.count = count;
+			this.mean = mean;
+			this.p50 = p50;
+			this.p99 = p99;
+			this.p999 = p999;
+			this.max = max;
+		}
+
+		Latency(LatencyHistogram histogram) {
+			this(histogram.getCount(), histogram.getMean(), histogram.getValueAtPercentile(50),
+					histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9),
+					histogram.getMax());
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getMean() {
+			return mean;
+		}
+
+		public long getP50() {
+			return p50;
+		}
+
+		public long getP99() {
+			return p99;
+		}
+
+		public long getP999() {
+			return p999;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return "[Count = " + count + ", Mean = " + Math.round(mean) + "ns, P50 = " + p50
+					+ "ns, P99 = " + p99 + "ns, P99.9 = " + p999 + "ns, Max = " + max + "ns]";
+		}
+	}
+
+	/**
+	 * Metrics at a point in time. Rates between two snapshots are taken with
+	 * {@link #getOrdersPerSecond(Snapshot)} and
+	 * {@link #getEntriesPerSecond(Snapshot)}.
+	 */
+	public static class Snapshot {
+		private final long nanoTime;
+		private final long bids;
+		private final long offers;
+		private final long orders;
+		private final long cancels;
+		private final long amends;
+		private final long rejected;
+		private final LatencyHistogram addBid;
+		private final LatencyHistogram addOffer;
+		private final LatencyHistogram lockWait;
+		private final LatencyHistogram lockHold;
+		private final LatencyHistogram match;
+		private final LatencyHistogram placeOrder;
+		private final LatencyHistogram cacheUpdate;
+		private final Map<Integer, Integer> bidLevels;
+		private final Map<Integer, Integer> offerLevels;
+
+		private Snapshot(EngineMetrics metrics) {
+			nanoTime = System.nanoTime();
+			bids = metrics.bids.sum();
+			offers = metrics.offers.sum();
+			orders = metrics.orders.sum();
+			cancels = metrics.cancels.sum();
+			amends = metrics.amends.sum();
+			rejected = metrics.rejected.sum();
+			addBid = metrics.addBid.copy();
+			addOffer = metrics.addOffer.copy();
+			lockWait = metrics.lockWait.copy();
+			lockHold = metrics.lockHold.copy();
+			match = metrics.match.copy();
+			placeOrder = metrics.placeOrder.copy();
+			cacheUpdate = metrics.cacheUpdate.copy();
+			bidLevels = Collections.unmodifiableMap(metrics.getBidLevels());
+			offerLevels = Collections.unmodifiableMap(metrics.getOfferLevels());
+		}
+
+		public long getBids() {
+			return bids;
+		}
+
+		public long getOffers() {
+			return offers;
+		}
+
+		public long getOrders() {
+			return orders;
+		}
+
+		public long getCancels() {
+			return cancels;
+		}
+
+		public long getAmends() {
+			return amends;
+		}
+
+		public long getRejected() {
+			return rejected;
+		}
+
+		/**
+		 * @param previous earlier snapshot of the same metrics
+		 * @return orders placed per second since the earlier snapshot
+		 */
+		public double getOrdersPerSecond(Snapshot previous) {
+			return perSecond(orders - previous.orders, nanoTime - previous.nanoTime);
+		}
+
+		/**
+		 * @param previous earlier snapshot of the same metrics
+		 * @return bids and offers entered per second since the earlier snapshot
+		 */
+		public double getEntriesPerSecond(Snapshot previous) {
+			return perSecond(bids + offers - previous.bids - previous.offers, nanoTime - previous.nanoTime);
+		}
+
+		/**
+		 * @return time addBid took, including waiting for the lock
+		 */
+		public LatencyHistogram getAddBid() {
+			return addBid;
+		}
+
+		public LatencyHistogram getAddOffer() {
+			return addOffer;
+		}
+
+		public LatencyHistogram getLockWait() {
+			return lockWait;
+		}
+
+		public LatencyHistogram getLockHold() {
+			return lockHold;
+		}
+
+		/**
+		 * @return time sweeping the opposite side of the book for each bid
+		 *         or offer, including placing orders
+		 */
+		public LatencyHistogram getMatch() {
+			return match;
+		}
+
+		public LatencyHistogram getPlaceOrder() {
+			return placeOrder;
+		}
+
+		/**
+		 * @return time of each addition, removal and reduction in the cache
+		 */
+		public LatencyHistogram getCacheUpdate() {
+			return cacheUpdate;
+		}
+
+		/**
+		 * @return item ID -> number of bid price levels
+		 */
+		public Map<Integer, Integer> getBidLevels() {
+			return bidLevels;
+		}
+
+		/**
+		 * @return item ID -> number of offer price levels
+		 */
+		public Map<Integer, Integer> getOfferLevels() {
+			return offerLevels;
+		}
+
+		@Override
+		public String toString() {
+			return "[Bids = " + bids + ", Offers = " + offers + ", Orders = " + orders + ", Cancels = " + cancels
+					+ ", Amends = " + amends + ", Rejected = " + rejected + ", LockWait = " + lockWait
+					+ ", LockHold = " + lockHold + ", Match = " + match + ", PlaceOrder = " + placeOrder
+					+ ", CacheUpdate = " + cacheUpdate + "]";
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package com.auction;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link EngineMetrics}. Counters only grow, so rates are best
+ * taken by the monitoring tool from the difference between two reads.
+ * 
+ * @author Keith
+ *
+ */
+public interface EngineMetricsMXBean {
+
+	public long getBids();
+
+	public long getOffers();
+
+	/**
+	 * @return orders placed, one per fill
+	 */
+	public long getOrders();
+
+	public long getCancels();
+
+	public long getAmends();
+
+	/**
+	 * @return bids, offers and amendments rejected by risk checks
+	 */
+	public long getRejected();
+
+	/**
+	 * @return orders placed per second since the metrics were enabled
+	 */
+	public double getOrdersPerSecond();
+
+	/**
+	 * @return bids and offers entered per second since the metrics were
+	 *         enabled
+	 */
+	public double getEntriesPerSecond();
+
+	public EngineMetrics.Latency getAddBidLatency();
+
+	public EngineMetrics.Latency getAddOfferLatency();
+
+	public EngineMetrics.Latency getLockWaitLatency();
+
+	public EngineMetrics.Latency getLockHoldLatency();
+
+	public EngineMetrics.Latency getMatchLatency();
+
+	public EngineMetrics.Latency getPlaceOrderLatency();
+
+	public EngineMetrics.Latency getCacheUpdateLatency();
+
+	/**
+	 * @return item ID -> number of bid price levels
+	 */
+	public Map<Integer, Integer> getBidLevels();
+
+	/**
+	 * @return item ID -> number of offer price levels
+	 */
+	public Map<Integer, Integer> getOfferLevels();
+}
@@ -0,0 +1,175 @@
+package com.auction;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight over the binary form of a {@link Bid}, {@link Offer} or
+ * {@link Order}, shared by the {@link Journal} and the {@link Gateway}.
+ * 
+ * The codec is wrapped around a buffer, heap, direct or memory-mapped, at
+ * an offset and reads and writes the fields in place with absolute gets and
+ * puts, so the buffer's position is left alone. Encoding allocates nothing
+ * and writes each field once; decoding single fields copies nothing, only
+ * the user IDs and whole objects have to be created.
+ * 
+ * <pre>
+ * 0   int id
+ * 4   int itemId
+ * 8   int pricePerUnit
+ * 12  int quantity
+ * 16  short length, UTF-16 user ID, the buyer of an order
+ *     short length, UTF-16 seller ID, orders only
+ * </pre>
+ * 
+ * Messages which only need the numbers, e.g. execution reports, stop after
+ * the fixed fields.
+ * 
+ * @author Keith
+ *
+ */
+public class EntryCodec {
+
+	/**
+	 * Length of the fields before the user IDs
+	 */
+	public static final int FIXED_LENGTH = 16;
+
+	private static final int ITEM_ID = 4;
+	private static final int PRICE = 8;
+	private static final int QUANTITY = 12;
+
+	private ByteBuffer buffer;
+	private int offset;
+
+	/**
+	 * Point the codec at an entry
+	 * 
+	 * @param buffer
+	 * @param offset offset of the entry in the buffer
+	 * @return this
+	 */
+	public EntryCodec wrap(ByteBuffer buffer, int offset) {
+		this.buffer = buffer;
+		this.offset = offset;
+		return this;
+	}
+
+	/**
+	 * @param entry
+	 * @return bytes needed to encode the bid or offer
+	 */
+	public static int encodedLength(BookEntry entry) {
+		return FIXED_LENGTH + stringLength(entry.getUserId());
+	}
+
+	/**
+	 * @param order
+	 * @return bytes needed to encode the order
+	 */
+	public static int encodedLength(Order order) {
+		return FIXED_LENGTH + stringLength(order.getBuyerId()) + stringLength(order.getSellerId());
+	}
+
+	/**
+	 * Write the fixed fields only
+	 * 
+	 * @return bytes written
+	 */
+	public int encode(int id, int itemId, int pricePerUnit, int quantity) {
+		buffer.putInt(offset, id);
+		buffer.putInt(offset + ITEM_ID, itemId);
+		buffer.putInt(offset + PRICE, pricePerUnit);
+		buffer.putInt(offset + QUANTITY, quantity);
+		return FIXED_LENGTH;
+	}
+
+	/**
+	 * Write a bid or offer
+	 * 
+	 * @param entry
+	 * @return bytes written
+	 */
+	public int encode(BookEntry entry) {
+		encode(entry.getId(), entry.getItemId(), entry.getPricePerUnit(), entry.getQuantity());
+		return putString(FIXED_LENGTH, entry.getUserId());
+	}
+
+	/**
+	 * Write an order
+	 * 
+	 * @param order
+	 * @return bytes written
+	 */
+	public int encode(Order order) {
+		encode(order.getId(), order.getItemId(), order.getPricePerUnit(), order.getQuantity());
+		int at = putString(FIXED_LENGTH, order.getBuyerId());
+		return putString(at, order.getSellerId());
+	}
+
+	public int getId() {
+		return buffer.getInt(offset);
+	}
+
+	public int getItemId() {
+		return buffer.getInt(offset + ITEM_ID);
+	}
+
+	public int getPricePerUnit() {
+		return buffer.getInt(offset + PRICE);
+	}
+
+	public int getQuantity() {
+		return buffer.getInt(offset + QUANTITY);
+	}
+
+	/**
+	 * @return user ID of a bid or offer, buyer of an order
+	 */
+	public String getUserId() {
+		return getString(FIXED_LENGTH);
+	}
+
+	/**
+	 * @return seller of an order
+	 */
+	public String getSellerId() {
+		return getString(FIXED_LENGTH + 2 + buffer.getShort(offset + FIXED_LENGTH) * 2);
+	}
+
+	public Bid toBid() {
+		return new Bid(getId(), getItemId(), getQuantity(), getPricePerUnit(), getUserId());
+	}
+
+	public Offer toOffer() {
+		return new Offer(getId(), getItemId(), getQuantity(), getPricePerUnit(), getUserId());
+	}
+
+	public Order toOrder() {
+		return new Order(getId(), getItemId(), getQuantity(), getPricePerUnit(), getUserId(), getSellerId());
+	}
+
+	private int putString(int at, String value) {
+		buffer.putShort(offset + at, (short) value.length());
+		at += 2;
+		for (int i = 0; i < value.length(); i++) {
+			buffer.putChar(offset + at, value.charAt(i));
+			at += 2;
+		}
+		return at;
+	}
+
+	private String getString(int at) {
+		char[] chars = new char[buffer.getShort(offset + at)];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = buffer.getChar(offset + at + 2 + i * 2);
+		}
+		return new String(chars);
+	}
+
+	private static int stringLength(String value) {
+		if (value.length() > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("String too long: " + value.length());
+		}
+		return 2 + value.length() * 2;
+	}
+}
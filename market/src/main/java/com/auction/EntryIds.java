@@ -0,0 +1,30 @@
+package com.auction;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates the IDs of bids and offers. IDs are unique across both, so a
+ * resting entry can be found by its ID alone.
+ * 
+ * @author Keith
+ *
+ */
+final class EntryIds {
+
+	private static final AtomicInteger sequenceGenerator = new AtomicInteger();
+
+	private EntryIds() {
+	}
+
+	static int next() {
+		return sequenceGenerator.incrementAndGet();
+	}
+
+	static void reserve(int lastId) {
+		sequenceGenerator.accumulateAndGet(lastId, Math::max);
+	}
+
+	static int getLast() {
+		return sequenceGenerator.get();
+	}
+}
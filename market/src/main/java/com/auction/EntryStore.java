@@ -0,0 +1,262 @@
+package com.auction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Struct-of-arrays storage for resting bids or offers. Each entry occupies a
+ * slot, an index into parallel primitive arrays holding its ID, item, price,
+ * quantity and numeric user ID, plus links chaining it into its price level
+ * and into the list of entries of its user. Freed slots are reused, so once
+ * the arrays have grown to the peak number of resting entries adding and
+ * removing allocates nothing.
+ * 
+ * The store is the only owner of an entry's fields, the entry added is not
+ * kept. Bids and offers are recreated from their slot when read, so callers
+ * holding one do not see later changes to its quantity.
+ * 
+ * Not thread safe.
+ * 
+ * @author Keith
+ *
+ */
+public class EntryStore<T extends BookEntry> implements SlotStore<T> {
+
+	private long[] ids;
+	private int[] itemIds;
+	private int[] prices;
+	private int[] quantities;
+	private int[] users;
+	// FIFO links within a price level, levelNext also chains free slots
+	private int[] levelNext;
+	private int[] levelPrev;
+	// links within the entries of a user
+	private int[] userNext;
+	private int[] userPrev;
+
+	// first and last slot of each user, by numeric user ID
+	private int[] userHeads = new int[0];
+	private int[] userTails = new int[0];
+
+	private final LongIntHashMap slotsById;
+	private final UserIdInterner userIds;
+	private final EntryFactory<T> factory;
+	private int freeHead = NONE;
+	private int used;
+	private int size;
+
+	/**
+	 * @param initialCapacity number of entries to preallocate
+	 * @param userIds interner shared with the other stores of the cache
+	 * @param factory recreates entries from slots
+	 */
+	public EntryStore(int initialCapacity, UserIdInterner userIds, EntryFactory<T> factory) {
+		this.userIds = userIds;
+		this.factory = factory;
+		int capacity = Math.max(initialCapacity, 16);
+		ids = new long[capacity];
+		itemIds = new int[capacity];
+		prices = new int[capacity];
+		quantities = new int[capacity];
+		users = new int[capacity];
+		levelNext = new int[capacity];
+		levelPrev = new int[capacity];
+		userNext = new int[capacity];
+		userPrev = new int[capacity];
+		slotsById = new LongIntHashMap(capacity);
+	}
+
+	/**
+	 * Store an entry, linking it to the end of its user's entries. The entry
+	 * is not yet linked into a price level.
+	 * 
+	 * @param entry
+	 * @return slot of the entry
+	 */
+	public int add(T entry) {
+		int user = userIds.intern(entry.getUserId());
+		int slot = allocate();
+		ids[slot] = entry.getId();
+		itemIds[slot] = entry.getItemId();
+		prices[slot] = entry.getPricePerUnit();
+		quantities[slot] = entry.getQuantity();
+		users[slot] = user;
+		levelNext[slot] = NONE;
+		levelPrev[slot] = NONE;
+		slotsById.put(ids[slot], slot);
+
+		ensureUserCapacity(user);
+		int tail = userTails[user];
+		userPrev[slot] = tail;
+		userNext[slot] = NONE;
+		if (tail == NONE) {
+			userHeads[user] = slot;
+		} else {
+			userNext[tail] = slot;
+		}
+		userTails[user] = slot;
+		size++;
+		return slot;
+	}
+
+	/**
+	 * Free the slot of an entry, which must already be unlinked from its
+	 * price level
+	 * 
+	 * @param slot
+	 */
+	public void remove(int slot) {
+		int user = users[slot];
+		int prev = userPrev[slot];
+		int next = userNext[slot];
+		if (prev == NONE) {
+			userHeads[user] = next;
+		} else {
+			userNext[prev] = next;
+		}
+		if (next == NONE) {
+			userTails[user] = prev;
+		} else {
+			userPrev[next] = prev;
+		}
+		slotsById.remove(ids[slot]);
+		levelNext[slot] = freeHead;
+		freeHead = slot;
+		size--;
+	}
+
+	/**
+	 * @return slot of a stored entry, {@link #NONE} if not stored
+	 */
+	public int slotOf(T entry) {
+		return slotOf(entry.getId());
+	}
+
+	/**
+	 * @return slot of the entry with the given ID, {@link #NONE} if not stored
+	 */
+	public int slotOf(int id) {
+		int slot = slotsById.get(id);
+		return slot == LongIntHashMap.MISSING ? NONE : slot;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getId(int slot) {
+		return ids[slot];
+	}
+
+	public int getItemId(int slot) {
+		return itemIds[slot];
+	}
+
+	@Override
+	public int getPrice(int slot) {
+		return prices[slot];
+	}
+
+	@Override
+	public int getQuantity(int slot) {
+		return quantities[slot];
+	}
+
+	@Override
+	public void setQuantity(int slot, int quantity) {
+		quantities[slot] = quantity;
+	}
+
+	public int getUser(int slot) {
+		return users[slot];
+	}
+
+	@Override
+	public int getLevelNext(int slot) {
+		return levelNext[slot];
+	}
+
+	@Override
+	public void setLevelNext(int slot, int next) {
+		levelNext[slot] = next;
+	}
+
+	@Override
+	public int getLevelPrev(int slot) {
+		return levelPrev[slot];
+	}
+
+	@Override
+	public void setLevelPrev(int slot, int prev) {
+		levelPrev[slot] = prev;
+	}
+
+	/**
+	 * @return ID of the user of the entry in a slot
+	 */
+	public String getUserId(int slot) {
+		return userIds.getUserId(users[slot]);
+	}
+
+	@Override
+	public T getEntry(int slot) {
+		return factory.create((int) ids[slot], itemIds[slot], quantities[slot], prices[slot],
+				userIds.getUserId(users[slot]));
+	}
+
+	/**
+	 * Get entries of a user in the order they were added
+	 * 
+	 * @param userId
+	 * @return
+	 */
+	public List<T> getEntriesForUser(String userId) {
+		List<T> list = new ArrayList<>();
+		int user = userIds.find(userId);
+		if (user == UserIdInterner.MISSING || user >= userHeads.length) {
+			return list;
+		}
+		for (int slot = userHeads[user]; slot != NONE; slot = userNext[slot]) {
+			list.add(getEntry(slot));
+		}
+		return list;
+	}
+
+	private int allocate() {
+		if (freeHead != NONE) {
+			int slot = freeHead;
+			freeHead = levelNext[slot];
+			return slot;
+		}
+		if (used == ids.length) {
+			grow();
+		}
+		return used++;
+	}
+
+	private void grow() {
+		int capacity = ids.length * 2;
+		ids = Arrays.copyOf(ids, capacity);
+		itemIds = Arrays.copyOf(itemIds, capacity);
+		prices = Arrays.copyOf(prices, capacity);
+		quantities = Arrays.copyOf(quantities, capacity);
+		users = Arrays.copyOf(users, capacity);
+		levelNext = Arrays.copyOf(levelNext, capacity);
+		levelPrev = Arrays.copyOf(levelPrev, capacity);
+		userNext = Arrays.copyOf(userNext, capacity);
+		userPrev = Arrays.copyOf(userPrev, capacity);
+	}
+
+	private void ensureUserCapacity(int user) {
+		if (user < userHeads.length) {
+			return;
+		}
+		int oldLength = userHeads.length;
+		int capacity = Math.max(user + 1, oldLength * 2);
+		userHeads = Arrays.copyOf(userHeads, capacity);
+		userTails = Arrays.copyOf(userTails, capacity);
+		Arrays.fill(userHeads, oldLength, capacity, NONE);
+		Arrays.fill(userTails, oldLength, capacity, NONE);
+	}
+}
@@ -0,0 +1,362 @@
+package com.auction;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Asynchronous log of order lifecycle events.
+ * 
+ * The matching thread copies the fields of an event into a preallocated slot
+ * of a {@link RingBuffer}, so recording allocates nothing and does no I/O
+ * while the item lock is held. A writer thread formats the events into the
+ * same text the engine used to log directly and passes them to log4j with
+ * the time they were recorded, so application.log reads as before.
+ * 
+ * Memory is bounded by the ring capacity. When the writer falls behind by a
+ * full ring, recording waits for it rather than drop events. Events an
+ * appender fails to write are reported through log4j's internal log and
+ * counted, see {@link #getDropped()}.
+ * 
+ * @author Keith
+ *
+ */
+public class EventLog implements AutoCloseable {
+
+	public static final int DEFAULT_CAPACITY = 1 << 14;
+
+	// logging latency does not matter, so park for longer once idle
+	private static final long IDLE_PARK_NANOS = 1_000_000L;
+	private static final int SPINS_BEFORE_PARK = 200;
+
+	/**
+	 * Log which records nothing, e.g. while replaying events already logged
+	 */
+	public static final EventLog DISABLED = new EventLog();
+
+	private static EventLog defaultLog;
+
+	private final boolean enabled;
+	private final Logger logger;
+	private final RingBuffer<Event> events;
+	private final Thread writer;
+	private volatile boolean running = true;
+	private final LongAdder dropped = new LongAdder();
+
+	// only used by the writer thread
+	private final StringBuilder text = new StringBuilder(128);
+
+	/**
+	 * @param logger logger the formatted events are written to
+	 * @param capacity number of events buffered, a power of 2
+	 */
+	public EventLog(Logger logger, int capacity) {
+		this.enabled = true;
+		this.logger = logger;
+		this.events = new RingBuffer<>(capacity, Event::new);
+		writer = new Thread(this::runWriter, "auction-event-log");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	private EventLog() {
+		this.enabled = false;
+		this.logger = null;
+		this.events = null;
+		this.writer = null;
+	}
+
+	/**
+	 * Log shared by every auction created without one. Events still buffered
+	 * are written out when the JVM shuts down.
+	 * 
+	 * @return
+	 */
+	public static synchronized EventLog getDefault() {
+		if (defaultLog == null) {
+			defaultLog = new EventLog(Logger.getLogger(MarketplaceAuctionImpl.class), DEFAULT_CAPACITY);
+			Runtime.getRuntime().addShutdownHook(new Thread(defaultLog::flush, "auction-event-log-shutdown"));
+		}
+		return defaultLog;
+	}
+
+	public void bidEntered(Bid bid) {
+		record(Type.BID_ENTERED, bid);
+	}
+
+	public void offerEntered(Offer offer) {
+		record(Type.OFFER_ENTERED, offer);
+	}
+
+	public void bidRemoved(Bid bid) {
+		record(Type.BID_REMOVED, bid);
+	}
+
+	public void bidReduced(Bid bid) {
+		record(Type.BID_REDUCED, bid);
+	}
+
+	/**
+	 * @param bid view of the filled bid, see {@link RestingEntry}
+	 */
+	public void bidRemoved(RestingEntry bid) {
+		record(Type.BID_REMOVED, bid.getId(), bid.getItemId(), bid.getPricePerUnit(),
+				bid.getQuantity(), bid.getUserId());
+	}
+
+	/**
+	 * @param bid view of the filled bid with its remaining quantity
+	 */
+	public void bidReduced(RestingEntry bid) {
+		record(Type.BID_REDUCED, bid.getId(), bid.getItemId(), bid.getPricePerUnit(),
+				bid.getQuantity(), bid.getUserId());
+	}
+
+	public void offerRemoved(Offer offer) {
+		record(Type.OFFER_REMOVED, offer);
+	}
+
+	public void offerReduced(Offer offer) {
+		record(Type.OFFER_REDUCED, offer);
+	}
+
+	/**
+	 * @param offer view of the filled offer, see {@link RestingEntry}
+	 */
+	public void offerRemoved(RestingEntry offer) {
+		record(Type.OFFER_REMOVED, offer.getId(), offer.getItemId(), offer.getPricePerUnit(),
+				offer.getQuantity(), offer.getUserId());
+	}
+
+	/**
+	 * @param offer view of the filled offer with its remaining quantity
+	 */
+	public void offerReduced(RestingEntry offer) {
+		record(Type.OFFER_REDUCED, offer.getId(), offer.getItemId(), offer.getPricePerUnit(),
+				offer.getQuantity(), offer.getUserId());
+	}
+
+	public void bidCancelled(Bid bid) {
+		record(Type.BID_CANCELLED, bid);
+	}
+
+	public void offerCancelled(Offer offer) {
+		record(Type.OFFER_CANCELLED, offer);
+	}
+
+	/**
+	 * @param bid bid after the amendment
+	 */
+	public void bidAmended(Bid bid) {
+		record(Type.BID_AMENDED, bid);
+	}
+
+	/**
+	 * @param offer offer after the amendment
+	 */
+	public void offerAmended(Offer offer) {
+		record(Type.OFFER_AMENDED, offer);
+	}
+
+	public void orderPlaced(Order order) {
+		if (!enabled || !logger.isInfoEnabled()) {
+			return;
+		}
+		long sequence = claim();
+		if (sequence < 0) {
+			return;
+		}
+		Event event = events.get(sequence);
+		event.type = Type.ORDER_PLACED;
+		event.timestamp = System.currentTimeMillis();
+		event.id = order.getId();
+		event.itemId = order.getItemId();
+		event.price = order.getPricePerUnit();
+		event.quantity = order.getQuantity();
+		event.userId = order.getBuyerId();
+		event.counterpartyId = order.getSellerId();
+		events.publish(sequence);
+	}
+
+	private void record(Type type, BookEntry entry) {
+		if (!enabled || !logger.isInfoEnabled()) {
+			return;
+		}
+		record(type, entry.getId(), entry.getItemId(), entry.getPricePerUnit(),
+				entry.getQuantity(), entry.getUserId());
+	}
+
+	private void record(Type type, int id, int itemId, int price, int quantity, String userId) {
+		if (!enabled || !logger.isInfoEnabled()) {
+			return;
+		}
+		long sequence = claim();
+		if (sequence < 0) {
+			return;
+		}
+		Event event = events.get(sequence);
+		event.type = type;
+		event.timestamp = System.currentTimeMillis();
+		event.id = id;
+		event.itemId = itemId;
+		event.price = price;
+		event.quantity = quantity;
+		event.userId = userId;
+		event.counterpartyId = null;
+		events.publish(sequence);
+	}
+
+	/**
+	 * Claim a slot, waiting while the ring is full only as long as the writer
+	 * is still running to empty it
+	 * 
+	 * @return claimed sequence, or -1 if the event was dropped
+	 */
+	private long claim() {
+		int idle = 0;
+		while (running && writer.isAlive()) {
+			long sequence = events.tryNext();
+			if (sequence >= 0) {
+				return sequence;
+			}
+			idle = idle(idle);
+		}
+		// nothing will free a slot, drop the event rather than stall the item lock
+		dropped.increment();
+		return -1;
+	}
+
+	/**
+	 * Wait until every event recorded before this call has been written
+	 * 
+	 * @throws IllegalStateException if the writer thread stopped first
+	 */
+	public void flush() {
+		if (!enabled) {
+			return;
+		}
+		long sequence = events.getClaimed();
+		int idle = 0;
+		while (events.getReleased() < sequence) {
+			if (!writer.isAlive() && events.getReleased() < sequence) {
+				throw new IllegalStateException("Event log writer stopped with "
+						+ (sequence - events.getReleased()) + " events unwritten");
+			}
+			idle = idle(idle);
+		}
+	}
+
+	/**
+	 * @return events which could not be written because an appender failed,
+	 *         or recorded after the writer stopped
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Write out everything already recorded, then stop the writer thread.
+	 * Events recorded afterwards are dropped.
+	 */
+	@Override
+	public void close() {
+		if (!enabled) {
+			return;
+		}
+		running = false;
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void runWriter() {
+		long next = 0;
+		int idle = 0;
+		while (running || events.isPublished(next)) {
+			if (!events.isPublished(next)) {
+				idle = idle(idle);
+				continue;
+			}
+			idle = 0;
+			Event event = events.get(next);
+			try {
+				write(event);
+			} catch (Throwable e) {
+				// an appender failing, even with an Error, must not stall the matching threads
+				dropped.increment();
+				LogLog.error("Failed to write auction event", e);
+			}
+			event.userId = null;
+			event.counterpartyId = null;
+			events.release(next);
+			next++;
+		}
+	}
+
+	private void write(Event event) {
+		text.setLength(0);
+		text.append(event.type.prefix)
+			.append("[ID = ").append(event.id)
+			.append(", ItemID = ").append(event.itemId)
+			.append(", PricePerUnit = ").append(event.price)
+			.append(", Quantity = ").append(event.quantity);
+		if (event.type == Type.ORDER_PLACED) {
+			text.append(", buyerId = ").append(event.userId)
+				.append(", sellerID = ").append(event.counterpartyId);
+		} else {
+			text.append(", userId = ").append(event.userId);
+		}
+		text.append(']');
+		logger.callAppenders(new LoggingEvent(EventLog.class.getName(), logger,
+				event.timestamp, Level.INFO, text.toString(), null));
+	}
+
+	private static int idle(int idle) {
+		if (idle < SPINS_BEFORE_PARK) {
+			return RingBuffer.idle(idle);
+		}
+		LockSupport.parkNanos(IDLE_PARK_NANOS);
+		return idle;
+	}
+
+	private enum Type {
+		BID_ENTERED("Bid entered: "),
+		OFFER_ENTERED("Offer entered: "),
+		ORDER_PLACED("Placed order: "),
+		BID_REMOVED("Bid removed: "),
+		BID_REDUCED("Bid reduced: "),
+		OFFER_REMOVED("Offer removed: "),
+		OFFER_REDUCED("Offer reduced: "),
+		BID_CANCELLED("Bid cancelled: "),
+		OFFER_CANCELLED("Offer cancelled: "),
+		BID_AMENDED("Bid amended: "),
+		OFFER_AMENDED("Offer amended: ");
+
+		private final String prefix;
+
+		Type(String prefix) {
+			this.prefix = prefix;
+		}
+	}
+
+	/**
+	 * Slot in the event ring, holds a copy of the logged fields
+	 */
+	private static class Event {
+		private Type type;
+		private long timestamp;
+		private int id;
+		private int itemId;
+		private int price;
+		private int quantity;
+		private String userId;
+		// seller of a placed order
+		private String counterpartyId;
+	}
+}
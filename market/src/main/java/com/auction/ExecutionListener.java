@@ -0,0 +1,35 @@
+package com.auction;
+
+/**
+ * Receives the results of matching
+ * 
+ * @author Keith
+ *
+ */
+public interface ExecutionListener {
+
+	/**
+	 * Called for every order placed when a bid and offer match
+	 * 
+	 * @param order
+	 */
+	public void onOrder(Order order);
+
+	/**
+	 * Called once a bid or offer has been processed by the matcher
+	 * 
+	 * @param entry
+	 */
+	public default void onAccepted(BookEntry entry) {
+	}
+
+	/**
+	 * Called instead of {@link #onAccepted(BookEntry)} when a bid or offer
+	 * breaches the risk limits of its user and never reaches the book
+	 * 
+	 * @param entry
+	 * @param reason limit which was breached
+	 */
+	public default void onRejected(BookEntry entry, String reason) {
+	}
+}
@@ -0,0 +1,464 @@
+package com.auction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache keeping resting bids and offers in primitive struct-of-arrays
+ * storage, see {@link EntryStore}. Books are sorted {@link PriceLevels} whose
+ * FIFO queues are chained through the store's slots, and user IDs are
+ * interned to numbers, so once storage has grown to the peak depth adding,
+ * filling and removing entries allocates nothing in the cache.
+ * 
+ * Only the store's slots hold resting entries. Bids and offers returned are
+ * recreated from their slot: they are equal to the entries that were added,
+ * but later quantity changes are only visible by reading them again.
+ * 
+ * Items are spread over stripes by ID, the same way as the lock stripes of
+ * {@link MarketplaceAuctionImpl}, and each stripe has its own stores guarded
+ * by its own monitor, so items in different stripes never contend. Looking
+ * an entry up by ID or by user visits every stripe. The matcher reads the
+ * best entry of a book through {@link #readBestBid(Integer, RestingEntry)}
+ * and {@link #readBestOffer(Integer, RestingEntry)}, which copy the slot's
+ * fields into a view rather than create a bid or offer.
+ * 
+ * Orders are kept in {@link ConcurrentMultiValueMap}s and read without
+ * locking. The top of book is published per item by {@link LevelBook} and
+ * can be read without blocking the matcher.
+ * 
+ * Each bid or offer may only rest once at a time.
+ * 
+ * @author Keith
+ *
+ */
+public class FlyweightMarketplaceCache implements MarketplaceCache {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+	public static final int DEFAULT_STRIPES = 16;
+
+	private final Stripe[] stripes;
+	// map of item ID -> book of slots
+	private final Map<Integer, LevelBook> bookMap = new ConcurrentHashMap<>();
+	// user ID -> open and filled exposure
+	private final Map<String, UserExposure> exposureMap = new ConcurrentHashMap<>();
+	// map of buyer orders
+	private final ConcurrentMultiValueMap<String, Order> buyerOrderMap = new ConcurrentMultiValueMap<>();
+	// map of seller orders
+	private final ConcurrentMultiValueMap<String, Order> sellerOrderMap = new ConcurrentMultiValueMap<>();
+
+	public FlyweightMarketplaceCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param initialCapacity number of bids and of offers to preallocate
+	 */
+	public FlyweightMarketplaceCache(int initialCapacity) {
+		this(initialCapacity, DEFAULT_STRIPES);
+	}
+
+	/**
+	 * @param initialCapacity number of bids and of offers to preallocate,
+	 *        shared out between the stripes
+	 * @param stripes number of stripes items are spread over
+	 */
+	public FlyweightMarketplaceCache(int initialCapacity, int stripes) {
+		if (stripes < 1) {
+			throw new IllegalArgumentException("stripes must be at least 1: " + stripes);
+		}
+		this.stripes = new Stripe[stripes];
+		for (int i = 0; i < stripes; i++) {
+			this.stripes[i] = new Stripe(Math.max(initialCapacity / stripes, 1));
+		}
+	}
+
+	@Override
+	public void addBid(Bid bid) {
+		Stripe stripe = stripeOf(bid.getItemId());
+		synchronized (stripe) {
+			int slot = stripe.bids.add(bid);
+			LevelBook book = getOrCreateBook(bid.getItemId());
+			book.getBids().link(stripe.bids, slot);
+			book.publishTopOfBook();
+		}
+		exposureOf(bid.getUserId()).bidChanged(bid.getPricePerUnit(), bid.getQuantity());
+	}
+
+	@Override
+	public void addOffer(Offer offer) {
+		Stripe stripe = stripeOf(offer.getItemId());
+		synchronized (stripe) {
+			int slot = stripe.offers.add(offer);
+			LevelBook book = getOrCreateBook(offer.getItemId());
+			book.getOffers().link(stripe.offers, slot);
+			book.publishTopOfBook();
+		}
+		exposureOf(offer.getUserId()).offerChanged(offer.getItemId(), offer.getPricePerUnit(), offer.getQuantity());
+	}
+
+	/**
+	 * Bids of a user in the order they were added within each stripe
+	 */
+	@Override
+	public List<Bid> getBidForUser(String userId) {
+		List<Bid> bids = new ArrayList<>();
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				bids.addAll(stripe.bids.getEntriesForUser(userId));
+			}
+		}
+		return bids;
+	}
+
+	/**
+	 * Offers of a user in the order they were added within each stripe
+	 */
+	@Override
+	public List<Offer> getOfferForUser(String userId) {
+		List<Offer> offers = new ArrayList<>();
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				offers.addAll(stripe.offers.getEntriesForUser(userId));
+			}
+		}
+		return offers;
+	}
+
+	@Override
+	public List<Bid> getBidForItem(Integer itemID) {
+		Stripe stripe = stripeOf(itemID);
+		synchronized (stripe) {
+			LevelBook book = bookMap.get(itemID);
+			if (book == null) {
+				return Collections.emptyList();
+			}
+			return book.getBids().getEntries(stripe.bids);
+		}
+	}
+
+	@Override
+	public List<Offer> getOfferForItem(Integer itemID) {
+		Stripe stripe = stripeOf(itemID);
+		synchronized (stripe) {
+			LevelBook book = bookMap.get(itemID);
+			if (book == null) {
+				return Collections.emptyList();
+			}
+			return book.getOffers().getEntries(stripe.offers);
+		}
+	}
+
+	@Override
+	public Bid getBestBid(Integer itemID) {
+		Stripe stripe = stripeOf(itemID);
+		synchronized (stripe) {
+			int slot = bestSlot(bookMap.get(itemID), true);
+			return slot == SlotStore.NONE ? null : stripe.bids.getEntry(slot);
+		}
+	}
+
+	@Override
+	public Offer getBestOffer(Integer itemID) {
+		Stripe stripe = stripeOf(itemID);
+		synchronized (stripe) {
+			int slot = bestSlot(bookMap.get(itemID), false);
+			return slot == SlotStore.NONE ? null : stripe.offers.getEntry(slot);
+		}
+	}
+
+	@Override
+	public boolean readBestBid(Integer itemID, RestingEntry bid) {
+		Stripe stripe = stripeOf(itemID);
+		synchronized (stripe) {
+			int slot = bestSlot(bookMap.get(itemID), true);
+			if (slot == SlotStore.NONE) {
+				return false;
+			}
+			EntryStore<Bid> bids = stripe.bids;
+			bid.set((int) bids.getId(slot), itemID, bids.getPrice(slot), bids.getQuantity(slot),
+					bids.getUserId(slot), slot);
+			return true;
+		}
+	}
+
+	@Override
+	public boolean readBestOffer(Integer itemID, RestingEntry offer) {
+		Stripe stripe = stripeOf(itemID);
+		synchronized (stripe) {
+			int slot = bestSlot(bookMap.get(itemID), false);
+			if (slot == SlotStore.NONE) {
+				return false;
+			}
+			EntryStore<Offer> offers = stripe.offers;
+			offer.set((int) offers.getId(slot), itemID, offers.getPrice(slot), offers.getQuantity(slot),
+					offers.getUserId(slot), slot);
+			return true;
+		}
+	}
+
+	/**
+	 * Fill the bid in the view's slot, which stays put while the item lock
+	 * of the matcher is held
+	 */
+	@Override
+	public void fillBid(RestingEntry bid, int quantity) {
+		Stripe stripe = stripeOf(bid.getItemId());
+		synchronized (stripe) {
+			LevelBook book = bookMap.get(bid.getItemId());
+			int slot = bid.getSlot();
+			if (quantity == stripe.bids.getQuantity(slot)) {
+				book.getBids().unlink(stripe.bids, slot);
+				stripe.bids.remove(slot);
+			} else {
+				book.getBids().reduce(stripe.bids, slot, quantity);
+			}
+			book.publishTopOfBook();
+		}
+		exposureOf(bid.getUserId()).bidChanged(bid.getPricePerUnit(), -quantity);
+	}
+
+	/**
+	 * Fill the offer in the view's slot, see
+	 * {@link #fillBid(RestingEntry, int)}
+	 */
+	@Override
+	public void fillOffer(RestingEntry offer, int quantity) {
+		Stripe stripe = stripeOf(offer.getItemId());
+		synchronized (stripe) {
+			LevelBook book = bookMap.get(offer.getItemId());
+			int slot = offer.getSlot();
+			if (quantity == stripe.offers.getQuantity(slot)) {
+				book.getOffers().unlink(stripe.offers, slot);
+				stripe.offers.remove(slot);
+			} else {
+				book.getOffers().reduce(stripe.offers, slot, quantity);
+			}
+			book.publishTopOfBook();
+		}
+		exposureOf(offer.getUserId()).offerChanged(offer.getItemId(), offer.getPricePerUnit(), -quantity);
+	}
+
+	@Override
+	public Set<Integer> getItemIds() {
+		return Collections.unmodifiableSet(bookMap.keySet());
+	}
+
+	@Override
+	public Bid getBid(Integer id) {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				int slot = stripe.bids.slotOf(id);
+				if (slot != EntryStore.NONE) {
+					return stripe.bids.getEntry(slot);
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Offer getOffer(Integer id) {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				int slot = stripe.offers.slotOf(id);
+				if (slot != EntryStore.NONE) {
+					return stripe.offers.getEntry(slot);
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public TopOfBook getTopOfBook(Integer itemID) {
+		LevelBook book = bookMap.get(itemID);
+		if (book == null) {
+			return TopOfBook.EMPTY;
+		}
+		return book.readTopOfBook();
+	}
+
+	@Override
+	public long getBidQuantity(Integer itemID, int price) {
+		synchronized (stripeOf(itemID)) {
+			LevelBook book = bookMap.get(itemID);
+			return book == null ? 0 : book.getBids().getQuantityAt(price);
+		}
+	}
+
+	@Override
+	public long getOfferQuantity(Integer itemID, int price) {
+		synchronized (stripeOf(itemID)) {
+			LevelBook book = bookMap.get(itemID);
+			return book == null ? 0 : book.getOffers().getQuantityAt(price);
+		}
+	}
+
+	@Override
+	public SortedMap<Integer, Long> getBidLevels(Integer itemID, int levels) {
+		synchronized (stripeOf(itemID)) {
+			LevelBook book = bookMap.get(itemID);
+			if (book == null) {
+				return new TreeMap<>(Comparator.reverseOrder());
+			}
+			return book.getBids().getLevels(levels);
+		}
+	}
+
+	@Override
+	public SortedMap<Integer, Long> getOfferLevels(Integer itemID, int levels) {
+		synchronized (stripeOf(itemID)) {
+			LevelBook book = bookMap.get(itemID);
+			if (book == null) {
+				return new TreeMap<>();
+			}
+			return book.getOffers().getLevels(levels);
+		}
+	}
+
+	@Override
+	public void addOrder(Order order) {
+		buyerOrderMap.put(order.getBuyerId(), order);
+		sellerOrderMap.put(order.getSellerId(), order);
+		exposureOf(order.getBuyerId()).bought(order.getQuantity());
+		exposureOf(order.getSellerId()).sold(order.getQuantity());
+	}
+
+	@Override
+	public List<Order> getOrdersForSeller(String userId) {
+		return sellerOrderMap.get(userId);
+	}
+
+	@Override
+	public List<Order> getOrdersForBuyer(String userId) {
+		return buyerOrderMap.get(userId);
+	}
+
+	@Override
+	public void removeOffer(Offer offer) {
+		Stripe stripe = stripeOf(offer.getItemId());
+		EntryStore<Offer> offers = stripe.offers;
+		synchronized (stripe) {
+			int slot = offers.slotOf(offer);
+			LevelBook book = bookMap.get(offer.getItemId());
+			if (slot == EntryStore.NONE || book == null) {
+				return;
+			}
+			exposureOf(offers.getUserId(slot)).offerChanged(offers.getItemId(slot), offers.getPrice(slot), -offers.getQuantity(slot));
+			book.getOffers().unlink(offers, slot);
+			offers.remove(slot);
+			book.publishTopOfBook();
+		}
+	}
+
+	@Override
+	public void removeBid(Bid bid) {
+		Stripe stripe = stripeOf(bid.getItemId());
+		EntryStore<Bid> bids = stripe.bids;
+		synchronized (stripe) {
+			int slot = bids.slotOf(bid);
+			LevelBook book = bookMap.get(bid.getItemId());
+			if (slot == EntryStore.NONE || book == null) {
+				return;
+			}
+			exposureOf(bids.getUserId(slot)).bidChanged(bids.getPrice(slot), -bids.getQuantity(slot));
+			book.getBids().unlink(bids, slot);
+			bids.remove(slot);
+			book.publishTopOfBook();
+		}
+	}
+
+	@Override
+	public void reduceOffer(Offer offer, Integer reduceBy) {
+		Stripe stripe = stripeOf(offer.getItemId());
+		EntryStore<Offer> offers = stripe.offers;
+		synchronized (stripe) {
+			int slot = offers.slotOf(offer);
+			LevelBook book = bookMap.get(offer.getItemId());
+			if (slot == EntryStore.NONE || book == null) {
+				return;
+			}
+			book.getOffers().reduce(offers, slot, reduceBy);
+			book.publishTopOfBook();
+			exposureOf(offers.getUserId(slot)).offerChanged(offers.getItemId(slot), offers.getPrice(slot), -reduceBy);
+		}
+	}
+
+	@Override
+	public void reduceBid(Bid bid, Integer reduceBy) {
+		Stripe stripe = stripeOf(bid.getItemId());
+		EntryStore<Bid> bids = stripe.bids;
+		synchronized (stripe) {
+			int slot = bids.slotOf(bid);
+			LevelBook book = bookMap.get(bid.getItemId());
+			if (slot == EntryStore.NONE || book == null) {
+				return;
+			}
+			book.getBids().reduce(bids, slot, reduceBy);
+			book.publishTopOfBook();
+			exposureOf(bids.getUserId(slot)).bidChanged(bids.getPrice(slot), -reduceBy);
+		}
+	}
+
+	@Override
+	public UserExposure getExposure(String userId) {
+		// only bids, offers and orders add users, not queries
+		return exposureMap.getOrDefault(userId, UserExposure.NONE);
+	}
+
+	private UserExposure exposureOf(String userId) {
+		return exposureMap.computeIfAbsent(userId, UserExposure::new);
+	}
+
+	/**
+	 * Must hold the monitor of the item's stripe
+	 */
+	private LevelBook getOrCreateBook(Integer itemId) {
+		LevelBook book = bookMap.get(itemId);
+		if (book == null) {
+			book = new LevelBook();
+			bookMap.put(itemId, book);
+		}
+		return book;
+	}
+
+	private Stripe stripeOf(Integer itemId) {
+		return stripes[Math.floorMod(itemId.hashCode(), stripes.length)];
+	}
+
+	/**
+	 * Slot of the best bid or offer of a book. Must hold the monitor of the
+	 * item's stripe.
+	 * 
+	 * @return slot, {@link SlotStore#NONE} if there is none
+	 */
+	private static int bestSlot(LevelBook book, boolean bid) {
+		if (book == null) {
+			return SlotStore.NONE;
+		}
+		PriceLevels levels = bid ? book.getBids() : book.getOffers();
+		return levels.isEmpty() ? SlotStore.NONE : levels.getHead(levels.best());
+	}
+
+	/**
+	 * Bids and offers of the items in one stripe, guarded by its monitor
+	 */
+	private static class Stripe {
+		// the interner is not thread safe either, so each stripe has its own
+		private final UserIdInterner users = new UserIdInterner();
+		private final EntryStore<Bid> bids;
+		private final EntryStore<Offer> offers;
+
+		private Stripe(int initialCapacity) {
+			bids = new EntryStore<>(initialCapacity, users, Bid::new);
+			offers = new EntryStore<>(initialCapacity, users, Offer::new);
+		}
+	}
+}
@@ -0,0 +1,418 @@
+package com.auction;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * TCP gateway to an auction, speaking the {@link GatewayProtocol}.
+ * 
+ * A single thread runs a non-blocking selector over every connection. It
+ * decodes whole messages straight out of each connection's receive buffer
+ * and calls the auction directly, so a message costs no more than the bid
+ * or offer it creates. Replies are encoded into a send buffer per
+ * connection which is written once everything read has been handled, so
+ * pipelined messages are answered in batches.
+ * 
+ * Because the auction is called on the selector thread, every client waits
+ * for each bid, offer, cancel and amendment in turn. With a {@link Journal}
+ * whose commit waits for the sync thread, that includes an fsync per message,
+ * so the gateway is then limited to one message per sync for all clients
+ * together. Open the journal without waiting for sync when serving many
+ * clients.
+ * 
+ * Every order placed is sent as an execution report to the connections the
+ * buyer and seller are logged on with, whichever thread placed it. Reports
+ * for orders placed by a bid or offer are sent before its ACCEPTED.
+ * 
+ * @author Keith
+ *
+ */
+public class Gateway implements AutoCloseable {
+
+	private final Logger logger = Logger.getLogger(this.getClass());
+
+	public static final int BUFFER_SIZE = 1 << 16;
+	// a connection not reading its replies is closed rather than grow further
+	public static final int MAX_SEND_BUFFER_SIZE = 1 << 24;
+
+	private final MarketplaceAuctionImpl auction;
+	private final ServerSocketChannel server;
+	private final Selector selector;
+	private final Thread thread;
+	private volatile boolean running = true;
+
+	// user ID -> connection it is logged on with
+	private final Map<String, Connection> users = new ConcurrentHashMap<>();
+	// connections with replies waiting to be written
+	private final Queue<Connection> unflushed = new ConcurrentLinkedQueue<>();
+	private final ExecutionListener executionListener = this::sendExecution;
+	// decodes bids and offers, only used by the gateway thread
+	private final EntryCodec reader = new EntryCodec();
+
+	/**
+	 * Start listening for connections
+	 * 
+	 * @param auction auction to pass bids and offers to
+	 * @param address address to listen on, port 0 for any free port
+	 * @throws IOException
+	 */
+	public Gateway(MarketplaceAuctionImpl auction, InetSocketAddress address) throws IOException {
+		this.auction = auction;
+		this.selector = Selector.open();
+		this.server = ServerSocketChannel.open();
+		server.bind(address);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		auction.addExecutionListener(executionListener);
+
+		thread = new Thread(this::run, "auction-gateway");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public InetSocketAddress getLocalAddress() throws IOException {
+		return (InetSocketAddress) server.getLocalAddress();
+	}
+
+	/**
+	 * Stop accepting messages and close every connection
+	 */
+	@Override
+	public void close() {
+		running = false;
+		selector.wakeup();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		auction.removeExecutionListener(executionListener);
+	}
+
+	private void run() {
+		try {
+			while (running) {
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+					} else {
+						Connection connection = (Connection) key.attachment();
+						if (key.isReadable()) {
+							read(connection);
+						}
+						if (key.isValid() && key.isWritable()) {
+							flush(connection);
+						}
+					}
+				}
+				Connection connection;
+				while ((connection = unflushed.poll()) != null) {
+					flush(connection);
+				}
+			}
+		} catch (IOException e) {
+			logger.error("Gateway failed", e);
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				closeQuietly(key);
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				logger.warn("Failed to close selector", e);
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = server.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		Connection connection = new Connection(channel);
+		connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+	}
+
+	private void read(Connection connection) {
+		ByteBuffer in = connection.in;
+		try {
+			if (connection.channel.read(in) < 0) {
+				close(connection);
+				return;
+			}
+			in.flip();
+			while (in.hasRemaining()) {
+				int length = GatewayProtocol.lengthOf(in);
+				if (length < 0 || in.remaining() < length) {
+					if (length > in.capacity()) {
+						throw new IllegalArgumentException("Message too long: " + length);
+					}
+					break;
+				}
+				int end = in.position() + length;
+				handle(connection, in);
+				if (in.position() != end) {
+					throw new IllegalArgumentException("Malformed message");
+				}
+			}
+			in.compact();
+		} catch (IOException | IllegalArgumentException | BufferUnderflowException e) {
+			logger.warn("Closing connection of " + connection.userId + ": " + e.getMessage());
+			close(connection);
+		}
+	}
+
+	/**
+	 * Handle the message at the position of the buffer
+	 */
+	private void handle(Connection connection, ByteBuffer in) {
+		byte type = in.get();
+		switch (type) {
+		case GatewayProtocol.LOGON:
+			logon(connection, GatewayProtocol.getUserId(in));
+			break;
+		case GatewayProtocol.BID:
+		case GatewayProtocol.OFFER:
+			EntryCodec entry = GatewayProtocol.getEntry(in, reader);
+			enter(connection, type, entry.getId(), entry.getItemId(), entry.getQuantity(), entry.getPricePerUnit());
+			break;
+		case GatewayProtocol.CANCEL:
+			cancel(connection, in.getInt(), in.getInt());
+			break;
+		case GatewayProtocol.AMEND:
+			amend(connection, in.getInt(), in.getInt(), in.getInt(), in.getInt());
+			break;
+		case GatewayProtocol.QUERY_TOP:
+			int requestId = in.getInt();
+			int itemId = in.getInt();
+			connection.topOfBook(requestId, itemId, auction.getTopOfBook(itemId));
+			break;
+		default:
+			throw new IllegalArgumentException("Unexpected message type: " + type);
+		}
+	}
+
+	private void logon(Connection connection, String userId) {
+		if (connection.userId != null) {
+			users.remove(connection.userId, connection);
+		}
+		connection.userId = userId;
+		users.put(userId, connection);
+	}
+
+	private void enter(Connection connection, byte type, int requestId, int itemId, int quantity, int price) {
+		if (connection.userId == null) {
+			connection.rejected(requestId, GatewayProtocol.NOT_LOGGED_ON);
+			return;
+		}
+		if (quantity < 1) {
+			connection.rejected(requestId, GatewayProtocol.INVALID);
+			return;
+		}
+		try {
+			if (type == GatewayProtocol.BID) {
+				Bid bid = new Bid(itemId, quantity, price, connection.userId);
+				auction.addBid(bid);
+				connection.accepted(requestId, bid.getId());
+			} else {
+				Offer offer = new Offer(itemId, quantity, price, connection.userId);
+				auction.addOffer(offer);
+				connection.accepted(requestId, offer.getId());
+			}
+		} catch (RiskLimitException e) {
+			connection.rejected(requestId, GatewayProtocol.RISK_LIMIT);
+		}
+	}
+
+	private void cancel(Connection connection, int requestId, int id) {
+		if (!ownsResting(connection, requestId, id)) {
+			return;
+		}
+		if (auction.cancel(id)) {
+			connection.done(requestId);
+		} else {
+			connection.rejected(requestId, GatewayProtocol.UNKNOWN_ID);
+		}
+	}
+
+	private void amend(Connection connection, int requestId, int id, int quantity, int price) {
+		if (!ownsResting(connection, requestId, id)) {
+			return;
+		}
+		try {
+			if (auction.amend(id, quantity, price)) {
+				connection.done(requestId);
+			} else {
+				connection.rejected(requestId, GatewayProtocol.UNKNOWN_ID);
+			}
+		} catch (RiskLimitException e) {
+			connection.rejected(requestId, GatewayProtocol.RISK_LIMIT);
+		} catch (IllegalArgumentException e) {
+			connection.rejected(requestId, GatewayProtocol.INVALID);
+		}
+	}
+
+	/**
+	 * Users may only cancel and amend their own bids and offers. Rejects
+	 * the request if the entry is not resting or belongs to someone else.
+	 */
+	private boolean ownsResting(Connection connection, int requestId, int id) {
+		if (connection.userId == null) {
+			connection.rejected(requestId, GatewayProtocol.NOT_LOGGED_ON);
+			return false;
+		}
+		BookEntry entry = auction.findResting(id);
+		if (entry == null || !connection.userId.equals(entry.getUserId())) {
+			connection.rejected(requestId, GatewayProtocol.UNKNOWN_ID);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Called by whichever thread placed the order
+	 */
+	private void sendExecution(Order order) {
+		Connection buyer = users.get(order.getBuyerId());
+		if (buyer != null) {
+			buyer.execution(order, GatewayProtocol.BUY);
+		}
+		Connection seller = users.get(order.getSellerId());
+		if (seller != null) {
+			seller.execution(order, GatewayProtocol.SELL);
+		}
+		if ((buyer != null || seller != null) && Thread.currentThread() != thread) {
+			selector.wakeup();
+		}
+	}
+
+	private void flush(Connection connection) {
+		try {
+			connection.flush();
+		} catch (IOException e) {
+			logger.warn("Closing connection of " + connection.userId + ": " + e.getMessage());
+			close(connection);
+		}
+	}
+
+	private void close(Connection connection) {
+		if (connection.userId != null) {
+			users.remove(connection.userId, connection);
+		}
+		closeQuietly(connection.key);
+	}
+
+	private void closeQuietly(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			logger.warn("Failed to close channel", e);
+		}
+	}
+
+	/**
+	 * A client connection. The send buffer may be written by any thread
+	 * placing orders, hence the monitor, but only the gateway thread writes
+	 * it to the channel.
+	 */
+	private class Connection {
+		private final SocketChannel channel;
+		private SelectionKey key;
+		private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private final EntryCodec writer = new EntryCodec();
+		// waiting in the unflushed queue
+		private boolean queued;
+		private volatile boolean closed;
+		private String userId;
+
+		private Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		private synchronized void accepted(int requestId, int id) {
+			GatewayProtocol.putAccepted(reserve(GatewayProtocol.ACCEPTED_LENGTH), requestId, id);
+		}
+
+		private synchronized void rejected(int requestId, byte reason) {
+			GatewayProtocol.putRejected(reserve(GatewayProtocol.REJECTED_LENGTH), requestId, reason);
+		}
+
+		private synchronized void done(int requestId) {
+			GatewayProtocol.putDone(reserve(GatewayProtocol.DONE_LENGTH), requestId);
+		}
+
+		private synchronized void execution(Order order, byte side) {
+			GatewayProtocol.putExecution(reserve(GatewayProtocol.EXECUTION_LENGTH), writer, order, side);
+		}
+
+		private synchronized void topOfBook(int requestId, int itemId, TopOfBook topOfBook) {
+			GatewayProtocol.putTopOfBook(reserve(GatewayProtocol.TOP_OF_BOOK_LENGTH), requestId, itemId, topOfBook);
+		}
+
+		/**
+		 * Make room for a message in the send buffer and queue the
+		 * connection to be flushed
+		 */
+		private ByteBuffer reserve(int length) {
+			if (out.remaining() < length) {
+				if (out.capacity() >= MAX_SEND_BUFFER_SIZE) {
+					// slow client, drop what it has not read and close it
+					closed = true;
+					out.clear();
+				} else {
+					ByteBuffer larger = ByteBuffer.allocateDirect(out.capacity() * 2);
+					out.flip();
+					larger.put(out);
+					out = larger;
+				}
+			}
+			if (!queued) {
+				queued = true;
+				unflushed.add(this);
+			}
+			return out;
+		}
+
+		private synchronized void flush() throws IOException {
+			queued = false;
+			if (closed) {
+				throw new IOException("Send buffer full");
+			}
+			out.flip();
+			channel.write(out);
+			out.compact();
+			if (key.isValid()) {
+				if (out.position() > 0) {
+					key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				} else {
+					key.interestOps(SelectionKey.OP_READ);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package com.auction;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Blocking client of a {@link Gateway}, e.g. for tests and load generation.
+ * 
+ * Requests are buffered until {@link #flush()} or {@link #receive(Handler)}
+ * so many can be pipelined in one write. Not thread safe.
+ * 
+ * @author Keith
+ *
+ */
+public class GatewayClient implements AutoCloseable {
+
+	/**
+	 * Receives the messages sent by the gateway, see {@link GatewayProtocol}
+	 */
+	public interface Handler {
+
+		public default void onAccepted(int requestId, int id) {
+		}
+
+		public default void onRejected(int requestId, byte reason) {
+		}
+
+		public default void onDone(int requestId) {
+		}
+
+		public default void onExecution(int orderId, int itemId, int quantity, int price, byte side) {
+		}
+
+		/**
+		 * @param bidPrice bid price, {@link GatewayProtocol#NO_PRICE} if there are no bids
+		 * @param offerPrice offer price, {@link GatewayProtocol#NO_PRICE} if there are no offers
+		 */
+		public default void onTopOfBook(int requestId, int itemId, int bidPrice, long bidQuantity,
+				int offerPrice, long offerQuantity) {
+		}
+	}
+
+	private final SocketChannel channel;
+	private final ByteBuffer out = ByteBuffer.allocateDirect(Gateway.BUFFER_SIZE);
+	private final ByteBuffer in = ByteBuffer.allocateDirect(Gateway.BUFFER_SIZE);
+	private final EntryCodec codec = new EntryCodec();
+
+	public GatewayClient(InetSocketAddress address) throws IOException {
+		channel = SocketChannel.open(address);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		in.flip();
+	}
+
+	/**
+	 * Log on as a user, bids and offers sent afterwards are entered for it
+	 * 
+	 * @param userId
+	 * @throws IOException
+	 */
+	public void logon(String userId) throws IOException {
+		reserve(3 + GatewayProtocol.MAX_USER_ID_LENGTH * 3);
+		GatewayProtocol.putLogon(out, userId);
+	}
+
+	public void bid(int requestId, int itemId, int quantity, int price) throws IOException {
+		GatewayProtocol.putEntry(reserve(GatewayProtocol.ENTRY_LENGTH), codec, GatewayProtocol.BID,
+				requestId, itemId, quantity, price);
+	}
+
+	public void offer(int requestId, int itemId, int quantity, int price) throws IOException {
+		GatewayProtocol.putEntry(reserve(GatewayProtocol.ENTRY_LENGTH), codec, GatewayProtocol.OFFER,
+				requestId, itemId, quantity, price);
+	}
+
+	/**
+	 * @param requestId
+	 * @param id ID of the bid or offer, as ACCEPTED
+	 * @throws IOException
+	 */
+	public void cancel(int requestId, int id) throws IOException {
+		GatewayProtocol.putCancel(reserve(GatewayProtocol.CANCEL_LENGTH), requestId, id);
+	}
+
+	public void amend(int requestId, int id, int quantity, int price) throws IOException {
+		GatewayProtocol.putAmend(reserve(GatewayProtocol.AMEND_LENGTH), requestId, id, quantity, price);
+	}
+
+	public void queryTopOfBook(int requestId, int itemId) throws IOException {
+		GatewayProtocol.putQueryTop(reserve(GatewayProtocol.QUERY_TOP_LENGTH), requestId, itemId);
+	}
+
+	/**
+	 * Send the buffered requests
+	 * 
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		out.clear();
+	}
+
+	/**
+	 * Send the buffered requests, then wait for at least one message from
+	 * the gateway and pass every message received to the handler
+	 * 
+	 * @param handler
+	 * @return number of messages handled
+	 * @throws IOException
+	 */
+	public int receive(Handler handler) throws IOException {
+		flush();
+		int handled = 0;
+		while (handled == 0) {
+			in.compact();
+			int read = channel.read(in);
+			in.flip();
+			if (read < 0) {
+				throw new EOFException("Gateway closed the connection");
+			}
+			while (in.hasRemaining()) {
+				int length = GatewayProtocol.lengthOf(in);
+				if (length < 0 || in.remaining() < length) {
+					break;
+				}
+				handle(handler);
+				handled++;
+			}
+		}
+		return handled;
+	}
+
+	private void handle(Handler handler) {
+		byte type = in.get();
+		switch (type) {
+		case GatewayProtocol.ACCEPTED:
+			handler.onAccepted(in.getInt(), in.getInt());
+			break;
+		case GatewayProtocol.REJECTED:
+			handler.onRejected(in.getInt(), in.get());
+			break;
+		case GatewayProtocol.DONE:
+			handler.onDone(in.getInt());
+			break;
+		case GatewayProtocol.EXECUTION:
+			EntryCodec order = GatewayProtocol.getEntry(in, codec);
+			handler.onExecution(order.getId(), order.getItemId(), order.getQuantity(),
+					order.getPricePerUnit(), in.get());
+			break;
+		case GatewayProtocol.TOP_OF_BOOK:
+			handler.onTopOfBook(in.getInt(), in.getInt(), in.getInt(), in.getLong(), in.getInt(), in.getLong());
+			break;
+		default:
+			throw new IllegalStateException("Unexpected message type: " + type);
+		}
+	}
+
+	private ByteBuffer reserve(int length) throws IOException {
+		if (out.remaining() < length) {
+			flush();
+		}
+		return out;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,213 @@
+package com.auction;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary protocol spoken by the {@link Gateway}.
+ * 
+ * Every message starts with a type byte followed by fixed size fields in
+ * big endian order, so the length of a message is known from its type and
+ * fields are read straight out of the receive buffer. Bids, offers and
+ * execution reports are the fixed fields of the {@link EntryCodec} form,
+ * the same as in the {@link Journal}, with the request ID in place of the
+ * ID of a bid or offer. Only logon carries a string, the user ID, which then
+ * applies to every bid and offer sent on the connection.
+ * 
+ * Client to gateway:
+ * 
+ * <pre>
+ * LOGON      short length, UTF-8 user ID
+ * BID        int requestId, int itemId, int price, int quantity
+ * OFFER      int requestId, int itemId, int price, int quantity
+ * CANCEL     int requestId, int id
+ * AMEND      int requestId, int id, int quantity, int price
+ * QUERY_TOP  int requestId, int itemId
+ * </pre>
+ * 
+ * Gateway to client:
+ * 
+ * <pre>
+ * ACCEPTED     int requestId, int id of the bid or offer
+ * REJECTED     int requestId, byte reason
+ * DONE         int requestId, cancel or amendment applied
+ * EXECUTION    int orderId, int itemId, int price, int quantity, byte side
+ * TOP_OF_BOOK  int requestId, int itemId, int bidPrice, long bidQuantity,
+ *              int offerPrice, long offerQuantity
+ * </pre>
+ * 
+ * @author Keith
+ *
+ */
+public final class GatewayProtocol {
+
+	public static final byte LOGON = 1;
+	public static final byte BID = 2;
+	public static final byte OFFER = 3;
+	public static final byte CANCEL = 4;
+	public static final byte AMEND = 5;
+	public static final byte QUERY_TOP = 6;
+
+	public static final byte ACCEPTED = 10;
+	public static final byte REJECTED = 11;
+	public static final byte DONE = 12;
+	public static final byte EXECUTION = 13;
+	public static final byte TOP_OF_BOOK = 14;
+
+	// reasons for REJECTED
+	public static final byte NOT_LOGGED_ON = 1;
+	public static final byte INVALID = 2;
+	public static final byte RISK_LIMIT = 3;
+	public static final byte UNKNOWN_ID = 4;
+
+	// sides of EXECUTION
+	public static final byte BUY = 1;
+	public static final byte SELL = 2;
+
+	/**
+	 * Price sent in TOP_OF_BOOK when a side is empty
+	 */
+	public static final int NO_PRICE = Integer.MIN_VALUE;
+
+	public static final int MAX_USER_ID_LENGTH = 256;
+
+	static final int ENTRY_LENGTH = 1 + EntryCodec.FIXED_LENGTH;
+	static final int CANCEL_LENGTH = 9;
+	static final int AMEND_LENGTH = 17;
+	static final int QUERY_TOP_LENGTH = 9;
+	static final int ACCEPTED_LENGTH = 9;
+	static final int REJECTED_LENGTH = 6;
+	static final int DONE_LENGTH = 5;
+	static final int EXECUTION_LENGTH = 2 + EntryCodec.FIXED_LENGTH;
+	static final int TOP_OF_BOOK_LENGTH = 33;
+
+	private GatewayProtocol() {
+	}
+
+	/**
+	 * Length of the message starting at the position of the buffer
+	 * 
+	 * @param buffer
+	 * @return length including the type byte, or -1 if more bytes are needed
+	 *         to tell
+	 * @throws IllegalArgumentException if the message type is not known or a
+	 *         logon user ID length is out of range
+	 */
+	static int lengthOf(ByteBuffer buffer) {
+		int position = buffer.position();
+		byte type = buffer.get(position);
+		switch (type) {
+		case LOGON:
+			if (buffer.remaining() < 3) {
+				return -1;
+			}
+			int userIdLength = buffer.getShort(position + 1);
+			if (userIdLength < 1 || userIdLength > MAX_USER_ID_LENGTH) {
+				throw new IllegalArgumentException("Invalid user ID length: " + userIdLength);
+			}
+			return 3 + userIdLength;
+		case BID:
+		case OFFER:
+			return ENTRY_LENGTH;
+		case CANCEL:
+			return CANCEL_LENGTH;
+		case AMEND:
+			return AMEND_LENGTH;
+		case QUERY_TOP:
+			return QUERY_TOP_LENGTH;
+		case ACCEPTED:
+			return ACCEPTED_LENGTH;
+		case REJECTED:
+			return REJECTED_LENGTH;
+		case DONE:
+			return DONE_LENGTH;
+		case EXECUTION:
+			return EXECUTION_LENGTH;
+		case TOP_OF_BOOK:
+			return TOP_OF_BOOK_LENGTH;
+		default:
+			throw new IllegalArgumentException("Unknown message type: " + type);
+		}
+	}
+
+	static void putLogon(ByteBuffer buffer, String userId) {
+		byte[] bytes = userId.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length == 0 || bytes.length > MAX_USER_ID_LENGTH) {
+			throw new IllegalArgumentException("Invalid user ID: " + userId);
+		}
+		buffer.put(LOGON).putShort((short) bytes.length).put(bytes);
+	}
+
+	/**
+	 * Read the user ID of a logon message, after its type byte
+	 */
+	static String getUserId(ByteBuffer buffer) {
+		int length = buffer.getShort();
+		if (length < 1 || length > MAX_USER_ID_LENGTH) {
+			throw new BufferUnderflowException();
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static void putEntry(ByteBuffer buffer, EntryCodec codec, byte type, int requestId,
+			int itemId, int quantity, int price) {
+		int at = buffer.position();
+		buffer.put(at, type);
+		codec.wrap(buffer, at + 1).encode(requestId, itemId, price, quantity);
+		buffer.position(at + ENTRY_LENGTH);
+	}
+
+	/**
+	 * Point the codec at the fields of a BID, OFFER or EXECUTION message
+	 * after its type byte, and move past them
+	 */
+	static EntryCodec getEntry(ByteBuffer buffer, EntryCodec codec) {
+		codec.wrap(buffer, buffer.position());
+		buffer.position(buffer.position() + EntryCodec.FIXED_LENGTH);
+		return codec;
+	}
+
+	static void putCancel(ByteBuffer buffer, int requestId, int id) {
+		buffer.put(CANCEL).putInt(requestId).putInt(id);
+	}
+
+	static void putAmend(ByteBuffer buffer, int requestId, int id, int quantity, int price) {
+		buffer.put(AMEND).putInt(requestId).putInt(id).putInt(quantity).putInt(price);
+	}
+
+	static void putQueryTop(ByteBuffer buffer, int requestId, int itemId) {
+		buffer.put(QUERY_TOP).putInt(requestId).putInt(itemId);
+	}
+
+	static void putAccepted(ByteBuffer buffer, int requestId, int id) {
+		buffer.put(ACCEPTED).putInt(requestId).putInt(id);
+	}
+
+	static void putRejected(ByteBuffer buffer, int requestId, byte reason) {
+		buffer.put(REJECTED).putInt(requestId).put(reason);
+	}
+
+	static void putDone(ByteBuffer buffer, int requestId) {
+		buffer.put(DONE).putInt(requestId);
+	}
+
+	static void putExecution(ByteBuffer buffer, EntryCodec codec, Order order, byte side) {
+		int at = buffer.position();
+		buffer.put(at, EXECUTION);
+		codec.wrap(buffer, at + 1).encode(order.getId(), order.getItemId(), order.getPricePerUnit(),
+				order.getQuantity());
+		buffer.put(at + 1 + EntryCodec.FIXED_LENGTH, side);
+		buffer.position(at + EXECUTION_LENGTH);
+	}
+
+	static void putTopOfBook(ByteBuffer buffer, int requestId, int itemId, TopOfBook topOfBook) {
+		buffer.put(TOP_OF_BOOK).putInt(requestId).putInt(itemId)
+				.putInt(topOfBook.getBidPrice() == null ? NO_PRICE : topOfBook.getBidPrice())
+				.putLong(topOfBook.getBidQuantity())
+				.putInt(topOfBook.getOfferPrice() == null ? NO_PRICE : topOfBook.getOfferPrice())
+				.putLong(topOfBook.getOfferQuantity());
+	}
+}
@@ -0,0 +1,33 @@
+package com.auction;
+
+import java.util.List;
+
+/**
+ * Order history which keeps every order in memory
+ * 
+ * @author Keith
+ *
+ */
+public class InMemoryOrderHistory implements OrderHistory {
+
+	// map of buyer orders
+	private final ConcurrentMultiValueMap<String, Order> buyerOrderMap = new ConcurrentMultiValueMap<>();
+	// map of seller orders
+	private final ConcurrentMultiValueMap<String, Order> sellerOrderMap = new ConcurrentMultiValueMap<>();
+
+	@Override
+	public void add(Order order) {
+		buyerOrderMap.put(order.getBuyerId(), order);
+		sellerOrderMap.put(order.getSellerId(), order);
+	}
+
+	@Override
+	public List<Order> getOrdersForBuyer(String userId) {
+		return buyerOrderMap.get(userId);
+	}
+
+	@Override
+	public List<Order> getOrdersForSeller(String userId) {
+		return sellerOrderMap.get(userId);
+	}
+}
@@ -0,0 +1,532 @@
+package com.auction;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of the bids, offers, cancels, amendments and orders
+ * processed by an auction,
+ * used to rebuild the books after a restart, see
+ * {@link MarketplaceAuctionImpl#recover(MarketplaceCache, int, Journal)}.
+ * 
+ * Records are appended to a memory-mapped file, so appending is a memory
+ * copy. The file is mapped one window at a time and a record never spans two
+ * windows. A sync thread forces whatever has been appended to disk, so every
+ * record appended while one force is in progress is made durable by the next
+ * one (group commit) instead of each order paying for its own sync. Once a
+ * force fails the journal is broken: {@link #commit()} and every append
+ * throw rather than confirm records which may not be on disk.
+ * 
+ * A record is a length, a checksum, a type and the fields, which are the
+ * {@link EntryCodec} form of the bid, offer or order. The length is written
+ * last so a record torn by a process crash reads as the end of the journal.
+ * The operating system may write the pages of a record to disk in any order
+ * though, so after a power failure the length can be there without the rest.
+ * The checksum covers the type and fields, and the journal ends at the first
+ * record which does not match it.
+ * 
+ * @author Keith
+ *
+ */
+public class Journal implements AutoCloseable {
+
+	public static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+	private static final int MAGIC = 0x41554a32;
+	// journals written before records had checksums
+	private static final int MAGIC_UNCHECKED = 0x41554a31;
+	// magic and window size at the start of the file
+	private static final int FILE_HEADER = 8;
+	// length, checksum and type at the start of each record
+	private static final int RECORD_HEADER = 9;
+	// offset of the part of a record covered by the checksum
+	private static final int CHECKED = 8;
+	// length marking the rest of the window as unused
+	private static final int END_OF_WINDOW = -1;
+
+	private static final byte BID = 1;
+	private static final byte OFFER = 2;
+	private static final byte ORDER = 3;
+	private static final byte CANCEL = 4;
+	private static final byte AMEND = 5;
+
+	private static final long IDLE_PARK_NANOS = 50_000L;
+
+	private final FileChannel channel;
+	private final int windowSize;
+	private final boolean waitForSync;
+
+	// guarded by this
+	private MappedByteBuffer window;
+	// view of the window the checksum is read from, guarded by this
+	private ByteBuffer checksumView;
+	private final CRC32 checksum = new CRC32();
+	private long windowStart;
+	private int offset;
+
+	// file position after the last complete record
+	private volatile long position;
+	// file position up to which records have been forced to disk
+	private volatile long durablePosition;
+	// window being written, read by the sync thread
+	private volatile MappedByteBuffer syncWindow;
+
+	// encodes into the window, guarded by this
+	private final EntryCodec writer = new EntryCodec();
+
+	private int lastBidId;
+	private int lastOfferId;
+	private int lastOrderId;
+
+	private final Thread syncer;
+	private volatile boolean running = true;
+	// why forcing to disk failed, null while it has not
+	private volatile Throwable syncFailure;
+
+	/**
+	 * Open a journal which makes {@link #commit()} wait for the records to be
+	 * on disk
+	 * 
+	 * @param path
+	 * @throws IOException
+	 */
+	public Journal(Path path) throws IOException {
+		this(path, DEFAULT_WINDOW_SIZE, true);
+	}
+
+	/**
+	 * Open a journal, creating the file if it does not exist. Appending
+	 * carries on after the last complete record already in the file.
+	 * 
+	 * @param path journal file
+	 * @param windowSize bytes mapped at a time, ignored if the file exists
+	 * @param waitForSync whether {@link #commit()} waits for the sync thread
+	 * @throws IOException
+	 */
+	public Journal(Path path, int windowSize, boolean waitForSync) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.waitForSync = waitForSync;
+		if (channel.size() >= FILE_HEADER) {
+			MappedByteBuffer header = channel.map(MapMode.READ_ONLY, 0, FILE_HEADER);
+			int magic = header.getInt(0);
+			if (magic != MAGIC) {
+				channel.close();
+				throw new IOException(magic == MAGIC_UNCHECKED
+						? "Journal written without checksums: " + path
+						: "Not a journal: " + path);
+			}
+			this.windowSize = header.getInt(4);
+			scan();
+		} else {
+			if (windowSize < FILE_HEADER + RECORD_HEADER * 2) {
+				channel.close();
+				throw new IllegalArgumentException("windowSize too small: " + windowSize);
+			}
+			this.windowSize = windowSize;
+			window = channel.map(MapMode.READ_WRITE, 0, windowSize);
+			window.putInt(0, MAGIC);
+			window.putInt(4, windowSize);
+			offset = FILE_HEADER;
+		}
+		position = windowStart + offset;
+		durablePosition = position;
+		syncWindow = window;
+		checksumView = window.duplicate();
+
+		syncer = new Thread(this::runSyncer, "auction-journal-sync");
+		syncer.setDaemon(true);
+		syncer.start();
+	}
+
+	/**
+	 * Find the end of the records already in the file and the highest IDs
+	 * used by them
+	 */
+	private void scan() throws IOException {
+		EntryCodec reader = new EntryCodec();
+		forEachRecord(0, Long.MAX_VALUE, (type, buffer, at, end) -> {
+			int id = reader.wrap(buffer, at).getId();
+			if (type == BID) {
+				lastBidId = Math.max(lastBidId, id);
+			} else if (type == OFFER) {
+				lastOfferId = Math.max(lastOfferId, id);
+			} else if (type == ORDER) {
+				lastOrderId = Math.max(lastOrderId, id);
+			}
+		});
+		if (window.getInt(offset) != 0) {
+			// stopped at a torn or corrupt record rather than unused space
+			discardFrom(offset);
+		}
+	}
+
+	/**
+	 * Wipe everything after the last good record, so the records following a
+	 * bad one cannot be read again once new records are appended over it
+	 */
+	private void discardFrom(int at) throws IOException {
+		byte[] zeros = new byte[4096];
+		ByteBuffer view = window.duplicate();
+		((Buffer) view).position(at);
+		while (view.hasRemaining()) {
+			view.put(zeros, 0, Math.min(zeros.length, view.remaining()));
+		}
+		window.force();
+		if (channel.size() > windowStart + windowSize) {
+			channel.truncate(windowStart + windowSize);
+		}
+	}
+
+	public synchronized long appendBid(Bid bid) {
+		return appendEntry(BID, bid);
+	}
+
+	public synchronized long appendOffer(Offer offer) {
+		return appendEntry(OFFER, offer);
+	}
+
+	public synchronized long appendOrder(Order order) {
+		int start = reserve(RECORD_HEADER + EntryCodec.encodedLength(order));
+		int at = start + RECORD_HEADER;
+		at += writer.wrap(window, at).encode(order);
+		lastOrderId = Math.max(lastOrderId, order.getId());
+		return complete(start, at, ORDER);
+	}
+
+	/**
+	 * Append the cancellation of a resting bid or offer
+	 * 
+	 * @param entry
+	 * @return
+	 */
+	public synchronized long appendCancel(BookEntry entry) {
+		int start = reserve(RECORD_HEADER + EntryCodec.FIXED_LENGTH);
+		int at = start + RECORD_HEADER;
+		at += writer.wrap(window, at).encode(entry.getId(), entry.getItemId(), 0, 0);
+		return complete(start, at, CANCEL);
+	}
+
+	/**
+	 * Append the amendment of a resting bid or offer
+	 * 
+	 * @param entry
+	 * @param quantity new quantity
+	 * @param price new price
+	 * @return
+	 */
+	public synchronized long appendAmend(BookEntry entry, int quantity, int price) {
+		int start = reserve(RECORD_HEADER + EntryCodec.FIXED_LENGTH);
+		int at = start + RECORD_HEADER;
+		at += writer.wrap(window, at).encode(entry.getId(), entry.getItemId(), price, quantity);
+		return complete(start, at, AMEND);
+	}
+
+	private long appendEntry(byte type, BookEntry entry) {
+		int start = reserve(RECORD_HEADER + EntryCodec.encodedLength(entry));
+		int at = start + RECORD_HEADER;
+		at += writer.wrap(window, at).encode(entry);
+		if (type == BID) {
+			lastBidId = Math.max(lastBidId, entry.getId());
+		} else {
+			lastOfferId = Math.max(lastOfferId, entry.getId());
+		}
+		return complete(start, at, type);
+	}
+
+	/**
+	 * Wait until everything appended so far is on disk, unless the journal
+	 * was opened not to wait. Call after releasing any locks so other
+	 * threads can append to the same group meanwhile.
+	 * 
+	 * @throws IllegalStateException if the records could not be forced to
+	 *         disk
+	 */
+	public void commit() {
+		checkSynced();
+		if (!waitForSync) {
+			return;
+		}
+		long target = position;
+		int idle = 0;
+		while (durablePosition < target) {
+			checkSynced();
+			if (!syncer.isAlive() && durablePosition < target) {
+				throw new IllegalStateException("Journal sync thread stopped");
+			}
+			idle = RingBuffer.idle(idle);
+		}
+	}
+
+	private void checkSynced() {
+		Throwable failure = syncFailure;
+		if (failure != null) {
+			throw new IllegalStateException("Journal could not be forced to disk", failure);
+		}
+	}
+
+	/**
+	 * @return file position after the last complete record
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * @return file position up to which records are on disk
+	 */
+	public long getDurablePosition() {
+		return durablePosition;
+	}
+
+	public synchronized int getLastBidId() {
+		return lastBidId;
+	}
+
+	public synchronized int getLastOfferId() {
+		return lastOfferId;
+	}
+
+	public synchronized int getLastOrderId() {
+		return lastOrderId;
+	}
+
+	/**
+	 * Pass every record appended before this call to the handler, in the
+	 * order they were appended
+	 * 
+	 * @param handler
+	 * @throws IOException
+	 */
+	public void replay(Handler handler) throws IOException {
+		replay(handler, 0);
+	}
+
+	/**
+	 * Pass the records appended after the given position and before this
+	 * call to the handler, in the order they were appended
+	 * 
+	 * @param handler
+	 * @param from position returned when a record was appended
+	 * @throws IOException
+	 */
+	public void replay(Handler handler, long from) throws IOException {
+		EntryCodec reader = new EntryCodec();
+		forEachRecord(from, position, (type, buffer, at, end) -> {
+			reader.wrap(buffer, at);
+			if (type == CANCEL) {
+				handler.onCancel(reader.getId(), reader.getItemId(), end);
+			} else if (type == AMEND) {
+				handler.onAmend(reader.getId(), reader.getItemId(), reader.getQuantity(),
+						reader.getPricePerUnit(), end);
+			} else if (type == BID) {
+				handler.onBid(reader.toBid(), end);
+			} else if (type == OFFER) {
+				handler.onOffer(reader.toOffer(), end);
+			} else {
+				handler.onOrder(reader.toOrder(), end);
+			}
+		});
+	}
+
+	/**
+	 * Force everything to disk and stop the sync thread
+	 */
+	@Override
+	public void close() throws IOException {
+		running = false;
+		try {
+			syncer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			window.force();
+			durablePosition = position;
+			channel.close();
+		}
+	}
+
+	/**
+	 * Walk the records between the given file positions. Sets the append
+	 * position when walking to the end of the file.
+	 */
+	private void forEachRecord(long from, long end, RecordVisitor visitor) throws IOException {
+		long start = from / windowSize * windowSize;
+		int at = Math.max((int) (from - start), start == 0 ? FILE_HEADER : 0);
+		MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, start, windowSize);
+		ByteBuffer view = buffer.duplicate();
+		CRC32 crc = new CRC32();
+		while (start + at < end) {
+			int length = buffer.getInt(at);
+			if (length == END_OF_WINDOW) {
+				start += windowSize;
+				at = 0;
+				buffer = channel.map(MapMode.READ_WRITE, start, windowSize);
+				view = buffer.duplicate();
+				continue;
+			}
+			if (length < RECORD_HEADER + EntryCodec.FIXED_LENGTH || at + length > windowSize) {
+				// end of the records, possibly torn by a crash
+				break;
+			}
+			if (buffer.getInt(at + 4) != checksum(crc, view, at + CHECKED, at + length)) {
+				// only part of the record reached the disk before a power failure
+				break;
+			}
+			byte type = buffer.get(at + CHECKED);
+			if (type < BID || type > AMEND) {
+				break;
+			}
+			at += length;
+			visitor.visit(type, buffer, at - length + RECORD_HEADER, start + at);
+		}
+		if (end == Long.MAX_VALUE) {
+			window = buffer;
+			windowStart = start;
+			offset = at;
+		}
+	}
+
+	/**
+	 * Reserve space for a record in the current window, moving on to the
+	 * next window if it does not fit
+	 * 
+	 * @return offset of the record in the window
+	 */
+	private int reserve(int length) {
+		checkSynced();
+		if (length + 4 > windowSize - FILE_HEADER) {
+			throw new IllegalArgumentException("Record too long: " + length);
+		}
+		if (offset + length + 4 > windowSize) {
+			window.putInt(offset, END_OF_WINDOW);
+			// the sync thread only forces the current window
+			try {
+				force(window);
+			} catch (RuntimeException | Error e) {
+				syncFailure = e;
+				throw e;
+			}
+			windowStart += windowSize;
+			try {
+				window = channel.map(MapMode.READ_WRITE, windowStart, windowSize);
+			} catch (IOException e) {
+				throw new IllegalStateException("Failed to extend journal", e);
+			}
+			offset = 0;
+			syncWindow = window;
+			checksumView = window.duplicate();
+		}
+		return offset;
+	}
+
+	private long complete(int start, int end, byte type) {
+		window.put(start + CHECKED, type);
+		window.putInt(start + 4, checksum(checksum, checksumView, start + CHECKED, end));
+		// length last, the record is not there until it is written
+		window.putInt(start, end - start);
+		offset = end;
+		position = windowStart + offset;
+		return position;
+	}
+
+	/**
+	 * Checksum the bytes of a window between the given offsets
+	 * 
+	 * @param crc
+	 * @param view view of the window whose position and limit may be moved
+	 */
+	private static int checksum(CRC32 crc, ByteBuffer view, int from, int to) {
+		crc.reset();
+		// through Buffer, whose methods return Buffer on Java 8
+		((Buffer) view).limit(to);
+		((Buffer) view).position(from);
+		crc.update(view);
+		return (int) crc.getValue();
+	}
+
+	private void runSyncer() {
+		int idle = 0;
+		while (running) {
+			// read the position before the window, a roll forces the old one
+			long target = position;
+			if (target == durablePosition) {
+				if (idle < 200) {
+					idle = RingBuffer.idle(idle);
+				} else {
+					LockSupport.parkNanos(IDLE_PARK_NANOS);
+				}
+				continue;
+			}
+			idle = 0;
+			try {
+				force(syncWindow);
+			} catch (RuntimeException | Error e) {
+				// e.g. an I/O error, nothing after this is durable
+				syncFailure = e;
+				return;
+			}
+			durablePosition = target;
+		}
+	}
+
+	/**
+	 * Force a window to disk
+	 * 
+	 * @param window
+	 * @throws java.io.UncheckedIOException if it could not be
+	 */
+	void force(MappedByteBuffer window) {
+		window.force();
+	}
+
+	/**
+	 * Receives the records of a journal being replayed
+	 */
+	public interface Handler {
+
+		/**
+		 * @param bid
+		 * @param position position after the record
+		 */
+		void onBid(Bid bid, long position);
+
+		void onOffer(Offer offer, long position);
+
+		/**
+		 * Orders are the result of matching the bids and offers before them,
+		 * so replaying only those rebuilds the same books
+		 */
+		default void onOrder(Order order, long position) {
+		}
+
+		/**
+		 * @param id ID of the cancelled bid or offer
+		 * @param itemId
+		 * @param position position after the record
+		 */
+		void onCancel(int id, int itemId, long position);
+
+		/**
+		 * @param id ID of the amended bid or offer
+		 * @param itemId
+		 * @param quantity new quantity
+		 * @param price new price
+		 * @param position position after the record
+		 */
+		void onAmend(int id, int itemId, int quantity, int price, long position);
+	}
+
+	private interface RecordVisitor {
+		void visit(byte type, MappedByteBuffer buffer, int at, long end);
+	}
+}
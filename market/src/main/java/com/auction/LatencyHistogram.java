@@ -0,0 +1,123 @@
+package com.auction;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with a bounded relative error, in
+ * the style of HdrHistogram.
+ * 
+ * Values are counted in buckets of 32 sub-buckets per power of 2, so any
+ * value is reported to within about 3% and the whole range of a long fits
+ * in under 2000 counters. Recording is an atomic increment and may be done
+ * from any number of threads; reads while recording goes on are not a
+ * consistent snapshot, see {@link #copy()}.
+ * 
+ * @author Keith
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// values below this are counted exactly
+	private static final int LINEAR = SUB_BUCKETS * 2;
+	private static final int BUCKETS = LINEAR + (Long.SIZE - SUB_BUCKET_BITS - 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param value nanoseconds, negative values count as 0
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+			// lost a race with a larger value, try again
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) total.get() / n;
+	}
+
+	/**
+	 * @param percentile e.g. 99.9
+	 * @return highest value of the bucket holding the percentile, 0 if
+	 *         nothing has been recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValueOf(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * @return copy of the counts so far, which recording no longer changes
+	 */
+	public LatencyHistogram copy() {
+		LatencyHistogram copy = new LatencyHistogram();
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			long bucket = counts.get(i);
+			copy.counts.set(i, bucket);
+			n += bucket;
+		}
+		copy.count.set(n);
+		copy.total.set(total.get());
+		copy.max.set(max.get());
+		return copy;
+	}
+
+	static int indexOf(long value) {
+		if (value < LINEAR) {
+			return (int) value;
+		}
+		int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS - 1;
+		// value >>> shift is between SUB_BUCKETS and 2 * SUB_BUCKETS - 1
+		return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	static long highestValueOf(int index) {
+		if (index < LINEAR) {
+			return index;
+		}
+		int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+		long subBucket = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return "[Count = " + getCount() + ", Mean = " + Math.round(getMean())
+				+ "ns, P50 = " + getValueAtPercentile(50) + "ns, P99 = " + getValueAtPercentile(99)
+				+ "ns, P99.9 = " + getValueAtPercentile(99.9) + "ns, Max = " + getMax() + "ns]";
+	}
+}
@@ -0,0 +1,75 @@
+package com.auction;
+
+/**
+ * Bid and offer {@link PriceLevels} of one item together with its top of
+ * book. Levels are only changed by the holder of the cache's lock for the
+ * item, which then calls {@link #publishTopOfBook()}. The top of book is published through a
+ * sequence lock so readers never block the writer and never allocate on the
+ * writer's side.
+ * 
+ * @author Keith
+ *
+ */
+public class LevelBook {
+
+	private static final int NO_PRICE = Integer.MIN_VALUE;
+
+	private final PriceLevels bids = new PriceLevels(true);
+	private final PriceLevels offers = new PriceLevels(false);
+
+	// sequence lock, odd while the fields below are being written
+	private volatile int version;
+	private volatile int bidPrice = NO_PRICE;
+	private volatile long bidQuantity;
+	private volatile int offerPrice = NO_PRICE;
+	private volatile long offerQuantity;
+
+	public PriceLevels getBids() {
+		return bids;
+	}
+
+	public PriceLevels getOffers() {
+		return offers;
+	}
+
+	/**
+	 * Publish the best levels, called by the single writer after a change
+	 */
+	public void publishTopOfBook() {
+		int newBidPrice = bids.isEmpty() ? NO_PRICE : bids.getPrice(bids.best());
+		long newBidQuantity = bids.isEmpty() ? 0 : bids.getQuantity(bids.best());
+		int newOfferPrice = offers.isEmpty() ? NO_PRICE : offers.getPrice(offers.best());
+		long newOfferQuantity = offers.isEmpty() ? 0 : offers.getQuantity(offers.best());
+		if (newBidPrice == bidPrice && newBidQuantity == bidQuantity
+				&& newOfferPrice == offerPrice && newOfferQuantity == offerQuantity) {
+			return;
+		}
+		version++;
+		bidPrice = newBidPrice;
+		bidQuantity = newBidQuantity;
+		offerPrice = newOfferPrice;
+		offerQuantity = newOfferQuantity;
+		version++;
+	}
+
+	/**
+	 * Read a consistent top of book, retrying if a write is in progress
+	 * 
+	 * @return
+	 */
+	public TopOfBook readTopOfBook() {
+		while (true) {
+			int before = version;
+			int readBidPrice = bidPrice;
+			long readBidQuantity = bidQuantity;
+			int readOfferPrice = offerPrice;
+			long readOfferQuantity = offerQuantity;
+			if ((before & 1) == 0 && before == version) {
+				return new TopOfBook(
+						readBidPrice == NO_PRICE ? null : readBidPrice, readBidQuantity,
+						readOfferPrice == NO_PRICE ? null : readOfferPrice, readOfferQuantity);
+			}
+			Thread.yield();
+		}
+	}
+}
@@ -0,0 +1,512 @@
+package com.auction;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives an auction with thousands of simulated buyers and sellers at once,
+ * to reproduce production contention locally.
+ *
+ * Every trader runs on its own thread, a virtual thread when the JDK has
+ * them and a platform thread otherwise, and enters bids or offers as a
+ * Poisson process: the gaps between its entries are exponentially
+ * distributed around 1 / ratePerTrader. Items are picked with a Zipf
+ * distribution, so a few popular items take most of the flow and contend
+ * for their locks, and prices are drawn from a {@link PriceDistribution}
+ * per side.
+ *
+ * Entries are scheduled against a fixed timeline rather than after the
+ * previous one returns, so a slow auction cannot slow the load down and
+ * hide its own latency. How far behind schedule entries start is reported
+ * as lateness next to the latency of addBid and addOffer.
+ *
+ * java -cp auction.jar com.auction.LoadGenerator [name=value ...]
+ *
+ * @author Keith
+ *
+ */
+public class LoadGenerator {
+
+	private final int buyers;
+	private final int sellers;
+	private final int entriesPerTrader;
+	private final double ratePerTrader;
+	private final double[] itemWeights;
+	private final PriceDistribution bidPrices;
+	private final PriceDistribution offerPrices;
+	private final int minQuantity;
+	private final int maxQuantity;
+	private final boolean virtualThreads;
+	private final long seed;
+
+	private LoadGenerator(LoadGeneratorBuilder builder) {
+		this.buyers = builder.buyers;
+		this.sellers = builder.sellers;
+		this.entriesPerTrader = builder.entriesPerTrader;
+		this.ratePerTrader = builder.ratePerTrader;
+		this.itemWeights = zipf(builder.items, builder.itemSkew);
+		this.bidPrices = builder.bidPrices;
+		this.offerPrices = builder.offerPrices;
+		this.minQuantity = builder.minQuantity;
+		this.maxQuantity = builder.maxQuantity;
+		this.virtualThreads = builder.virtualThreads;
+		this.seed = builder.seed;
+	}
+
+	/**
+	 * Run every trader to completion against the auction. Users are named
+	 * Buyer0.., Seller0.., so the auction should not already hold entries
+	 * of theirs.
+	 *
+	 * @param auction
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public Result run(MarketplaceAuction auction) throws InterruptedException {
+		ThreadFactory virtual = virtualThreads ? virtualThreadFactory() : null;
+		return virtual != null ? run(auction, virtual, true) : run(auction, platformThreadFactory(), false);
+	}
+
+	/**
+	 * Run with a trader thread from the factory for every user. If a thread
+	 * can not be created or started, the traders already started are let go
+	 * without trading and the failure is thrown at once.
+	 */
+	Result run(MarketplaceAuction auction, ThreadFactory threads, boolean virtual) throws InterruptedException {
+		Result result = new Result(virtual);
+		CountDownLatch ready = new CountDownLatch(buyers + sellers);
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(buyers + sellers);
+		AtomicBoolean aborted = new AtomicBoolean();
+		try {
+			for (int i = 0; i < buyers + sellers; i++) {
+				boolean buyer = i < buyers;
+				String userId = buyer ? "Buyer" + i : "Seller" + (i - buyers);
+				Random random = new Random(seed + i);
+				Thread thread = threads.newThread(() -> {
+					try{
+						ready.countDown();
+						start.await();
+						if (!aborted.get()) {
+							trade(auction, userId, buyer, random, result);
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}finally{
+						done.countDown();
+					}
+				});
+				if (thread == null) {
+					throw new IllegalStateException("No thread for trader " + userId);
+				}
+				thread.start();
+			}
+		} catch (RuntimeException | Error e) {
+			// the traders already started would wait for the rest forever
+			aborted.set(true);
+			start.countDown();
+			throw e;
+		}
+
+		ready.await();
+		long startNanos = System.nanoTime();
+		start.countDown();
+		done.await();
+		if (auction instanceof RingBufferMarketplaceAuction) {
+			// entries are only queued when addBid and addOffer return
+			((RingBufferMarketplaceAuction) auction).flush();
+		}
+		result.elapsedNanos = System.nanoTime() - startNanos;
+
+		for (int i = 0; i < buyers; i++) {
+			for (Order order : auction.getOrdersForBuyer("Buyer" + i)) {
+				result.orders++;
+				result.volume += order.getQuantity();
+			}
+		}
+		return result;
+	}
+
+	private void trade(MarketplaceAuction auction, String userId, boolean buyer, Random random,
+			Result result) {
+		long next = System.nanoTime();
+		for (int i = 0; i < entriesPerTrader; i++) {
+			if (ratePerTrader != Double.POSITIVE_INFINITY) {
+				next += (long) (-Math.log(1 - random.nextDouble()) / ratePerTrader * TimeUnit.SECONDS.toNanos(1));
+				long wait;
+				while ((wait = next - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(wait);
+				}
+			}
+			int itemId = nextItem(random);
+			int quantity = minQuantity + random.nextInt(maxQuantity - minQuantity + 1);
+			long entered = System.nanoTime();
+			if (ratePerTrader != Double.POSITIVE_INFINITY) {
+				result.lateness.record(entered - next);
+			}
+			try {
+				if (buyer) {
+					int price = bidPrices.nextPrice(random, itemId);
+					auction.addBid(new Bid.BidBuilder().itemID(itemId).pricePerUnit(price)
+							.quantity(quantity).userId(userId).build());
+					result.addBid.record(System.nanoTime() - entered);
+					result.bidQuantity.add(quantity);
+				} else {
+					int price = offerPrices.nextPrice(random, itemId);
+					auction.addOffer(new Offer.OfferBuilder().itemID(itemId).pricePerUnit(price)
+							.quantity(quantity).userId(userId).build());
+					result.addOffer.record(System.nanoTime() - entered);
+					result.offerQuantity.add(quantity);
+				}
+			} catch (RuntimeException e) {
+				// e.g. rejected by risk limits
+				result.failed.increment();
+			}
+		}
+	}
+
+	/**
+	 * @return item ID from 1, the lower the more popular
+	 */
+	int nextItem(Random random) {
+		int index = Arrays.binarySearch(itemWeights, random.nextDouble());
+		return (index < 0 ? -index - 1 : index) + 1;
+	}
+
+	/**
+	 * @param items
+	 * @param skew exponent, 0 for every item being as popular
+	 * @return cumulative probability of each item
+	 */
+	private static double[] zipf(int items, double skew) {
+		double[] cumulative = new double[items];
+		double total = 0;
+		for (int i = 0; i < items; i++) {
+			total += 1 / Math.pow(i + 1, skew);
+			cumulative[i] = total;
+		}
+		for (int i = 0; i < items; i++) {
+			cumulative[i] /= total;
+		}
+		// rounding must not leave a gap above the last item
+		cumulative[items - 1] = 1;
+		return cumulative;
+	}
+
+	/**
+	 * Create virtual threads through reflection, so this still compiles and
+	 * runs on JDKs without them
+	 *
+	 * @return factory, null when virtual threads are not available
+	 */
+	static ThreadFactory virtualThreadFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class)
+					.invoke(builder, "load-trader-", 0L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		} catch (NoSuchMethodException | ClassNotFoundException | IllegalAccessException e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			// preview feature not enabled
+			return null;
+		}
+	}
+
+	private static ThreadFactory platformThreadFactory() {
+		AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			// traders mostly sleep, keep their stacks small
+			Thread thread = new Thread(null, runnable, "load-trader-" + count.getAndIncrement(), 256 * 1024);
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * Run against a fresh {@link MarketplaceAuctionImpl} with metrics enabled
+	 * and print the report. Settings are given as name=value, see
+	 * {@link LoadGeneratorBuilder}, plus stripes, the number of lock stripes.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		Map<String, String> settings = new HashMap<>();
+		for (String arg : args) {
+			int split = arg.indexOf('=');
+			if (split < 1) {
+				System.err.println("Usage: LoadGenerator [buyers=n] [sellers=n] [items=n] [skew=x] "
+						+ "[rate=x] [entries=n] [stripes=n] [platform=true]");
+				System.exit(2);
+			}
+			settings.put(arg.substring(0, split), arg.substring(split + 1));
+		}
+		LoadGeneratorBuilder builder = new LoadGeneratorBuilder();
+		if (settings.containsKey("buyers")) {
+			builder.buyers(Integer.parseInt(settings.get("buyers")));
+		}
+		if (settings.containsKey("sellers")) {
+			builder.sellers(Integer.parseInt(settings.get("sellers")));
+		}
+		if (settings.containsKey("items")) {
+			builder.items(Integer.parseInt(settings.get("items")));
+		}
+		if (settings.containsKey("skew")) {
+			builder.itemSkew(Double.parseDouble(settings.get("skew")));
+		}
+		if (settings.containsKey("rate")) {
+			builder.ratePerTrader(Double.parseDouble(settings.get("rate")));
+		}
+		if (settings.containsKey("entries")) {
+			builder.entriesPerTrader(Integer.parseInt(settings.get("entries")));
+		}
+		builder.virtualThreads(!Boolean.parseBoolean(settings.get("platform")));
+		int stripes = Integer.parseInt(settings.getOrDefault("stripes", "16"));
+
+		MarketplaceAuctionImpl auction = new MarketplaceAuctionImpl(new MarketplaceCacheImpl(), stripes,
+				EventLog.DISABLED);
+		EngineMetrics metrics = auction.enableMetrics();
+		Result result = builder.build().run(auction);
+		System.out.println(result);
+		EngineMetrics.Snapshot snapshot = metrics.snapshot();
+		System.out.println("  lock wait " + snapshot.getLockWait());
+		System.out.println("  lock hold " + snapshot.getLockHold());
+	}
+
+	/**
+	 * Draws the price of each bid or offer
+	 */
+	public interface PriceDistribution {
+
+		/**
+		 * @param random random of the calling trader
+		 * @param itemId item being priced
+		 * @return price, at least 1
+		 */
+		public int nextPrice(Random random, int itemId);
+
+		/**
+		 * @param min
+		 * @param max
+		 * @return prices spread evenly from min to max inclusive
+		 */
+		public static PriceDistribution uniform(int min, int max) {
+			if (min < 1 || max < min) {
+				throw new IllegalArgumentException("Invalid price range: " + min + " to " + max);
+			}
+			return (random, itemId) -> min + random.nextInt(max - min + 1);
+		}
+
+		/**
+		 * @param mean
+		 * @param standardDeviation
+		 * @return prices normally distributed around the mean
+		 */
+		public static PriceDistribution normal(double mean, double standardDeviation) {
+			return (random, itemId) -> (int) Math.max(1,
+					Math.round(mean + random.nextGaussian() * standardDeviation));
+		}
+	}
+
+	/**
+	 * Outcome of one run
+	 */
+	public static class Result {
+		private final boolean virtualThreads;
+		private final LatencyHistogram addBid = new LatencyHistogram();
+		private final LatencyHistogram addOffer = new LatencyHistogram();
+		private final LatencyHistogram lateness = new LatencyHistogram();
+		private final LongAdder bidQuantity = new LongAdder();
+		private final LongAdder offerQuantity = new LongAdder();
+		private final LongAdder failed = new LongAdder();
+		private long orders;
+		private long volume;
+		private long elapsedNanos;
+
+		private Result(boolean virtualThreads) {
+			this.virtualThreads = virtualThreads;
+		}
+
+		/**
+		 * @return whether the traders ran on virtual threads
+		 */
+		public boolean isVirtualThreads() {
+			return virtualThreads;
+		}
+
+		/**
+		 * @return bids and offers entered without throwing
+		 */
+		public long getEntries() {
+			return addBid.getCount() + addOffer.getCount();
+		}
+
+		public long getFailed() {
+			return failed.sum();
+		}
+
+		/**
+		 * @return total quantity of the bids entered
+		 */
+		public long getBidQuantity() {
+			return bidQuantity.sum();
+		}
+
+		public long getOfferQuantity() {
+			return offerQuantity.sum();
+		}
+
+		public long getOrders() {
+			return orders;
+		}
+
+		public long getVolume() {
+			return volume;
+		}
+
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		/**
+		 * @return bids and offers entered per second
+		 */
+		public double getThroughput() {
+			return elapsedNanos == 0 ? 0 : getEntries() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+		}
+
+		public LatencyHistogram getAddBid() {
+			return addBid;
+		}
+
+		public LatencyHistogram getAddOffer() {
+			return addOffer;
+		}
+
+		/**
+		 * @return how long after their scheduled time entries were made
+		 */
+		public LatencyHistogram getLateness() {
+			return lateness;
+		}
+
+		@Override
+		public String toString() {
+			return getEntries() + " entries on " + (virtualThreads ? "virtual" : "platform") + " threads in "
+					+ TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms, "
+					+ Math.round(getThroughput()) + "/s, "
+					+ orders + " orders for " + volume + " units, " + getFailed() + " failed"
+					+ System.lineSeparator() + "  addBid " + addBid
+					+ System.lineSeparator() + "  addOffer " + addOffer
+					+ System.lineSeparator() + "  lateness " + lateness;
+		}
+	}
+
+	public static class LoadGeneratorBuilder {
+
+		private int buyers = 1000;
+		private int sellers = 1000;
+		private int items = 100;
+		private double itemSkew = 1;
+		private double ratePerTrader = 10;
+		private int entriesPerTrader = 100;
+		private PriceDistribution bidPrices = PriceDistribution.normal(100, 5);
+		private PriceDistribution offerPrices = PriceDistribution.normal(100, 5);
+		private int minQuantity = 1;
+		private int maxQuantity = 100;
+		private boolean virtualThreads = true;
+		private long seed = 1;
+
+		public LoadGeneratorBuilder buyers(int buyers) {
+			this.buyers = buyers;
+			return this;
+		}
+
+		public LoadGeneratorBuilder sellers(int sellers) {
+			this.sellers = sellers;
+			return this;
+		}
+
+		public LoadGeneratorBuilder items(int items) {
+			this.items = items;
+			return this;
+		}
+
+		/**
+		 * @param itemSkew Zipf exponent of item popularity, 0 for uniform
+		 */
+		public LoadGeneratorBuilder itemSkew(double itemSkew) {
+			this.itemSkew = itemSkew;
+			return this;
+		}
+
+		/**
+		 * @param ratePerTrader mean entries per second of each trader,
+		 *        infinity for back to back
+		 */
+		public LoadGeneratorBuilder ratePerTrader(double ratePerTrader) {
+			this.ratePerTrader = ratePerTrader;
+			return this;
+		}
+
+		public LoadGeneratorBuilder entriesPerTrader(int entriesPerTrader) {
+			this.entriesPerTrader = entriesPerTrader;
+			return this;
+		}
+
+		public LoadGeneratorBuilder bidPrices(PriceDistribution bidPrices) {
+			this.bidPrices = bidPrices;
+			return this;
+		}
+
+		public LoadGeneratorBuilder offerPrices(PriceDistribution offerPrices) {
+			this.offerPrices = offerPrices;
+			return this;
+		}
+
+		public LoadGeneratorBuilder quantity(int minQuantity, int maxQuantity) {
+			this.minQuantity = minQuantity;
+			this.maxQuantity = maxQuantity;
+			return this;
+		}
+
+		/**
+		 * @param virtualThreads false to always use platform threads
+		 */
+		public LoadGeneratorBuilder virtualThreads(boolean virtualThreads) {
+			this.virtualThreads = virtualThreads;
+			return this;
+		}
+
+		/**
+		 * @param seed seed of the traders' randoms, timing still varies
+		 */
+		public LoadGeneratorBuilder seed(long seed) {
+			this.seed = seed;
+			return this;
+		}
+
+		public LoadGenerator build() {
+			if (buyers < 0 || sellers < 0 || items < 1 || entriesPerTrader < 0) {
+				throw new IllegalArgumentException("Invalid counts: " + buyers + " buyers, " + sellers
+						+ " sellers, " + items + " items, " + entriesPerTrader + " entries");
+			}
+			if (!(ratePerTrader > 0) || itemSkew < 0) {
+				throw new IllegalArgumentException("Invalid rate or skew: " + ratePerTrader + ", " + itemSkew);
+			}
+			if (minQuantity < 1 || maxQuantity < minQuantity) {
+				throw new IllegalArgumentException("Invalid quantity range: " + minQuantity + " to " + maxQuantity);
+			}
+			return new LoadGenerator(this);
+		}
+	}
+}
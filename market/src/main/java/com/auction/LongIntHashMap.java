@@ -0,0 +1,125 @@
+package com.auction;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from long keys to int values which does not box
+ * and does not allocate except when it grows. Not thread safe.
+ * 
+ * @author Keith
+ *
+ */
+public class LongIntHashMap {
+
+	public static final int MISSING = -1;
+
+	private static final long EMPTY_KEY = Long.MIN_VALUE;
+
+	private long[] keys;
+	private int[] values;
+	private int mask;
+	private int size;
+
+	public LongIntHashMap(int initialCapacity) {
+		int capacity = Integer.highestOneBit(Math.max(initialCapacity, 8) * 2 - 1);
+		allocate(capacity);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return value for key, {@link #MISSING} if absent
+	 */
+	public int get(long key) {
+		int index = index(key);
+		while (keys[index] != EMPTY_KEY) {
+			if (keys[index] == key) {
+				return values[index];
+			}
+			index = (index + 1) & mask;
+		}
+		return MISSING;
+	}
+
+	public void put(long key, int value) {
+		if (key == EMPTY_KEY) {
+			throw new IllegalArgumentException("Unsupported key: " + key);
+		}
+		int index = index(key);
+		while (keys[index] != EMPTY_KEY) {
+			if (keys[index] == key) {
+				values[index] = value;
+				return;
+			}
+			index = (index + 1) & mask;
+		}
+		keys[index] = key;
+		values[index] = value;
+		// keep load factor at or below a half
+		if (++size * 2 > keys.length) {
+			rehash();
+		}
+	}
+
+	/**
+	 * @return removed value, {@link #MISSING} if absent
+	 */
+	public int remove(long key) {
+		int index = index(key);
+		while (keys[index] != EMPTY_KEY) {
+			if (keys[index] == key) {
+				int value = values[index];
+				keys[index] = EMPTY_KEY;
+				size--;
+				closeGap(index);
+				return value;
+			}
+			index = (index + 1) & mask;
+		}
+		return MISSING;
+	}
+
+	/**
+	 * Shift back entries following a removed slot so lookups never stop early
+	 */
+	private void closeGap(int gap) {
+		int index = (gap + 1) & mask;
+		while (keys[index] != EMPTY_KEY) {
+			int home = index(keys[index]);
+			// move entry if its home is not between the gap and its position
+			if (((index - home) & mask) >= ((index - gap) & mask)) {
+				keys[gap] = keys[index];
+				values[gap] = values[index];
+				keys[index] = EMPTY_KEY;
+				gap = index;
+			}
+			index = (index + 1) & mask;
+		}
+	}
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(oldKeys.length * 2);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY_KEY) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+		Arrays.fill(keys, EMPTY_KEY);
+	}
+
+	private int index(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+}
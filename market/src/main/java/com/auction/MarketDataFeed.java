@@ -0,0 +1,261 @@
+package com.auction;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Publishes the changes to the books of an auction to subscribers.
+ * 
+ * The auction reports every price level it changes while it holds the item
+ * lock, and publishes once it has finished with a bid, offer, cancel or
+ * amendment. The feed only keeps which levels changed; when it publishes it
+ * reads their totals from the levels the cache already maintains, so updates
+ * carry totals rather than deltas, which lets updates be conflated: each
+ * subscription holds at most one pending update per item, merged with later
+ * ones until its thread gets round to it, so a slow subscriber skips
+ * intermediate states instead of falling behind or slowing matching.
+ * Without subscribers nothing is allocated to publish.
+ * 
+ * A new subscription starts with an image of every book, copied from the
+ * cache.
+ * 
+ * @author Keith
+ *
+ */
+public class MarketDataFeed {
+
+	private final Logger logger = Logger.getLogger(this.getClass());
+
+	private final MarketplaceCache cache;
+	private final Map<Integer, ItemChanges> items = new ConcurrentHashMap<>();
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	/**
+	 * @param cache cache holding the books, which may already have entries,
+	 *            e.g. after recovery
+	 */
+	MarketDataFeed(MarketplaceCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Start delivering updates to the listener on a new thread
+	 * 
+	 * @param listener
+	 * @return subscription to close when no longer interested
+	 */
+	public Subscription subscribe(MarketDataListener listener) {
+		Subscription subscription = new Subscription(listener);
+		// register first, so no change is missed between the image and it
+		subscriptions.add(subscription);
+		for (Integer itemId : cache.getItemIds()) {
+			changesOf(itemId).sendImage(subscription);
+		}
+		subscription.thread.start();
+		return subscription;
+	}
+
+	/**
+	 * Count the price levels of every item
+	 * 
+	 * @param bids true for bid levels, false for offer levels
+	 * @return item ID -> number of levels
+	 */
+	Map<Integer, Integer> getLevelCounts(boolean bids) {
+		Map<Integer, Integer> counts = new TreeMap<>();
+		for (Integer itemId : cache.getItemIds()) {
+			SortedMap<Integer, Long> levels = bids
+					? cache.getBidLevels(itemId, Integer.MAX_VALUE)
+					: cache.getOfferLevels(itemId, Integer.MAX_VALUE);
+			counts.put(itemId, levels.size());
+		}
+		return counts;
+	}
+
+	void bidLevelChanged(Integer itemId, int price) {
+		changesOf(itemId).changed(true, price);
+	}
+
+	void offerLevelChanged(Integer itemId, int price) {
+		changesOf(itemId).changed(false, price);
+	}
+
+	/**
+	 * Send the level changes made since the last call to the subscribers.
+	 * Must hold the item lock, so the totals read are those after the
+	 * changes.
+	 * 
+	 * @param itemId
+	 * @param topOfBook top of book after the changes
+	 */
+	void publish(Integer itemId, TopOfBook topOfBook) {
+		ItemChanges changes = items.get(itemId);
+		if (changes != null) {
+			changes.publish(topOfBook);
+		}
+	}
+
+	private ItemChanges changesOf(Integer itemId) {
+		ItemChanges changes = items.get(itemId);
+		if (changes == null) {
+			changes = items.computeIfAbsent(itemId, ItemChanges::new);
+		}
+		return changes;
+	}
+
+	/**
+	 * Price levels of an item changed since the last publish. Changed under
+	 * the item lock, the monitor orders publishing against images taken for
+	 * new subscribers.
+	 */
+	private class ItemChanges {
+		private final Integer itemId;
+		private final ChangedLevels bids = new ChangedLevels();
+		private final ChangedLevels offers = new ChangedLevels();
+
+		private ItemChanges(Integer itemId) {
+			this.itemId = itemId;
+		}
+
+		private synchronized void changed(boolean bid, int price) {
+			(bid ? bids : offers).add(price);
+		}
+
+		private synchronized void publish(TopOfBook topOfBook) {
+			if (bids.size == 0 && offers.size == 0) {
+				return;
+			}
+			if (subscriptions.isEmpty()) {
+				// a later subscriber starts from an image instead
+				bids.clear();
+				offers.clear();
+				return;
+			}
+			SortedMap<Integer, Long> bidLevels = new TreeMap<>(Comparator.reverseOrder());
+			for (int i = 0; i < bids.size; i++) {
+				bidLevels.put(bids.prices[i], cache.getBidQuantity(itemId, bids.prices[i]));
+			}
+			SortedMap<Integer, Long> offerLevels = new TreeMap<>();
+			for (int i = 0; i < offers.size; i++) {
+				offerLevels.put(offers.prices[i], cache.getOfferQuantity(itemId, offers.prices[i]));
+			}
+			bids.clear();
+			offers.clear();
+			BookUpdate update = new BookUpdate(itemId, false, topOfBook, bidLevels, offerLevels);
+			for (Subscription subscription : subscriptions) {
+				subscription.offer(update);
+			}
+		}
+
+		private synchronized void sendImage(Subscription subscription) {
+			subscription.offer(new BookUpdate(itemId, true, cache.getTopOfBook(itemId),
+					cache.getBidLevels(itemId, Integer.MAX_VALUE),
+					cache.getOfferLevels(itemId, Integer.MAX_VALUE)));
+		}
+	}
+
+	/**
+	 * Prices of the levels changed since the last publish, each held once.
+	 * Kept flat and reused, only a few levels change between publishes so
+	 * a linear search is enough.
+	 */
+	private static class ChangedLevels {
+		private int[] prices = new int[16];
+		private int size;
+
+		private void add(int price) {
+			for (int i = 0; i < size; i++) {
+				if (prices[i] == price) {
+					return;
+				}
+			}
+			if (size == prices.length) {
+				prices = Arrays.copyOf(prices, size * 2);
+			}
+			prices[size++] = price;
+		}
+
+		private void clear() {
+			size = 0;
+		}
+	}
+
+	/**
+	 * Delivers updates to one listener on its own thread, conflating the
+	 * updates of an item which arrive while the listener is busy
+	 */
+	public class Subscription implements AutoCloseable {
+
+		private final MarketDataListener listener;
+		// at most one update per item waiting to be delivered
+		private final Map<Integer, BookUpdate> pending = new ConcurrentHashMap<>();
+		// items with a pending update, in the order they first changed
+		private final BlockingQueue<Integer> ready = new LinkedBlockingQueue<>();
+		private final Thread thread;
+		private volatile boolean running = true;
+
+		private Subscription(MarketDataListener listener) {
+			this.listener = listener;
+			this.thread = new Thread(this::run, "auction-market-data");
+			thread.setDaemon(true);
+		}
+
+		/**
+		 * Stop delivering updates
+		 */
+		@Override
+		public void close() {
+			subscriptions.remove(this);
+			running = false;
+			thread.interrupt();
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private void offer(BookUpdate update) {
+			boolean[] added = new boolean[1];
+			pending.compute(update.getItemId(), (itemId, waiting) -> {
+				if (waiting == null) {
+					added[0] = true;
+					return update;
+				}
+				return waiting.merge(update);
+			});
+			if (added[0]) {
+				ready.add(update.getItemId());
+			}
+		}
+
+		private void run() {
+			while (running) {
+				BookUpdate update;
+				try {
+					update = pending.remove(ready.take());
+				} catch (InterruptedException e) {
+					return;
+				}
+				if (update == null) {
+					continue;
+				}
+				try {
+					listener.onBookUpdate(update);
+				} catch (RuntimeException e) {
+					logger.error("Market data listener failed", e);
+				}
+			}
+		}
+	}
+}
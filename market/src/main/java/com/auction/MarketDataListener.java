@@ -0,0 +1,19 @@
+package com.auction;
+
+/**
+ * Receives market data for the items of an auction
+ * 
+ * @author Keith
+ *
+ */
+public interface MarketDataListener {
+
+	/**
+	 * Called on the subscription's own thread with the changes to the book
+	 * of an item. Changes made while the listener was busy are conflated
+	 * into one update.
+	 * 
+	 * @param update
+	 */
+	public void onBookUpdate(BookUpdate update);
+}
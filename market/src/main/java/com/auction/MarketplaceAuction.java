@@ -1,5 +1,6 @@
 package com.auction;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -23,7 +24,50 @@ public interface MarketplaceAuction {
 	public void addOffer(Offer bid);
 	
 	/**
-	 * Get list of bids for given user ID
+	 * Add bids as one batch, matched in the order given. Bids for items
+	 * which do not share a lock may be matched in a different order
+	 * relative to each other.
+	 * @param bids
+	 * @return orders placed while matching the batch
+	 */
+	public List<Order> addBids(Collection<Bid> bids);
+	
+	/**
+	 * Add offers as one batch, see {@link #addBids(Collection)}
+	 * @param offers
+	 * @return orders placed while matching the batch
+	 */
+	public List<Order> addOffers(Collection<Offer> offers);
+	
+	/**
+	 * Add a mix of bids and offers as one batch, see
+	 * {@link #addBids(Collection)}
+	 * @param entries bids and offers
+	 * @return orders placed while matching the batch
+	 */
+	public List<Order> addEntries(Collection<? extends BookEntry> entries);
+	
+	/**
+	 * Cancel a resting bid or offer
+	 * @param orderId ID of the bid or offer
+	 * @return false if nothing with that ID is resting
+	 */
+	public boolean cancel(Integer orderId);
+	
+	/**
+	 * Change the quantity and price of a resting bid or offer
+	 * @param orderId ID of the bid or offer
+	 * @param newQuantity
+	 * @param newPrice
+	 * @return false if nothing with that ID is resting
+	 * @throws IllegalArgumentException if the quantity or price is missing
+	 *         or below 1
+	 */
+	public boolean amend(Integer orderId, Integer newQuantity, Integer newPrice);
+	
+	/**
+	 * Get list of bids for given user ID. The list is a snapshot which
+	 * does not change as bids are matched.
 	 * @param userId
 	 * @return
 	 */
@@ -63,4 +107,20 @@ public interface MarketplaceAuction {
 	 * @return
 	 */
 	public Integer getOfferPrice(Integer itemId);
+	
+	/**
+	 * Get total quantity at each of the best price levels for item ID
+	 * @param itemId
+	 * @param levels most price levels to return on each side
+	 * @return
+	 */
+	public Depth getDepth(Integer itemId, int levels);
+	
+	/**
+	 * Get open bid and offer notional, open offer quantity per item and
+	 * filled volume for user ID
+	 * @param userId
+	 * @return
+	 */
+	public UserExposure getExposure(String userId);
 }
@@ -1,101 +1,728 @@
 package com.auction;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
-import org.apache.log4j.Logger;
-
 /**
  * Implementation of a market place auction
  * 
+ * Matching never crosses item IDs, so bids and offers are serialised per item
+ * by a set of striped locks. With a single stripe every item shares one lock.
+ * 
+ * Order lifecycle events are recorded to an {@link EventLog}, which formats
+ * and writes them on its own thread, outside the locks. Given a
+ * {@link Journal}, bids and offers are appended to it before they are
+ * matched so the books can be rebuilt after a restart.
+ * 
+ * Changes to the books are published to subscribers through a
+ * {@link MarketDataFeed}.
+ * 
+ * Given a {@link RiskCheck}, bids, offers and amendments which breach the
+ * limits of their user are rejected under the item lock before they are
+ * journaled or matched.
+ * 
+ * Latencies and counts are recorded once {@link #enableMetrics()} is called.
+ * 
  * @author Keith
  *
  */
 public class MarketplaceAuctionImpl implements MarketplaceAuction {
 
-	private final Logger logger = Logger.getLogger(this.getClass());
-	
 	private final MarketplaceCache cache;
 	
-	private Lock lock;
+	private final EventLog eventLog;
+	
+	// null when not journaling
+	private final Journal journal;
+	
+	// locks guarding matching, item IDs are spread over the stripes
+	private final Lock[] locks;
+	
+	private final List<ExecutionListener> listeners = new CopyOnWriteArrayList<>();
+	
+	private final MarketDataFeed marketData;
+	
+	// null when there are no limits
+	private volatile RiskCheck riskCheck;
+	
+	private volatile EngineMetrics metrics = EngineMetrics.DISABLED;
 
 	public MarketplaceAuctionImpl() {
-		lock = new ReentrantLock();
-		cache = new MarketplaceCacheImpl();
+		this(1);
+	}
+
+	/**
+	 * Create auction where items are matched in parallel
+	 * 
+	 * @param lockStripes number of locks items are partitioned over
+	 */
+	public MarketplaceAuctionImpl(int lockStripes) {
+		this(new MarketplaceCacheImpl(), lockStripes);
+	}
+
+	public MarketplaceAuctionImpl(MarketplaceCache cache, int lockStripes) {
+		this(cache, lockStripes, EventLog.getDefault());
+	}
+
+	/**
+	 * @param cache cache to match against
+	 * @param lockStripes number of locks items are partitioned over
+	 * @param eventLog log order lifecycle events are recorded to
+	 */
+	public MarketplaceAuctionImpl(MarketplaceCache cache, int lockStripes, EventLog eventLog) {
+		this(cache, lockStripes, eventLog, null);
+	}
+
+	/**
+	 * @param cache cache to match against
+	 * @param lockStripes number of locks items are partitioned over
+	 * @param eventLog log order lifecycle events are recorded to
+	 * @param journal journal bids, offers and orders are appended to, or null
+	 */
+	public MarketplaceAuctionImpl(MarketplaceCache cache, int lockStripes, EventLog eventLog, Journal journal) {
+		if (lockStripes < 1) {
+			throw new IllegalArgumentException("lockStripes must be at least 1: " + lockStripes);
+		}
+		this.cache = cache;
+		this.eventLog = eventLog;
+		this.journal = journal;
+		this.locks = new Lock[lockStripes];
+		for (int i = 0; i < lockStripes; i++) {
+			locks[i] = new ReentrantLock();
+		}
+		this.marketData = new MarketDataFeed(cache);
+	}
+	
+	private MarketplaceAuctionImpl(MarketplaceCache cache, Lock lock) {
+		this.cache = cache;
+		this.eventLog = EventLog.getDefault();
+		this.journal = null;
+		this.locks = new Lock[] { lock };
+		this.marketData = new MarketDataFeed(cache);
+	}
+	
+	/**
+	 * Create auction which does not lock. All bids and offers must be
+	 * entered from a single thread.
+	 * 
+	 * @param cache
+	 * @return
+	 */
+	static MarketplaceAuctionImpl singleWriter(MarketplaceCache cache) {
+		return new MarketplaceAuctionImpl(cache, new SingleWriterLock());
+	}
+	
+	/**
+	 * Rebuild the books held in the journal into the cache by matching its
+	 * bids and offers again, then return an auction which carries on
+	 * appending to the journal. Orders are placed again as part of matching,
+	 * under new IDs.
+	 * 
+	 * @param cache empty cache to rebuild into
+	 * @param lockStripes number of locks items are partitioned over
+	 * @param journal
+	 * @return
+	 * @throws IOException
+	 */
+	public static MarketplaceAuctionImpl recover(MarketplaceCache cache, int lockStripes,
+			Journal journal) throws IOException {
+		return recover(cache, lockStripes, journal, null);
+	}
+
+	/**
+	 * Load the books from a snapshot, if there is one, and then match only
+	 * the bids and offers journaled after it. Orders from before the
+	 * snapshot are not recovered.
+	 * 
+	 * @param cache empty cache to rebuild into
+	 * @param lockStripes number of locks items are partitioned over
+	 * @param journal
+	 * @param snapshotPath file written by {@link #snapshot(Path)}, or null
+	 * @return
+	 * @throws IOException
+	 */
+	public static MarketplaceAuctionImpl recover(MarketplaceCache cache, int lockStripes,
+			Journal journal, Path snapshotPath) throws IOException {
+		BookSnapshot snapshot = null;
+		if (snapshotPath != null && Files.exists(snapshotPath)) {
+			snapshot = BookSnapshot.read(snapshotPath);
+			snapshot.restore(cache);
+		}
+		// IDs in the journal must stay unique
+		Bid.reserveIds(journal.getLastBidId());
+		Offer.reserveIds(journal.getLastOfferId());
+		Order.reserveIds(journal.getLastOrderId());
+
+		// events were logged when first processed
+		MarketplaceAuctionImpl replay = new MarketplaceAuctionImpl(cache, 1, EventLog.DISABLED, null);
+		BookSnapshot loaded = snapshot;
+		journal.replay(new Journal.Handler() {
+			@Override
+			public void onBid(Bid bid, long position) {
+				if (loaded == null || position > loaded.getJournalPosition(bid.getItemId())) {
+					replay.addBid(bid);
+				}
+			}
+
+			@Override
+			public void onOffer(Offer offer, long position) {
+				if (loaded == null || position > loaded.getJournalPosition(offer.getItemId())) {
+					replay.addOffer(offer);
+				}
+			}
+
+			@Override
+			public void onCancel(int id, int itemId, long position) {
+				if (loaded == null || position > loaded.getJournalPosition(itemId)) {
+					replay.cancel(id);
+				}
+			}
+
+			@Override
+			public void onAmend(int id, int itemId, int quantity, int price, long position) {
+				if (loaded == null || position > loaded.getJournalPosition(itemId)) {
+					replay.amend(id, quantity, price);
+				}
+			}
+		}, snapshot == null ? 0 : snapshot.getFirstJournalPosition());
+		return new MarketplaceAuctionImpl(cache, lockStripes, EventLog.getDefault(), journal);
+	}
+	
+	/**
+	 * Write the resting bids and offers of every item and the ID sequences
+	 * to a file, see {@link #recover(MarketplaceCache, int, Journal, Path)}.
+	 * 
+	 * Matching carries on meanwhile: the books are copied one lock stripe at
+	 * a time, holding only that stripe's lock, and written once all are
+	 * copied. A single writer auction must be snapshot by its writer thread.
+	 * 
+	 * @param path file to replace with the snapshot
+	 * @throws IOException
+	 */
+	public void snapshot(Path path) throws IOException {
+		BookSnapshot snapshot = new BookSnapshot(locks.length);
+		for (int stripe = 0; stripe < locks.length; stripe++) {
+			Lock lock = locks[stripe];
+			try {
+				lock.lock();
+				// nothing is journaled for the stripe while it is locked
+				snapshot.setJournalPosition(stripe, journal == null ? 0 : journal.getPosition());
+				for (Integer itemId : cache.getItemIds()) {
+					if (lockFor(itemId) == lock) {
+						for (Bid bid : cache.getBidForItem(itemId)) {
+							snapshot.addBid(bid);
+						}
+						for (Offer offer : cache.getOfferForItem(itemId)) {
+							snapshot.addOffer(offer);
+						}
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		snapshot.captureIds();
+		snapshot.write(path);
+	}
+	
+	/**
+	 * Register listener to be told about placed orders. Listeners are called
+	 * by the calling thread once the item lock is released and the journal
+	 * committed, so they never hold up matching and never hear of anything a
+	 * restart would lose.
+	 * 
+	 * @param listener
+	 */
+	public void addExecutionListener(ExecutionListener listener) {
+		listeners.add(listener);
+	}
+	
+	public void removeExecutionListener(ExecutionListener listener) {
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * Apply risk limits to bids, offers and amendments entered from now on
+	 * 
+	 * @param riskCheck limits to apply, or null for none
+	 */
+	public void setRiskCheck(RiskCheck riskCheck) {
+		this.riskCheck = riskCheck;
+	}
+	
+	/**
+	 * Start recording latencies and counts. Until this is called nothing is
+	 * timed, the clock is not even read.
+	 * 
+	 * @return metrics of this auction, the same on every call
+	 */
+	public synchronized EngineMetrics enableMetrics() {
+		if (metrics == EngineMetrics.DISABLED) {
+			metrics = new EngineMetrics(marketData);
+		}
+		return metrics;
+	}
+	
+	/**
+	 * Subscribe to the top of book and price levels of every item, starting
+	 * with an image of the current books. Updates are delivered on the
+	 * subscription's own thread, and conflated when it falls behind.
+	 * 
+	 * @param listener
+	 * @return subscription to close when no longer interested
+	 */
+	public MarketDataFeed.Subscription subscribe(MarketDataListener listener) {
+		return marketData.subscribe(listener);
 	}
 
+	/**
+	 * @throws RiskLimitException if the bid breaches the limits of its user
+	 */
 	@Override
 	public void addBid(Bid bid) {
 		
-		try{
-			lock.lock();
+		EngineMetrics metrics = this.metrics;
+		long start = metrics.start();
+		long locked = 0;
+		Executions executions = new Executions(null, !listeners.isEmpty());
+		Lock lock = lockFor(bid.getItemId());
+		try {
+			try{
+				lock.lock();
+				locked = metrics.lockAcquired(start);
+				enterBid(bid, executions);
+			}finally{
+				metrics.lockReleased(locked);
+				lock.unlock();
+			}
+		} catch (RiskLimitException e) {
+			// nothing was journaled
+			dispatch(executions);
+			throw e;
+		}
+		if (journal != null) {
+			journal.commit();
+		}
+		dispatch(executions);
+		metrics.bidAdded(start);
+	
+	}
+
+	@Override
+	public List<Order> addBids(Collection<Bid> bids) {
+		return addEntries(bids);
+	}
+
+	@Override
+	public List<Order> addOffers(Collection<Offer> offers) {
+		return addEntries(offers);
+	}
+
+	/**
+	 * Entries are grouped by lock stripe and each stripe is locked once for
+	 * all of its entries. Entries breaching risk limits are skipped, they
+	 * are reported to {@link ExecutionListener#onRejected(BookEntry, String)}.
+	 */
+	@Override
+	public List<Order> addEntries(Collection<? extends BookEntry> entries) {
+		List<List<BookEntry>> byStripe = new ArrayList<>(locks.length);
+		for (int i = 0; i < locks.length; i++) {
+			byStripe.add(null);
+		}
+		// check everything before matching anything
+		for (BookEntry entry : entries) {
+			Objects.requireNonNull(entry);
+			if (!(entry instanceof Bid) && !(entry instanceof Offer)) {
+				throw new IllegalArgumentException("Not a bid or offer: " + entry);
+			}
+			int stripe = stripeOf(entry.getItemId());
+			if (byStripe.get(stripe) == null) {
+				byStripe.set(stripe, new ArrayList<>());
+			}
+			byStripe.get(stripe).add(entry);
+		}
+
+		EngineMetrics metrics = this.metrics;
+		Executions executions = new Executions(new ArrayList<>(), !listeners.isEmpty());
+		for (int stripe = 0; stripe < locks.length; stripe++) {
+			List<BookEntry> batch = byStripe.get(stripe);
+			if (batch == null) {
+				continue;
+			}
+			long start = metrics.start();
+			long locked = 0;
+			Lock lock = locks[stripe];
+			try{
+				lock.lock();
+				locked = metrics.lockAcquired(start);
+				for (BookEntry entry : batch) {
+					try {
+						if (entry instanceof Bid) {
+							enterBid((Bid) entry, executions);
+						} else {
+							enterOffer((Offer) entry, executions);
+						}
+					} catch (RiskLimitException e) {
+						// already reported, carry on with the rest of the batch
+					}
+				}
+			}finally{
+				metrics.lockReleased(locked);
+				lock.unlock();
+			}
+		}
+		if (journal != null) {
+			journal.commit();
+		}
+		dispatch(executions);
+		return executions.orders;
+	}
+
+	/**
+	 * Check risk limits, journal the bid, then match it. Must hold the item
+	 * lock.
+	 * 
+	 * @param bid
+	 * @param executions collects the orders placed and listener callbacks
+	 */
+	private void enterBid(Bid bid, Executions executions) {
+		long notional = (long) bid.getPricePerUnit() * bid.getQuantity();
+		RiskCheck riskCheck = checkRisk(bid, bid.getQuantity(), notional, notional, executions);
+		try {
+			metrics.bidEntered();
+			if (journal != null) {
+				journal.appendBid(bid);
+			}
+			eventLog.bidEntered(bid);
+			matchBid(bid, executions);
+		} finally {
+			// rested or filled, the exposure counts it from here on
+			releaseRisk(riskCheck, bid, notional);
+		}
+		marketData.publish(bid.getItemId(), cache.getTopOfBook(bid.getItemId()));
+		executions.accepted(bid);
+	}
+
+	/**
+	 * Match the bid and rest whatever is not filled. Must hold the item lock.
+	 */
+	private void matchBid(Bid bid, Executions executions) {
+		EngineMetrics metrics = this.metrics;
+		long start = metrics.start();
+		attemptToMatchBid(bid, executions);
+		metrics.matched(start);
 		
-			logger.info("Bid entered: " + bid);
-			
+		if (bid.getQuantity() > 0) {
+			// rest whatever was not filled
+			start = metrics.start();
 			cache.addBid(bid);
+			metrics.cacheUpdated(start);
+			marketData.bidLevelChanged(bid.getItemId(), bid.getPricePerUnit());
+		}
+	}
 
-			attemptToMatchBid(bid);
-			
+	/**
+	 * Cancel a resting bid or offer. The entry is found through the cache's
+	 * ID index, so this does not depend on the size of the book.
+	 */
+	@Override
+	public boolean cancel(Integer orderId) {
+		BookEntry entry = findResting(orderId);
+		if (entry == null) {
+			return false;
+		}
+		boolean cancelled;
+		EngineMetrics metrics = this.metrics;
+		long start = metrics.start();
+		long locked = 0;
+		Lock lock = lockFor(entry.getItemId());
+		try{
+			lock.lock();
+			locked = metrics.lockAcquired(start);
+			cancelled = cancelResting(orderId);
+			if (cancelled) {
+				marketData.publish(entry.getItemId(), cache.getTopOfBook(entry.getItemId()));
+				metrics.cancelled();
+			}
 		}finally{
+			metrics.lockReleased(locked);
 			lock.unlock();
 		}
-	
+		if (cancelled && journal != null) {
+			journal.commit();
+		}
+		return cancelled;
+	}
+
+	/**
+	 * Amend a resting bid or offer. Reducing the quantity at the same price
+	 * keeps its time priority, any other change enters it again at the back
+	 * of the queue at the new price, where it may match.
+	 * 
+	 * @throws RiskLimitException if the new quantity or price breach the
+	 *         limits of the user, the entry is left as it was
+	 */
+	@Override
+	public boolean amend(Integer orderId, Integer newQuantity, Integer newPrice) {
+		if (newQuantity == null || newQuantity < 1) {
+			throw new IllegalArgumentException("newQuantity must be at least 1: " + newQuantity);
+		}
+		if (newPrice == null || newPrice < 1) {
+			throw new IllegalArgumentException("newPrice must be at least 1: " + newPrice);
+		}
+		BookEntry entry = findResting(orderId);
+		if (entry == null) {
+			return false;
+		}
+		boolean amended;
+		EngineMetrics metrics = this.metrics;
+		long start = metrics.start();
+		long locked = 0;
+		Executions executions = new Executions(null, !listeners.isEmpty());
+		Lock lock = lockFor(entry.getItemId());
+		try {
+			try{
+				lock.lock();
+				locked = metrics.lockAcquired(start);
+				amended = amendResting(orderId, newQuantity, newPrice, executions);
+				if (amended) {
+					marketData.publish(entry.getItemId(), cache.getTopOfBook(entry.getItemId()));
+					metrics.amended();
+				}
+			}finally{
+				metrics.lockReleased(locked);
+				lock.unlock();
+			}
+		} catch (RiskLimitException e) {
+			// nothing was journaled
+			dispatch(executions);
+			throw e;
+		}
+		if (amended && journal != null) {
+			journal.commit();
+		}
+		dispatch(executions);
+		return amended;
 	}
 
 	/**
-	 * Attempt to match the bid. If bid is match, an order is placed
+	 * Get a resting bid or offer by its ID
 	 * 
-	 * @return true if matched, false otherwise
+	 * @param id
+	 * @return entry, null if nothing with that ID is resting
 	 */
-	private void attemptToMatchBid(Bid bid) {
+	BookEntry findResting(Integer id) {
+		Bid bid = cache.getBid(id);
+		return bid != null ? bid : cache.getOffer(id);
+	}
 
-		List<Offer> offerList = cache.getOfferForItem(bid.getItemId());
+	/**
+	 * Cancel if still resting, it may have been filled since it was looked
+	 * up. Must hold the item lock.
+	 */
+	private boolean cancelResting(Integer id) {
+		EngineMetrics metrics = this.metrics;
+		Bid bid = cache.getBid(id);
+		if (bid != null) {
+			if (journal != null) {
+				journal.appendCancel(bid);
+			}
+			long start = metrics.start();
+			cache.removeBid(bid);
+			metrics.cacheUpdated(start);
+			marketData.bidLevelChanged(bid.getItemId(), bid.getPricePerUnit());
+			eventLog.bidCancelled(bid);
+			return true;
+		}
+		Offer offer = cache.getOffer(id);
+		if (offer != null) {
+			if (journal != null) {
+				journal.appendCancel(offer);
+			}
+			long start = metrics.start();
+			cache.removeOffer(offer);
+			metrics.cacheUpdated(start);
+			marketData.offerLevelChanged(offer.getItemId(), offer.getPricePerUnit());
+			eventLog.offerCancelled(offer);
+			return true;
+		}
+		return false;
+	}
 
-		// see if it matches any offers
-		for (Offer offer : offerList) {
-			if (matches(bid, offer)) {
-				//bid is matched, so place order
-				placeOrder(bid, offer);
-				//bid is matched and order placed. No need to match other offers
-				return;
+	/**
+	 * Amend if still resting. Must hold the item lock. Only amendments which
+	 * raise the quantity or notional are checked against the risk limits, so
+	 * a user who is throttled can still cut their exposure.
+	 */
+	private boolean amendResting(Integer id, int quantity, int price, Executions executions) {
+		EngineMetrics metrics = this.metrics;
+		Bid bid = cache.getBid(id);
+		if (bid != null) {
+			long notional = (long) price * quantity;
+			long addedNotional = notional - (long) bid.getPricePerUnit() * bid.getQuantity();
+			RiskCheck riskCheck = null;
+			if (quantity > bid.getQuantity() || addedNotional > 0) {
+				riskCheck = checkRisk(bid, quantity, addedNotional, notional, executions);
+			}
+			try {
+				if (journal != null) {
+					journal.appendAmend(bid, quantity, price);
+				}
+				if (price == bid.getPricePerUnit() && quantity <= bid.getQuantity()) {
+					marketData.bidLevelChanged(bid.getItemId(), price);
+					long start = metrics.start();
+					cache.reduceBid(bid, bid.getQuantity() - quantity);
+					metrics.cacheUpdated(start);
+					// the cache may not update the bid it returned
+					bid.setQuantity(quantity);
+					eventLog.bidAmended(bid);
+				} else {
+					long start = metrics.start();
+					cache.removeBid(bid);
+					metrics.cacheUpdated(start);
+					marketData.bidLevelChanged(bid.getItemId(), bid.getPricePerUnit());
+					bid.setQuantity(quantity);
+					bid.setPricePerUnit(price);
+					eventLog.bidAmended(bid);
+					matchBid(bid, executions);
+				}
+			} finally {
+				// rested or filled, the exposure counts it from here on
+				releaseRisk(riskCheck, bid, notional);
 			}
+			return true;
+		}
+		Offer offer = cache.getOffer(id);
+		if (offer != null) {
+			long notional = (long) price * quantity;
+			long addedNotional = notional - (long) offer.getPricePerUnit() * offer.getQuantity();
+			RiskCheck riskCheck = null;
+			if (quantity > offer.getQuantity() || addedNotional > 0) {
+				riskCheck = checkRisk(offer, quantity, addedNotional, notional, executions);
+			}
+			try {
+				if (journal != null) {
+					journal.appendAmend(offer, quantity, price);
+				}
+				if (price == offer.getPricePerUnit() && quantity <= offer.getQuantity()) {
+					marketData.offerLevelChanged(offer.getItemId(), price);
+					long start = metrics.start();
+					cache.reduceOffer(offer, offer.getQuantity() - quantity);
+					metrics.cacheUpdated(start);
+					// the cache may not update the offer it returned
+					offer.setQuantity(quantity);
+					eventLog.offerAmended(offer);
+				} else {
+					long start = metrics.start();
+					cache.removeOffer(offer);
+					metrics.cacheUpdated(start);
+					marketData.offerLevelChanged(offer.getItemId(), offer.getPricePerUnit());
+					offer.setQuantity(quantity);
+					offer.setPricePerUnit(price);
+					eventLog.offerAmended(offer);
+					matchOffer(offer, executions);
+				}
+			} finally {
+				// rested or filled, the exposure counts it from here on
+				releaseRisk(riskCheck, offer, notional);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Attempt to match the bid, sweeping offers from the best price until the
+	 * bid is filled or no longer crosses. An order is placed for each fill.
+	 */
+	private void attemptToMatchBid(Bid bid, Executions executions) {
+
+		// read on every fill, so the cache need not create an offer each time
+		RestingEntry offer = new RestingEntry();
+		while (bid.getQuantity() > 0
+				&& cache.readBestOffer(bid.getItemId(), offer)
+				&& bid.getPricePerUnit() >= offer.getPricePerUnit()) {
+
+			int quantity = Math.min(bid.getQuantity(), offer.getQuantity());
+			placeOrder(bid.getItemId(), bid.getPricePerUnit(), bid.getUserId(),
+					offer.getPricePerUnit(), offer.getUserId(), quantity, executions);
+
+			bid.setQuantity(bid.getQuantity() - quantity);
+			fillOffer(offer, quantity);
 		}
 
 	}
 
-	private  void placeOrder(Bid bid, Offer offer) {
+	private  void placeOrder(Integer itemId, int bidPrice, String buyerId, int offerPrice,
+			String sellerId, int quantity, Executions executions) {
+		EngineMetrics metrics = this.metrics;
+		long start = metrics.start();
 				
-		Integer orderPrice = Math.min(bid.getPricePerUnit(),offer.getPricePerUnit());
-
-		Order order = new Order.OrderBuilder()
-							   .itemID(bid.getItemId())
-							   .quantity(bid.getQuantity())
-							   .pricePerUnit(orderPrice)
-							   .buyerID(bid.getUserId())
-							   .sellerID(offer.getUserId()).build();
+		Integer orderPrice = Math.min(bidPrice, offerPrice);
+
+		Order order = new Order(itemId, quantity, orderPrice, buyerId, sellerId);
 		// add order
+		long cacheStart = metrics.start();
 		cache.addOrder(order);
-		// remove bid
-		cache.removeBid(bid);
-		logger.info("Bid removed: " + bid);
+		metrics.cacheUpdated(cacheStart);
+		
+		if (journal != null) {
+			journal.appendOrder(order);
+		}
+		eventLog.orderPlaced(order);
+		executions.placed(order);
+		metrics.orderPlaced(start);
+	}
 
-		if (bid.getQuantity() == offer.getQuantity()) {
-			// offer quantity reduced to 0, so remove
-			cache.removeOffer(offer);
-			logger.info("Offer removed: " + offer);
+	/**
+	 * Fill a resting bid, removing it once nothing is left
+	 */
+	private void fillBid(RestingEntry bid, int quantity) {
+		EngineMetrics metrics = this.metrics;
+		marketData.bidLevelChanged(bid.getItemId(), bid.getPricePerUnit());
+		long start = metrics.start();
+		cache.fillBid(bid, quantity);
+		metrics.cacheUpdated(start);
+		if (quantity == bid.getQuantity()) {
+			eventLog.bidRemoved(bid);
 		} else {
-			// reduce quantity
-			offer.setQuantity(offer.getQuantity() - bid.getQuantity());
-			logger.info("Offer reduced: " + offer);
+			// the view keeps the quantity it was read with
+			bid.setQuantity(bid.getQuantity() - quantity);
+			eventLog.bidReduced(bid);
+		}
+	}
+
+	/**
+	 * Fill a resting offer, removing it once nothing is left
+	 */
+	private void fillOffer(RestingEntry offer, int quantity) {
+		EngineMetrics metrics = this.metrics;
+		marketData.offerLevelChanged(offer.getItemId(), offer.getPricePerUnit());
+		long start = metrics.start();
+		cache.fillOffer(offer, quantity);
+		metrics.cacheUpdated(start);
+		if (quantity == offer.getQuantity()) {
+			eventLog.offerRemoved(offer);
+		} else {
+			// the view keeps the quantity it was read with
+			offer.setQuantity(offer.getQuantity() - quantity);
+			eventLog.offerReduced(offer);
 		}
-		
-		logger.info("Placed order: " + order);
 	}
 
 	/**
-	 * Whether bid and offer match
+	 * Whether bid and offer match. Quantities do not need to match, the
+	 * smaller of the two is filled.
 	 * 
 	 * @param bid
 	 * @param offer
@@ -103,46 +730,143 @@ public class MarketplaceAuctionImpl implements MarketplaceAuction {
 	 */
 	boolean matches(Bid bid, Offer offer) {
 		return bid.getItemId().equals(offer.getItemId())
-				&& bid.getPricePerUnit() >= offer.getPricePerUnit()
-				&& bid.getQuantity() <= offer.getQuantity();
+				&& bid.getPricePerUnit() >= offer.getPricePerUnit();
 	}
 
+	/**
+	 * @throws RiskLimitException if the offer breaches the limits of its user
+	 */
 	@Override
 	public void addOffer(Offer offer) {
 				
-		try{
-			lock.lock();
+		EngineMetrics metrics = this.metrics;
+		long start = metrics.start();
+		long locked = 0;
+		Executions executions = new Executions(null, !listeners.isEmpty());
+		Lock lock = lockFor(offer.getItemId());
+		try {
+			try{
+				lock.lock();
+				locked = metrics.lockAcquired(start);
+				enterOffer(offer, executions);
+			}finally{
+				metrics.lockReleased(locked);
+				lock.unlock();
+			}
+		} catch (RiskLimitException e) {
+			// nothing was journaled
+			dispatch(executions);
+			throw e;
+		}
+		if (journal != null) {
+			journal.commit();
+		}
+		dispatch(executions);
+		metrics.offerAdded(start);
+	}
 
-			logger.info("Offer entered: " + offer);
-			
-			cache.addOffer(offer);
+	/**
+	 * Check risk limits, journal the offer, then match it. Must hold the
+	 * item lock.
+	 * 
+	 * @param offer
+	 * @param executions collects the orders placed and listener callbacks
+	 */
+	private void enterOffer(Offer offer, Executions executions) {
+		long notional = (long) offer.getPricePerUnit() * offer.getQuantity();
+		RiskCheck riskCheck = checkRisk(offer, offer.getQuantity(), notional, notional, executions);
+		try {
+			metrics.offerEntered();
+			if (journal != null) {
+				journal.appendOffer(offer);
+			}
+			eventLog.offerEntered(offer);
+			matchOffer(offer, executions);
+		} finally {
+			// rested or filled, the exposure counts it from here on
+			releaseRisk(riskCheck, offer, notional);
+		}
+		marketData.publish(offer.getItemId(), cache.getTopOfBook(offer.getItemId()));
+		executions.accepted(offer);
+	}
+	
+	/**
+	 * Reject the entry if it breaches the limits of its user. Must hold the
+	 * item lock.
+	 * 
+	 * @param entry
+	 * @param quantity quantity being entered
+	 * @param addedNotional notional added to the user's resting bids and offers
+	 * @param notional notional the entry will rest with
+	 * @param executions collects the rejection for the listeners
+	 * @return risk check holding the notional until
+	 *         {@link #releaseRisk(RiskCheck, BookEntry, long)}, or null
+	 */
+	private RiskCheck checkRisk(BookEntry entry, int quantity, long addedNotional, long notional,
+			Executions executions) {
+		RiskCheck riskCheck = this.riskCheck;
+		if (riskCheck == null) {
+			return null;
+		}
+		String reason = riskCheck.check(entry.getUserId(), quantity, addedNotional, notional, cache);
+		if (reason != null) {
+			metrics.rejected();
+			executions.rejected(entry, reason);
+			throw new RiskLimitException(entry, reason);
+		}
+		return riskCheck;
+	}
 
-			attemptToMatchOffer(offer);
-		}finally{
-			lock.unlock();
+	/**
+	 * Release the notional reserved by
+	 * {@link #checkRisk(BookEntry, int, long, long, Executions)} once the entry has rested
+	 * or been filled
+	 */
+	private void releaseRisk(RiskCheck riskCheck, BookEntry entry, long notional) {
+		if (riskCheck != null) {
+			riskCheck.release(entry.getUserId(), notional);
 		}
 	}
 
 	/**
-	 * Attempt to match the offer. If offer is matched, an order is placed
-	 * 
-	 * @return true if matched, false otherwise
+	 * Match the offer and rest whatever is not filled. Must hold the item
+	 * lock.
+	 */
+	private void matchOffer(Offer offer, Executions executions) {
+		EngineMetrics metrics = this.metrics;
+		long start = metrics.start();
+		attemptToMatchOffer(offer, executions);
+		metrics.matched(start);
+		
+		if (offer.getQuantity() > 0) {
+			// rest whatever was not filled
+			start = metrics.start();
+			cache.addOffer(offer);
+			metrics.cacheUpdated(start);
+			marketData.offerLevelChanged(offer.getItemId(), offer.getPricePerUnit());
+		}
+	}
+
+	/**
+	 * Attempt to match the offer, sweeping bids from the best price until the
+	 * offer is filled or no longer crosses. An order is placed for each fill.
 	 */
-	private boolean attemptToMatchOffer(Offer offer) {
+	private void attemptToMatchOffer(Offer offer, Executions executions) {
 
-		List<Bid> bidList = cache.getBidForItem(offer.getItemId());
+		// read on every fill, so the cache need not create a bid each time
+		RestingEntry bid = new RestingEntry();
+		while (offer.getQuantity() > 0
+				&& cache.readBestBid(offer.getItemId(), bid)
+				&& bid.getPricePerUnit() >= offer.getPricePerUnit()) {
 
-		// see if it matches any bid items
-		for (Bid bidItem : bidList) {
-			if (matches(bidItem, offer)) {
-				//offer is match, placed order
-				placeOrder(bidItem, offer);
-				//offer is matched and order placed. No need to match other bids
-				return true;
-			}
+			int quantity = Math.min(bid.getQuantity(), offer.getQuantity());
+			placeOrder(offer.getItemId(), bid.getPricePerUnit(), bid.getUserId(),
+					offer.getPricePerUnit(), offer.getUserId(), quantity, executions);
+
+			offer.setQuantity(offer.getQuantity() - quantity);
+			fillBid(bid, quantity);
 		}
 
-		return false;
 	}
 
 	@Override
@@ -165,38 +889,156 @@ public class MarketplaceAuctionImpl implements MarketplaceAuction {
 		return cache.getOrdersForBuyer(userId);
 	}
 
+	@Override
+	public UserExposure getExposure(String userId) {
+		return cache.getExposure(userId);
+	}
+
+	TopOfBook getTopOfBook(Integer itemId) {
+		return cache.getTopOfBook(itemId);
+	}
+
 	@Override
 	public Integer getBidPrice(Integer itemId) {
+		// top of book is maintained by the cache, no need to lock
+		return cache.getTopOfBook(itemId).getBidPrice();
+	}
 
-		List<Bid> bidList = cache.getBidForItem(itemId);
+	@Override
+	public Integer getOfferPrice(Integer itemId) {
+		return cache.getTopOfBook(itemId).getOfferPrice();
+	}
 
-	    Optional<Bid> op = bidList
-	              			.stream()    
-	              			.max((bid1, bid2)
-	              					-> Integer.compare(bid1.getPricePerUnit(), bid2.getPricePerUnit()));
+	/**
+	 * Level totals are kept by the cache as the book changes, so this only
+	 * copies the levels asked for and does not take the item lock
+	 */
+	@Override
+	public Depth getDepth(Integer itemId, int levels) {
+		if (levels < 0) {
+			throw new IllegalArgumentException("levels must not be negative: " + levels);
+		}
+		return new Depth(itemId, cache.getBidLevels(itemId, levels), cache.getOfferLevels(itemId, levels));
+	}
 
-		Integer bidPrice = null;
-		if(op.isPresent()){
-			bidPrice = op.get().getPricePerUnit();
+	/**
+	 * Tell the listeners what happened while the item lock was held. Must
+	 * not hold the item lock, and the journal must already be committed.
+	 */
+	private void dispatch(Executions executions) {
+		if (executions.callbacks == null) {
+			return;
+		}
+		for (int i = 0; i < executions.callbacks.size(); i++) {
+			Object callback = executions.callbacks.get(i);
+			String reason = executions.reasons.get(i);
+			for (ExecutionListener listener : listeners) {
+				if (callback instanceof Order) {
+					listener.onOrder((Order) callback);
+				} else if (reason != null) {
+					listener.onRejected((BookEntry) callback, reason);
+				} else {
+					listener.onAccepted((BookEntry) callback);
+				}
+			}
 		}
-		return bidPrice;
 	}
 
-	@Override
-	public Integer getOfferPrice(Integer itemId) {
+	/**
+	 * Get the lock guarding the book of an item
+	 * 
+	 * @param itemId
+	 * @return
+	 */
+	private Lock lockFor(Integer itemId) {
+		return locks[stripeOf(itemId)];
+	}
+	
+	private int stripeOf(Integer itemId) {
+		return Math.floorMod(itemId.hashCode(), locks.length);
+	}
+	
+	/**
+	 * Lock for an engine only ever called from one thread, so never contended
+	 */
+	private static class SingleWriterLock implements Lock {
+
+		@Override
+		public void lock() {
+		}
+
+		@Override
+		public void lockInterruptibly() {
+		}
+
+		@Override
+		public boolean tryLock() {
+			return true;
+		}
+
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) {
+			return true;
+		}
+
+		@Override
+		public void unlock() {
+		}
+
+		@Override
+		public Condition newCondition() {
+			throw new UnsupportedOperationException();
+		}
+	}
+	
+	/**
+	 * Orders placed and listener callbacks queued by one call while it holds
+	 * item locks, see {@link MarketplaceAuctionImpl#dispatch(Executions)}
+	 */
+	private static class Executions {
+
+		// orders returned to the caller, null if not wanted
+		private final List<Order> orders;
+		private final boolean notify;
+		// each an Order, or a BookEntry accepted or rejected for its reason
+		private List<Object> callbacks;
+		private List<String> reasons;
+
+		/**
+		 * @param orders collects the orders placed, or null
+		 * @param notify whether there are listeners to queue callbacks for
+		 */
+		Executions(List<Order> orders, boolean notify) {
+			this.orders = orders;
+			this.notify = notify;
+		}
 
-		List<Offer> offerList = cache.getOfferForItem(itemId);
+		void placed(Order order) {
+			if (orders != null) {
+				orders.add(order);
+			}
+			queue(order, null);
+		}
 
-		Optional<Offer> op = offerList
-	              			.stream()    
-	              			.min((offer1, offer2)
-	              					-> Integer.compare(offer1.getPricePerUnit(), offer2.getPricePerUnit()));
+		void accepted(BookEntry entry) {
+			queue(entry, null);
+		}
 
-		Integer offerPrice = null;
-		if(op.isPresent()){
-			offerPrice = op.get().getPricePerUnit();
+		void rejected(BookEntry entry, String reason) {
+			queue(entry, reason);
+		}
+
+		private void queue(Object callback, String reason) {
+			if (!notify) {
+				return;
+			}
+			if (callbacks == null) {
+				callbacks = new ArrayList<>();
+				reasons = new ArrayList<>();
+			}
+			callbacks.add(callback);
+			reasons.add(reason);
 		}
-		return offerPrice;
 	}
 	
 }
@@ -1,6 +1,8 @@
 package com.auction;
 
 import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
 
 public interface MarketplaceCache {
 
@@ -17,7 +19,8 @@ public interface MarketplaceCache {
 	public void addOffer(Offer offer);
 	
 	/**
-	 * Get list of bids for given user ID
+	 * Get list of bids for given user ID. The list is a snapshot which
+	 * does not change as bids are matched.
 	 * @param userId
 	 * @return
 	 */
@@ -38,7 +41,83 @@ public interface MarketplaceCache {
 	public List<Offer> getOfferForItem(Integer itemID);
 	
 	/**
-	 * Get list of offers for given user Id
+	 * Get the bid with the highest priority for item ID
+	 * @param itemID
+	 * @return best bid, null if there are no bids
+	 */
+	public Bid getBestBid(Integer itemID);
+	
+	/**
+	 * Get the offer with the highest priority for item ID
+	 * @param itemID
+	 * @return best offer, null if there are no offers
+	 */
+	public Offer getBestOffer(Integer itemID);
+	
+	/**
+	 * Get best bid and offer for item ID, maintained as the book changes
+	 * @param itemID
+	 * @return
+	 */
+	public TopOfBook getTopOfBook(Integer itemID);
+	
+	/**
+	 * Get total quantity of the bids resting at a price, maintained as the
+	 * book changes
+	 * @param itemID
+	 * @param price
+	 * @return 0 if no bids rest at the price
+	 */
+	public long getBidQuantity(Integer itemID, int price);
+	
+	/**
+	 * Get total quantity of the offers resting at a price, maintained as
+	 * the book changes
+	 * @param itemID
+	 * @param price
+	 * @return 0 if no offers rest at the price
+	 */
+	public long getOfferQuantity(Integer itemID, int price);
+	
+	/**
+	 * Get copy of the best bid price levels for item ID
+	 * @param itemID
+	 * @param levels most price levels to copy
+	 * @return price -> total quantity, best price first
+	 */
+	public SortedMap<Integer, Long> getBidLevels(Integer itemID, int levels);
+	
+	/**
+	 * Get copy of the best offer price levels for item ID
+	 * @param itemID
+	 * @param levels most price levels to copy
+	 * @return price -> total quantity, best price first
+	 */
+	public SortedMap<Integer, Long> getOfferLevels(Integer itemID, int levels);
+	
+	/**
+	 * Get IDs of the items bids or offers have been added for
+	 * @return
+	 */
+	public Set<Integer> getItemIds();
+	
+	/**
+	 * Get resting bid by its ID
+	 * @param id
+	 * @return bid, null if no such bid is resting
+	 */
+	public Bid getBid(Integer id);
+	
+	/**
+	 * Get resting offer by its ID
+	 * @param id
+	 * @return offer, null if no such offer is resting
+	 */
+	public Offer getOffer(Integer id);
+	
+	/**
+	 * Get list of offers for given user Id. Like
+	 * {@link #getBidForUser(String)} the list is a snapshot.
 	 * @param userId
 	 * @return
 	 */
@@ -65,6 +144,30 @@ public interface MarketplaceCache {
 	 */
 	public List<Order> getOrdersForBuyer(String userId);
 	
+	/**
+	 * Get open and filled exposure of user ID. This default adds up the
+	 * user's bids, offers and orders on every call, caches which maintain
+	 * it as the book changes should override it.
+	 * @param userId
+	 * @return
+	 */
+	public default UserExposure getExposure(String userId) {
+		UserExposure exposure = new UserExposure(userId);
+		for (Bid bid : getBidForUser(userId)) {
+			exposure.bidChanged(bid.getPricePerUnit(), bid.getQuantity());
+		}
+		for (Offer offer : getOfferForUser(userId)) {
+			exposure.offerChanged(offer.getItemId(), offer.getPricePerUnit(), offer.getQuantity());
+		}
+		for (Order order : getOrdersForBuyer(userId)) {
+			exposure.bought(order.getQuantity());
+		}
+		for (Order order : getOrdersForSeller(userId)) {
+			exposure.sold(order.getQuantity());
+		}
+		return exposure;
+	}
+	
 	/**
 	 * Remove offer
 	 * 
@@ -79,5 +182,86 @@ public interface MarketplaceCache {
 	 */
 	public void removeBid(Bid item);
 	
+	/**
+	 * Reduce the quantity of a resting offer
+	 * 
+	 * @param offer
+	 * @param reduceBy
+	 */
+	public void reduceOffer(Offer offer, Integer reduceBy);
+	
+	/**
+	 * Reduce the quantity of a resting bid
+	 * 
+	 * @param bid
+	 * @param reduceBy
+	 */
+	public void reduceBid(Bid bid, Integer reduceBy);
+	
+	/**
+	 * Read the best bid of an item into a view, which the matcher does on
+	 * every fill. This default copies {@link #getBestBid(Integer)}, caches
+	 * which recreate bids should read their storage instead.
+	 * 
+	 * @param itemID
+	 * @param bid view to read into
+	 * @return false if there are no bids
+	 */
+	public default boolean readBestBid(Integer itemID, RestingEntry bid) {
+		Bid best = getBestBid(itemID);
+		if (best == null) {
+			return false;
+		}
+		bid.set(best);
+		return true;
+	}
+	
+	/**
+	 * Read the best offer of an item into a view, see
+	 * {@link #readBestBid(Integer, RestingEntry)}
+	 * 
+	 * @param itemID
+	 * @param offer view to read into
+	 * @return false if there are no offers
+	 */
+	public default boolean readBestOffer(Integer itemID, RestingEntry offer) {
+		Offer best = getBestOffer(itemID);
+		if (best == null) {
+			return false;
+		}
+		offer.set(best);
+		return true;
+	}
+	
+	/**
+	 * Fill the bid last read into a view, removing it once nothing is left.
+	 * The view keeps the quantity it was read with.
+	 * 
+	 * @param bid view read by {@link #readBestBid(Integer, RestingEntry)}
+	 * @param quantity quantity filled
+	 */
+	public default void fillBid(RestingEntry bid, int quantity) {
+		if (quantity == bid.getQuantity()) {
+			removeBid((Bid) bid.getEntry());
+		} else {
+			reduceBid((Bid) bid.getEntry(), quantity);
+		}
+	}
+	
+	/**
+	 * Fill the offer last read into a view, removing it once nothing is left.
+	 * The view keeps the quantity it was read with.
+	 * 
+	 * @param offer view read by {@link #readBestOffer(Integer, RestingEntry)}
+	 * @param quantity quantity filled
+	 */
+	public default void fillOffer(RestingEntry offer, int quantity) {
+		if (quantity == offer.getQuantity()) {
+			removeOffer((Offer) offer.getEntry());
+		} else {
+			reduceOffer((Offer) offer.getEntry(), quantity);
+		}
+	}
+	
 
 }
@@ -1,6 +1,13 @@
 package com.auction;
 
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * In memory cache for storing items
@@ -10,31 +17,50 @@ import java.util.List;
  */
 public class MarketplaceCacheImpl implements MarketplaceCache{
 
-	// map of user bids
-	private MultiValueMap<String, Bid> userBidMap = new MultiValueMap<>();
-	// map of user offers
-	private MultiValueMap<String, Offer> userOfferMap = new MultiValueMap<>();
-	// map of buyer orders
-	private MultiValueMap<String, Order> buyerOrderMap = new MultiValueMap<>();
-	// map of seller orders
-	private MultiValueMap<String, Order> sellerOrderMap = new MultiValueMap<>();
-	// map of item ID -> bid items
-	private MultiValueMap<Integer, Bid> bidItemMap = new MultiValueMap<>();
-	// map of  item ID -> offer items
-	private MultiValueMap<Integer, Offer> offerItemMap = new MultiValueMap<>();
+	// map of user bids, read as copies as the matcher reduces them in place
+	private ConcurrentMultiValueMap<String, Bid> userBidMap = new ConcurrentMultiValueMap<>(
+			ConcurrentMultiValueMap.DEFAULT_STRIPES, bid -> new Bid(bid.getId(),
+					bid.getItemId(), bid.getQuantity(), bid.getPricePerUnit(), bid.getUserId()));
+	// map of user offers, read as copies
+	private ConcurrentMultiValueMap<String, Offer> userOfferMap = new ConcurrentMultiValueMap<>(
+			ConcurrentMultiValueMap.DEFAULT_STRIPES, offer -> new Offer(offer.getId(),
+					offer.getItemId(), offer.getQuantity(), offer.getPricePerUnit(), offer.getUserId()));
+	// orders by buyer and seller
+	private final OrderHistory orderHistory;
+	// resting bids and offers by ID
+	private final Map<Integer, Bid> bidsById = new ConcurrentHashMap<>();
+	private final Map<Integer, Offer> offersById = new ConcurrentHashMap<>();
+	// user ID -> open and filled exposure
+	private final Map<String, UserExposure> exposureMap = new ConcurrentHashMap<>();
+	// map of item ID -> order book of bids and offers
+	private Map<Integer, OrderBook> bookMap = new ConcurrentHashMap<>();
 	
-	public MarketplaceCacheImpl() {}
+	public MarketplaceCacheImpl() {
+		this(new InMemoryOrderHistory());
+	}
+	
+	/**
+	 * @param orderHistory where placed orders are kept, e.g. a
+	 *        {@link TieredOrderHistory} to bound memory
+	 */
+	public MarketplaceCacheImpl(OrderHistory orderHistory) {
+		this.orderHistory = orderHistory;
+	}
 
 	@Override
 	public void addBid(Bid bid) {		
 		userBidMap.put(bid.getUserId(), bid);		
-		bidItemMap.put(bid.getItemId(), bid);	
+		bidsById.put(bid.getId(), bid);
+		getOrCreateBook(bid.getItemId()).addBid(bid);
+		exposureOf(bid.getUserId()).bidChanged(bid.getPricePerUnit(), bid.getQuantity());
 	}
 
 	@Override
 	public void addOffer(Offer offer) {
 		userOfferMap.put(offer.getUserId(), offer);
-		offerItemMap.put(offer.getItemId(), offer);
+		offersById.put(offer.getId(), offer);
+		getOrCreateBook(offer.getItemId()).addOffer(offer);
+		exposureOf(offer.getUserId()).offerChanged(offer.getItemId(), offer.getPricePerUnit(), offer.getQuantity());
 	}
 
 	@Override
@@ -50,42 +76,167 @@ public class MarketplaceCacheImpl implements MarketplaceCache{
 	
 	@Override
 	public List<Bid> getBidForItem(Integer itemID) {
-		return bidItemMap.get(itemID);
-
+		OrderBook book = bookMap.get(itemID);
+		if(book == null){
+			return Collections.emptyList();
+		}
+		return book.getBids();
 	}
 	
 	@Override
 	public List<Offer> getOfferForItem(Integer itemID) {
-		return offerItemMap.get(itemID);
+		OrderBook book = bookMap.get(itemID);
+		if(book == null){
+			return Collections.emptyList();
+		}
+		return book.getOffers();
+	}
+	
+	@Override
+	public Bid getBestBid(Integer itemID) {
+		OrderBook book = bookMap.get(itemID);
+		if(book == null){
+			return null;
+		}
+		return book.getBestBid();
+	}
+	
+	@Override
+	public Offer getBestOffer(Integer itemID) {
+		OrderBook book = bookMap.get(itemID);
+		if(book == null){
+			return null;
+		}
+		return book.getBestOffer();
+	}
+	
+	@Override
+	public Set<Integer> getItemIds() {
+		return Collections.unmodifiableSet(bookMap.keySet());
+	}
+
+	@Override
+	public Bid getBid(Integer id) {
+		return bidsById.get(id);
+	}
+
+	@Override
+	public Offer getOffer(Integer id) {
+		return offersById.get(id);
+	}
+
+	@Override
+	public TopOfBook getTopOfBook(Integer itemID) {
+		OrderBook book = bookMap.get(itemID);
+		if(book == null){
+			return TopOfBook.EMPTY;
+		}
+		return book.getTopOfBook();
+	}
 
+	@Override
+	public long getBidQuantity(Integer itemID, int price) {
+		OrderBook book = bookMap.get(itemID);
+		if(book == null){
+			return 0;
+		}
+		return book.getBidQuantity(price);
+	}
+
+	@Override
+	public long getOfferQuantity(Integer itemID, int price) {
+		OrderBook book = bookMap.get(itemID);
+		if(book == null){
+			return 0;
+		}
+		return book.getOfferQuantity(price);
+	}
+
+	@Override
+	public SortedMap<Integer, Long> getBidLevels(Integer itemID, int levels) {
+		OrderBook book = bookMap.get(itemID);
+		if(book == null){
+			return new TreeMap<>(Comparator.reverseOrder());
+		}
+		return book.getBidLevels(levels);
+	}
+
+	@Override
+	public SortedMap<Integer, Long> getOfferLevels(Integer itemID, int levels) {
+		OrderBook book = bookMap.get(itemID);
+		if(book == null){
+			return new TreeMap<>();
+		}
+		return book.getOfferLevels(levels);
 	}
 		
 	@Override
 	public void addOrder(Order order) {
-		buyerOrderMap.put(order.getBuyerId(), order);
-		sellerOrderMap.put(order.getSellerId(), order);
+		orderHistory.add(order);
+		exposureOf(order.getBuyerId()).bought(order.getQuantity());
+		exposureOf(order.getSellerId()).sold(order.getQuantity());
 	}
 
 	@Override
 	public List<Order> getOrdersForSeller(String userId) {
-		return sellerOrderMap.get(userId);
+		return orderHistory.getOrdersForSeller(userId);
 	}
 
 	@Override
 	public List<Order> getOrdersForBuyer(String userId) {
-		return buyerOrderMap.get(userId);
+		return orderHistory.getOrdersForBuyer(userId);
+	}
+	
+	@Override
+	public UserExposure getExposure(String userId) {
+		// only bids, offers and orders add users, not queries
+		return exposureMap.getOrDefault(userId, UserExposure.NONE);
 	}
 
 	@Override
 	public void removeOffer(Offer offer) {
 		userOfferMap.removeValue(offer.getUserId(), offer);
-		offerItemMap.removeValue(offer.getItemId(), offer);
+		offersById.remove(offer.getId());
+		OrderBook book = bookMap.get(offer.getItemId());
+		if(book != null){
+			book.removeOffer(offer);
+		}
+		exposureOf(offer.getUserId()).offerChanged(offer.getItemId(), offer.getPricePerUnit(), -offer.getQuantity());
 	}
 
 	@Override
 	public void removeBid(Bid bid) {
 		userBidMap.removeValue(bid.getUserId(), bid);
-		bidItemMap.removeValue(bid.getItemId(), bid);
+		bidsById.remove(bid.getId());
+		OrderBook book = bookMap.get(bid.getItemId());
+		if(book != null){
+			book.removeBid(bid);
+		}
+		exposureOf(bid.getUserId()).bidChanged(bid.getPricePerUnit(), -bid.getQuantity());
+	}
+	
+	@Override
+	public void reduceOffer(Offer offer, Integer reduceBy) {
+		getOrCreateBook(offer.getItemId()).reduceOffer(offer, reduceBy);
+		// publishes the reduced quantity to the next read
+		userOfferMap.touch(offer.getUserId());
+		exposureOf(offer.getUserId()).offerChanged(offer.getItemId(), offer.getPricePerUnit(), -reduceBy);
+	}
+
+	@Override
+	public void reduceBid(Bid bid, Integer reduceBy) {
+		getOrCreateBook(bid.getItemId()).reduceBid(bid, reduceBy);
+		// publishes the reduced quantity to the next read
+		userBidMap.touch(bid.getUserId());
+		exposureOf(bid.getUserId()).bidChanged(bid.getPricePerUnit(), -reduceBy);
+	}
+	
+	private UserExposure exposureOf(String userId) {
+		return exposureMap.computeIfAbsent(userId, UserExposure::new);
+	}
+	
+	private OrderBook getOrCreateBook(Integer itemId) {
+		return bookMap.computeIfAbsent(itemId, OrderBook::new);
 	}
 
 }
@@ -34,7 +34,8 @@ public class MultiValueMap<K, V> {
 		if(list == null){
 			return Collections.emptyList();
 		}
-		return list;
+		// copy so callers never see the list change under them
+		return Collections.unmodifiableList(new ArrayList<>(list));
 	}
 	
 	public synchronized void remove(K key){
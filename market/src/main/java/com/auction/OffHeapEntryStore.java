@@ -0,0 +1,246 @@
+package com.auction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Off-heap storage for resting bids or offers as fixed size records in
+ * {@link DirectMemory}. Freed records are chained into a free list and
+ * reused. The ID index and the per-user lists are off-heap as well, so the
+ * heap only holds the interned user IDs.
+ * 
+ * Entries are recreated from their record when read, so callers holding a
+ * bid or offer do not see later changes to its quantity.
+ * 
+ * Not thread safe.
+ * 
+ * @author Keith
+ *
+ */
+public class OffHeapEntryStore<T extends BookEntry> implements SlotStore<T> {
+
+	// record layout
+	private static final int ID = 0;
+	private static final int ITEM_ID = 8;
+	private static final int PRICE = 12;
+	private static final int QUANTITY = 16;
+	private static final int USER = 20;
+	private static final int LEVEL_NEXT = 24;
+	private static final int LEVEL_PREV = 28;
+	private static final int USER_NEXT = 32;
+	private static final int USER_PREV = 36;
+	public static final int RECORD_SIZE = 40;
+
+	// per-user layout
+	private static final int USER_HEAD = 0;
+	private static final int USER_TAIL = 4;
+	private static final int USER_RECORD_SIZE = 8;
+
+	private final DirectMemory records = new DirectMemory();
+	private final DirectMemory userLists = new DirectMemory(16);
+	private final OffHeapLongIntHashMap slotsById;
+	private final UserIdInterner users;
+	private final EntryFactory<T> factory;
+
+	private int freeHead = NONE;
+	private int used;
+	private int userCapacity;
+	private int size;
+
+	/**
+	 * @param initialCapacity number of records to preallocate
+	 * @param users interner shared with the other stores of the cache
+	 * @param factory recreates entries from records
+	 */
+	public OffHeapEntryStore(int initialCapacity, UserIdInterner users, EntryFactory<T> factory) {
+		this.users = users;
+		this.factory = factory;
+		records.ensureCapacity((long) Math.max(initialCapacity, 1) * RECORD_SIZE);
+		slotsById = new OffHeapLongIntHashMap(initialCapacity);
+	}
+
+	/**
+	 * Store an entry, linking it to the end of its user's entries. The entry
+	 * is not yet linked into a price level.
+	 * 
+	 * @param entry
+	 * @return slot of the entry
+	 */
+	public int add(T entry) {
+		int user = users.intern(entry.getUserId());
+		int slot = allocate();
+		long record = offset(slot);
+		records.putLong(record + ID, entry.getId());
+		records.putInt(record + ITEM_ID, entry.getItemId());
+		records.putInt(record + PRICE, entry.getPricePerUnit());
+		records.putInt(record + QUANTITY, entry.getQuantity());
+		records.putInt(record + USER, user);
+		records.putInt(record + LEVEL_NEXT, NONE);
+		records.putInt(record + LEVEL_PREV, NONE);
+		slotsById.put(entry.getId(), slot);
+
+		ensureUserCapacity(user);
+		long userRecord = (long) user * USER_RECORD_SIZE;
+		int tail = userLists.getInt(userRecord + USER_TAIL);
+		records.putInt(record + USER_PREV, tail);
+		records.putInt(record + USER_NEXT, NONE);
+		if (tail == NONE) {
+			userLists.putInt(userRecord + USER_HEAD, slot);
+		} else {
+			records.putInt(offset(tail) + USER_NEXT, slot);
+		}
+		userLists.putInt(userRecord + USER_TAIL, slot);
+		size++;
+		return slot;
+	}
+
+	/**
+	 * Free the record of an entry, which must already be unlinked from its
+	 * price level
+	 * 
+	 * @param slot
+	 */
+	public void remove(int slot) {
+		long record = offset(slot);
+		long userRecord = (long) records.getInt(record + USER) * USER_RECORD_SIZE;
+		int prev = records.getInt(record + USER_PREV);
+		int next = records.getInt(record + USER_NEXT);
+		if (prev == NONE) {
+			userLists.putInt(userRecord + USER_HEAD, next);
+		} else {
+			records.putInt(offset(prev) + USER_NEXT, next);
+		}
+		if (next == NONE) {
+			userLists.putInt(userRecord + USER_TAIL, prev);
+		} else {
+			records.putInt(offset(next) + USER_PREV, prev);
+		}
+		slotsById.remove(records.getLong(record + ID));
+		records.putInt(record + LEVEL_NEXT, freeHead);
+		freeHead = slot;
+		size--;
+	}
+
+	/**
+	 * @return slot of a stored entry, {@link #NONE} if not stored
+	 */
+	public int slotOf(T entry) {
+		return slotOf(entry.getId());
+	}
+
+	/**
+	 * @return slot of the entry with the given ID, {@link #NONE} if not stored
+	 */
+	public int slotOf(int id) {
+		int slot = slotsById.get(id);
+		return slot == OffHeapLongIntHashMap.MISSING ? NONE : slot;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getId(int slot) {
+		return records.getLong(offset(slot) + ID);
+	}
+
+	public int getItemId(int slot) {
+		return records.getInt(offset(slot) + ITEM_ID);
+	}
+
+	/**
+	 * @return ID of the user of the entry in a slot
+	 */
+	public String getUserId(int slot) {
+		return users.getUserId(records.getInt(offset(slot) + USER));
+	}
+
+	@Override
+	public int getPrice(int slot) {
+		return records.getInt(offset(slot) + PRICE);
+	}
+
+	@Override
+	public int getQuantity(int slot) {
+		return records.getInt(offset(slot) + QUANTITY);
+	}
+
+	@Override
+	public void setQuantity(int slot, int quantity) {
+		records.putInt(offset(slot) + QUANTITY, quantity);
+	}
+
+	@Override
+	public int getLevelNext(int slot) {
+		return records.getInt(offset(slot) + LEVEL_NEXT);
+	}
+
+	@Override
+	public void setLevelNext(int slot, int next) {
+		records.putInt(offset(slot) + LEVEL_NEXT, next);
+	}
+
+	@Override
+	public int getLevelPrev(int slot) {
+		return records.getInt(offset(slot) + LEVEL_PREV);
+	}
+
+	@Override
+	public void setLevelPrev(int slot, int prev) {
+		records.putInt(offset(slot) + LEVEL_PREV, prev);
+	}
+
+	@Override
+	public T getEntry(int slot) {
+		long record = offset(slot);
+		return factory.create((int) records.getLong(record + ID),
+				records.getInt(record + ITEM_ID),
+				records.getInt(record + QUANTITY),
+				records.getInt(record + PRICE),
+				users.getUserId(records.getInt(record + USER)));
+	}
+
+	/**
+	 * Get entries of a user in the order they were added
+	 * 
+	 * @param userId
+	 * @return
+	 */
+	public List<T> getEntriesForUser(String userId) {
+		List<T> list = new ArrayList<>();
+		int user = users.find(userId);
+		if (user == UserIdInterner.MISSING || user >= userCapacity) {
+			return list;
+		}
+		for (int slot = userLists.getInt((long) user * USER_RECORD_SIZE + USER_HEAD); slot != NONE;
+				slot = records.getInt(offset(slot) + USER_NEXT)) {
+			list.add(getEntry(slot));
+		}
+		return list;
+	}
+
+	private int allocate() {
+		if (freeHead != NONE) {
+			int slot = freeHead;
+			freeHead = records.getInt(offset(slot) + LEVEL_NEXT);
+			return slot;
+		}
+		records.ensureCapacity((long) (used + 1) * RECORD_SIZE);
+		return used++;
+	}
+
+	private void ensureUserCapacity(int user) {
+		if (user < userCapacity) {
+			return;
+		}
+		int capacity = Math.max(user + 1, userCapacity * 2);
+		userLists.ensureCapacity((long) capacity * USER_RECORD_SIZE);
+		userLists.fillInt((long) userCapacity * USER_RECORD_SIZE,
+				(long) (capacity - userCapacity) * USER_RECORD_SIZE / 4, NONE);
+		userCapacity = capacity;
+	}
+
+	private static long offset(int slot) {
+		return (long) slot * RECORD_SIZE;
+	}
+}
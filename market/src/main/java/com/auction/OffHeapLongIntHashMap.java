@@ -0,0 +1,141 @@
+package com.auction;
+
+/**
+ * Open addressing hash map from long keys to int values stored in
+ * {@link DirectMemory}, so a large index does not add to the heap. Each
+ * bucket is 16 bytes: the key followed by the value. Not thread safe.
+ * 
+ * @author Keith
+ *
+ */
+public class OffHeapLongIntHashMap {
+
+	public static final int MISSING = -1;
+
+	private static final long EMPTY_KEY = Long.MIN_VALUE;
+	private static final int BUCKET_SIZE = 16;
+
+	private DirectMemory memory;
+	private long mask;
+	private long size;
+
+	public OffHeapLongIntHashMap(long initialCapacity) {
+		long capacity = Long.highestOneBit(Math.max(initialCapacity, 8) * 2 - 1);
+		allocate(capacity);
+	}
+
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return value for key, {@link #MISSING} if absent
+	 */
+	public int get(long key) {
+		long index = index(key);
+		long found;
+		while ((found = keyAt(index)) != EMPTY_KEY) {
+			if (found == key) {
+				return valueAt(index);
+			}
+			index = (index + 1) & mask;
+		}
+		return MISSING;
+	}
+
+	public void put(long key, int value) {
+		if (key == EMPTY_KEY) {
+			throw new IllegalArgumentException("Unsupported key: " + key);
+		}
+		long index = index(key);
+		long found;
+		while ((found = keyAt(index)) != EMPTY_KEY) {
+			if (found == key) {
+				memory.putInt(index * BUCKET_SIZE + 8, value);
+				return;
+			}
+			index = (index + 1) & mask;
+		}
+		memory.putLong(index * BUCKET_SIZE, key);
+		memory.putInt(index * BUCKET_SIZE + 8, value);
+		// keep load factor at or below a half
+		if (++size * 2 > mask + 1) {
+			rehash();
+		}
+	}
+
+	/**
+	 * @return removed value, {@link #MISSING} if absent
+	 */
+	public int remove(long key) {
+		long index = index(key);
+		long found;
+		while ((found = keyAt(index)) != EMPTY_KEY) {
+			if (found == key) {
+				int value = valueAt(index);
+				memory.putLong(index * BUCKET_SIZE, EMPTY_KEY);
+				size--;
+				closeGap(index);
+				return value;
+			}
+			index = (index + 1) & mask;
+		}
+		return MISSING;
+	}
+
+	/**
+	 * Shift back entries following a removed bucket so lookups never stop early
+	 */
+	private void closeGap(long gap) {
+		long index = (gap + 1) & mask;
+		long key;
+		while ((key = keyAt(index)) != EMPTY_KEY) {
+			long home = index(key);
+			// move entry if its home is not between the gap and its position
+			if (((index - home) & mask) >= ((index - gap) & mask)) {
+				memory.putLong(gap * BUCKET_SIZE, key);
+				memory.putInt(gap * BUCKET_SIZE + 8, valueAt(index));
+				memory.putLong(index * BUCKET_SIZE, EMPTY_KEY);
+				gap = index;
+			}
+			index = (index + 1) & mask;
+		}
+	}
+
+	private void rehash() {
+		DirectMemory oldMemory = memory;
+		long oldCapacity = mask + 1;
+		allocate(oldCapacity * 2);
+		size = 0;
+		for (long i = 0; i < oldCapacity; i++) {
+			long key = oldMemory.getLong(i * BUCKET_SIZE);
+			if (key != EMPTY_KEY) {
+				put(key, oldMemory.getInt(i * BUCKET_SIZE + 8));
+			}
+		}
+	}
+
+	private void allocate(long capacity) {
+		long bytes = capacity * BUCKET_SIZE;
+		memory = new DirectMemory(bytes < (1L << DirectMemory.DEFAULT_CHUNK_BITS)
+				? Long.numberOfTrailingZeros(bytes) : DirectMemory.DEFAULT_CHUNK_BITS);
+		memory.ensureCapacity(bytes);
+		mask = capacity - 1;
+		for (long i = 0; i < capacity; i++) {
+			memory.putLong(i * BUCKET_SIZE, EMPTY_KEY);
+		}
+	}
+
+	private long keyAt(long index) {
+		return memory.getLong(index * BUCKET_SIZE);
+	}
+
+	private int valueAt(long index) {
+		return memory.getInt(index * BUCKET_SIZE + 8);
+	}
+
+	private long index(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (hash ^ (hash >>> 32)) & mask;
+	}
+}
@@ -0,0 +1,125 @@
+package com.auction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only off-heap storage of orders as fixed size records in
+ * {@link DirectMemory}, chained per buyer and per seller so that orders of a
+ * user can be read back in the order they were placed. Not thread safe.
+ * 
+ * @author Keith
+ *
+ */
+public class OffHeapOrderStore {
+
+	private static final int NONE = -1;
+
+	// record layout
+	private static final int ID = 0;
+	private static final int ITEM_ID = 8;
+	private static final int QUANTITY = 12;
+	private static final int PRICE = 16;
+	private static final int BUYER = 20;
+	private static final int SELLER = 24;
+	private static final int BUYER_NEXT = 28;
+	private static final int SELLER_NEXT = 32;
+	public static final int RECORD_SIZE = 40;
+
+	// per-user layout
+	private static final int BUYER_HEAD = 0;
+	private static final int BUYER_TAIL = 4;
+	private static final int SELLER_HEAD = 8;
+	private static final int SELLER_TAIL = 12;
+	private static final int USER_RECORD_SIZE = 16;
+
+	private final DirectMemory records = new DirectMemory();
+	private final DirectMemory userLists = new DirectMemory(16);
+	private final UserIdInterner users;
+
+	private int size;
+	private int userCapacity;
+
+	public OffHeapOrderStore(UserIdInterner users) {
+		this.users = users;
+	}
+
+	public void add(Order order) {
+		int buyer = users.intern(order.getBuyerId());
+		int seller = users.intern(order.getSellerId());
+		ensureUserCapacity(Math.max(buyer, seller));
+
+		int slot = size;
+		long record = (long) slot * RECORD_SIZE;
+		records.ensureCapacity(record + RECORD_SIZE);
+		records.putLong(record + ID, order.getId());
+		records.putInt(record + ITEM_ID, order.getItemId());
+		records.putInt(record + QUANTITY, order.getQuantity());
+		records.putInt(record + PRICE, order.getPricePerUnit());
+		records.putInt(record + BUYER, buyer);
+		records.putInt(record + SELLER, seller);
+		records.putInt(record + BUYER_NEXT, NONE);
+		records.putInt(record + SELLER_NEXT, NONE);
+
+		append(buyer, BUYER_HEAD, BUYER_TAIL, BUYER_NEXT, slot);
+		append(seller, SELLER_HEAD, SELLER_TAIL, SELLER_NEXT, slot);
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public List<Order> getOrdersForBuyer(String userId) {
+		return getOrders(userId, BUYER_HEAD, BUYER_NEXT);
+	}
+
+	public List<Order> getOrdersForSeller(String userId) {
+		return getOrders(userId, SELLER_HEAD, SELLER_NEXT);
+	}
+
+	private List<Order> getOrders(String userId, int headField, int nextField) {
+		List<Order> list = new ArrayList<>();
+		int user = users.find(userId);
+		if (user == UserIdInterner.MISSING || user >= userCapacity) {
+			return list;
+		}
+		for (int slot = userLists.getInt((long) user * USER_RECORD_SIZE + headField); slot != NONE;
+				slot = records.getInt((long) slot * RECORD_SIZE + nextField)) {
+			list.add(getOrder(slot));
+		}
+		return list;
+	}
+
+	private Order getOrder(int slot) {
+		long record = (long) slot * RECORD_SIZE;
+		return new Order((int) records.getLong(record + ID),
+				records.getInt(record + ITEM_ID),
+				records.getInt(record + QUANTITY),
+				records.getInt(record + PRICE),
+				users.getUserId(records.getInt(record + BUYER)),
+				users.getUserId(records.getInt(record + SELLER)));
+	}
+
+	private void append(int user, int headField, int tailField, int nextField, int slot) {
+		long userRecord = (long) user * USER_RECORD_SIZE;
+		int tail = userLists.getInt(userRecord + tailField);
+		if (tail == NONE) {
+			userLists.putInt(userRecord + headField, slot);
+		} else {
+			records.putInt((long) tail * RECORD_SIZE + nextField, slot);
+		}
+		userLists.putInt(userRecord + tailField, slot);
+	}
+
+	private void ensureUserCapacity(int user) {
+		if (user < userCapacity) {
+			return;
+		}
+		int capacity = Math.max(user + 1, userCapacity * 2);
+		userLists.ensureCapacity((long) capacity * USER_RECORD_SIZE);
+		userLists.fillInt((long) userCapacity * USER_RECORD_SIZE,
+				(long) (capacity - userCapacity) * USER_RECORD_SIZE / 4, NONE);
+		userCapacity = capacity;
+	}
+}
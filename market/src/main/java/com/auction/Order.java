@@ -13,7 +13,7 @@ public class Order {
 	//generates unique id for order(for simplicity)
 	private static AtomicInteger sequenceGenerator = new AtomicInteger();
 	
-	private final Integer id = sequenceGenerator.incrementAndGet();
+	private final Integer id;
 	private final Integer itemId;
 	private final Integer quantity;
 	private final Integer pricePerUnit;
@@ -21,6 +21,31 @@ public class Order {
 	private final String sellerId;
 	
 	public Order(Integer itemId, Integer quantity, Integer pricePerUnit, String buyerId, String sellerId){
+		this(sequenceGenerator.incrementAndGet(), itemId, quantity, pricePerUnit, buyerId, sellerId);
+	}
+	
+	/**
+	 * Make sure IDs up to lastId, e.g. ones read back from storage, are never
+	 * generated again
+	 * 
+	 * @param lastId
+	 */
+	static void reserveIds(int lastId) {
+		sequenceGenerator.accumulateAndGet(lastId, Math::max);
+	}
+	
+	/**
+	 * @return last ID generated or reserved
+	 */
+	static int getLastId() {
+		return sequenceGenerator.get();
+	}
+	
+	/**
+	 * Recreate an order with a known ID, e.g. when read back from storage
+	 */
+	Order(Integer id, Integer itemId, Integer quantity, Integer pricePerUnit, String buyerId, String sellerId){
+		this.id = Objects.requireNonNull(id);
 		this.itemId = Objects.requireNonNull(itemId);
 		this.quantity = Objects.requireNonNull(quantity);
 		this.pricePerUnit = Objects.requireNonNull(pricePerUnit);
@@ -28,6 +53,10 @@ public class Order {
 		this.sellerId = Objects.requireNonNull(sellerId);
 	}
 	
+	public Integer getId() {
+		return id;
+	}
+	
 	public Integer getItemId() {
 		return itemId;
 	}
@@ -0,0 +1,195 @@
+package com.auction;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.SortedMap;
+
+/**
+ * Order book for a single item. Bids are sorted highest price first and
+ * offers lowest price first, with time priority within a price.
+ * 
+ * The top of book is republished after every change so it can be read
+ * without locking.
+ * 
+ * @author Keith
+ *
+ */
+public class OrderBook {
+
+	private final Integer itemId;
+	private final BookSide<Bid> bids = new BookSide<>(Comparator.reverseOrder());
+	private final BookSide<Offer> offers = new BookSide<>(Comparator.naturalOrder());
+	
+	private volatile TopOfBook topOfBook = TopOfBook.EMPTY;
+
+	public OrderBook(Integer itemId) {
+		this.itemId = itemId;
+	}
+
+	public Integer getItemId() {
+		return itemId;
+	}
+
+	public synchronized void addBid(Bid bid) {
+		bids.add(bid);
+		updateTopOfBook();
+	}
+
+	public synchronized void addOffer(Offer offer) {
+		offers.add(offer);
+		updateTopOfBook();
+	}
+
+	public synchronized boolean removeBid(Bid bid) {
+		boolean removed = bids.remove(bid);
+		updateTopOfBook();
+		return removed;
+	}
+
+	public synchronized boolean removeOffer(Offer offer) {
+		boolean removed = offers.remove(offer);
+		updateTopOfBook();
+		return removed;
+	}
+
+	/**
+	 * Reduce quantity of a resting bid
+	 * 
+	 * @param bid
+	 * @param reduceBy
+	 */
+	public synchronized void reduceBid(Bid bid, int reduceBy) {
+		if (!bids.reduce(bid, reduceBy)) {
+			bid.setQuantity(bid.getQuantity() - reduceBy);
+		}
+		updateTopOfBook();
+	}
+
+	/**
+	 * Reduce quantity of a resting offer
+	 * 
+	 * @param offer
+	 * @param reduceBy
+	 */
+	public synchronized void reduceOffer(Offer offer, int reduceBy) {
+		if (!offers.reduce(offer, reduceBy)) {
+			offer.setQuantity(offer.getQuantity() - reduceBy);
+		}
+		updateTopOfBook();
+	}
+
+	/**
+	 * Get best bid and offer. Does not lock the book.
+	 * 
+	 * @return
+	 */
+	public TopOfBook getTopOfBook() {
+		return topOfBook;
+	}
+
+	public synchronized Bid getBestBid() {
+		return bids.best();
+	}
+
+	public synchronized Offer getBestOffer() {
+		return offers.best();
+	}
+
+	/**
+	 * Get copy of bids in price-time priority
+	 * 
+	 * @return
+	 */
+	public synchronized List<Bid> getBids() {
+		return bids.toList();
+	}
+
+	/**
+	 * Get copy of offers in price-time priority
+	 * 
+	 * @return
+	 */
+	public synchronized List<Offer> getOffers() {
+		return offers.toList();
+	}
+
+	/**
+	 * Get total quantity of the bids resting at a price
+	 * 
+	 * @param price
+	 * @return
+	 */
+	public synchronized long getBidQuantity(Integer price) {
+		return bids.getQuantity(price);
+	}
+
+	/**
+	 * Get total quantity of the offers resting at a price
+	 * 
+	 * @param price
+	 * @return
+	 */
+	public synchronized long getOfferQuantity(Integer price) {
+		return offers.getQuantity(price);
+	}
+
+	/**
+	 * Get copy of the best bid levels
+	 * 
+	 * @param count most levels to copy
+	 * @return price -> total quantity, best price first
+	 */
+	public synchronized SortedMap<Integer, Long> getBidLevels(int count) {
+		return bids.getLevels(count);
+	}
+
+	/**
+	 * Get copy of the best offer levels
+	 * 
+	 * @param count most levels to copy
+	 * @return price -> total quantity, best price first
+	 */
+	public synchronized SortedMap<Integer, Long> getOfferLevels(int count) {
+		return offers.getLevels(count);
+	}
+
+	/**
+	 * Live view of the bids in price-time priority. Only to be iterated by
+	 * the thread that modifies the book.
+	 * 
+	 * @return
+	 */
+	public Iterable<Bid> bidsByPriority() {
+		return bids;
+	}
+
+	/**
+	 * Live view of the offers in price-time priority. Only to be iterated by
+	 * the thread that modifies the book.
+	 * 
+	 * @return
+	 */
+	public Iterable<Offer> offersByPriority() {
+		return offers;
+	}
+
+	private void updateTopOfBook() {
+		PriceLevel<Bid> bestBid = bids.bestLevel();
+		PriceLevel<Offer> bestOffer = offers.bestLevel();
+		Integer bidPrice = bestBid == null ? null : bestBid.getPrice();
+		long bidQuantity = bestBid == null ? 0 : bestBid.getQuantity();
+		Integer offerPrice = bestOffer == null ? null : bestOffer.getPrice();
+		long offerQuantity = bestOffer == null ? 0 : bestOffer.getQuantity();
+
+		TopOfBook current = topOfBook;
+		if (Objects.equals(bidPrice, current.getBidPrice())
+				&& bidQuantity == current.getBidQuantity()
+				&& Objects.equals(offerPrice, current.getOfferPrice())
+				&& offerQuantity == current.getOfferQuantity()) {
+			// unchanged, avoid publishing a new snapshot
+			return;
+		}
+		topOfBook = new TopOfBook(bidPrice, bidQuantity, offerPrice, offerQuantity);
+	}
+}
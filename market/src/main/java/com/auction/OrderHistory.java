@@ -0,0 +1,32 @@
+package com.auction;
+
+import java.util.List;
+
+/**
+ * Storage of the orders placed by an auction, by buyer and by seller
+ * 
+ * @author Keith
+ *
+ */
+public interface OrderHistory {
+
+	/**
+	 * Add a placed order
+	 * @param order
+	 */
+	public void add(Order order);
+
+	/**
+	 * Get orders for buyer, in the order they were placed
+	 * @param userId
+	 * @return
+	 */
+	public List<Order> getOrdersForBuyer(String userId);
+
+	/**
+	 * Get orders for seller, in the order they were placed
+	 * @param userId
+	 * @return
+	 */
+	public List<Order> getOrdersForSeller(String userId);
+}
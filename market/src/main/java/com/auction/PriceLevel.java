@@ -0,0 +1,161 @@
+package com.auction;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Entries resting at a single price, in time priority, together with their
+ * total quantity.
+ * 
+ * Entries are kept in a doubly linked queue indexed by the entry itself
+ * (bids and offers are equal by ID), so removing one from anywhere in the
+ * queue, e.g. to cancel it, is constant time. An entry added more than once
+ * is removed first occurrence first.
+ * 
+ * @author Keith
+ *
+ */
+public class PriceLevel<T extends BookEntry> {
+
+	private final Integer price;
+	// first node of each entry, later occurrences are chained from it
+	private final Map<T, Node<T>> index = new HashMap<>();
+	private final Collection<T> entries = new Entries();
+	private Node<T> head;
+	private Node<T> tail;
+	private int size;
+	private long quantity;
+
+	public PriceLevel(Integer price) {
+		this.price = price;
+	}
+
+	public Integer getPrice() {
+		return price;
+	}
+
+	/**
+	 * Total quantity of all entries at this price
+	 * 
+	 * @return
+	 */
+	public long getQuantity() {
+		return quantity;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public T first() {
+		return head == null ? null : head.entry;
+	}
+
+	/**
+	 * @return live view of the entries in time priority
+	 */
+	public Collection<T> getEntries() {
+		return entries;
+	}
+
+	void add(T entry) {
+		Node<T> node = new Node<>(entry);
+		Node<T> first = index.putIfAbsent(entry, node);
+		if (first != null) {
+			while (first.duplicate != null) {
+				first = first.duplicate;
+			}
+			first.duplicate = node;
+		}
+		node.prev = tail;
+		if (tail == null) {
+			head = node;
+		} else {
+			tail.next = node;
+		}
+		tail = node;
+		size++;
+		quantity += entry.getQuantity();
+	}
+
+	boolean remove(T entry) {
+		Node<T> node = index.remove(entry);
+		if (node == null) {
+			return false;
+		}
+		if (node.duplicate != null) {
+			index.put(entry, node.duplicate);
+		}
+		if (node.prev == null) {
+			head = node.next;
+		} else {
+			node.prev.next = node.next;
+		}
+		if (node.next == null) {
+			tail = node.prev;
+		} else {
+			node.next.prev = node.prev;
+		}
+		size--;
+		quantity -= entry.getQuantity();
+		return true;
+	}
+
+	/**
+	 * Reduce quantity of an entry at this level
+	 */
+	void reduce(T entry, int reduceBy) {
+		entry.setQuantity(entry.getQuantity() - reduceBy);
+		quantity -= reduceBy;
+	}
+
+	private static class Node<T> {
+		private final T entry;
+		private Node<T> prev;
+		private Node<T> next;
+		// next occurrence of the same entry
+		private Node<T> duplicate;
+
+		private Node(T entry) {
+			this.entry = entry;
+		}
+	}
+
+	private class Entries extends AbstractCollection<T> {
+
+		@Override
+		public Iterator<T> iterator() {
+			return new Iterator<T>() {
+				private Node<T> next = head;
+
+				@Override
+				public boolean hasNext() {
+					return next != null;
+				}
+
+				@Override
+				public T next() {
+					if (next == null) {
+						throw new NoSuchElementException();
+					}
+					T entry = next.entry;
+					next = next.next;
+					return entry;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package com.auction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Price levels of one side of a book held in sorted primitive arrays. Levels
+ * are ordered worst price first so the best level is always the last one,
+ * which makes consuming the best level cheap. Each level records the first
+ * and last slot of its FIFO queue of entries and their total quantity; the
+ * slots themselves are chained through the links of a {@link SlotStore}.
+ * 
+ * Not thread safe.
+ * 
+ * @author Keith
+ *
+ */
+public class PriceLevels {
+
+	public static final int NONE = -1;
+
+	// true for bids, where the highest price is best
+	private final boolean highestBest;
+	private int[] prices = new int[8];
+	private int[] heads = new int[8];
+	private int[] tails = new int[8];
+	private long[] quantities = new long[8];
+	private int size;
+
+	public PriceLevels(boolean highestBest) {
+		this.highestBest = highestBest;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return index of best level, {@link #NONE} if empty
+	 */
+	public int best() {
+		return size - 1;
+	}
+
+	/**
+	 * Find level by binary search
+	 * 
+	 * @param price
+	 * @return index of level, or (-(insertion point) - 1) if there is none
+	 */
+	public int find(int price) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int compare = compare(prices[mid], price);
+			if (compare < 0) {
+				low = mid + 1;
+			} else if (compare > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Find level for price, inserting an empty one if there is none
+	 * 
+	 * @param price
+	 * @return index of level
+	 */
+	public int findOrInsert(int price) {
+		int index = find(price);
+		if (index >= 0) {
+			return index;
+		}
+		index = -(index + 1);
+		if (size == prices.length) {
+			grow();
+		}
+		int moved = size - index;
+		System.arraycopy(prices, index, prices, index + 1, moved);
+		System.arraycopy(heads, index, heads, index + 1, moved);
+		System.arraycopy(tails, index, tails, index + 1, moved);
+		System.arraycopy(quantities, index, quantities, index + 1, moved);
+		prices[index] = price;
+		heads[index] = NONE;
+		tails[index] = NONE;
+		quantities[index] = 0;
+		size++;
+		return index;
+	}
+
+	public void remove(int index) {
+		int moved = size - index - 1;
+		System.arraycopy(prices, index + 1, prices, index, moved);
+		System.arraycopy(heads, index + 1, heads, index, moved);
+		System.arraycopy(tails, index + 1, tails, index, moved);
+		System.arraycopy(quantities, index + 1, quantities, index, moved);
+		size--;
+	}
+
+	public int getPrice(int index) {
+		return prices[index];
+	}
+
+	public int getHead(int index) {
+		return heads[index];
+	}
+
+	public void setHead(int index, int slot) {
+		heads[index] = slot;
+	}
+
+	public int getTail(int index) {
+		return tails[index];
+	}
+
+	public void setTail(int index, int slot) {
+		tails[index] = slot;
+	}
+
+	public long getQuantity(int index) {
+		return quantities[index];
+	}
+
+	public void addQuantity(int index, long quantity) {
+		quantities[index] += quantity;
+	}
+
+	/**
+	 * Get total quantity resting at a price
+	 * 
+	 * @param price
+	 * @return 0 if there is no level at the price
+	 */
+	public long getQuantityAt(int price) {
+		int index = find(price);
+		return index < 0 ? 0 : quantities[index];
+	}
+
+	/**
+	 * Get a copy of the total quantity of the best levels
+	 * 
+	 * @param count most levels to copy
+	 * @return price -> total quantity, best price first
+	 */
+	public SortedMap<Integer, Long> getLevels(int count) {
+		SortedMap<Integer, Long> copy = new TreeMap<>(
+				highestBest ? Comparator.<Integer>reverseOrder() : Comparator.<Integer>naturalOrder());
+		for (int level = best(); level >= 0 && copy.size() < count; level--) {
+			copy.put(prices[level], quantities[level]);
+		}
+		return copy;
+	}
+
+	/**
+	 * Append slot to the FIFO queue of its price level
+	 * 
+	 * @param store
+	 * @param slot
+	 */
+	public void link(SlotStore<?> store, int slot) {
+		int level = findOrInsert(store.getPrice(slot));
+		int tail = tails[level];
+		store.setLevelPrev(slot, tail);
+		store.setLevelNext(slot, SlotStore.NONE);
+		if (tail == SlotStore.NONE) {
+			heads[level] = slot;
+		} else {
+			store.setLevelNext(tail, slot);
+		}
+		tails[level] = slot;
+		quantities[level] += store.getQuantity(slot);
+	}
+
+	/**
+	 * Remove slot from the FIFO queue of its price level, dropping the level
+	 * once empty
+	 * 
+	 * @param store
+	 * @param slot
+	 */
+	public void unlink(SlotStore<?> store, int slot) {
+		int level = find(store.getPrice(slot));
+		int prev = store.getLevelPrev(slot);
+		int next = store.getLevelNext(slot);
+		if (prev == SlotStore.NONE) {
+			heads[level] = next;
+		} else {
+			store.setLevelNext(prev, next);
+		}
+		if (next == SlotStore.NONE) {
+			tails[level] = prev;
+		} else {
+			store.setLevelPrev(next, prev);
+		}
+		quantities[level] -= store.getQuantity(slot);
+		if (heads[level] == SlotStore.NONE) {
+			remove(level);
+		}
+	}
+
+	/**
+	 * Reduce quantity of a linked slot
+	 * 
+	 * @param store
+	 * @param slot
+	 * @param reduceBy
+	 */
+	public void reduce(SlotStore<?> store, int slot, int reduceBy) {
+		store.setQuantity(slot, store.getQuantity(slot) - reduceBy);
+		quantities[find(store.getPrice(slot))] -= reduceBy;
+	}
+
+	/**
+	 * Get entries in price-time priority
+	 * 
+	 * @param store
+	 * @return
+	 */
+	public <T extends BookEntry> List<T> getEntries(SlotStore<T> store) {
+		List<T> list = new ArrayList<>();
+		for (int level = best(); level >= 0; level--) {
+			for (int slot = heads[level]; slot != SlotStore.NONE; slot = store.getLevelNext(slot)) {
+				list.add(store.getEntry(slot));
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Order prices worst first
+	 */
+	private int compare(int price1, int price2) {
+		return highestBest ? Integer.compare(price1, price2) : Integer.compare(price2, price1);
+	}
+
+	private void grow() {
+		int capacity = prices.length * 2;
+		prices = Arrays.copyOf(prices, capacity);
+		heads = Arrays.copyOf(heads, capacity);
+		tails = Arrays.copyOf(tails, capacity);
+		quantities = Arrays.copyOf(quantities, capacity);
+	}
+}
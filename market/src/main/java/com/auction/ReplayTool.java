@@ -0,0 +1,353 @@
+package com.auction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replays a captured stream of bids, offers, cancels and amendments through
+ * a fresh {@link MarketplaceAuctionImpl} as fast as one thread can, to
+ * compare the speed and outcome of matching changes on real order flow.
+ * 
+ * The stream is read from a {@link Journal} or from the events an
+ * {@link EventLog} wrote to application.log, and held in memory so reading
+ * it is not timed. Each replay reports throughput, a latency histogram per
+ * type of command and a hash of the resting books it ends with. Entries keep
+ * the IDs they were captured with, so replaying the same stream always
+ * gives the same hash.
+ * 
+ * java -cp auction.jar com.auction.ReplayTool journal|log path [iterations]
+ * 
+ * @author Keith
+ *
+ */
+public class ReplayTool {
+
+	private static final Pattern LOG_EVENT = Pattern.compile("(Bid|Offer) (entered|cancelled|amended): "
+			+ "\\[(?:ID = (-?\\d+), )?ItemID = (-?\\d+), PricePerUnit = (-?\\d+), Quantity = (-?\\d+), "
+			+ "userId = (.*)\\]\\s*$");
+
+	public enum CommandType {
+		BID, OFFER, CANCEL, AMEND
+	}
+
+	private final List<Command> commands;
+
+	private ReplayTool(List<Command> commands) {
+		this.commands = commands;
+	}
+
+	/**
+	 * Read the bids, offers, cancels and amendments in a journal
+	 * 
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static ReplayTool fromJournal(Path path) throws IOException {
+		List<Command> commands = new ArrayList<>();
+		try (Journal journal = new Journal(path, Journal.DEFAULT_WINDOW_SIZE, false)) {
+			journal.replay(new Journal.Handler() {
+				@Override
+				public void onBid(Bid bid, long position) {
+					commands.add(new Command(CommandType.BID, bid));
+				}
+
+				@Override
+				public void onOffer(Offer offer, long position) {
+					commands.add(new Command(CommandType.OFFER, offer));
+				}
+
+				@Override
+				public void onCancel(int id, int itemId, long position) {
+					commands.add(new Command(CommandType.CANCEL, id, itemId, 0, 0, null));
+				}
+
+				@Override
+				public void onAmend(int id, int itemId, int quantity, int price, long position) {
+					commands.add(new Command(CommandType.AMEND, id, itemId, quantity, price, null));
+				}
+			});
+		}
+		return new ReplayTool(commands);
+	}
+
+	/**
+	 * Read the bids and offers entered, cancelled and amended from a log
+	 * written by an {@link EventLog}. Other lines are skipped. Entries logged
+	 * without an ID are numbered in the order they were entered.
+	 * 
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static ReplayTool fromLog(Path path) throws IOException {
+		List<Command> commands = new ArrayList<>();
+		int nextId = 1;
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				Matcher matcher = LOG_EVENT.matcher(line);
+				if (!matcher.find()) {
+					continue;
+				}
+				boolean bid = matcher.group(1).equals("Bid");
+				String event = matcher.group(2);
+				boolean hasId = matcher.group(3) != null;
+				int id = hasId ? Integer.parseInt(matcher.group(3)) : nextId++;
+				int itemId = Integer.parseInt(matcher.group(4));
+				int price = Integer.parseInt(matcher.group(5));
+				int quantity = Integer.parseInt(matcher.group(6));
+				String userId = matcher.group(7);
+				if (event.equals("entered")) {
+					commands.add(new Command(bid ? CommandType.BID : CommandType.OFFER, id, itemId, quantity,
+							price, userId));
+				} else if (hasId && event.equals("cancelled")) {
+					commands.add(new Command(CommandType.CANCEL, id, itemId, 0, 0, null));
+				} else if (hasId) {
+					// amendments are logged with the new quantity and price
+					commands.add(new Command(CommandType.AMEND, id, itemId, quantity, price, null));
+				}
+			}
+		}
+		return new ReplayTool(commands);
+	}
+
+	/**
+	 * @return number of commands to replay
+	 */
+	public int size() {
+		return commands.size();
+	}
+
+	/**
+	 * Replay every command into an empty cache
+	 * 
+	 * @return
+	 */
+	public Result replay() {
+		MarketplaceCacheImpl cache = new MarketplaceCacheImpl();
+		MarketplaceAuctionImpl auction = new MarketplaceAuctionImpl(cache, 1, EventLog.DISABLED);
+		Result result = new Result();
+		auction.addExecutionListener(order -> {
+			result.orders++;
+			result.volume += order.getQuantity();
+		});
+
+		long start = System.nanoTime();
+		for (Command command : commands) {
+			LatencyHistogram histogram = result.histograms.get(command.type);
+			try {
+				switch (command.type) {
+				case BID:
+					Bid bid = new Bid(command.id, command.itemId, command.quantity, command.price, command.userId);
+					long bidStart = System.nanoTime();
+					auction.addBid(bid);
+					histogram.record(System.nanoTime() - bidStart);
+					break;
+				case OFFER:
+					Offer offer = new Offer(command.id, command.itemId, command.quantity, command.price,
+							command.userId);
+					long offerStart = System.nanoTime();
+					auction.addOffer(offer);
+					histogram.record(System.nanoTime() - offerStart);
+					break;
+				case CANCEL:
+					long cancelStart = System.nanoTime();
+					auction.cancel(command.id);
+					histogram.record(System.nanoTime() - cancelStart);
+					break;
+				case AMEND:
+					long amendStart = System.nanoTime();
+					auction.amend(command.id, command.quantity, command.price);
+					histogram.record(System.nanoTime() - amendStart);
+					break;
+				}
+			} catch (RuntimeException e) {
+				result.failed++;
+			}
+		}
+		result.elapsedNanos = System.nanoTime() - start;
+		result.commands = commands.size();
+		result.bookHash = bookHash(cache);
+		return result;
+	}
+
+	/**
+	 * Hash of the resting bids and offers of every item, in priority order
+	 * 
+	 * @param cache
+	 * @return
+	 */
+	static long bookHash(MarketplaceCache cache) {
+		List<Integer> itemIds = new ArrayList<>(cache.getItemIds());
+		Collections.sort(itemIds);
+		long hash = 0xcbf29ce484222325L;
+		for (Integer itemId : itemIds) {
+			List<Bid> bids = cache.getBidForItem(itemId);
+			List<Offer> offers = cache.getOfferForItem(itemId);
+			if (bids.isEmpty() && offers.isEmpty()) {
+				// same as an item never traded
+				continue;
+			}
+			hash = mix(hash, itemId);
+			for (Bid bid : bids) {
+				hash = mix(hash, bid);
+			}
+			// keeps a bid apart from an offer at the same place
+			hash = mix(hash, -1);
+			for (Offer offer : offers) {
+				hash = mix(hash, offer);
+			}
+		}
+		return hash;
+	}
+
+	private static long mix(long hash, BookEntry entry) {
+		hash = mix(hash, entry.getId());
+		hash = mix(hash, entry.getPricePerUnit());
+		hash = mix(hash, entry.getQuantity());
+		return mix(hash, entry.getUserId().hashCode());
+	}
+
+	private static long mix(long hash, int value) {
+		return (hash ^ value) * 0x100000001b3L;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || !(args[0].equals("journal") || args[0].equals("log"))) {
+			System.err.println("Usage: ReplayTool journal|log path [iterations]");
+			System.exit(2);
+		}
+		Path path = Paths.get(args[1]);
+		int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+		ReplayTool tool = args[0].equals("journal") ? fromJournal(path) : fromLog(path);
+		System.out.println("Read " + tool.size() + " commands from " + path);
+
+		Long hash = null;
+		for (int i = 1; i <= iterations; i++) {
+			Result result = tool.replay();
+			System.out.println("Iteration " + i + ": " + result);
+			if (hash != null && hash != result.getBookHash()) {
+				System.err.println("Book hash differs from the previous iteration");
+				System.exit(1);
+			}
+			hash = result.getBookHash();
+		}
+	}
+
+	/**
+	 * A captured command
+	 */
+	private static class Command {
+		private final CommandType type;
+		private final int id;
+		private final int itemId;
+		private final int quantity;
+		private final int price;
+		private final String userId;
+
+		private Command(CommandType type, BookEntry entry) {
+			this(type, entry.getId(), entry.getItemId(), entry.getQuantity(), entry.getPricePerUnit(),
+					entry.getUserId());
+		}
+
+		private Command(CommandType type, int id, int itemId, int quantity, int price, String userId) {
+			this.type = type;
+			this.id = id;
+			this.itemId = itemId;
+			this.quantity = quantity;
+			this.price = price;
+			this.userId = userId;
+		}
+	}
+
+	/**
+	 * Outcome of one replay
+	 */
+	public static class Result {
+		private final Map<CommandType, LatencyHistogram> histograms = new EnumMap<>(CommandType.class);
+		private int commands;
+		private int failed;
+		private long orders;
+		private long volume;
+		private long elapsedNanos;
+		private long bookHash;
+
+		private Result() {
+			for (CommandType type : CommandType.values()) {
+				histograms.put(type, new LatencyHistogram());
+			}
+		}
+
+		public int getCommands() {
+			return commands;
+		}
+
+		/**
+		 * @return commands which threw, e.g. invalid amendments
+		 */
+		public int getFailed() {
+			return failed;
+		}
+
+		public long getOrders() {
+			return orders;
+		}
+
+		public long getVolume() {
+			return volume;
+		}
+
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		/**
+		 * @return commands per second
+		 */
+		public double getThroughput() {
+			return elapsedNanos == 0 ? 0 : commands * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+		}
+
+		/**
+		 * @param type
+		 * @return latencies of the commands of a type
+		 */
+		public LatencyHistogram getHistogram(CommandType type) {
+			return histograms.get(type);
+		}
+
+		public long getBookHash() {
+			return bookHash;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder text = new StringBuilder();
+			text.append(commands).append(" commands in ")
+					.append(TimeUnit.NANOSECONDS.toMillis(elapsedNanos)).append("ms, ")
+					.append(Math.round(getThroughput())).append("/s, ")
+					.append(orders).append(" orders for ").append(volume).append(" units, ")
+					.append(failed).append(" failed, book hash ").append(Long.toHexString(bookHash));
+			for (Map.Entry<CommandType, LatencyHistogram> entry : histograms.entrySet()) {
+				if (entry.getValue().getCount() > 0) {
+					text.append(System.lineSeparator()).append("  ").append(entry.getKey())
+							.append(' ').append(entry.getValue());
+				}
+			}
+			return text.toString();
+		}
+	}
+}
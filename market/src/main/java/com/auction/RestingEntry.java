@@ -0,0 +1,94 @@
+package com.auction;
+
+/**
+ * Reusable view of the best resting bid or offer of a book, which the matcher
+ * reads on every fill instead of having the cache create a {@link Bid} or
+ * {@link Offer}, see {@link MarketplaceCache#readBestBid(Integer, RestingEntry)}.
+ * 
+ * Not thread safe, each matching call reads into its own view.
+ * 
+ * @author Keith
+ *
+ */
+public class RestingEntry {
+
+	private int id;
+	private Integer itemId;
+	private int pricePerUnit;
+	private int quantity;
+	private String userId;
+	// where the cache keeps the entry, a slot or the entry itself
+	private int slot = SlotStore.NONE;
+	private BookEntry entry;
+
+	/**
+	 * Point the view at an entry kept in a slot
+	 */
+	void set(int id, Integer itemId, int pricePerUnit, int quantity, String userId, int slot) {
+		this.id = id;
+		this.itemId = itemId;
+		this.pricePerUnit = pricePerUnit;
+		this.quantity = quantity;
+		this.userId = userId;
+		this.slot = slot;
+		this.entry = null;
+	}
+
+	/**
+	 * Point the view at an entry kept as an object
+	 */
+	void set(BookEntry entry) {
+		set(entry.getId(), entry.getItemId(), entry.getPricePerUnit(), entry.getQuantity(),
+				entry.getUserId(), SlotStore.NONE);
+		this.entry = entry;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public Integer getItemId() {
+		return itemId;
+	}
+
+	public int getPricePerUnit() {
+		return pricePerUnit;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	/**
+	 * Only changes the view, not the entry in the cache
+	 * 
+	 * @param quantity
+	 */
+	void setQuantity(int quantity) {
+		this.quantity = quantity;
+	}
+
+	public String getUserId() {
+		return userId;
+	}
+
+	/**
+	 * @return slot of the entry, {@link SlotStore#NONE} if kept as an object
+	 */
+	int getSlot() {
+		return slot;
+	}
+
+	/**
+	 * @return the entry, null if kept in a slot
+	 */
+	BookEntry getEntry() {
+		return entry;
+	}
+
+	@Override
+	public String toString() {
+		return "[ID = " + id + ", ItemID = " + itemId + ", PricePerUnit = " + pricePerUnit
+				+ ", Quantity = " + quantity + ", userId = " + userId + "]";
+	}
+}
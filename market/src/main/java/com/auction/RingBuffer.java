@@ -0,0 +1,141 @@
+package com.auction;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Preallocated ring of reusable slots passing events from any number of
+ * producers to a single consumer without locks.
+ * 
+ * A producer claims a sequence with {@link #next()}, fills the slot returned
+ * by {@link #get(long)} and then calls {@link #publish(long)}. The consumer
+ * reads slots in sequence order while {@link #isPublished(long)} and hands
+ * each slot back with {@link #release(long)}.
+ * 
+ * @author Keith
+ *
+ */
+public class RingBuffer<E> {
+
+	private final Object[] slots;
+	private final int mask;
+	// last sequence claimed by a producer
+	private final AtomicLong claimed = new AtomicLong(-1);
+	// last sequence released by the consumer
+	private final AtomicLong released = new AtomicLong(-1);
+	// sequence last published into each slot
+	private final AtomicLongArray published;
+
+	/**
+	 * @param capacity number of slots, must be a power of 2
+	 * @param slotFactory creates the reusable slots
+	 */
+	public RingBuffer(int capacity, Supplier<E> slotFactory) {
+		if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("capacity must be a power of 2: " + capacity);
+		}
+		slots = new Object[capacity];
+		mask = capacity - 1;
+		published = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			slots[i] = slotFactory.get();
+			published.set(i, -1);
+		}
+	}
+
+	public int getCapacity() {
+		return slots.length;
+	}
+
+	/**
+	 * Claim the next sequence, waiting while the ring is full
+	 * 
+	 * @return claimed sequence
+	 */
+	public long next() {
+		long sequence = claimed.incrementAndGet();
+		int idle = 0;
+		while (sequence - slots.length > released.get()) {
+			// consumer has not released the slot from the previous lap yet
+			idle = idle(idle);
+		}
+		return sequence;
+	}
+
+	/**
+	 * Claim the next sequence only if its slot is free, never waiting
+	 * 
+	 * @return claimed sequence, or -1 if the ring is full
+	 */
+	public long tryNext() {
+		long current;
+		do {
+			current = claimed.get();
+			if (current + 1 - slots.length > released.get()) {
+				return -1;
+			}
+		} while (!claimed.compareAndSet(current, current + 1));
+		return current + 1;
+	}
+
+	@SuppressWarnings("unchecked")
+	public E get(long sequence) {
+		return (E) slots[(int) sequence & mask];
+	}
+
+	/**
+	 * Make a filled slot visible to the consumer
+	 * 
+	 * @param sequence
+	 */
+	public void publish(long sequence) {
+		published.lazySet((int) sequence & mask, sequence);
+	}
+
+	public boolean isPublished(long sequence) {
+		return published.get((int) sequence & mask) == sequence;
+	}
+
+	/**
+	 * Hand a consumed slot back to the producers
+	 * 
+	 * @param sequence
+	 */
+	public void release(long sequence) {
+		released.lazySet(sequence);
+	}
+
+	/**
+	 * @return last sequence claimed by a producer
+	 */
+	public long getClaimed() {
+		return claimed.get();
+	}
+
+	/**
+	 * @return last sequence released by the consumer
+	 */
+	public long getReleased() {
+		return released.get();
+	}
+
+	/**
+	 * Back off while waiting: spin first, then yield, then park briefly
+	 * 
+	 * @param idle number of times already idled
+	 * @return idle count to pass in next time
+	 */
+	static int idle(int idle) {
+		if (idle < 100) {
+			// busy spin
+		} else if (idle < 200) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(1000L);
+			return idle;
+		}
+		return idle + 1;
+	}
+}
@@ -0,0 +1,418 @@
+package com.auction;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Market place auction where matching is done by a single dedicated thread.
+ * 
+ * Callers of {@link #addBid(Bid)} and {@link #addOffer(Offer)} publish a
+ * command into a preallocated ring buffer and return straight away. The
+ * matcher thread consumes commands in sequence and, being the only writer,
+ * matches without taking any locks. Orders and acknowledgements are passed
+ * through a second ring buffer to a dispatcher thread which calls the
+ * registered {@link ExecutionListener}s, so slow listeners never stall
+ * matching until the result ring fills.
+ * 
+ * Batches, cancels and amendments are published as a single command and the
+ * caller waits for the matcher to return the result.
+ * 
+ * Queries read the cache directly and see the effect of a bid or offer once
+ * the matcher has processed it, see {@link #flush()}.
+ * 
+ * @author Keith
+ *
+ */
+public class RingBufferMarketplaceAuction implements MarketplaceAuction, AutoCloseable {
+
+	private final Logger logger = Logger.getLogger(this.getClass());
+
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	private final MarketplaceAuctionImpl engine;
+	private final RingBuffer<Command> commands;
+	private final RingBuffer<Result> results;
+	private final List<ExecutionListener> listeners = new CopyOnWriteArrayList<>();
+
+	private final Thread matcher;
+	private final Thread dispatcher;
+	private volatile boolean matcherRunning = true;
+	private volatile boolean dispatcherRunning = true;
+
+	public RingBufferMarketplaceAuction() {
+		this(new MarketplaceCacheImpl(), DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param cache cache to match against
+	 * @param capacity size of the command and result rings, a power of 2
+	 */
+	public RingBufferMarketplaceAuction(MarketplaceCache cache, int capacity) {
+		commands = new RingBuffer<>(capacity, Command::new);
+		results = new RingBuffer<>(capacity, Result::new);
+		engine = MarketplaceAuctionImpl.singleWriter(cache);
+		engine.addExecutionListener(new ExecutionListener() {
+			@Override
+			public void onOrder(Order order) {
+				publishOrder(order);
+			}
+
+			@Override
+			public void onAccepted(BookEntry entry) {
+				publishAccepted(entry);
+			}
+
+			@Override
+			public void onRejected(BookEntry entry, String reason) {
+				publishRejected(entry, reason);
+			}
+		});
+
+		matcher = new Thread(this::runMatcher, "auction-matcher");
+		matcher.setDaemon(true);
+		dispatcher = new Thread(this::runDispatcher, "auction-dispatcher");
+		dispatcher.setDaemon(true);
+		matcher.start();
+		dispatcher.start();
+	}
+
+	public void addExecutionListener(ExecutionListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeExecutionListener(ExecutionListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Apply risk limits, see {@link MarketplaceAuctionImpl#setRiskCheck(RiskCheck)}.
+	 * As bids and offers are entered asynchronously, rejections are only
+	 * reported to {@link ExecutionListener#onRejected(BookEntry, String)}.
+	 * 
+	 * @param riskCheck
+	 */
+	public void setRiskCheck(RiskCheck riskCheck) {
+		engine.setRiskCheck(riskCheck);
+	}
+
+	/**
+	 * Start recording latencies and counts, see
+	 * {@link MarketplaceAuctionImpl#enableMetrics()}. No locks are taken by
+	 * the matcher, so lock wait only covers the matcher's own overhead.
+	 * 
+	 * @return
+	 */
+	public EngineMetrics enableMetrics() {
+		return engine.enableMetrics();
+	}
+
+	/**
+	 * Subscribe to the books, see
+	 * {@link MarketplaceAuctionImpl#subscribe(MarketDataListener)}. The
+	 * image a new subscription starts with is safe to take while the
+	 * matcher runs.
+	 * 
+	 * @param listener
+	 * @return
+	 */
+	public MarketDataFeed.Subscription subscribe(MarketDataListener listener) {
+		return engine.subscribe(listener);
+	}
+
+	@Override
+	public void addBid(Bid bid) {
+		Objects.requireNonNull(bid);
+		long sequence = commands.next();
+		commands.get(sequence).bid = bid;
+		commands.publish(sequence);
+	}
+
+	@Override
+	public void addOffer(Offer offer) {
+		Objects.requireNonNull(offer);
+		long sequence = commands.next();
+		commands.get(sequence).offer = offer;
+		commands.publish(sequence);
+	}
+
+	@Override
+	public List<Order> addBids(Collection<Bid> bids) {
+		return addEntries(bids);
+	}
+
+	@Override
+	public List<Order> addOffers(Collection<Offer> offers) {
+		return addEntries(offers);
+	}
+
+	/**
+	 * Waits for the matcher to process the batch. Must not be called from an
+	 * {@link ExecutionListener}.
+	 */
+	@Override
+	public List<Order> addEntries(Collection<? extends BookEntry> entries) {
+		Objects.requireNonNull(entries);
+		return call(engine -> engine.addEntries(entries));
+	}
+
+	/**
+	 * Waits for the matcher, see {@link #addEntries(Collection)}
+	 */
+	@Override
+	public boolean cancel(Integer orderId) {
+		return call(engine -> engine.cancel(orderId));
+	}
+
+	/**
+	 * Waits for the matcher, see {@link #addEntries(Collection)}
+	 */
+	@Override
+	public boolean amend(Integer orderId, Integer newQuantity, Integer newPrice) {
+		return call(engine -> engine.amend(orderId, newQuantity, newPrice));
+	}
+
+	/**
+	 * Run a task on the matcher thread and wait for its result
+	 */
+	@SuppressWarnings("unchecked")
+	private <R> R call(Function<MarketplaceAuctionImpl, R> task) {
+		CompletableFuture<Object> result = new CompletableFuture<>();
+		long sequence = commands.next();
+		Command command = commands.get(sequence);
+		command.task = task;
+		command.result = result;
+		commands.publish(sequence);
+		try {
+			return (R) result.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Wait until every bid and offer entered before this call has been
+	 * matched and its results passed to the listeners
+	 */
+	public void flush() {
+		awaitReleased(commands, commands.getClaimed());
+		awaitReleased(results, results.getClaimed());
+	}
+
+	/**
+	 * Process everything already entered, then stop the matcher and
+	 * dispatcher threads. Bids and offers must not be entered concurrently.
+	 */
+	@Override
+	public void close() {
+		matcherRunning = false;
+		boolean interrupted = join(matcher);
+		dispatcherRunning = false;
+		interrupted |= join(dispatcher);
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Wait for a thread to finish even if interrupted
+	 * 
+	 * @return true if interrupted while waiting
+	 */
+	private static boolean join(Thread thread) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				thread.join();
+				return interrupted;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+	}
+
+	@Override
+	public List<Bid> getBidForUser(String userId) {
+		return engine.getBidForUser(userId);
+	}
+
+	@Override
+	public List<Offer> getOfferForUser(String userId) {
+		return engine.getOfferForUser(userId);
+	}
+
+	@Override
+	public List<Order> getOrdersForSeller(String userId) {
+		return engine.getOrdersForSeller(userId);
+	}
+
+	@Override
+	public List<Order> getOrdersForBuyer(String userId) {
+		return engine.getOrdersForBuyer(userId);
+	}
+
+	@Override
+	public Integer getBidPrice(Integer itemId) {
+		return engine.getBidPrice(itemId);
+	}
+
+	@Override
+	public Integer getOfferPrice(Integer itemId) {
+		return engine.getOfferPrice(itemId);
+	}
+
+	@Override
+	public Depth getDepth(Integer itemId, int levels) {
+		return engine.getDepth(itemId, levels);
+	}
+
+	@Override
+	public UserExposure getExposure(String userId) {
+		return engine.getExposure(userId);
+	}
+
+	private void runMatcher() {
+		long next = 0;
+		int idle = 0;
+		while (matcherRunning || commands.isPublished(next)) {
+			if (!commands.isPublished(next)) {
+				idle = RingBuffer.idle(idle);
+				continue;
+			}
+			idle = 0;
+			Command command = commands.get(next);
+			if (command.task != null) {
+				run(command);
+			} else {
+				process(command);
+			}
+			command.clear();
+			commands.release(next);
+			next++;
+		}
+	}
+
+	private void process(Command command) {
+		BookEntry entry = command.bid != null ? command.bid : command.offer;
+		try {
+			if (command.bid != null) {
+				engine.addBid(command.bid);
+			} else {
+				engine.addOffer(command.offer);
+			}
+		} catch (RiskLimitException e) {
+			// already passed on to the listeners
+		} catch (RuntimeException e) {
+			// keep matching, one bad command must not stop the engine
+			logger.error("Failed to process: " + entry, e);
+		}
+	}
+
+	private void run(Command command) {
+		try {
+			command.result.complete(command.task.apply(engine));
+		} catch (RuntimeException e) {
+			logger.error("Failed to process command", e);
+			command.result.completeExceptionally(e);
+		}
+	}
+
+	private void runDispatcher() {
+		long next = 0;
+		int idle = 0;
+		while (dispatcherRunning || results.isPublished(next)) {
+			if (!results.isPublished(next)) {
+				idle = RingBuffer.idle(idle);
+				continue;
+			}
+			idle = 0;
+			Result result = results.get(next);
+			for (ExecutionListener listener : listeners) {
+				try {
+					if (result.order != null) {
+						listener.onOrder(result.order);
+					} else if (result.reason != null) {
+						listener.onRejected(result.accepted, result.reason);
+					} else {
+						listener.onAccepted(result.accepted);
+					}
+				} catch (RuntimeException e) {
+					logger.error("Listener failed", e);
+				}
+			}
+			result.clear();
+			results.release(next);
+			next++;
+		}
+	}
+
+	private void publishOrder(Order order) {
+		long sequence = results.next();
+		results.get(sequence).order = order;
+		results.publish(sequence);
+	}
+
+	private void publishRejected(BookEntry entry, String reason) {
+		long sequence = results.next();
+		Result result = results.get(sequence);
+		result.accepted = entry;
+		result.reason = reason;
+		results.publish(sequence);
+	}
+
+	private void publishAccepted(BookEntry entry) {
+		long sequence = results.next();
+		results.get(sequence).accepted = entry;
+		results.publish(sequence);
+	}
+
+	private static void awaitReleased(RingBuffer<?> ring, long sequence) {
+		int idle = 0;
+		while (ring.getReleased() < sequence) {
+			idle = RingBuffer.idle(idle);
+		}
+	}
+
+	/**
+	 * Slot in the command ring, holds either a bid, an offer or a task whose
+	 * caller waits for the result
+	 */
+	private static class Command {
+		private Bid bid;
+		private Offer offer;
+		private Function<MarketplaceAuctionImpl, ?> task;
+		private CompletableFuture<Object> result;
+
+		private void clear() {
+			bid = null;
+			offer = null;
+			task = null;
+			result = null;
+		}
+	}
+
+	/**
+	 * Slot in the result ring, holds either an order or an accepted entry
+	 */
+	private static class Result {
+		private Order order;
+		// accepted or, with a reason, rejected entry
+		private BookEntry accepted;
+		private String reason;
+
+		private void clear() {
+			order = null;
+			accepted = null;
+			reason = null;
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package com.auction;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks bids, offers and amendments against the {@link RiskLimits} of
+ * their user before they are matched.
+ * 
+ * Open notional comes from the {@link UserExposure} the cache maintains and
+ * the order rate from a counter per user over a one second window, so a
+ * check costs the same however many orders the user has resting. Exposure
+ * is only read when the user has a notional limit.
+ * 
+ * A user's entries on items under different locks are checked at the same
+ * time, so the notional of an entry which passes is reserved until it has
+ * rested or been filled. The limit is checked and the reservation made in
+ * one compare and set, which holds the limit across lock stripes.
+ * 
+ * @author Keith
+ *
+ */
+public class RiskCheck {
+
+	private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final RiskLimits defaultLimits;
+	// user ID -> limits replacing the defaults
+	private final Map<String, RiskLimits> userLimits = new ConcurrentHashMap<>();
+	// user ID -> orders in the current window
+	private final Map<String, OrderRate> rates = new ConcurrentHashMap<>();
+	// user ID -> notional of entries checked but not yet rested
+	private final Map<String, Reservations> reservations = new ConcurrentHashMap<>();
+
+	/**
+	 * @param defaultLimits limits of users without their own
+	 */
+	public RiskCheck(RiskLimits defaultLimits) {
+		this.defaultLimits = defaultLimits;
+	}
+
+	/**
+	 * Set the limits of a user
+	 * 
+	 * @param userId
+	 * @param limits
+	 */
+	public void setLimits(String userId, RiskLimits limits) {
+		userLimits.put(userId, limits);
+	}
+
+	public RiskLimits getLimits(String userId) {
+		return userLimits.getOrDefault(userId, defaultLimits);
+	}
+
+	/**
+	 * Check a bid or offer about to be entered, or an amendment which raises
+	 * the quantity or notional of one. Every call counts towards the user's
+	 * order rate, whether it passes or not. When it passes, the notional is
+	 * reserved until {@link #release(String, long)} is called with it.
+	 * 
+	 * @param userId
+	 * @param quantity quantity of the bid or offer
+	 * @param addedNotional notional it adds to the user's open notional
+	 * @param notional notional the bid or offer will rest with
+	 * @param cache cache holding the exposure of the user
+	 * @return reason the limits are breached, null if they are not
+	 */
+	String check(String userId, int quantity, long addedNotional, long notional, MarketplaceCache cache) {
+		RiskLimits limits = getLimits(userId);
+		if (limits != RiskLimits.NONE) {
+			if (limits.getMaxOrdersPerSecond() != Integer.MAX_VALUE
+					&& !rateOf(userId).tryAcquire(System.nanoTime(), limits.getMaxOrdersPerSecond())) {
+				return "Order rate above " + limits.getMaxOrdersPerSecond() + " per second";
+			}
+			if (quantity > limits.getMaxOrderQuantity()) {
+				return "Quantity above " + limits.getMaxOrderQuantity();
+			}
+			if (addedNotional > 0 && limits.getMaxOpenNotional() != Long.MAX_VALUE) {
+				if (!reservationsOf(userId).tryReserve(userId, notional, addedNotional,
+						limits.getMaxOpenNotional(), cache)) {
+					return "Open notional above " + limits.getMaxOpenNotional();
+				}
+				return null;
+			}
+		}
+		// reserved whatever the limits, they may change before the release
+		reservationsOf(userId).reserved.addAndGet(notional);
+		return null;
+	}
+
+	/**
+	 * Release notional reserved by a check which passed, once the entry has
+	 * rested or been filled
+	 * 
+	 * @param userId
+	 * @param notional notional passed to the check
+	 */
+	void release(String userId, long notional) {
+		reservationsOf(userId).released.addAndGet(notional);
+	}
+
+	private OrderRate rateOf(String userId) {
+		OrderRate rate = rates.get(userId);
+		if (rate == null) {
+			rate = rates.computeIfAbsent(userId, id -> new OrderRate(System.nanoTime()));
+		}
+		return rate;
+	}
+
+	private Reservations reservationsOf(String userId) {
+		Reservations reserved = reservations.get(userId);
+		if (reserved == null) {
+			reserved = reservations.computeIfAbsent(userId, id -> new Reservations());
+		}
+		return reserved;
+	}
+
+	/**
+	 * Notional reserved and released by a user's entries. Both totals only
+	 * grow, so a reservation made and released while another check reads
+	 * them still fails that check's compare and set.
+	 */
+	private static class Reservations {
+		private final AtomicLong reserved = new AtomicLong();
+		private final AtomicLong released = new AtomicLong();
+
+		/**
+		 * Reserve the notional unless the open notional of the user, what is
+		 * reserved and what is added would exceed the limit
+		 */
+		private boolean tryReserve(String userId, long notional, long addedNotional, long max,
+				MarketplaceCache cache) {
+			while (true) {
+				long total = reserved.get();
+				// an entry is added to the exposure before it is released, so
+				// reading in this order counts every entry at least once
+				long outstanding = total - released.get();
+				long open = cache.getExposure(userId).getOpenNotional();
+				if (open + outstanding + addedNotional > max) {
+					return false;
+				}
+				if (reserved.compareAndSet(total, total + notional)) {
+					return true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Orders counted since the start of the current window. A user's bids
+	 * may be matched under different item locks at once, hence the monitor.
+	 */
+	private static class OrderRate {
+		private long windowStart;
+		private int count;
+
+		private OrderRate(long now) {
+			this.windowStart = now;
+		}
+
+		private synchronized boolean tryAcquire(long now, int max) {
+			if (now - windowStart >= WINDOW_NANOS) {
+				windowStart = now;
+				count = 0;
+			}
+			if (count >= max) {
+				return false;
+			}
+			count++;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.auction;
+
+/**
+ * Thrown when a bid, offer or amendment breaches the risk limits of its user
+ * and is rejected before reaching the book
+ * 
+ * @author Keith
+ *
+ */
+public class RiskLimitException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient BookEntry entry;
+
+	public RiskLimitException(BookEntry entry, String reason) {
+		super(reason + ": " + entry);
+		this.entry = entry;
+	}
+
+	/**
+	 * @return rejected bid or offer
+	 */
+	public BookEntry getEntry() {
+		return entry;
+	}
+}
@@ -0,0 +1,89 @@
+package com.auction;
+
+/**
+ * Pre-trade limits applied to the bids and offers of a user
+ * 
+ * @author Keith
+ *
+ */
+public class RiskLimits {
+
+	/**
+	 * No limits
+	 */
+	public static final RiskLimits NONE = new RiskLimitsBuilder().build();
+
+	private final int maxOrderQuantity;
+	private final long maxOpenNotional;
+	private final int maxOrdersPerSecond;
+
+	public RiskLimits(int maxOrderQuantity, long maxOpenNotional, int maxOrdersPerSecond) {
+		if (maxOrderQuantity < 1 || maxOpenNotional < 0 || maxOrdersPerSecond < 1) {
+			throw new IllegalArgumentException("Invalid limits: " + maxOrderQuantity + ", "
+					+ maxOpenNotional + ", " + maxOrdersPerSecond);
+		}
+		this.maxOrderQuantity = maxOrderQuantity;
+		this.maxOpenNotional = maxOpenNotional;
+		this.maxOrdersPerSecond = maxOrdersPerSecond;
+	}
+
+	/**
+	 * Largest quantity of a single bid or offer
+	 * 
+	 * @return
+	 */
+	public int getMaxOrderQuantity() {
+		return maxOrderQuantity;
+	}
+
+	/**
+	 * Largest price * quantity of all the user's resting bids and offers
+	 * together
+	 * 
+	 * @return
+	 */
+	public long getMaxOpenNotional() {
+		return maxOpenNotional;
+	}
+
+	/**
+	 * Most bids, offers and amendments in any second
+	 * 
+	 * @return
+	 */
+	public int getMaxOrdersPerSecond() {
+		return maxOrdersPerSecond;
+	}
+
+	@Override
+	public String toString() {
+		return "[MaxOrderQuantity = " + maxOrderQuantity + ", MaxOpenNotional = " + maxOpenNotional
+				+ ", MaxOrdersPerSecond = " + maxOrdersPerSecond + "]";
+	}
+
+	public static class RiskLimitsBuilder {
+
+		private int maxOrderQuantity = Integer.MAX_VALUE;
+		private long maxOpenNotional = Long.MAX_VALUE;
+		private int maxOrdersPerSecond = Integer.MAX_VALUE;
+
+		public RiskLimitsBuilder maxOrderQuantity(int maxOrderQuantity) {
+			this.maxOrderQuantity = maxOrderQuantity;
+			return this;
+		}
+
+		public RiskLimitsBuilder maxOpenNotional(long maxOpenNotional) {
+			this.maxOpenNotional = maxOpenNotional;
+			return this;
+		}
+
+		public RiskLimitsBuilder maxOrdersPerSecond(int maxOrdersPerSecond) {
+			this.maxOrdersPerSecond = maxOrdersPerSecond;
+			return this;
+		}
+
+		public RiskLimits build() {
+			return new RiskLimits(maxOrderQuantity, maxOpenNotional, maxOrdersPerSecond);
+		}
+	}
+}
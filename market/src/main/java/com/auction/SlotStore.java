@@ -0,0 +1,43 @@
+package com.auction;
+
+/**
+ * Storage addressing bids or offers by integer slot, as used by
+ * {@link PriceLevels} to chain the entries of a level
+ * 
+ * @author Keith
+ *
+ */
+public interface SlotStore<T extends BookEntry> {
+
+	public static final int NONE = -1;
+
+	/**
+	 * Recreates the API-facing view of a stored entry
+	 */
+	public interface EntryFactory<T> {
+		public T create(Integer id, Integer itemId, Integer quantity, Integer pricePerUnit, String userId);
+	}
+
+	public int getPrice(int slot);
+
+	public int getQuantity(int slot);
+
+	public void setQuantity(int slot, int quantity);
+
+	public int getLevelNext(int slot);
+
+	public void setLevelNext(int slot, int next);
+
+	public int getLevelPrev(int slot);
+
+	public void setLevelPrev(int slot, int prev);
+
+	/**
+	 * Recreate the API-facing view of the entry in a slot. Changes to the
+	 * view are not written back.
+	 * 
+	 * @param slot
+	 * @return
+	 */
+	public T getEntry(int slot);
+}
@@ -0,0 +1,427 @@
+package com.auction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Order history which keeps only the most recent orders of each user in
+ * memory and the rest in an append-only file, so memory does not grow with
+ * the number of orders.
+ * 
+ * Every order is appended to the file once, through a write buffer. Each
+ * record holds the file offsets of the previous order of its buyer and of
+ * its seller, so the file itself is the index: reading the older orders of a
+ * user walks back along the chain from the newest one no longer in memory.
+ * Per user, only the hot window and two offsets stay on the heap.
+ * 
+ * A full buffer is swapped for a spare one and written out by a background
+ * thread, so adding an order never waits for the file unless every spare
+ * buffer is still being written.
+ * 
+ * The file holds the orders of one run and is truncated when opened.
+ * 
+ * @author Keith
+ *
+ */
+public class TieredOrderHistory implements OrderHistory, AutoCloseable {
+
+	public static final int DEFAULT_HOT_ORDERS = 100;
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	// buffers filled or being written before adding waits for the writer
+	private static final int SPARE_BUFFERS = 3;
+
+	private static final long NONE = -1;
+
+	// length, previous buyer and seller order, id, item, quantity, price
+	private static final int FIXED_SIZE = 4 + 8 + 8 + 16;
+
+	private final FileChannel channel;
+	private final int hotOrders;
+	private final Map<String, UserHistory> users = new ConcurrentHashMap<>();
+
+	private final Thread writer;
+
+	// guarded by this
+	private ByteBuffer buffer;
+	private long bufferStart;
+	private final ArrayDeque<Spill> spills = new ArrayDeque<>();
+	private final ArrayDeque<ByteBuffer> spare = new ArrayDeque<>();
+	private IOException writeFailure;
+	private boolean closed;
+
+	// bytes written to the file, anything after is in a spill or the buffer
+	private volatile long fileSize;
+
+	/**
+	 * @param path file older orders are spilled to
+	 * @throws IOException
+	 */
+	public TieredOrderHistory(Path path) throws IOException {
+		this(path, DEFAULT_HOT_ORDERS, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param path file older orders are spilled to
+	 * @param hotOrders orders kept in memory per buyer and per seller
+	 * @param bufferSize bytes buffered before writing to the file
+	 * @throws IOException
+	 */
+	public TieredOrderHistory(Path path, int hotOrders, int bufferSize) throws IOException {
+		if (hotOrders < 1) {
+			throw new IllegalArgumentException("hotOrders must be at least 1: " + hotOrders);
+		}
+		this.hotOrders = hotOrders;
+		this.buffer = ByteBuffer.allocate(bufferSize);
+		for (int i = 0; i < SPARE_BUFFERS; i++) {
+			spare.add(ByteBuffer.allocate(bufferSize));
+		}
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		writer = new Thread(this::runWriter, "auction-order-history");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@Override
+	public synchronized void add(Order order) {
+		UserHistory buyer = users.computeIfAbsent(order.getBuyerId(), user -> new UserHistory(hotOrders));
+		UserHistory seller = users.computeIfAbsent(order.getSellerId(), user -> new UserHistory(hotOrders));
+
+		long offset = append(order, buyer.bought.tail, seller.sold.tail);
+		buyer.bought.add(order, offset);
+		seller.sold.add(order, offset);
+	}
+
+	@Override
+	public List<Order> getOrdersForBuyer(String userId) {
+		UserHistory user = users.get(userId);
+		return user == null ? Collections.emptyList() : read(user.bought, true);
+	}
+
+	@Override
+	public List<Order> getOrdersForSeller(String userId) {
+		UserHistory user = users.get(userId);
+		return user == null ? Collections.emptyList() : read(user.sold, false);
+	}
+
+	/**
+	 * Write out the buffer and wait until everything added is in the file
+	 * 
+	 * @throws UncheckedIOException if the file could not be written
+	 */
+	public synchronized void flush() {
+		spill(buffer.capacity());
+		boolean interrupted = false;
+		while (!spills.isEmpty() && writeFailure == null) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		checkWritten();
+	}
+
+	/**
+	 * Write out the buffer, stop the writer thread and close the file
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			spill(buffer.capacity());
+			closed = true;
+			notifyAll();
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		synchronized (this) {
+			if (writeFailure != null) {
+				throw writeFailure;
+			}
+		}
+	}
+
+	private List<Order> read(Tier tier, boolean buyer) {
+		List<Order> hot;
+		long cold;
+		synchronized (this) {
+			hot = tier.getHot();
+			cold = tier.coldTail;
+		}
+		List<Order> orders = new ArrayList<>(hot.size());
+		// walk the file from the newest cold order back to the oldest
+		while (cold != NONE) {
+			ByteBuffer record = readRecord(cold);
+			orders.add(decode(record));
+			cold = record.getLong(buyer ? 4 : 12);
+		}
+		Collections.reverse(orders);
+		orders.addAll(hot);
+		return Collections.unmodifiableList(orders);
+	}
+
+	/**
+	 * Append an order record, guarded by this
+	 * 
+	 * @return offset of the record
+	 */
+	private long append(Order order, long previousBought, long previousSold) {
+		checkWritten();
+		String buyerId = order.getBuyerId();
+		String sellerId = order.getSellerId();
+		int length = FIXED_SIZE + 4 + (buyerId.length() + sellerId.length()) * 2;
+		spill(length);
+		long offset = bufferStart + buffer.position();
+		ByteBuffer target = length > buffer.capacity() ? ByteBuffer.allocate(length) : buffer;
+		target.putInt(length);
+		target.putLong(previousBought);
+		target.putLong(previousSold);
+		target.putInt(order.getId());
+		target.putInt(order.getItemId());
+		target.putInt(order.getQuantity());
+		target.putInt(order.getPricePerUnit());
+		putString(target, buyerId);
+		putString(target, sellerId);
+		if (target != buffer) {
+			// too large for a buffer, written on its own
+			spills.add(new Spill(target, bufferStart, false));
+			bufferStart += length;
+			notifyAll();
+		}
+		return offset;
+	}
+
+	/**
+	 * Hand the buffer to the writer unless a record of the given length still
+	 * fits, guarded by this
+	 */
+	private void spill(int length) {
+		if (buffer.position() == 0 || length <= buffer.capacity() - buffer.position()) {
+			return;
+		}
+		boolean interrupted = false;
+		while (spare.isEmpty() && writeFailure == null) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		checkWritten();
+		spills.add(new Spill(buffer, bufferStart, true));
+		bufferStart += buffer.position();
+		buffer = spare.poll();
+		notifyAll();
+	}
+
+	private void checkWritten() {
+		if (writeFailure != null) {
+			throw new UncheckedIOException("Failed to spill orders", writeFailure);
+		}
+	}
+
+	/**
+	 * Write spilled buffers to the file in order, outside the monitor
+	 */
+	private void runWriter() {
+		while (true) {
+			Spill spill;
+			synchronized (this) {
+				while (spills.isEmpty() && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// only closing stops the writer
+					}
+				}
+				if (spills.isEmpty()) {
+					return;
+				}
+				spill = spills.peek();
+			}
+			ByteBuffer source = spill.buffer.duplicate();
+			source.flip();
+			long size = spill.start;
+			try {
+				while (source.hasRemaining()) {
+					size += channel.write(source, size);
+				}
+			} catch (IOException e) {
+				synchronized (this) {
+					writeFailure = e;
+					notifyAll();
+				}
+				return;
+			}
+			synchronized (this) {
+				fileSize = size;
+				spills.poll();
+				if (spill.pooled) {
+					spill.buffer.clear();
+					spare.add(spill.buffer);
+				}
+				notifyAll();
+			}
+		}
+	}
+
+	private ByteBuffer readRecord(long offset) {
+		if (offset >= fileSize) {
+			synchronized (this) {
+				if (offset >= fileSize) {
+					// still in memory, waiting to be written
+					ByteBuffer source = buffer;
+					long start = bufferStart;
+					for (Spill spill : spills) {
+						if (offset < spill.start + spill.buffer.position()) {
+							source = spill.buffer;
+							start = spill.start;
+							break;
+						}
+					}
+					int at = (int) (offset - start);
+					ByteBuffer record = ByteBuffer.allocate(source.getInt(at));
+					for (int i = 0; i < record.capacity(); i++) {
+						record.put(i, source.get(at + i));
+					}
+					return record;
+				}
+			}
+		}
+		try {
+			ByteBuffer length = ByteBuffer.allocate(4);
+			readFully(length, offset);
+			ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+			readFully(record, offset);
+			return record;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to read orders", e);
+		}
+	}
+
+	private void readFully(ByteBuffer target, long offset) throws IOException {
+		while (target.hasRemaining()) {
+			if (channel.read(target, offset + target.position()) < 0) {
+				throw new IOException("Unexpected end of order file at " + offset);
+			}
+		}
+	}
+
+	private static Order decode(ByteBuffer record) {
+		int at = 20;
+		int id = record.getInt(at);
+		int itemId = record.getInt(at + 4);
+		int quantity = record.getInt(at + 8);
+		int price = record.getInt(at + 12);
+		String buyerId = getString(record, FIXED_SIZE);
+		String sellerId = getString(record, FIXED_SIZE + 2 + buyerId.length() * 2);
+		return new Order(id, itemId, quantity, price, buyerId, sellerId);
+	}
+
+	private static void putString(ByteBuffer target, String value) {
+		target.putShort((short) value.length());
+		for (int i = 0; i < value.length(); i++) {
+			target.putChar(value.charAt(i));
+		}
+	}
+
+	private static String getString(ByteBuffer source, int at) {
+		char[] chars = new char[source.getShort(at)];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = source.getChar(at + 2 + i * 2);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Buffer waiting to be written at an offset of the file
+	 */
+	private static class Spill {
+		private final ByteBuffer buffer;
+		private final long start;
+		private final boolean pooled;
+
+		private Spill(ByteBuffer buffer, long start, boolean pooled) {
+			this.buffer = buffer;
+			this.start = start;
+			this.pooled = pooled;
+		}
+	}
+
+	/**
+	 * Orders of a user as buyer and as seller
+	 */
+	private static class UserHistory {
+		private final Tier bought;
+		private final Tier sold;
+
+		private UserHistory(int hotOrders) {
+			bought = new Tier(hotOrders);
+			sold = new Tier(hotOrders);
+		}
+	}
+
+	/**
+	 * Ring of the most recent orders, with the file offsets of the newest
+	 * order and of the newest order which has left the ring. Guarded by the
+	 * history.
+	 */
+	private static class Tier {
+		private final Order[] hot;
+		private final long[] offsets;
+		private int head;
+		private int size;
+		private long tail = NONE;
+		private long coldTail = NONE;
+
+		private Tier(int hotOrders) {
+			hot = new Order[hotOrders];
+			offsets = new long[hotOrders];
+		}
+
+		private void add(Order order, long offset) {
+			int index = (head + size) % hot.length;
+			if (size == hot.length) {
+				// oldest order is only in the file from now on
+				coldTail = offsets[head];
+				head = (head + 1) % hot.length;
+			} else {
+				size++;
+			}
+			hot[index] = order;
+			offsets[index] = offset;
+			tail = offset;
+		}
+
+		private List<Order> getHot() {
+			List<Order> orders = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				orders.add(hot[(head + i) % hot.length]);
+			}
+			return orders;
+		}
+	}
+}
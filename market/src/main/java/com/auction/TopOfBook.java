@@ -0,0 +1,59 @@
+package com.auction;
+
+/**
+ * Immutable snapshot of the best bid and best offer for an item. Prices are
+ * null and quantities 0 when a side of the book is empty.
+ * 
+ * @author Keith
+ *
+ */
+public class TopOfBook {
+
+	public static final TopOfBook EMPTY = new TopOfBook(null, 0, null, 0);
+
+	private final Integer bidPrice;
+	private final long bidQuantity;
+	private final Integer offerPrice;
+	private final long offerQuantity;
+
+	public TopOfBook(Integer bidPrice, long bidQuantity, Integer offerPrice,
+			long offerQuantity) {
+		this.bidPrice = bidPrice;
+		this.bidQuantity = bidQuantity;
+		this.offerPrice = offerPrice;
+		this.offerQuantity = offerQuantity;
+	}
+
+	public Integer getBidPrice() {
+		return bidPrice;
+	}
+
+	/**
+	 * Total quantity bid at the best bid price
+	 * 
+	 * @return
+	 */
+	public long getBidQuantity() {
+		return bidQuantity;
+	}
+
+	public Integer getOfferPrice() {
+		return offerPrice;
+	}
+
+	/**
+	 * Total quantity offered at the best offer price
+	 * 
+	 * @return
+	 */
+	public long getOfferQuantity() {
+		return offerQuantity;
+	}
+
+	@Override
+	public String toString() {
+		return "[BidPrice = " + bidPrice + ", BidQuantity = " + bidQuantity
+				+ ", OfferPrice = " + offerPrice + ", OfferQuantity = "
+				+ offerQuantity + "]";
+	}
+}
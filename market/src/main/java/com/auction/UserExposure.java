@@ -0,0 +1,129 @@
+package com.auction;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Open and filled exposure of a user, kept up to date by the cache as bids
+ * and offers rest, fill and are removed, so reading it does not depend on
+ * how many orders the user has. Each figure is read on its own, they are
+ * not a consistent snapshot taken together.
+ * 
+ * @author Keith
+ *
+ */
+public class UserExposure {
+
+	/**
+	 * Exposure of every user with nothing resting or filled, its user ID is
+	 * null. Never changed.
+	 */
+	public static final UserExposure NONE = new UserExposure(null);
+
+	private final String userId;
+	// sum of price * quantity of resting bids
+	private final AtomicLong openBidNotional = new AtomicLong();
+	// sum of price * quantity of resting offers
+	private final AtomicLong openOfferNotional = new AtomicLong();
+	// item ID -> quantity of resting offers
+	private final Map<Integer, AtomicLong> openOfferQuantity = new ConcurrentHashMap<>();
+	private final AtomicLong boughtQuantity = new AtomicLong();
+	private final AtomicLong soldQuantity = new AtomicLong();
+
+	UserExposure(String userId) {
+		this.userId = userId;
+	}
+
+	public String getUserId() {
+		return userId;
+	}
+
+	public long getOpenBidNotional() {
+		return openBidNotional.get();
+	}
+
+	public long getOpenOfferNotional() {
+		return openOfferNotional.get();
+	}
+
+	/**
+	 * @return open bid and offer notional together
+	 */
+	public long getOpenNotional() {
+		return openBidNotional.get() + openOfferNotional.get();
+	}
+
+	public long getOpenOfferQuantity(Integer itemId) {
+		AtomicLong quantity = openOfferQuantity.get(itemId);
+		return quantity == null ? 0 : quantity.get();
+	}
+
+	/**
+	 * @return item ID -> quantity of resting offers
+	 */
+	public Map<Integer, Long> getOpenOfferQuantities() {
+		Map<Integer, Long> quantities = new TreeMap<>();
+		for (Map.Entry<Integer, AtomicLong> entry : openOfferQuantity.entrySet()) {
+			if (entry.getValue().get() != 0) {
+				quantities.put(entry.getKey(), entry.getValue().get());
+			}
+		}
+		return Collections.unmodifiableMap(quantities);
+	}
+
+	public long getBoughtQuantity() {
+		return boughtQuantity.get();
+	}
+
+	public long getSoldQuantity() {
+		return soldQuantity.get();
+	}
+
+	/**
+	 * @return quantity bought and sold
+	 */
+	public long getFilledVolume() {
+		return boughtQuantity.get() + soldQuantity.get();
+	}
+
+	/**
+	 * Resting bid quantity changed
+	 * 
+	 * @param price
+	 * @param quantity change in quantity, negative when reduced
+	 */
+	void bidChanged(int price, long quantity) {
+		openBidNotional.addAndGet(price * quantity);
+	}
+
+	/**
+	 * Resting offer quantity changed
+	 * 
+	 * @param itemId
+	 * @param price
+	 * @param quantity change in quantity, negative when reduced
+	 */
+	void offerChanged(Integer itemId, int price, long quantity) {
+		openOfferNotional.addAndGet(price * quantity);
+		openOfferQuantity.computeIfAbsent(itemId, id -> new AtomicLong()).addAndGet(quantity);
+	}
+
+	void bought(long quantity) {
+		boughtQuantity.addAndGet(quantity);
+	}
+
+	void sold(long quantity) {
+		soldQuantity.addAndGet(quantity);
+	}
+
+	@Override
+	public String toString() {
+		return "[userId = " + userId + ", OpenBidNotional = " + getOpenBidNotional()
+				+ ", OpenOfferNotional = " + getOpenOfferNotional()
+				+ ", OpenOfferQuantity = " + getOpenOfferQuantities()
+				+ ", FilledVolume = " + getFilledVolume() + "]";
+	}
+}
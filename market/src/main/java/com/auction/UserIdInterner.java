@@ -0,0 +1,53 @@
+package com.auction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps user IDs to dense numeric IDs so they can be stored in primitive
+ * arrays. Numeric IDs are never reused. Not thread safe.
+ * 
+ * @author Keith
+ *
+ */
+public class UserIdInterner {
+
+	public static final int MISSING = -1;
+
+	private final Map<String, Integer> numericIds = new HashMap<>();
+	private final List<String> userIds = new ArrayList<>();
+
+	/**
+	 * Get numeric ID of user, assigning the next one on first use
+	 * 
+	 * @param userId
+	 * @return
+	 */
+	public int intern(String userId) {
+		Integer numericId = numericIds.get(userId);
+		if (numericId == null) {
+			numericId = userIds.size();
+			userIds.add(userId);
+			numericIds.put(userId, numericId);
+		}
+		return numericId;
+	}
+
+	/**
+	 * @return numeric ID of user, {@link #MISSING} if never interned
+	 */
+	public int find(String userId) {
+		Integer numericId = numericIds.get(userId);
+		return numericId == null ? MISSING : numericId;
+	}
+
+	public String getUserId(int numericId) {
+		return userIds.get(numericId);
+	}
+
+	public int size() {
+		return userIds.size();
+	}
+}
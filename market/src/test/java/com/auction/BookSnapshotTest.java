@@ -0,0 +1,103 @@
+package com.auction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BookSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testWriteAndRead() throws Exception {
+		Path path = folder.getRoot().toPath().resolve("snapshot");
+		MarketplaceAuctionImpl marketAuction = new MarketplaceAuctionImpl(
+				new MarketplaceCacheImpl(), 2, EventLog.DISABLED);
+		Bid bid1 = new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+				.quantity(10).userId("Buyer").build();
+		Bid bid2 = new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+				.quantity(5).userId("Buyer2").build();
+		Offer offer = new Offer.OfferBuilder().itemID(2).pricePerUnit(30)
+				.quantity(4).userId("Seller").build();
+		marketAuction.addBid(bid1);
+		marketAuction.addBid(bid2);
+		marketAuction.addOffer(offer);
+		marketAuction.snapshot(path);
+
+		BookSnapshot snapshot = BookSnapshot.read(path);
+		assertEquals(2, snapshot.getBids().size());
+		assertEquals(bid1.toString(), snapshot.getBids().get(0).toString());
+		assertEquals(bid2.toString(), snapshot.getBids().get(1).toString());
+		assertEquals(offer.toString(), snapshot.getOffers().get(0).toString());
+
+		MarketplaceCache cache = new MarketplaceCacheImpl();
+		snapshot.restore(cache);
+		assertEquals(bid1.getId(), cache.getBestBid(1).getId());
+		assertEquals(Integer.valueOf(30), cache.getTopOfBook(2).getOfferPrice());
+		assertTrue(new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+				.quantity(10).userId("Buyer").build().getId() > bid2.getId());
+	}
+
+	@Test
+	public void testRecoverFromSnapshotAndTail() throws Exception {
+		Path journalPath = folder.getRoot().toPath().resolve("journal");
+		Path snapshotPath = folder.getRoot().toPath().resolve("snapshot");
+		final int items = 8;
+
+		try (Journal journal = new Journal(journalPath, 1 << 16, false)) {
+			MarketplaceAuctionImpl marketAuction = new MarketplaceAuctionImpl(
+					new MarketplaceCacheImpl(), 4, EventLog.DISABLED, journal);
+			CountDownLatch countDownLatch = new CountDownLatch(2);
+			for (int t = 0; t < 2; t++) {
+				final long seed = t;
+				new Thread(() -> {
+					try {
+						Random random = new Random(seed);
+						for (int i = 0; i < 2000; i++) {
+							int itemId = random.nextInt(items);
+							if (random.nextBoolean()) {
+								marketAuction.addBid(new Bid.BidBuilder().itemID(itemId)
+										.pricePerUnit(90 + random.nextInt(20))
+										.quantity(1 + random.nextInt(10)).userId("Buyer" + seed).build());
+							} else {
+								marketAuction.addOffer(new Offer.OfferBuilder().itemID(itemId)
+										.pricePerUnit(90 + random.nextInt(20))
+										.quantity(1 + random.nextInt(10)).userId("Seller" + seed).build());
+							}
+						}
+					} finally {
+						countDownLatch.countDown();
+					}
+				}).start();
+			}
+			// snapshot while the threads are still matching
+			Thread.sleep(5);
+			marketAuction.snapshot(snapshotPath);
+			countDownLatch.await();
+		}
+
+		MarketplaceCache fromSnapshot = new MarketplaceCacheImpl();
+		try (Journal journal = new Journal(journalPath)) {
+			MarketplaceAuctionImpl.recover(fromSnapshot, 4, journal, snapshotPath);
+		}
+		MarketplaceCache fromJournal = new MarketplaceCacheImpl();
+		try (Journal journal = new Journal(journalPath)) {
+			MarketplaceAuctionImpl.recover(fromJournal, 4, journal);
+		}
+
+		for (int itemId = 0; itemId < items; itemId++) {
+			assertEquals(fromJournal.getBidForItem(itemId).toString(),
+					fromSnapshot.getBidForItem(itemId).toString());
+			assertEquals(fromJournal.getOfferForItem(itemId).toString(),
+					fromSnapshot.getOfferForItem(itemId).toString());
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package com.auction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrentMultiValueMapTest {
+
+	private ConcurrentMultiValueMap<String, Bid> map;
+	private Bid bid_1;
+	private Bid bid_2;
+	private Bid bid_3;
+
+	@Before
+	public void setup() {
+		map = new ConcurrentMultiValueMap<>();
+		bid_1 = bid("Buyer");
+		bid_2 = bid("Buyer");
+		bid_3 = bid("Buyer");
+	}
+
+	@Test
+	public void testGet_No_Key() {
+		assertEquals(0, map.get("Buyer").size());
+		assertEquals(0, map.size("Buyer"));
+	}
+
+	@Test
+	public void testPutAndRemoveValue() {
+		map.put("Buyer", bid_1);
+		map.put("Buyer", bid_2);
+		map.put("Buyer", bid_3);
+
+		// remove from the middle
+		map.removeValue("Buyer", bid_2);
+		List<Bid> bids = map.get("Buyer");
+		assertEquals(2, bids.size());
+		assertEquals(bid_1, bids.get(0));
+		assertEquals(bid_3, bids.get(1));
+
+		map.removeValue("Buyer", bid_1);
+		map.removeValue("Buyer", bid_3);
+		assertEquals(0, map.get("Buyer").size());
+
+		// removing again does nothing
+		map.removeValue("Buyer", bid_3);
+		assertEquals(0, map.size("Buyer"));
+	}
+
+	@Test
+	public void testRemoveValue_Wrong_Key() {
+		map.put("Buyer", bid_1);
+		map.removeValue("Other", bid_1);
+		assertEquals(1, map.size("Buyer"));
+	}
+
+	@Test
+	public void testDuplicateValues() {
+		map.put("Buyer", bid_1);
+		map.put("Buyer", bid_2);
+		map.put("Buyer", bid_1);
+
+		// first occurrence is removed
+		map.removeValue("Buyer", bid_1);
+		List<Bid> bids = map.get("Buyer");
+		assertEquals(2, bids.size());
+		assertEquals(bid_2, bids.get(0));
+		assertEquals(bid_1, bids.get(1));
+
+		map.removeValue("Buyer", bid_1);
+		bids = map.get("Buyer");
+		assertEquals(1, bids.size());
+		assertEquals(bid_2, bids.get(0));
+	}
+
+	@Test
+	public void testRemoveKey() {
+		map.put("Buyer", bid_1);
+		map.put("Buyer", bid_2);
+		map.remove("Buyer");
+		assertEquals(0, map.size("Buyer"));
+
+		// values can be added again once their key is removed
+		map.put("Buyer", bid_1);
+		map.removeValue("Buyer", bid_1);
+		assertEquals(0, map.size("Buyer"));
+	}
+
+	@Test
+	public void testConcurrentPutAndRemove() throws InterruptedException {
+		final int threads = 8;
+		final int valuesPerThread = 2000;
+		CountDownLatch countDownLatch = new CountDownLatch(threads);
+
+		for (int t = 0; t < threads; t++) {
+			final String user = "Buyer" + (t % 2);
+			new Thread(() -> {
+				try {
+					List<Bid> added = new ArrayList<>();
+					for (int i = 0; i < valuesPerThread; i++) {
+						Bid bid = bid(user);
+						map.put(user, bid);
+						added.add(bid);
+					}
+					// keep every other value
+					for (int i = 0; i < valuesPerThread; i += 2) {
+						map.removeValue(user, added.get(i));
+					}
+				} finally {
+					countDownLatch.countDown();
+				}
+			}).start();
+		}
+
+		countDownLatch.await();
+		int expected = threads / 2 * valuesPerThread / 2;
+		assertEquals(expected, map.get("Buyer0").size());
+		assertEquals(expected, map.get("Buyer1").size());
+	}
+
+	@Test
+	public void testSnapshotUnchangedByWrites() {
+		map.put("Buyer", bid_1);
+		List<Bid> snapshot = map.get("Buyer");
+
+		map.put("Buyer", bid_2);
+		map.removeValue("Buyer", bid_1);
+
+		assertEquals(1, snapshot.size());
+		assertEquals(bid_1, snapshot.get(0));
+		// unchanged key returns the same snapshot
+		assertSame(map.get("Buyer"), map.get("Buyer"));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testSnapshotImmutable() {
+		map.put("Buyer", bid_1);
+		map.get("Buyer").add(bid_2);
+	}
+
+	@Test
+	public void testReadsDuringWrites() throws InterruptedException {
+		final int writes = 20000;
+		final AtomicBoolean failed = new AtomicBoolean();
+		Thread writer = new Thread(() -> {
+			for (int i = 0; i < writes; i++) {
+				Bid bid = bid("Buyer");
+				map.put("Buyer", bid);
+				map.put("Buyer", bid("Buyer"));
+				map.removeValue("Buyer", bid);
+			}
+		});
+		writer.start();
+		int previous = 0;
+		while (writer.isAlive()) {
+			List<Bid> bids = map.get("Buyer");
+			// each round of writes adds two and removes one, so a consistent
+			// snapshot is never more than one smaller than an earlier one
+			if (bids.size() < previous - 1 || bids.contains(null)) {
+				failed.set(true);
+			}
+			previous = bids.size();
+		}
+		writer.join();
+		assertFalse(failed.get());
+		assertEquals(writes, map.get("Buyer").size());
+	}
+
+	private Bid bid(String userId) {
+		return new Bid.BidBuilder().itemID(1).pricePerUnit(10).quantity(10)
+				.userId(userId).build();
+	}
+}
@@ -0,0 +1,97 @@
+package com.auction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Test;
+
+public class EngineMetricsTest {
+
+	@Test
+	public void testSnapshot() {
+		MarketplaceAuctionImpl marketAuction = new MarketplaceAuctionImpl(
+				new MarketplaceCacheImpl(), 2, EventLog.DISABLED);
+		// nothing is recorded before metrics are enabled
+		marketAuction.addBid(bid(1, 25, 10));
+		EngineMetrics metrics = marketAuction.enableMetrics();
+		assertSame(metrics, marketAuction.enableMetrics());
+		EngineMetrics.Snapshot before = metrics.snapshot();
+		assertEquals(0, before.getBids());
+
+		marketAuction.addBid(bid(2, 30, 10));
+		marketAuction.addOffer(offer(1, 24, 4));
+		Offer resting = offer(1, 28, 5);
+		marketAuction.addOffer(resting);
+		marketAuction.cancel(resting.getId());
+
+		EngineMetrics.Snapshot after = metrics.snapshot();
+		assertEquals(1, after.getBids());
+		assertEquals(2, after.getOffers());
+		assertEquals(1, after.getOrders());
+		assertEquals(1, after.getCancels());
+		assertEquals(1, after.getAddBid().getCount());
+		assertEquals(2, after.getAddOffer().getCount());
+		// one lock for each add and the cancel
+		assertEquals(4, after.getLockWait().getCount());
+		assertEquals(4, after.getLockHold().getCount());
+		assertEquals(3, after.getMatch().getCount());
+		assertEquals(1, after.getPlaceOrder().getCount());
+		// rest bid and offer, order, reduce bid, cancel offer
+		assertEquals(5, after.getCacheUpdate().getCount());
+		assertEquals(Integer.valueOf(1), after.getBidLevels().get(1));
+		assertEquals(Integer.valueOf(0), after.getOfferLevels().get(1));
+		assertTrue(after.getOrdersPerSecond(before) > 0);
+		assertTrue(after.getEntriesPerSecond(before) > 0);
+	}
+
+	@Test
+	public void testRiskRejections() {
+		MarketplaceAuctionImpl marketAuction = new MarketplaceAuctionImpl(
+				new MarketplaceCacheImpl(), 1, EventLog.DISABLED);
+		marketAuction.setRiskCheck(new RiskCheck(new RiskLimits.RiskLimitsBuilder()
+				.maxOrderQuantity(5).build()));
+		EngineMetrics metrics = marketAuction.enableMetrics();
+		try {
+			marketAuction.addBid(bid(1, 25, 10));
+		} catch (RiskLimitException e) {
+			// expected
+		}
+		assertEquals(1, metrics.getRejected());
+		assertEquals(0, metrics.getBids());
+	}
+
+	@Test
+	public void testJmx() throws Exception {
+		MarketplaceAuctionImpl marketAuction = new MarketplaceAuctionImpl(
+				new MarketplaceCacheImpl(), 1, EventLog.DISABLED);
+		EngineMetrics metrics = marketAuction.enableMetrics();
+		ObjectName name = metrics.register("test");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			marketAuction.addBid(bid(1, 25, 10));
+			marketAuction.addOffer(offer(1, 25, 10));
+			assertEquals(1L, server.getAttribute(name, "Orders"));
+			CompositeData latency = (CompositeData) server.getAttribute(name, "PlaceOrderLatency");
+			assertEquals(1L, latency.get("count"));
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+
+	private static Bid bid(int itemId, int price, int quantity) {
+		return new Bid.BidBuilder().itemID(itemId).pricePerUnit(price)
+				.quantity(quantity).userId("Buyer").build();
+	}
+
+	private static Offer offer(int itemId, int price, int quantity) {
+		return new Offer.OfferBuilder().itemID(itemId).pricePerUnit(price)
+				.quantity(quantity).userId("Seller").build();
+	}
+}
@@ -0,0 +1,42 @@
+package com.auction;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class EntryCodecTest {
+
+	private final EntryCodec codec = new EntryCodec();
+
+	@Test
+	public void testBid() {
+		Bid bid = new Bid.BidBuilder().itemID(3).pricePerUnit(25)
+				.quantity(10).userId("Buyer").build();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+		buffer.position(7);
+
+		int length = codec.wrap(buffer, 5).encode(bid);
+		assertEquals(EntryCodec.encodedLength(bid), length);
+		// position is left alone
+		assertEquals(7, buffer.position());
+
+		EntryCodec reader = new EntryCodec().wrap(buffer, 5);
+		assertEquals(bid.getId().intValue(), reader.getId());
+		assertEquals(25, reader.getPricePerUnit());
+		assertEquals(bid.toString(), reader.toBid().toString());
+		assertEquals("Buyer", reader.getUserId());
+	}
+
+	@Test
+	public void testOrder() {
+		Order order = new Order.OrderBuilder().itemID(1).pricePerUnit(24)
+				.quantity(4).buyerID("Buyer").sellerID("Seller").build();
+		ByteBuffer buffer = ByteBuffer.allocate(EntryCodec.encodedLength(order));
+
+		assertEquals(buffer.capacity(), codec.wrap(buffer, 0).encode(order));
+		assertEquals(order.toString(), codec.toOrder().toString());
+		assertEquals("Seller", codec.getSellerId());
+	}
+}
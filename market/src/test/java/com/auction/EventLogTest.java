@@ -0,0 +1,216 @@
+package com.auction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventLogTest {
+
+	private final List<LoggingEvent> written = new CopyOnWriteArrayList<>();
+	private Logger logger;
+	private EventLog eventLog;
+
+	@Before
+	public void setup() {
+		logger = Logger.getLogger(EventLogTest.class);
+		logger.setAdditivity(false);
+		logger.setLevel(Level.INFO);
+		logger.removeAllAppenders();
+		logger.addAppender(new AppenderSkeleton() {
+			@Override
+			protected void append(LoggingEvent event) {
+				written.add(event);
+			}
+
+			@Override
+			public boolean requiresLayout() {
+				return false;
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		// small ring so recording wraps around it
+		eventLog = new EventLog(logger, 4);
+	}
+
+	@After
+	public void tearDown() {
+		eventLog.close();
+		logger.removeAllAppenders();
+	}
+
+	@Test
+	public void testFormat() {
+		Bid bid = new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+				.quantity(10).userId("Buyer").build();
+		Offer offer = new Offer.OfferBuilder().itemID(1).pricePerUnit(24)
+				.quantity(4).userId("Seller").build();
+		Order order = new Order.OrderBuilder().itemID(1).pricePerUnit(24)
+				.quantity(4).buyerID("Buyer").sellerID("Seller").build();
+
+		eventLog.bidEntered(bid);
+		eventLog.offerEntered(offer);
+		eventLog.orderPlaced(order);
+		eventLog.offerRemoved(offer);
+		bid.setQuantity(6);
+		eventLog.bidReduced(bid);
+		eventLog.flush();
+
+		assertEquals(5, written.size());
+		assertEquals("Bid entered: [ID = " + bid.getId()
+				+ ", ItemID = 1, PricePerUnit = 25, Quantity = 10, userId = Buyer]",
+				written.get(0).getRenderedMessage());
+		assertEquals("Offer entered: " + offer, written.get(1).getRenderedMessage());
+		assertEquals("Placed order: " + order, written.get(2).getRenderedMessage());
+		assertEquals("Offer removed: " + offer, written.get(3).getRenderedMessage());
+		assertEquals("Bid reduced: " + bid, written.get(4).getRenderedMessage());
+		assertEquals(Level.INFO, written.get(0).getLevel());
+	}
+
+	@Test
+	public void testRecordedTimeKept() throws InterruptedException {
+		Bid bid = new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+				.quantity(10).userId("Buyer").build();
+		long before = System.currentTimeMillis();
+		eventLog.bidEntered(bid);
+		long after = System.currentTimeMillis();
+		eventLog.flush();
+
+		long timestamp = written.get(0).getTimeStamp();
+		assertTrue(timestamp >= before && timestamp <= after);
+	}
+
+	@Test
+	public void testDisabled() {
+		logger.setLevel(Level.WARN);
+		eventLog.bidEntered(new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+				.quantity(10).userId("Buyer").build());
+		eventLog.flush();
+
+		assertEquals(0, written.size());
+	}
+
+	@Test
+	public void testAuctionEvents() {
+		MarketplaceAuctionImpl marketAuction =
+				new MarketplaceAuctionImpl(new MarketplaceCacheImpl(), 1, eventLog);
+		marketAuction.addOffer(new Offer.OfferBuilder().itemID(1).pricePerUnit(24)
+				.quantity(10).userId("Seller").build());
+		marketAuction.addBid(new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+				.quantity(4).userId("Buyer").build());
+		eventLog.flush();
+
+		assertEquals(4, written.size());
+		assertTrue(written.get(0).getRenderedMessage().startsWith("Offer entered: "));
+		assertTrue(written.get(1).getRenderedMessage().startsWith("Bid entered: "));
+		assertTrue(written.get(2).getRenderedMessage().startsWith("Placed order: "));
+		assertTrue(written.get(3).getRenderedMessage().startsWith("Offer reduced: "));
+		assertTrue(written.get(3).getRenderedMessage().endsWith("Quantity = 6, userId = Seller]"));
+	}
+
+	@Test
+	public void testCloseWritesEverything() {
+		for (int i = 0; i < 100; i++) {
+			eventLog.bidEntered(new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+					.quantity(10).userId("Buyer").build());
+		}
+		eventLog.close();
+
+		assertEquals(100, written.size());
+	}
+
+	@Test
+	public void testAppenderFailure() {
+		logger.removeAllAppenders();
+		logger.addAppender(new AppenderSkeleton() {
+			private boolean failed;
+
+			@Override
+			protected void append(LoggingEvent event) {
+				if (!failed) {
+					failed = true;
+					throw new IllegalStateException("Appender failed");
+				}
+				written.add(event);
+			}
+
+			@Override
+			public boolean requiresLayout() {
+				return false;
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		Bid bid = new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+				.quantity(10).userId("Buyer").build();
+		eventLog.bidEntered(bid);
+		eventLog.bidCancelled(bid);
+		eventLog.flush();
+
+		// the failed event is counted and the writer carries on
+		assertEquals(1, eventLog.getDropped());
+		assertEquals(1, written.size());
+	}
+
+	@Test
+	public void testAppenderError() {
+		logger.removeAllAppenders();
+		logger.addAppender(new AppenderSkeleton() {
+			private boolean failed;
+
+			@Override
+			protected void append(LoggingEvent event) {
+				if (!failed) {
+					failed = true;
+					throw new AssertionError("Appender failed");
+				}
+				written.add(event);
+			}
+
+			@Override
+			public boolean requiresLayout() {
+				return false;
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		for (int i = 0; i < 10; i++) {
+			eventLog.bidEntered(new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+					.quantity(10).userId("Buyer").build());
+		}
+		eventLog.flush();
+
+		// an Error does not kill the writer, so the ring keeps draining
+		assertEquals(1, eventLog.getDropped());
+		assertEquals(9, written.size());
+	}
+
+	@Test(timeout = 10000)
+	public void testRecordedAfterClose() {
+		eventLog.close();
+		// more events than the ring holds, none of which can be written
+		for (int i = 0; i < 10; i++) {
+			eventLog.bidEntered(new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+					.quantity(10).userId("Buyer").build());
+		}
+
+		assertEquals(10, eventLog.getDropped());
+		assertEquals(0, written.size());
+	}
+}
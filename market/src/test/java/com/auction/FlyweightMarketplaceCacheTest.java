@@ -0,0 +1,282 @@
+package com.auction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class FlyweightMarketplaceCacheTest {
+
+	private FlyweightMarketplaceCache cache;
+
+	@Before
+	public void setup() {
+		// small capacity so storage has to grow
+		cache = new FlyweightMarketplaceCache(2);
+	}
+
+	@Test
+	public void testAddAndGetBid() {
+		Bid bid_1 = bid(1, 20, 10, "Buyer");
+		Bid bid_2 = bid(2, 30, 10, "Buyer");
+
+		cache.addBid(bid_1);
+		cache.addBid(bid_2);
+
+		List<Bid> items = cache.getBidForItem(1);
+		assertEquals(1, items.size());
+		assertEquals(bid_1, items.get(0));
+
+		items = cache.getBidForUser("Buyer");
+		assertEquals(2, items.size());
+		assertEquals(bid_1, items.get(0));
+		assertEquals(bid_2, items.get(1));
+
+		assertEquals(0, cache.getBidForUser("Unknown").size());
+		assertEquals(0, cache.getBidForItem(3).size());
+	}
+
+	@Test
+	public void testPriceTimePriority() {
+		Offer offer_1 = offer(1, 25, 10, "Seller");
+		Offer offer_2 = offer(1, 24, 10, "Seller");
+		Offer offer_3 = offer(1, 25, 5, "Seller");
+		Offer offer_4 = offer(1, 26, 5, "Seller");
+
+		cache.addOffer(offer_1);
+		cache.addOffer(offer_2);
+		cache.addOffer(offer_3);
+		cache.addOffer(offer_4);
+
+		List<Offer> offers = cache.getOfferForItem(1);
+		assertEquals(4, offers.size());
+		assertEquals(offer_2, offers.get(0));
+		assertEquals(offer_1, offers.get(1));
+		assertEquals(offer_3, offers.get(2));
+		assertEquals(offer_4, offers.get(3));
+		assertEquals(offer_2, cache.getBestOffer(1));
+
+		cache.removeOffer(offer_2);
+		assertEquals(offer_1, cache.getBestOffer(1));
+		cache.removeOffer(offer_1);
+		assertEquals(offer_3, cache.getBestOffer(1));
+
+		assertEquals(2, cache.getOfferForUser("Seller").size());
+	}
+
+	@Test
+	public void testTopOfBook() {
+		assertEquals(TopOfBook.EMPTY, cache.getTopOfBook(1));
+
+		Bid bid_1 = bid(1, 20, 10, "Buyer");
+		Bid bid_2 = bid(1, 20, 5, "Buyer");
+		Offer offer = offer(1, 22, 7, "Seller");
+		cache.addBid(bid_1);
+		cache.addBid(bid_2);
+		cache.addOffer(offer);
+
+		TopOfBook top = cache.getTopOfBook(1);
+		assertEquals(Integer.valueOf(20), top.getBidPrice());
+		assertEquals(15, top.getBidQuantity());
+		assertEquals(Integer.valueOf(22), top.getOfferPrice());
+		assertEquals(7, top.getOfferQuantity());
+
+		cache.reduceBid(bid_1, 4);
+		// the store owns the quantity, the bid added is not kept
+		assertEquals(Integer.valueOf(10), bid_1.getQuantity());
+		assertEquals(Integer.valueOf(6), cache.getBid(bid_1.getId()).getQuantity());
+		assertEquals(11, cache.getTopOfBook(1).getBidQuantity());
+
+		cache.removeBid(bid_1);
+		cache.removeBid(bid_2);
+		top = cache.getTopOfBook(1);
+		assertNull(top.getBidPrice());
+		assertEquals(0, top.getBidQuantity());
+	}
+
+	@Test
+	public void testLevels() {
+		assertTrue(cache.getBidLevels(1, 5).isEmpty());
+		assertEquals(0, cache.getOfferQuantity(1, 22));
+
+		Bid bid_1 = bid(1, 20, 10, "Buyer");
+		cache.addBid(bid_1);
+		cache.addBid(bid(1, 20, 5, "Buyer"));
+		cache.addBid(bid(1, 21, 3, "Buyer"));
+		cache.addBid(bid(1, 19, 2, "Buyer"));
+		cache.addOffer(offer(1, 22, 7, "Seller"));
+
+		SortedMap<Integer, Long> bids = cache.getBidLevels(1, 2);
+		assertEquals(Arrays.asList(21, 20), new ArrayList<>(bids.keySet()));
+		assertEquals(Long.valueOf(15), bids.get(20));
+		assertEquals(1, cache.getOfferLevels(1, 2).size());
+
+		cache.reduceBid(bid_1, 4);
+		assertEquals(11, cache.getBidQuantity(1, 20));
+		assertEquals(7, cache.getOfferQuantity(1, 22));
+		assertEquals(0, cache.getBidQuantity(1, 22));
+	}
+
+	@Test
+	public void testSlotsReused() {
+		for (int i = 0; i < 100; i++) {
+			Bid bid = bid(1, 20 + (i % 3), 10, "Buyer" + (i % 5));
+			cache.addBid(bid);
+			cache.removeBid(bid);
+		}
+		assertEquals(0, cache.getBidForItem(1).size());
+		assertNull(cache.getBestBid(1));
+		assertEquals(0, cache.getBidForUser("Buyer1").size());
+	}
+
+	@Test
+	public void testMatchingWithEngine() {
+		MarketplaceAuctionImpl marketAuction = new MarketplaceAuctionImpl(cache, 1);
+
+		marketAuction.addOffer(offer(1, 24, 5, "Seller"));
+		marketAuction.addOffer(offer(1, 25, 5, "Seller"));
+		marketAuction.addOffer(offer(1, 26, 5, "Seller"));
+		marketAuction.addBid(bid(1, 25, 12, "Buyer"));
+
+		assertEquals(2, marketAuction.getOrdersForBuyer("Buyer").size());
+		List<Bid> bids = marketAuction.getBidForUser("Buyer");
+		assertEquals(1, bids.size());
+		assertEquals(Integer.valueOf(2), bids.get(0).getQuantity());
+		assertEquals(Integer.valueOf(25), marketAuction.getBidPrice(1));
+		assertEquals(Integer.valueOf(26), marketAuction.getOfferPrice(1));
+	}
+
+	@Test
+	public void testReadAndFillBest() {
+		Offer offer_1 = offer(1, 24, 10, "Seller");
+		Offer offer_2 = offer(1, 25, 5, "Seller");
+		cache.addOffer(offer_1);
+		cache.addOffer(offer_2);
+
+		RestingEntry best = new RestingEntry();
+		assertTrue(cache.readBestOffer(1, best));
+		assertEquals(offer_1.getId().intValue(), best.getId());
+		assertEquals(24, best.getPricePerUnit());
+		assertEquals(10, best.getQuantity());
+		assertEquals("Seller", best.getUserId());
+
+		cache.fillOffer(best, 4);
+		assertEquals(Integer.valueOf(6), cache.getOffer(offer_1.getId()).getQuantity());
+		assertEquals(6, cache.getTopOfBook(1).getOfferQuantity());
+		assertEquals(269, cache.getExposure("Seller").getOpenOfferNotional());
+
+		assertTrue(cache.readBestOffer(1, best));
+		cache.fillOffer(best, 6);
+		assertNull(cache.getOffer(offer_1.getId()));
+		assertTrue(cache.readBestOffer(1, best));
+		assertEquals(offer_2.getId().intValue(), best.getId());
+		assertFalse(cache.readBestBid(1, best));
+	}
+
+	@Test
+	public void testItemsMatchedInParallel() throws InterruptedException {
+		MarketplaceAuctionImpl marketAuction = new MarketplaceAuctionImpl(cache, 4, EventLog.DISABLED);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			int itemId = t + 1;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 1000; i++) {
+					marketAuction.addOffer(offer(itemId, 20 + i % 5, 2, "Seller" + itemId));
+					marketAuction.addBid(bid(itemId, 25, 1, "Buyer" + itemId));
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		for (int itemId = 1; itemId <= 4; itemId++) {
+			assertEquals(1000, marketAuction.getOrdersForBuyer("Buyer" + itemId).size());
+			assertEquals(0, cache.getBidForItem(itemId).size());
+			int resting = 0;
+			for (Offer offer : cache.getOfferForItem(itemId)) {
+				resting += offer.getQuantity();
+			}
+			assertEquals(1000, resting);
+		}
+	}
+
+	private Bid bid(int itemId, int price, int quantity, String userId) {
+		return new Bid.BidBuilder().itemID(itemId).pricePerUnit(price)
+				.quantity(quantity).userId(userId).build();
+	}
+
+	private Offer offer(int itemId, int price, int quantity, String userId) {
+		return new Offer.OfferBuilder().itemID(itemId).pricePerUnit(price)
+				.quantity(quantity).userId(userId).build();
+	}
+
+	@Test
+	public void testGetById() {
+		Bid bid = bid(1, 20, 10, "Buyer");
+		Offer offer = offer(1, 30, 10, "Seller");
+		cache.addBid(bid);
+		cache.addOffer(offer);
+
+		assertEquals(bid.toString(), cache.getBid(bid.getId()).toString());
+		assertEquals(offer.toString(), cache.getOffer(offer.getId()).toString());
+		assertNull(cache.getBid(offer.getId()));
+
+		cache.removeOffer(offer);
+		assertNull(cache.getOffer(offer.getId()));
+	}
+
+	@Test
+	public void testMatching() {
+		MarketplaceAuctionImpl marketAuction = new MarketplaceAuctionImpl(cache, 1, EventLog.DISABLED);
+		Bid bid = bid(1, 25, 10, "Buyer");
+		marketAuction.addBid(bid);
+		marketAuction.addOffer(offer(1, 24, 4, "Seller"));
+		marketAuction.addOffer(offer(1, 25, 3, "Seller"));
+
+		assertEquals(Integer.valueOf(3), cache.getBid(bid.getId()).getQuantity());
+		assertEquals(3, cache.getTopOfBook(1).getBidQuantity());
+		assertEquals(2, marketAuction.getOrdersForBuyer("Buyer").size());
+
+		assertEquals(true, marketAuction.amend(bid.getId(), 2, 25));
+		assertEquals(Integer.valueOf(2), cache.getBid(bid.getId()).getQuantity());
+		marketAuction.addOffer(offer(1, 25, 5, "Seller"));
+		assertNull(cache.getBid(bid.getId()));
+		assertEquals(Integer.valueOf(3), cache.getBestOffer(1).getQuantity());
+	}
+
+	@Test
+	public void testExposure() {
+		Bid bid = bid(1, 20, 10, "Buyer");
+		Offer offer = offer(2, 30, 5, "Buyer");
+		cache.addBid(bid);
+		cache.addOffer(offer);
+
+		UserExposure exposure = cache.getExposure("Buyer");
+		assertSame(exposure, cache.getExposure("Buyer"));
+		assertEquals(200, exposure.getOpenBidNotional());
+		assertEquals(150, exposure.getOpenOfferNotional());
+
+		cache.reduceBid(bid, 4);
+		cache.removeOffer(offer);
+		cache.addOrder(new Order.OrderBuilder().itemID(1).quantity(4).pricePerUnit(20)
+				.buyerID("Buyer").sellerID("Seller").build());
+		assertEquals(120, exposure.getOpenBidNotional());
+		assertEquals(0, exposure.getOpenOfferQuantity(2));
+		assertEquals(4, exposure.getBoughtQuantity());
+		assertEquals(4, cache.getExposure("Seller").getSoldQuantity());
+
+		cache.removeBid(bid);
+		assertEquals(0, exposure.getOpenNotional());
+	}
+}
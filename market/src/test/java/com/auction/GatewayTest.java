@@ -0,0 +1,160 @@
+package com.auction;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GatewayTest {
+
+	private MarketplaceAuctionImpl marketAuction;
+	private Gateway gateway;
+	private GatewayClient buyer;
+	private GatewayClient seller;
+
+	@Before
+	public void setup() throws Exception {
+		marketAuction = new MarketplaceAuctionImpl(new MarketplaceCacheImpl(), 4, EventLog.DISABLED);
+		gateway = new Gateway(marketAuction, new InetSocketAddress("127.0.0.1", 0));
+		buyer = new GatewayClient(gateway.getLocalAddress());
+		buyer.logon("Buyer");
+		seller = new GatewayClient(gateway.getLocalAddress());
+		seller.logon("Seller");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		buyer.close();
+		seller.close();
+		gateway.close();
+	}
+
+	@Test
+	public void testMatch() throws Exception {
+		List<String> sellerMessages = new ArrayList<>();
+		seller.offer(1, 1, 10, 24);
+		receive(seller, sellerMessages, 1);
+		assertEquals("accepted 1", sellerMessages.get(0).substring(0, 10));
+
+		List<String> buyerMessages = new ArrayList<>();
+		buyer.bid(7, 1, 4, 25);
+		receive(buyer, buyerMessages, 2);
+		assertEquals("execution 1 4@24 " + GatewayProtocol.BUY, buyerMessages.get(0));
+		assertEquals("accepted 7", buyerMessages.get(1).substring(0, 10));
+
+		receive(seller, sellerMessages, 2);
+		assertEquals("execution 1 4@24 " + GatewayProtocol.SELL, sellerMessages.get(1));
+
+		assertEquals(1, marketAuction.getOrdersForBuyer("Buyer").size());
+		assertEquals(Integer.valueOf(24), marketAuction.getOfferPrice(1));
+	}
+
+	@Test
+	public void testCancelAndQuery() throws Exception {
+		int[] id = new int[1];
+		buyer.bid(1, 2, 10, 20);
+		buyer.receive(new GatewayClient.Handler() {
+			@Override
+			public void onAccepted(int requestId, int acceptedId) {
+				id[0] = acceptedId;
+			}
+		});
+
+		List<String> messages = new ArrayList<>();
+		buyer.queryTopOfBook(2, 2);
+		// someone else's bid can not be cancelled
+		seller.cancel(3, id[0]);
+		receive(seller, messages, 1);
+		buyer.cancel(4, id[0]);
+		buyer.cancel(5, id[0]);
+		receive(buyer, messages, 4);
+
+		assertEquals("rejected 3 " + GatewayProtocol.UNKNOWN_ID, messages.get(0));
+		assertEquals("top 2 20x10 " + GatewayProtocol.NO_PRICE + "x0", messages.get(1));
+		assertEquals("done 4", messages.get(2));
+		assertEquals("rejected 5 " + GatewayProtocol.UNKNOWN_ID, messages.get(3));
+		assertEquals(null, marketAuction.getBidPrice(2));
+	}
+
+	@Test
+	public void testNotLoggedOn() throws Exception {
+		List<String> messages = new ArrayList<>();
+		try (GatewayClient client = new GatewayClient(gateway.getLocalAddress())) {
+			client.bid(1, 1, 10, 20);
+			receive(client, messages, 1);
+		}
+		assertEquals("rejected 1 " + GatewayProtocol.NOT_LOGGED_ON, messages.get(0));
+	}
+
+	@Test
+	public void testInvalidLogonClosed() throws Exception {
+		for (short length : new short[] { 0, -1 }) {
+			try (SocketChannel channel = SocketChannel.open(gateway.getLocalAddress())) {
+				ByteBuffer logon = ByteBuffer.allocate(3);
+				logon.put(GatewayProtocol.LOGON).putShort(length).flip();
+				channel.write(logon);
+				// the gateway closes the connection rather than wait for more
+				assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+			}
+		}
+	}
+
+	@Test
+	public void testPipelined() throws Exception {
+		int count = 20000;
+		for (int i = 0; i < count; i++) {
+			buyer.bid(i, 3, 1, 10);
+			seller.offer(i, 3, 1, 10);
+		}
+		seller.flush();
+		// every bid fills against an offer
+		List<String> messages = new ArrayList<>();
+		receive(buyer, messages, count * 2);
+		receive(seller, messages, count * 4);
+
+		assertEquals(count, marketAuction.getOrdersForBuyer("Buyer").size());
+		assertEquals(null, marketAuction.getBidPrice(3));
+		assertEquals(null, marketAuction.getOfferPrice(3));
+	}
+
+	private static void receive(GatewayClient client, List<String> messages, int total) throws Exception {
+		GatewayClient.Handler handler = new GatewayClient.Handler() {
+			@Override
+			public void onAccepted(int requestId, int id) {
+				messages.add("accepted " + requestId + " " + id);
+			}
+
+			@Override
+			public void onRejected(int requestId, byte reason) {
+				messages.add("rejected " + requestId + " " + reason);
+			}
+
+			@Override
+			public void onDone(int requestId) {
+				messages.add("done " + requestId);
+			}
+
+			@Override
+			public void onExecution(int orderId, int itemId, int quantity, int price, byte side) {
+				messages.add("execution " + itemId + " " + quantity + "@" + price + " " + side);
+			}
+
+			@Override
+			public void onTopOfBook(int requestId, int itemId, int bidPrice, long bidQuantity,
+					int offerPrice, long offerQuantity) {
+				messages.add("top " + itemId + " " + bidPrice + "x" + bidQuantity + " "
+						+ offerPrice + "x" + offerQuantity);
+			}
+		};
+		while (messages.size() < total) {
+			client.receive(handler);
+		}
+	}
+}
@@ -0,0 +1,295 @@
+package com.auction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testReplay() throws Exception {
+		Path path = folder.getRoot().toPath().resolve("journal");
+		Bid bid = new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+				.quantity(10).userId("Buyer").build();
+		Offer offer = new Offer.OfferBuilder().itemID(2).pricePerUnit(24)
+				.quantity(5).userId("Seller").build();
+		Order order = new Order.OrderBuilder().itemID(1).pricePerUnit(24)
+				.quantity(4).buyerID("Buyer").sellerID("Seller").build();
+
+		try (Journal journal = new Journal(path)) {
+			journal.appendBid(bid);
+			journal.appendOffer(offer);
+			long position = journal.appendOrder(order);
+			journal.commit();
+			assertEquals(position, journal.getDurablePosition());
+		}
+
+		List<Object> replayed = new ArrayList<>();
+		try (Journal journal = new Journal(path)) {
+			journal.replay(recordingHandler(replayed));
+			assertEquals(bid.getId().intValue(), journal.getLastBidId());
+			assertEquals(offer.getId().intValue(), journal.getLastOfferId());
+			assertEquals(order.getId().intValue(), journal.getLastOrderId());
+		}
+		assertEquals(3, replayed.size());
+		assertEquals(bid.toString(), replayed.get(0).toString());
+		assertEquals(offer.toString(), replayed.get(1).toString());
+		assertEquals(order.toString(), replayed.get(2).toString());
+	}
+
+	@Test
+	public void testAppendAfterReopen() throws Exception {
+		Path path = folder.getRoot().toPath().resolve("journal");
+		// small windows so records roll over into new ones
+		try (Journal journal = new Journal(path, 128, false)) {
+			for (int i = 0; i < 20; i++) {
+				journal.appendBid(bid(i));
+			}
+		}
+		try (Journal journal = new Journal(path, 4096, false)) {
+			for (int i = 20; i < 40; i++) {
+				journal.appendBid(bid(i));
+			}
+		}
+
+		List<Object> replayed = new ArrayList<>();
+		try (Journal journal = new Journal(path)) {
+			journal.replay(recordingHandler(replayed));
+		}
+		assertEquals(40, replayed.size());
+		for (int i = 0; i < 40; i++) {
+			assertEquals(Integer.valueOf(i), ((Bid) replayed.get(i)).getPricePerUnit());
+		}
+	}
+
+	@Test
+	public void testReplayStopsAtChecksumMismatch() throws Exception {
+		Path path = folder.getRoot().toPath().resolve("journal");
+		long first;
+		try (Journal journal = new Journal(path)) {
+			first = journal.appendBid(bid(1));
+			journal.appendBid(bid(2));
+			journal.appendBid(bid(3));
+		}
+		// the length of the second record reached the disk, its fields did not
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 0x7f }), first + 12);
+		}
+
+		List<Object> replayed = new ArrayList<>();
+		try (Journal journal = new Journal(path)) {
+			journal.replay(recordingHandler(replayed));
+			assertEquals(first, journal.getPosition());
+			// appending carries on after the last good record
+			journal.appendBid(bid(4));
+		}
+		try (Journal journal = new Journal(path)) {
+			journal.replay(recordingHandler(replayed));
+		}
+		assertEquals(3, replayed.size());
+		assertEquals(Integer.valueOf(1), ((Bid) replayed.get(0)).getPricePerUnit());
+		assertEquals(Integer.valueOf(1), ((Bid) replayed.get(1)).getPricePerUnit());
+		assertEquals(Integer.valueOf(4), ((Bid) replayed.get(2)).getPricePerUnit());
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotAJournal() throws Exception {
+		Path path = folder.newFile().toPath();
+		Files.write(path, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+		new Journal(path).close();
+	}
+
+	@Test
+	public void testRecover() throws Exception {
+		Path path = folder.getRoot().toPath().resolve("journal");
+		try (Journal journal = new Journal(path)) {
+			MarketplaceAuctionImpl marketAuction = new MarketplaceAuctionImpl(
+					new MarketplaceCacheImpl(), 4, EventLog.DISABLED, journal);
+			marketAuction.addBid(new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+					.quantity(10).userId("Buyer").build());
+			marketAuction.addOffer(new Offer.OfferBuilder().itemID(1).pricePerUnit(24)
+					.quantity(4).userId("Seller").build());
+			marketAuction.addOffer(new Offer.OfferBuilder().itemID(2).pricePerUnit(30)
+					.quantity(4).userId("Seller").build());
+		}
+
+		try (Journal journal = new Journal(path)) {
+			MarketplaceAuctionImpl marketAuction = MarketplaceAuctionImpl.recover(
+					new MarketplaceCacheImpl(), 4, journal);
+			assertEquals(Integer.valueOf(25), marketAuction.getBidPrice(1));
+			assertEquals(null, marketAuction.getOfferPrice(1));
+			assertEquals(Integer.valueOf(30), marketAuction.getOfferPrice(2));
+			assertEquals(Integer.valueOf(6), marketAuction.getBidForUser("Buyer").get(0).getQuantity());
+			assertEquals(1, marketAuction.getOrdersForSeller("Seller").size());
+			assertTrue(marketAuction.getOrdersForSeller("Seller").get(0).getId() > journal.getLastOrderId());
+
+			// new bids are journaled after the recovered ones
+			Bid bid = new Bid.BidBuilder().itemID(2).pricePerUnit(30)
+					.quantity(4).userId("Buyer").build();
+			assertTrue(bid.getId() > journal.getLastBidId());
+			marketAuction.addBid(bid);
+		}
+
+		try (Journal journal = new Journal(path)) {
+			MarketplaceAuctionImpl marketAuction = MarketplaceAuctionImpl.recover(
+					new MarketplaceCacheImpl(), 1, journal);
+			assertEquals(null, marketAuction.getOfferPrice(2));
+			assertEquals(2, marketAuction.getOrdersForBuyer("Buyer").size());
+		}
+	}
+
+	@Test
+	public void testRecoverCancelAndAmend() throws Exception {
+		Path path = folder.getRoot().toPath().resolve("journal");
+		Bid cancelled = new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+				.quantity(10).userId("Buyer").build();
+		Offer amended = new Offer.OfferBuilder().itemID(1).pricePerUnit(30)
+				.quantity(10).userId("Seller").build();
+		try (Journal journal = new Journal(path)) {
+			MarketplaceAuctionImpl marketAuction = new MarketplaceAuctionImpl(
+					new MarketplaceCacheImpl(), 1, EventLog.DISABLED, journal);
+			marketAuction.addBid(cancelled);
+			marketAuction.addOffer(amended);
+			marketAuction.cancel(cancelled.getId());
+			marketAuction.amend(amended.getId(), 3, 28);
+
+			List<Object> replayed = new ArrayList<>();
+			journal.replay(recordingHandler(replayed));
+			assertEquals("cancel " + cancelled.getId(), replayed.get(2));
+			assertEquals("amend " + amended.getId() + " 3@28", replayed.get(3));
+		}
+
+		try (Journal journal = new Journal(path)) {
+			MarketplaceAuctionImpl marketAuction = MarketplaceAuctionImpl.recover(
+					new MarketplaceCacheImpl(), 1, journal);
+			assertEquals(null, marketAuction.getBidPrice(1));
+			assertEquals(Integer.valueOf(28), marketAuction.getOfferPrice(1));
+			assertEquals(Integer.valueOf(3), marketAuction.getOfferForUser("Seller").get(0).getQuantity());
+		}
+	}
+
+	@Test
+	public void testCommitFailsOnceForceFails() throws Exception {
+		Path path = folder.getRoot().toPath().resolve("journal");
+		AtomicBoolean failing = new AtomicBoolean();
+		try (Journal journal = new Journal(path) {
+			@Override
+			void force(MappedByteBuffer window) {
+				if (failing.get()) {
+					throw new UncheckedIOException(new IOException("Disk failed"));
+				}
+				super.force(window);
+			}
+		}) {
+			journal.appendBid(bid(1));
+			journal.commit();
+
+			failing.set(true);
+			journal.appendBid(bid(2));
+			try {
+				journal.commit();
+				fail("commit must not confirm records which are not on disk");
+			} catch (IllegalStateException e) {
+				assertEquals("Disk failed", e.getCause().getCause().getMessage());
+			}
+			try {
+				journal.appendBid(bid(3));
+				fail("appending must fail once a force has failed");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+			failing.set(false);
+		}
+	}
+
+	@Test
+	public void testListenersToldOnceCommitted() throws Exception {
+		Path path = folder.getRoot().toPath().resolve("journal");
+		List<String> told = new CopyOnWriteArrayList<>();
+		try (Journal journal = new Journal(path)) {
+			MarketplaceAuctionImpl marketAuction = new MarketplaceAuctionImpl(
+					new MarketplaceCacheImpl(), 1, EventLog.DISABLED, journal);
+			marketAuction.addExecutionListener(new ExecutionListener() {
+				@Override
+				public void onOrder(Order order) {
+					assertTrue(journal.getDurablePosition() >= journal.getPosition());
+					told.add("order");
+					// the item lock is free, another thread can enter a bid meanwhile
+					Thread other = new Thread(() -> marketAuction.addBid(bid(1)));
+					other.start();
+					try {
+						other.join(10000);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					assertTrue(!other.isAlive());
+				}
+
+				@Override
+				public void onAccepted(BookEntry entry) {
+					assertTrue(journal.getDurablePosition() >= journal.getPosition());
+					told.add(entry.getUserId());
+				}
+			});
+			marketAuction.addOffer(new Offer.OfferBuilder().itemID(1).pricePerUnit(24)
+					.quantity(4).userId("Seller").build());
+			marketAuction.addBid(bid(25));
+		}
+		assertEquals(Arrays.asList("Seller", "order", "Buyer1", "Buyer25"), told);
+	}
+
+	private static Bid bid(int price) {
+		return new Bid.BidBuilder().itemID(1).pricePerUnit(price)
+				.quantity(10).userId("Buyer" + price).build();
+	}
+
+	private static Journal.Handler recordingHandler(List<Object> replayed) {
+		return new Journal.Handler() {
+			@Override
+			public void onBid(Bid bid, long position) {
+				replayed.add(bid);
+			}
+
+			@Override
+			public void onOffer(Offer offer, long position) {
+				replayed.add(offer);
+			}
+
+			@Override
+			public void onOrder(Order order, long position) {
+				replayed.add(order);
+			}
+
+			@Override
+			public void onCancel(int id, int itemId, long position) {
+				replayed.add("cancel " + id);
+			}
+
+			@Override
+			public void onAmend(int id, int itemId, int quantity, int price, long position) {
+				replayed.add("amend " + id + " " + quantity + "@" + price);
+			}
+		};
+	}
+}
@@ -0,0 +1,55 @@
+package com.auction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1_000_000, histogram.getMax());
+		assertEquals(500_500, histogram.getMean(), 0.001);
+		assertWithin(500_000, histogram.getValueAtPercentile(50));
+		assertWithin(990_000, histogram.getValueAtPercentile(99));
+		assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void testSmallValuesExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(3);
+		histogram.record(-5);
+		assertEquals(0, histogram.getValueAtPercentile(50));
+		assertEquals(3, histogram.getValueAtPercentile(100));
+		assertEquals(0, new LatencyHistogram().getValueAtPercentile(99));
+	}
+
+	@Test
+	public void testBuckets() {
+		for (long value = 0; value < 1 << 20; value += 7) {
+			assertTrue(LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(value)) >= value);
+		}
+		LatencyHistogram.indexOf(Long.MAX_VALUE);
+	}
+
+	@Test
+	public void testCopy() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(100);
+		LatencyHistogram copy = histogram.copy();
+		histogram.record(200);
+		assertEquals(1, copy.getCount());
+		assertEquals(100, copy.getMax());
+	}
+
+	private static void assertWithin(long expected, long actual) {
+		assertTrue(actual + " not within 3% of " + expected, Math.abs(actual - expected) <= expected * 0.03);
+	}
+}
@@ -0,0 +1,111 @@
+package com.auction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class LoadGeneratorTest {
+
+	@Test
+	public void testRun() throws Exception {
+		MarketplaceAuctionImpl auction = new MarketplaceAuctionImpl(new MarketplaceCacheImpl(), 4,
+				EventLog.DISABLED);
+		LoadGenerator.Result result = new LoadGenerator.LoadGeneratorBuilder()
+				.buyers(200).sellers(200).items(10).ratePerTrader(1000).entriesPerTrader(20)
+				.build().run(auction);
+
+		assertEquals(LoadGenerator.virtualThreadFactory() != null, result.isVirtualThreads());
+		assertEquals(400 * 20, result.getEntries());
+		assertEquals(200 * 20, result.getAddBid().getCount());
+		assertEquals(result.getEntries(), result.getLateness().getCount());
+		assertTrue(result.getOrders() > 0);
+		assertTrue(result.getThroughput() > 0);
+		// whatever was not traded is still resting
+		long restingBids = 0;
+		long restingOffers = 0;
+		for (int i = 0; i < 200; i++) {
+			for (Bid bid : auction.getBidForUser("Buyer" + i)) {
+				restingBids += bid.getQuantity();
+			}
+			for (Offer offer : auction.getOfferForUser("Seller" + i)) {
+				restingOffers += offer.getQuantity();
+			}
+		}
+		assertEquals(result.getBidQuantity(), result.getVolume() + restingBids);
+		assertEquals(result.getOfferQuantity(), result.getVolume() + restingOffers);
+	}
+
+	@Test(timeout = 10000)
+	public void testThreadNotCreated() throws Exception {
+		MarketplaceAuctionImpl auction = new MarketplaceAuctionImpl(new MarketplaceCacheImpl(), 1,
+				EventLog.DISABLED);
+		AtomicInteger created = new AtomicInteger();
+		LoadGenerator generator = new LoadGenerator.LoadGeneratorBuilder()
+				.buyers(5).sellers(5).items(1).ratePerTrader(Double.POSITIVE_INFINITY)
+				.entriesPerTrader(10).build();
+		try {
+			// refuses a thread half way, as a factory out of threads might
+			generator.run(auction, runnable -> created.incrementAndGet() > 4 ? null : new Thread(runnable), false);
+			fail("Expected the missing thread to fail the run");
+		} catch (IllegalStateException e) {
+			// expected, without waiting for the trader never started
+		}
+		// the traders started were let go without trading
+		Thread.sleep(100);
+		assertEquals(0, auction.getBidForUser("Buyer0").size());
+	}
+
+	@Test
+	public void testPlatformThreads() throws Exception {
+		RingBufferMarketplaceAuction auction = new RingBufferMarketplaceAuction();
+		try {
+			LoadGenerator.Result result = new LoadGenerator.LoadGeneratorBuilder()
+					.buyers(50).sellers(50).items(3).ratePerTrader(Double.POSITIVE_INFINITY)
+					.entriesPerTrader(100).bidPrices(LoadGenerator.PriceDistribution.uniform(10, 20))
+					.offerPrices(LoadGenerator.PriceDistribution.uniform(15, 25)).quantity(1, 1)
+					.virtualThreads(false).build().run(auction);
+			assertFalse(result.isVirtualThreads());
+			assertEquals(100 * 100, result.getEntries());
+			assertEquals(0, result.getLateness().getCount());
+			// every order is for a single unit
+			assertEquals(result.getOrders(), result.getVolume());
+		} finally {
+			auction.close();
+		}
+	}
+
+	@Test
+	public void testItemSkew() {
+		LoadGenerator generator = new LoadGenerator.LoadGeneratorBuilder().items(10).itemSkew(2).build();
+		Random random = new Random(1);
+		int[] counts = new int[11];
+		for (int i = 0; i < 10000; i++) {
+			counts[generator.nextItem(random)]++;
+		}
+		assertEquals(0, counts[0]);
+		// item 1 takes about 65% with an exponent of 2, item 2 a quarter of that
+		assertTrue(counts[1] > 6000 && counts[1] < 7000);
+		assertTrue(counts[2] > 1300 && counts[2] < 2000);
+		assertTrue(counts[10] > 0);
+
+		int[] uniform = new int[11];
+		generator = new LoadGenerator.LoadGeneratorBuilder().items(10).itemSkew(0).build();
+		for (int i = 0; i < 10000; i++) {
+			uniform[generator.nextItem(random)]++;
+		}
+		for (int item = 1; item <= 10; item++) {
+			assertTrue(uniform[item] > 800 && uniform[item] < 1200);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPrices() {
+		LoadGenerator.PriceDistribution.uniform(10, 5);
+	}
+}
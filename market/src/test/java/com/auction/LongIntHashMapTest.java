@@ -0,0 +1,43 @@
+package com.auction;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LongIntHashMapTest {
+
+	@Test
+	public void testPutGetRemove() {
+		LongIntHashMap map = new LongIntHashMap(4);
+		map.put(1L, 10);
+		map.put(2L, 20);
+		assertEquals(10, map.get(1L));
+		assertEquals(20, map.get(2L));
+		assertEquals(LongIntHashMap.MISSING, map.get(3L));
+
+		map.put(1L, 11);
+		assertEquals(11, map.get(1L));
+		assertEquals(2, map.size());
+
+		assertEquals(11, map.remove(1L));
+		assertEquals(LongIntHashMap.MISSING, map.get(1L));
+		assertEquals(LongIntHashMap.MISSING, map.remove(1L));
+		assertEquals(1, map.size());
+	}
+
+	@Test
+	public void testGrowAndRemoveMany() {
+		LongIntHashMap map = new LongIntHashMap(4);
+		for (int i = 0; i < 10000; i++) {
+			map.put(i, i);
+		}
+		// remove every other key, remaining keys must still be found
+		for (int i = 0; i < 10000; i += 2) {
+			assertEquals(i, map.remove(i));
+		}
+		for (int i = 0; i < 10000; i++) {
+			assertEquals(i % 2 == 0 ? LongIntHashMap.MISSING : i, map.get(i));
+		}
+		assertEquals(5000, map.size());
+	}
+}
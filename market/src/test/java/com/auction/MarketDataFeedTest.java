@@ -0,0 +1,156 @@
+package com.auction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MarketDataFeedTest {
+
+	private MarketplaceAuctionImpl marketAuction;
+
+	@Before
+	public void setup() {
+		marketAuction = new MarketplaceAuctionImpl(new MarketplaceCacheImpl(), 1, EventLog.DISABLED);
+	}
+
+	@Test
+	public void testUpdates() throws Exception {
+		BlockingQueue<BookUpdate> updates = new LinkedBlockingQueue<>();
+		MarketDataFeed.Subscription subscription = marketAuction.subscribe(updates::add);
+		try {
+			Bid bid = new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+					.quantity(10).userId("Buyer").build();
+			marketAuction.addBid(bid);
+
+			BookUpdate update = take(updates);
+			assertEquals(Integer.valueOf(1), update.getItemId());
+			assertEquals(false, update.isImage());
+			assertEquals(Integer.valueOf(25), update.getTopOfBook().getBidPrice());
+			assertEquals(Long.valueOf(10), update.getBidLevels().get(25));
+
+			marketAuction.addOffer(new Offer.OfferBuilder().itemID(1).pricePerUnit(24)
+					.quantity(4).userId("Seller").build());
+			update = take(updates);
+			assertEquals(Long.valueOf(6), update.getBidLevels().get(25));
+			assertTrue(update.getOfferLevels().isEmpty());
+
+			marketAuction.cancel(bid.getId());
+			update = take(updates);
+			assertEquals(Long.valueOf(0), update.getBidLevels().get(25));
+			assertEquals(null, update.getTopOfBook().getBidPrice());
+		} finally {
+			subscription.close();
+		}
+	}
+
+	@Test
+	public void testImage() throws Exception {
+		marketAuction.addBid(new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+				.quantity(10).userId("Buyer").build());
+		marketAuction.addBid(new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+				.quantity(5).userId("Buyer").build());
+		marketAuction.addOffer(new Offer.OfferBuilder().itemID(1).pricePerUnit(30)
+				.quantity(4).userId("Seller").build());
+
+		BlockingQueue<BookUpdate> updates = new LinkedBlockingQueue<>();
+		MarketDataFeed.Subscription subscription = marketAuction.subscribe(updates::add);
+		try {
+			BookUpdate update = take(updates);
+			assertEquals(true, update.isImage());
+			assertEquals(Long.valueOf(15), update.getBidLevels().get(25));
+			assertEquals(Long.valueOf(4), update.getOfferLevels().get(30));
+			assertEquals(Integer.valueOf(30), update.getTopOfBook().getOfferPrice());
+		} finally {
+			subscription.close();
+		}
+	}
+
+	@Test
+	public void testLevelChangedTwice() throws Exception {
+		marketAuction.addBid(new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+				.quantity(10).userId("Buyer").build());
+		marketAuction.addBid(new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+				.quantity(5).userId("Buyer").build());
+
+		BlockingQueue<BookUpdate> updates = new LinkedBlockingQueue<>();
+		MarketDataFeed.Subscription subscription = marketAuction.subscribe(updates::add);
+		try {
+			assertEquals(true, take(updates).isImage());
+			// fills both bids at 25, changing the level twice in one publish
+			marketAuction.addOffer(new Offer.OfferBuilder().itemID(1).pricePerUnit(25)
+					.quantity(12).userId("Seller").build());
+
+			BookUpdate update = take(updates);
+			assertEquals(1, update.getBidLevels().size());
+			assertEquals(Long.valueOf(3), update.getBidLevels().get(25));
+			assertEquals(3, update.getTopOfBook().getBidQuantity());
+		} finally {
+			subscription.close();
+		}
+	}
+
+	@Test
+	public void testSlowSubscriberConflated() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger received = new AtomicInteger();
+		Map<Integer, Long> bids = new TreeMap<>(Comparator.reverseOrder());
+		BlockingQueue<TopOfBook> tops = new LinkedBlockingQueue<>();
+		MarketDataFeed.Subscription subscription = marketAuction.subscribe(update -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			received.incrementAndGet();
+			for (Map.Entry<Integer, Long> level : update.getBidLevels().entrySet()) {
+				if (level.getValue() == 0) {
+					bids.remove(level.getKey());
+				} else {
+					bids.put(level.getKey(), level.getValue());
+				}
+			}
+			tops.add(update.getTopOfBook());
+		});
+		try {
+			int published = 100;
+			for (int i = 0; i < published; i++) {
+				marketAuction.addBid(new Bid.BidBuilder().itemID(1).pricePerUnit(10 + i % 5)
+						.quantity(1).userId("Buyer").build());
+			}
+			release.countDown();
+
+			// wait for the final state
+			TopOfBook top;
+			do {
+				top = tops.poll(5, TimeUnit.SECONDS);
+				assertTrue(top != null);
+			} while (top.getBidQuantity() != 20);
+			// the listener was stuck on the first update, the rest were merged
+			assertTrue(received.get() < published);
+			assertEquals(Integer.valueOf(14), top.getBidPrice());
+			assertEquals(5, bids.size());
+			for (long quantity : bids.values()) {
+				assertEquals(20, quantity);
+			}
+		} finally {
+			subscription.close();
+		}
+	}
+
+	private static BookUpdate take(BlockingQueue<BookUpdate> updates) throws InterruptedException {
+		BookUpdate update = updates.poll(5, TimeUnit.SECONDS);
+		assertTrue(update != null);
+		return update;
+	}
+}
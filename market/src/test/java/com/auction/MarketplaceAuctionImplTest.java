@@ -2,6 +2,8 @@ package com.auction;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Before;
@@ -165,57 +167,60 @@ public class MarketplaceAuctionImplTest {
 		assertEquals(Integer.valueOf(25), currentBidPrice);
 
 		// Offer entered: itemId: 1, quantity: 5, pricePerUnit: 25, user: Seller
-		// not matched as offer quantity < bid quantity
+		// partially fills the bid, 5 of the bid remain
 		marketAuction.addOffer(item_1_offer_1);
 		currentBidPrice = marketAuction.getBidPrice(item_1_bid_1.getItemId());
 		assertEquals(Integer.valueOf(25), currentBidPrice);
-		int currentOfferPrice = marketAuction.getOfferPrice(item_1_offer_1
-				.getItemId());
-		assertEquals(25, currentOfferPrice);
+		assertEquals(null, marketAuction.getOfferPrice(item_1_offer_1
+				.getItemId()));
+		assertEquals(Integer.valueOf(5), item_1_bid_1.getQuantity());
 
 		// Offer entered: itemId: 1, quantity: 10, pricePerUnit: 24, user: Seller
-		// matched
+		// fills the rest of the bid, 5 of the offer remain
 		marketAuction.addOffer(item_1_offer_2);
 		List<Bid> items = marketAuction
 				.getBidForUser(item_1_bid_1.getUserId());
 		assertEquals(0, items.size());
 		currentBidPrice = marketAuction.getBidPrice(item_1_bid_1.getItemId());
 		assertEquals(null, currentBidPrice);
-		currentOfferPrice = marketAuction.getOfferPrice(item_1_offer_1
+		int currentOfferPrice = marketAuction.getOfferPrice(item_1_offer_1
 				.getItemId());
-		assertEquals(25, currentOfferPrice);
+		assertEquals(24, currentOfferPrice);
 
 		List<Order> orders = marketAuction.getOrdersForBuyer(item_1_bid_1
 				.getUserId());
-		assertEquals(1, orders.size());
-		Order order = orders.get(0);
-		Order expectedOrder = new Order.OrderBuilder()
+		assertEquals(2, orders.size());
+		Order expectedOrder_1 = new Order.OrderBuilder()
 									.itemID(item_1_bid_1.getItemId())
 									.buyerID(item_1_bid_1.getUserId())
 									.sellerID(item_1_offer_1.getUserId())
+									.pricePerUnit(Integer.valueOf(25))
+									.quantity(Integer.valueOf(5)).build();
+		Order expectedOrder_2 = new Order.OrderBuilder()
+									.itemID(item_1_bid_1.getItemId())
+									.buyerID(item_1_bid_1.getUserId())
+									.sellerID(item_1_offer_2.getUserId())
 									.pricePerUnit(Integer.valueOf(24))
-									.quantity(Integer.valueOf(10)).build();
-		isSameOrder(expectedOrder, order);
+									.quantity(Integer.valueOf(5)).build();
+		isSameOrder(expectedOrder_1, orders.get(0));
+		isSameOrder(expectedOrder_2, orders.get(1));
 
 		orders = marketAuction.getOrdersForSeller(item_1_offer_1.getUserId());
-		assertEquals(1, orders.size());
-		order = orders.get(0);
-		isSameOrder(expectedOrder, order);
+		assertEquals(2, orders.size());
+		isSameOrder(expectedOrder_1, orders.get(0));
+		isSameOrder(expectedOrder_2, orders.get(1));
 
 		// Bid entered: itemId: 1, quantity: 5, pricePerUnit: 24, user: Buyer
-		// not matched as bid price < offer price
+		// fills the rest of the offer
 		marketAuction.addBid(item_1_bid_2);
 
-		currentBidPrice = marketAuction.getBidPrice(item_1_bid_2.getItemId());
-		assertEquals(Integer.valueOf(24), currentBidPrice);
-		currentOfferPrice = marketAuction.getOfferPrice(item_1_offer_1
-				.getItemId());
-		assertEquals(25, currentOfferPrice);
+		assertEquals(null, marketAuction.getBidPrice(item_1_bid_2.getItemId()));
+		assertEquals(null, marketAuction.getOfferPrice(item_1_offer_1.getItemId()));
 
 		orders = marketAuction.getOrdersForBuyer(item_1_bid_2.getUserId());
-		assertEquals(1, orders.size());
+		assertEquals(3, orders.size());
 		orders = marketAuction.getOrdersForSeller(item_1_offer_1.getUserId());
-		assertEquals(1, orders.size());
+		assertEquals(3, orders.size());
 
 	}
 	
@@ -318,4 +323,307 @@ public class MarketplaceAuctionImplTest {
 		assertEquals(bid_2, bids.get(0));
 			
 	}
+	
+	@Test
+	public void testShouldMatchBestOffer() {
+		
+		Offer offer_1 = new Offer.OfferBuilder().itemID(1)
+				.pricePerUnit(25).quantity(50)
+				.userId("Seller").build();
+
+		Offer offer_2 =  new Offer.OfferBuilder().itemID(1)
+				.pricePerUnit(24).quantity(50)
+				.userId("Seller").build();
+		
+		Bid bid = new Bid.BidBuilder().itemID(1)
+				.pricePerUnit(25).quantity(50)
+				.userId("Buyer").build();
+
+		marketAuction.addOffer(offer_1);
+		marketAuction.addOffer(offer_2);
+		
+		marketAuction.addBid(bid);
+		
+		List<Offer> offers = marketAuction.getOfferForUser(offer_1.getUserId());
+		assertEquals(1, offers.size());
+		assertEquals(offer_1, offers.get(0));
+		
+		List<Order> orders = marketAuction.getOrdersForBuyer(bid.getUserId());
+		assertEquals(1, orders.size());
+		assertEquals(Integer.valueOf(24), orders.get(0).getPricePerUnit());
+	}
+	
+	@Test
+	public void testShouldMatchBestBid() {
+		
+		Bid bid_1 = new Bid.BidBuilder().itemID(1)
+				.pricePerUnit(25).quantity(50)
+				.userId("Buyer").build();
+
+		Bid bid_2 = new Bid.BidBuilder().itemID(1)
+				.pricePerUnit(26).quantity(50)
+				.userId("Buyer").build();
+		
+		Offer offer = new Offer.OfferBuilder().itemID(1)
+				.pricePerUnit(25).quantity(50)
+				.userId("Seller").build();
+
+		marketAuction.addBid(bid_1);
+		marketAuction.addBid(bid_2);
+		
+		marketAuction.addOffer(offer);
+		
+		List<Bid> bids = marketAuction.getBidForUser(bid_1.getUserId());
+		assertEquals(1, bids.size());
+		assertEquals(bid_1, bids.get(0));
+	}
+	
+	@Test
+	public void testBidSweepsOfferLevels() {
+		
+		Offer offer_1 = new Offer.OfferBuilder().itemID(1)
+				.pricePerUnit(24).quantity(5)
+				.userId("Seller").build();
+
+		Offer offer_2 = new Offer.OfferBuilder().itemID(1)
+				.pricePerUnit(25).quantity(5)
+				.userId("Seller").build();
+
+		Offer offer_3 = new Offer.OfferBuilder().itemID(1)
+				.pricePerUnit(26).quantity(5)
+				.userId("Seller").build();
+		
+		Bid bid = new Bid.BidBuilder().itemID(1)
+				.pricePerUnit(25).quantity(12)
+				.userId("Buyer").build();
+
+		marketAuction.addOffer(offer_1);
+		marketAuction.addOffer(offer_2);
+		marketAuction.addOffer(offer_3);
+		
+		marketAuction.addBid(bid);
+		
+		List<Order> orders = marketAuction.getOrdersForBuyer(bid.getUserId());
+		assertEquals(2, orders.size());
+		assertEquals(Integer.valueOf(24), orders.get(0).getPricePerUnit());
+		assertEquals(Integer.valueOf(5), orders.get(0).getQuantity());
+		assertEquals(Integer.valueOf(25), orders.get(1).getPricePerUnit());
+		assertEquals(Integer.valueOf(5), orders.get(1).getQuantity());
+		
+		// residual of the bid rests below the remaining offer
+		List<Bid> bids = marketAuction.getBidForUser(bid.getUserId());
+		assertEquals(1, bids.size());
+		assertEquals(Integer.valueOf(2), bids.get(0).getQuantity());
+		assertEquals(Integer.valueOf(25), marketAuction.getBidPrice(1));
+		assertEquals(Integer.valueOf(26), marketAuction.getOfferPrice(1));
+	}
+	
+	@Test
+	public void testOfferFillsSeveralBids() {
+		
+		Bid bid_1 = new Bid.BidBuilder().itemID(1)
+				.pricePerUnit(26).quantity(5)
+				.userId("Buyer").build();
+
+		Bid bid_2 = new Bid.BidBuilder().itemID(1)
+				.pricePerUnit(25).quantity(5)
+				.userId("Buyer").build();
+		
+		Offer offer = new Offer.OfferBuilder().itemID(1)
+				.pricePerUnit(25).quantity(8)
+				.userId("Seller").build();
+
+		marketAuction.addBid(bid_1);
+		marketAuction.addBid(bid_2);
+		
+		marketAuction.addOffer(offer);
+		
+		List<Order> orders = marketAuction.getOrdersForSeller(offer.getUserId());
+		assertEquals(2, orders.size());
+		assertEquals(Integer.valueOf(5), orders.get(0).getQuantity());
+		assertEquals(Integer.valueOf(3), orders.get(1).getQuantity());
+		
+		// offer fully filled, second bid reduced
+		assertEquals(0, marketAuction.getOfferForUser(offer.getUserId()).size());
+		List<Bid> bids = marketAuction.getBidForUser(bid_2.getUserId());
+		assertEquals(1, bids.size());
+		assertEquals(bid_2, bids.get(0));
+		assertEquals(Integer.valueOf(2), bids.get(0).getQuantity());
+	}
+	
+	@Test
+	public void testAddBids() {
+		
+		marketAuction.addOffer(item_1_offer_1);
+		
+		List<Order> orders = marketAuction.addBids(Arrays.asList(item_1_bid_1,
+				new Bid.BidBuilder().itemID(2).pricePerUnit(10).quantity(1).userId("Buyer").build()));
+		
+		assertEquals(1, orders.size());
+		assertEquals(Integer.valueOf(5), orders.get(0).getQuantity());
+		assertEquals(Integer.valueOf(25), marketAuction.getBidPrice(1));
+		assertEquals(Integer.valueOf(10), marketAuction.getBidPrice(2));
+	}
+	
+	@Test
+	public void testAddEntries_Striped() {
+		
+		marketAuction = new MarketplaceAuctionImpl(4);
+		List<BookEntry> entries = Arrays.asList(
+				new Offer.OfferBuilder().itemID(1).pricePerUnit(20).quantity(5).userId("Seller").build(),
+				new Offer.OfferBuilder().itemID(2).pricePerUnit(30).quantity(5).userId("Seller").build(),
+				new Bid.BidBuilder().itemID(1).pricePerUnit(21).quantity(3).userId("Buyer").build(),
+				new Bid.BidBuilder().itemID(2).pricePerUnit(31).quantity(7).userId("Buyer").build(),
+				new Bid.BidBuilder().itemID(1).pricePerUnit(22).quantity(3).userId("Buyer").build());
+		
+		List<Order> orders = marketAuction.addEntries(entries);
+		
+		assertEquals(3, orders.size());
+		assertEquals(3, marketAuction.getOrdersForBuyer("Buyer").size());
+		// fills of an item keep the order of the batch
+		assertEquals(Integer.valueOf(3), orders.get(0).getQuantity());
+		assertEquals(Integer.valueOf(2), orders.get(1).getQuantity());
+		assertEquals(Integer.valueOf(22), marketAuction.getBidPrice(1));
+		assertEquals(Integer.valueOf(31), marketAuction.getBidPrice(2));
+		assertEquals(null, marketAuction.getOfferPrice(2));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddEntries_NotBidOrOffer() {
+		
+		BookEntry entry = new BookEntry() {
+			public Integer getId() { return 1; }
+			public Integer getItemId() { return 1; }
+			public Integer getQuantity() { return 1; }
+			public void setQuantity(Integer quantity) { }
+			public Integer getPricePerUnit() { return 1; }
+			public String getUserId() { return "User"; }
+		};
+		try {
+			marketAuction.addEntries(Arrays.asList(item_1_bid_1, entry));
+		} finally {
+			// nothing from the batch is matched
+			assertEquals(null, marketAuction.getBidPrice(1));
+		}
+	}
+	
+	@Test
+	public void testCancel() {
+		
+		marketAuction.addBid(item_1_bid_2);
+		marketAuction.addOffer(item_1_offer_1);
+		
+		assertEquals(true, marketAuction.cancel(item_1_bid_2.getId()));
+		assertEquals(null, marketAuction.getBidPrice(1));
+		assertEquals(0, marketAuction.getBidForUser(item_1_bid_2.getUserId()).size());
+		// already gone
+		assertEquals(false, marketAuction.cancel(item_1_bid_2.getId()));
+		
+		assertEquals(true, marketAuction.cancel(item_1_offer_1.getId()));
+		assertEquals(null, marketAuction.getOfferPrice(1));
+		assertEquals(false, marketAuction.cancel(-1));
+	}
+	
+	@Test
+	public void testAmend_ReduceKeepsPriority() {
+		
+		Bid bid_1 = new Bid.BidBuilder().itemID(1).pricePerUnit(25).quantity(10).userId("Buyer1").build();
+		Bid bid_2 = new Bid.BidBuilder().itemID(1).pricePerUnit(25).quantity(10).userId("Buyer2").build();
+		marketAuction.addBid(bid_1);
+		marketAuction.addBid(bid_2);
+		
+		assertEquals(true, marketAuction.amend(bid_1.getId(), 4, 25));
+		marketAuction.addOffer(new Offer.OfferBuilder().itemID(1).pricePerUnit(25).quantity(4).userId("Seller").build());
+		
+		assertEquals(1, marketAuction.getOrdersForBuyer("Buyer1").size());
+		assertEquals(0, marketAuction.getOrdersForBuyer("Buyer2").size());
+	}
+	
+	@Test
+	public void testAmend_IncreaseLosesPriority() {
+		
+		Bid bid_1 = new Bid.BidBuilder().itemID(1).pricePerUnit(25).quantity(10).userId("Buyer1").build();
+		Bid bid_2 = new Bid.BidBuilder().itemID(1).pricePerUnit(25).quantity(10).userId("Buyer2").build();
+		marketAuction.addBid(bid_1);
+		marketAuction.addBid(bid_2);
+		
+		assertEquals(true, marketAuction.amend(bid_1.getId(), 12, 25));
+		marketAuction.addOffer(new Offer.OfferBuilder().itemID(1).pricePerUnit(25).quantity(4).userId("Seller").build());
+		
+		assertEquals(0, marketAuction.getOrdersForBuyer("Buyer1").size());
+		assertEquals(1, marketAuction.getOrdersForBuyer("Buyer2").size());
+		assertEquals(Integer.valueOf(12), marketAuction.getBidForUser("Buyer1").get(0).getQuantity());
+	}
+	
+	@Test
+	public void testAmend_PriceCrosses() {
+		
+		marketAuction.addOffer(item_1_offer_1);
+		marketAuction.addBid(item_1_bid_2);
+		
+		// bid moves up to the offer and fills
+		assertEquals(true, marketAuction.amend(item_1_bid_2.getId(), 2, item_1_offer_1.getPricePerUnit()));
+		
+		List<Order> orders = marketAuction.getOrdersForBuyer(item_1_bid_2.getUserId());
+		assertEquals(1, orders.size());
+		assertEquals(Integer.valueOf(2), orders.get(0).getQuantity());
+		assertEquals(null, marketAuction.getBidPrice(1));
+		assertEquals(false, marketAuction.amend(item_1_bid_2.getId(), 2, 30));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testAmend_ZeroQuantity() {
+		
+		marketAuction.addBid(item_1_bid_1);
+		marketAuction.amend(item_1_bid_1.getId(), 0, 25);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testAmend_ZeroPrice() {
+		
+		marketAuction.addBid(item_1_bid_1);
+		marketAuction.amend(item_1_bid_1.getId(), 5, 0);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testAmend_NullPrice() {
+		
+		marketAuction.addBid(item_1_bid_1);
+		marketAuction.amend(item_1_bid_1.getId(), 5, null);
+	}
+	
+	@Test
+	public void testGetDepth() {
+		
+		for (int price = 20; price < 25; price++) {
+			marketAuction.addBid(new Bid.BidBuilder().itemID(1).pricePerUnit(price).quantity(10).userId("Buyer").build());
+			marketAuction.addBid(new Bid.BidBuilder().itemID(1).pricePerUnit(price).quantity(5).userId("Buyer").build());
+		}
+		marketAuction.addOffer(new Offer.OfferBuilder().itemID(1).pricePerUnit(30).quantity(4).userId("Seller").build());
+		// fills 15 at 24 and 3 at 23
+		marketAuction.addOffer(new Offer.OfferBuilder().itemID(1).pricePerUnit(23).quantity(18).userId("Seller").build());
+		
+		Depth depth = marketAuction.getDepth(1, 3);
+		assertEquals(Arrays.asList(23, 22, 21), new ArrayList<>(depth.getBidLevels().keySet()));
+		assertEquals(Long.valueOf(12), depth.getBidLevels().get(23));
+		assertEquals(Long.valueOf(15), depth.getBidLevels().get(22));
+		assertEquals(1, depth.getOfferLevels().size());
+		assertEquals(Long.valueOf(4), depth.getOfferLevels().get(30));
+		
+		assertEquals(0, marketAuction.getDepth(2, 3).getBidLevels().size());
+	}
+	
+	@Test
+	public void testGetExposure() {
+		
+		marketAuction.addBid(new Bid.BidBuilder().itemID(1).pricePerUnit(25).quantity(10).userId("Buyer").build());
+		marketAuction.addOffer(new Offer.OfferBuilder().itemID(1).pricePerUnit(24).quantity(4).userId("Seller").build());
+		marketAuction.addOffer(new Offer.OfferBuilder().itemID(2).pricePerUnit(30).quantity(5).userId("Seller").build());
+		
+		assertEquals(25 * 6, marketAuction.getExposure("Buyer").getOpenBidNotional());
+		assertEquals(4, marketAuction.getExposure("Buyer").getFilledVolume());
+		assertEquals(0, marketAuction.getExposure("Seller").getOpenOfferQuantity(1));
+		assertEquals(5, marketAuction.getExposure("Seller").getOpenOfferQuantity(2));
+		assertEquals(4, marketAuction.getExposure("Seller").getSoldQuantity());
+	}
 }
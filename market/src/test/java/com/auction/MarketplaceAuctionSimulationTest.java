@@ -63,6 +63,48 @@ public class MarketplaceAuctionSimulationTest {
 
 	}
 
+	@Test
+	public void testSimulation_Striped_Locks() throws InterruptedException {
+		
+		final int items = 8;
+		final int ordersPerItem = 100;
+		final MarketplaceAuctionImpl stripedAuction = new MarketplaceAuctionImpl(4);
+		
+		CountDownLatch countDownLatch = new CountDownLatch(items * 2);
+		
+		for (int item = 1; item <= items; item++) {
+			final int itemId = item;
+			new Thread(() -> {
+				try{
+					for (int i = 0; i < ordersPerItem; i++) {
+						stripedAuction.addBid(new Bid.BidBuilder().itemID(itemId)
+								.pricePerUnit(10).quantity(10).userId("Buyer").build());
+					}
+				}finally{
+					countDownLatch.countDown();
+				}
+			}).start();
+			new Thread(() -> {
+				try{
+					for (int i = 0; i < ordersPerItem; i++) {
+						stripedAuction.addOffer(new Offer.OfferBuilder().itemID(itemId)
+								.pricePerUnit(10).quantity(10).userId("Seller").build());
+					}
+				}finally{
+					countDownLatch.countDown();
+				}
+			}).start();
+		}
+		
+		countDownLatch.await();
+		
+		//every bid matches exactly one offer
+		assertEquals(0, stripedAuction.getBidForUser("Buyer").size());
+		assertEquals(0, stripedAuction.getOfferForUser("Seller").size());
+		assertEquals(items * ordersPerItem, stripedAuction.getOrdersForBuyer("Buyer").size());
+		assertEquals(items * ordersPerItem, stripedAuction.getOrdersForSeller("Seller").size());
+	}
+
 	private class Buyer extends Thread {
 		
 		private CountDownLatch countDownLatch;
@@ -1,6 +1,8 @@
 package com.auction;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import java.util.List;
 
@@ -223,4 +225,93 @@ public class MarketplaceCacheImplTest {
 		assertEquals(0, items.size());
 	}
 
+	@Test
+	public void testGetBidForItem_Price_Priority() {
+		Bid item_1_bid_high = new Bid.BidBuilder()
+						.itemID(1)
+						.pricePerUnit(21)
+						.quantity(25)
+						.userId("Buyer").build();
+
+		cache.addBid(item_1_bid);
+		cache.addBid(item_1_bid_high);
+
+		List<Bid> items = cache.getBidForItem(item_1_bid.getItemId());
+		assertEquals(2, items.size());
+		assertEquals(item_1_bid_high, items.get(0));
+		assertEquals(item_1_bid, items.get(1));
+	}
+
+	@Test
+	public void testGetOfferForItem_Price_Priority() {
+		Offer item_1_offer_low = new Offer.OfferBuilder()
+						.itemID(1)
+						.pricePerUnit(19)
+						.quantity(25)
+						.userId("Buyer").build();
+
+		cache.addOffer(item_1_offer);
+		cache.addOffer(item_1_offer_low);
+
+		List<Offer> offers = cache.getOfferForItem(item_1_offer.getItemId());
+		assertEquals(2, offers.size());
+		assertEquals(item_1_offer_low, offers.get(0));
+		assertEquals(item_1_offer, offers.get(1));
+	}
+
+	@Test
+	public void testUserSnapshotNotChangedByReduce() {
+
+		cache.addBid(item_1_bid);
+		cache.addOffer(item_1_offer);
+		List<Bid> bids = cache.getBidForUser("Buyer");
+		List<Offer> offers = cache.getOfferForUser("Buyer");
+
+		cache.reduceBid(item_1_bid, 10);
+		cache.reduceOffer(item_1_offer, 5);
+
+		// earlier snapshots keep the quantities they were taken with
+		assertEquals(Integer.valueOf(25), bids.get(0).getQuantity());
+		assertEquals(Integer.valueOf(25), offers.get(0).getQuantity());
+		assertEquals(Integer.valueOf(15), cache.getBidForUser("Buyer").get(0).getQuantity());
+		assertEquals(Integer.valueOf(20), cache.getOfferForUser("Buyer").get(0).getQuantity());
+	}
+
+	@Test
+	public void testGetById() {
+		cache.addBid(item_1_bid);
+		cache.addOffer(item_1_offer);
+
+		assertEquals(item_1_bid, cache.getBid(item_1_bid.getId()));
+		assertEquals(item_1_offer, cache.getOffer(item_1_offer.getId()));
+		assertNull(cache.getOffer(item_1_bid.getId()));
+
+		cache.removeBid(item_1_bid);
+		assertNull(cache.getBid(item_1_bid.getId()));
+	}
+
+	@Test
+	public void testExposure() {
+		cache.addBid(item_1_bid);
+		cache.addBid(item_2_bid);
+		cache.addOffer(item_1_offer);
+		cache.addOffer(item_2_offer);
+
+		UserExposure exposure = cache.getExposure("Buyer");
+		assertEquals(20 * 25 + 30 * 25, exposure.getOpenBidNotional());
+		assertEquals(20 * 25 + 30 * 25, exposure.getOpenOfferNotional());
+		assertEquals(25, exposure.getOpenOfferQuantity(1));
+
+		cache.reduceBid(item_1_bid, 10);
+		cache.removeOffer(item_1_offer);
+		cache.addOrder(order_1);
+		assertEquals(20 * 15 + 30 * 25, exposure.getOpenBidNotional());
+		assertEquals(0, exposure.getOpenOfferQuantity(1));
+		assertEquals(25, exposure.getOpenOfferQuantity(2));
+		assertEquals(25, exposure.getFilledVolume());
+		assertEquals(25, cache.getExposure("Seller").getSoldQuantity());
+		assertEquals(0, cache.getExposure("Nobody").getOpenNotional());
+		// asking about a user does not add one
+		assertSame(UserExposure.NONE, cache.getExposure("Nobody"));
+	}
 }
@@ -0,0 +1,225 @@
+package com.auction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapMarketplaceCacheTest {
+
+	private OffHeapMarketplaceCache cache;
+
+	@Before
+	public void setup() {
+		cache = new OffHeapMarketplaceCache(16);
+	}
+
+	@Test
+	public void testAddAndGetBid() {
+		Bid bid_1 = bid(1, 20, 10, "Buyer");
+		Bid bid_2 = bid(2, 30, 10, "Buyer");
+
+		cache.addBid(bid_1);
+		cache.addBid(bid_2);
+
+		List<Bid> items = cache.getBidForItem(1);
+		assertEquals(1, items.size());
+		assertEquals(bid_1, items.get(0));
+		assertEquals(bid_1.getPricePerUnit(), items.get(0).getPricePerUnit());
+		assertEquals(bid_1.getQuantity(), items.get(0).getQuantity());
+		assertEquals(bid_1.getUserId(), items.get(0).getUserId());
+
+		items = cache.getBidForUser("Buyer");
+		assertEquals(2, items.size());
+		assertEquals(bid_1, items.get(0));
+		assertEquals(bid_2, items.get(1));
+
+		assertEquals(0, cache.getBidForUser("Unknown").size());
+	}
+
+	@Test
+	public void testRemoveAndReduceOffer() {
+		Offer offer_1 = offer(1, 25, 10, "Seller");
+		Offer offer_2 = offer(1, 24, 10, "Seller");
+
+		cache.addOffer(offer_1);
+		cache.addOffer(offer_2);
+		assertEquals(offer_2, cache.getBestOffer(1));
+
+		cache.reduceOffer(offer_2, 3);
+		assertEquals(Integer.valueOf(10), offer_2.getQuantity());
+		assertEquals(Integer.valueOf(7), cache.getBestOffer(1).getQuantity());
+		assertEquals(7, cache.getTopOfBook(1).getOfferQuantity());
+
+		cache.removeOffer(offer_2);
+		assertEquals(offer_1, cache.getBestOffer(1));
+		assertEquals(1, cache.getOfferForUser("Seller").size());
+
+		cache.removeOffer(offer_1);
+		assertNull(cache.getBestOffer(1));
+		assertEquals(TopOfBook.EMPTY.getOfferPrice(), cache.getTopOfBook(1).getOfferPrice());
+	}
+
+	@Test
+	public void testAddAndGetOrders() {
+		Order order_1 = new Order.OrderBuilder().itemID(1).quantity(25)
+				.pricePerUnit(45).buyerID("Buyer").sellerID("Seller").build();
+		Order order_2 = new Order.OrderBuilder().itemID(2).quantity(15)
+				.pricePerUnit(25).buyerID("Seller").sellerID("Buyer").build();
+
+		cache.addOrder(order_1);
+		cache.addOrder(order_2);
+
+		List<Order> orders = cache.getOrdersForBuyer("Buyer");
+		assertEquals(1, orders.size());
+		assertEquals(order_1, orders.get(0));
+		assertEquals(order_1.getPricePerUnit(), orders.get(0).getPricePerUnit());
+
+		orders = cache.getOrdersForSeller("Buyer");
+		assertEquals(1, orders.size());
+		assertEquals(order_2, orders.get(0));
+	}
+
+	@Test
+	public void testManyEntries() {
+		// enough records to span several memory chunks
+		int count = 250000;
+		for (int i = 0; i < count; i++) {
+			cache.addBid(bid(1, i % 100, 1, "Buyer" + (i % 10)));
+		}
+		assertEquals(count, cache.getBidForItem(1).size());
+		assertEquals(count / 10, cache.getBidForUser("Buyer3").size());
+		assertEquals(Integer.valueOf(99), cache.getTopOfBook(1).getBidPrice());
+		assertEquals(count / 100, cache.getTopOfBook(1).getBidQuantity());
+	}
+
+	@Test
+	public void testMatchingWithEngine() {
+		MarketplaceAuctionImpl marketAuction = new MarketplaceAuctionImpl(cache, 1);
+
+		marketAuction.addOffer(offer(1, 24, 5, "Seller"));
+		marketAuction.addOffer(offer(1, 25, 5, "Seller"));
+		marketAuction.addOffer(offer(1, 26, 5, "Seller"));
+		marketAuction.addBid(bid(1, 25, 12, "Buyer"));
+
+		assertEquals(2, marketAuction.getOrdersForBuyer("Buyer").size());
+		assertEquals(2, marketAuction.getOrdersForSeller("Seller").size());
+		List<Bid> bids = marketAuction.getBidForUser("Buyer");
+		assertEquals(1, bids.size());
+		assertEquals(Integer.valueOf(2), bids.get(0).getQuantity());
+		assertEquals(Integer.valueOf(25), marketAuction.getBidPrice(1));
+		assertEquals(Integer.valueOf(26), marketAuction.getOfferPrice(1));
+	}
+
+	@Test
+	public void testReadAndFillBest() {
+		Bid bid_1 = bid(1, 25, 10, "Buyer");
+		Bid bid_2 = bid(1, 24, 5, "Buyer");
+		cache.addBid(bid_1);
+		cache.addBid(bid_2);
+
+		RestingEntry best = new RestingEntry();
+		assertTrue(cache.readBestBid(1, best));
+		assertEquals(bid_1.getId().intValue(), best.getId());
+		assertEquals(25, best.getPricePerUnit());
+		assertEquals(10, best.getQuantity());
+		assertEquals("Buyer", best.getUserId());
+
+		cache.fillBid(best, 4);
+		assertEquals(Integer.valueOf(6), cache.getBid(bid_1.getId()).getQuantity());
+		assertEquals(6, cache.getTopOfBook(1).getBidQuantity());
+		assertEquals(270, cache.getExposure("Buyer").getOpenBidNotional());
+
+		assertTrue(cache.readBestBid(1, best));
+		cache.fillBid(best, 6);
+		assertNull(cache.getBid(bid_1.getId()));
+		assertTrue(cache.readBestBid(1, best));
+		assertEquals(bid_2.getId().intValue(), best.getId());
+		assertFalse(cache.readBestOffer(1, best));
+	}
+
+	@Test
+	public void testItemsMatchedInParallel() throws InterruptedException {
+		MarketplaceAuctionImpl marketAuction = new MarketplaceAuctionImpl(cache, 4, EventLog.DISABLED);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			int itemId = t + 1;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 1000; i++) {
+					marketAuction.addBid(bid(itemId, 20 + i % 5, 2, "Buyer" + itemId));
+					marketAuction.addOffer(offer(itemId, 20, 1, "Seller" + itemId));
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		for (int itemId = 1; itemId <= 4; itemId++) {
+			assertEquals(1000, marketAuction.getOrdersForSeller("Seller" + itemId).size());
+			assertEquals(0, cache.getOfferForItem(itemId).size());
+			int resting = 0;
+			for (Bid bid : cache.getBidForItem(itemId)) {
+				resting += bid.getQuantity();
+			}
+			assertEquals(1000, resting);
+		}
+	}
+
+	private Bid bid(int itemId, int price, int quantity, String userId) {
+		return new Bid.BidBuilder().itemID(itemId).pricePerUnit(price)
+				.quantity(quantity).userId(userId).build();
+	}
+
+	private Offer offer(int itemId, int price, int quantity, String userId) {
+		return new Offer.OfferBuilder().itemID(itemId).pricePerUnit(price)
+				.quantity(quantity).userId(userId).build();
+	}
+
+	@Test
+	public void testGetById() {
+		Bid bid = bid(1, 20, 10, "Buyer");
+		Offer offer = offer(1, 30, 10, "Seller");
+		cache.addBid(bid);
+		cache.addOffer(offer);
+
+		assertEquals(bid.toString(), cache.getBid(bid.getId()).toString());
+		assertEquals(offer.toString(), cache.getOffer(offer.getId()).toString());
+		assertNull(cache.getBid(offer.getId()));
+
+		cache.removeOffer(offer);
+		assertNull(cache.getOffer(offer.getId()));
+	}
+
+	@Test
+	public void testExposure() {
+		Bid bid = bid(1, 20, 10, "Buyer");
+		Offer offer = offer(2, 30, 5, "Buyer");
+		cache.addBid(bid);
+		cache.addOffer(offer);
+
+		UserExposure exposure = cache.getExposure("Buyer");
+		assertSame(exposure, cache.getExposure("Buyer"));
+		assertEquals(200, exposure.getOpenBidNotional());
+		assertEquals(150, exposure.getOpenOfferNotional());
+
+		cache.reduceBid(bid, 4);
+		cache.removeOffer(offer);
+		cache.addOrder(new Order.OrderBuilder().itemID(1).quantity(4).pricePerUnit(20)
+				.buyerID("Buyer").sellerID("Seller").build());
+		assertEquals(120, exposure.getOpenBidNotional());
+		assertEquals(0, exposure.getOpenOfferQuantity(2));
+		assertEquals(4, exposure.getBoughtQuantity());
+		assertEquals(4, cache.getExposure("Seller").getSoldQuantity());
+
+		cache.removeBid(bid);
+		assertEquals(0, exposure.getOpenNotional());
+	}
+}
@@ -0,0 +1,151 @@
+package com.auction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OrderBookTest {
+
+	private OrderBook book;
+
+	@Before
+	public void setup() {
+		book = new OrderBook(1);
+	}
+
+	@Test
+	public void testEmptyBook() {
+		assertNull(book.getBestBid());
+		assertNull(book.getBestOffer());
+		assertEquals(0, book.getBids().size());
+		assertEquals(0, book.getOffers().size());
+	}
+
+	@Test
+	public void testBidsPricePriority() {
+		Bid low = bid(20, 10);
+		Bid high = bid(30, 10);
+		Bid mid = bid(25, 10);
+
+		book.addBid(low);
+		book.addBid(high);
+		book.addBid(mid);
+
+		assertEquals(high, book.getBestBid());
+		List<Bid> bids = book.getBids();
+		assertEquals(3, bids.size());
+		assertEquals(high, bids.get(0));
+		assertEquals(mid, bids.get(1));
+		assertEquals(low, bids.get(2));
+	}
+
+	@Test
+	public void testOffersPricePriority() {
+		Offer high = offer(30, 10);
+		Offer low = offer(20, 10);
+
+		book.addOffer(high);
+		book.addOffer(low);
+
+		assertEquals(low, book.getBestOffer());
+		List<Offer> offers = book.getOffers();
+		assertEquals(low, offers.get(0));
+		assertEquals(high, offers.get(1));
+	}
+
+	@Test
+	public void testTimePriorityWithinPrice() {
+		Offer first = offer(25, 10);
+		Offer second = offer(25, 5);
+
+		book.addOffer(first);
+		book.addOffer(second);
+
+		assertEquals(first, book.getBestOffer());
+		book.removeOffer(first);
+		assertEquals(second, book.getBestOffer());
+		book.removeOffer(second);
+		assertNull(book.getBestOffer());
+	}
+
+	@Test
+	public void testIterateByPriority() {
+		Bid first = bid(25, 10);
+		Bid second = bid(25, 5);
+		Bid best = bid(26, 1);
+
+		book.addBid(first);
+		book.addBid(second);
+		book.addBid(best);
+
+		int i = 0;
+		Bid[] expected = { best, first, second };
+		for (Bid bid : book.bidsByPriority()) {
+			assertEquals(expected[i++], bid);
+		}
+		assertEquals(3, i);
+	}
+
+	@Test
+	public void testTopOfBook() {
+		assertEquals(TopOfBook.EMPTY, book.getTopOfBook());
+
+		Bid bid_1 = bid(20, 10);
+		Bid bid_2 = bid(20, 5);
+		Offer offer = offer(22, 7);
+
+		book.addBid(bid_1);
+		book.addBid(bid_2);
+		book.addOffer(offer);
+
+		TopOfBook top = book.getTopOfBook();
+		assertEquals(Integer.valueOf(20), top.getBidPrice());
+		assertEquals(15, top.getBidQuantity());
+		assertEquals(Integer.valueOf(22), top.getOfferPrice());
+		assertEquals(7, top.getOfferQuantity());
+
+		book.reduceBid(bid_1, 4);
+		assertEquals(Integer.valueOf(6), bid_1.getQuantity());
+		assertEquals(11, book.getTopOfBook().getBidQuantity());
+
+		book.removeBid(bid_1);
+		assertEquals(5, book.getTopOfBook().getBidQuantity());
+
+		book.removeOffer(offer);
+		top = book.getTopOfBook();
+		assertEquals(Integer.valueOf(20), top.getBidPrice());
+		assertNull(top.getOfferPrice());
+		assertEquals(0, top.getOfferQuantity());
+	}
+
+	private Bid bid(int price, int quantity) {
+		return new Bid.BidBuilder().itemID(1).pricePerUnit(price)
+				.quantity(quantity).userId("Buyer").build();
+	}
+
+	private Offer offer(int price, int quantity) {
+		return new Offer.OfferBuilder().itemID(1).pricePerUnit(price)
+				.quantity(quantity).userId("Seller").build();
+	}
+
+	@Test
+	public void testRemoveFromMiddleOfLevel() {
+		Bid first = bid(25, 10);
+		Bid second = bid(25, 5);
+		Bid third = bid(25, 1);
+
+		book.addBid(first);
+		book.addBid(second);
+		book.addBid(third);
+		book.removeBid(second);
+
+		assertEquals(first, book.getBestBid());
+		assertEquals(11, book.getTopOfBook().getBidQuantity());
+		book.removeBid(first);
+		assertEquals(third, book.getBestBid());
+	}
+}
@@ -0,0 +1,71 @@
+package com.auction;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReplayToolTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testReplayJournal() throws Exception {
+		Path path = folder.getRoot().toPath().resolve("journal");
+		MarketplaceCacheImpl cache = new MarketplaceCacheImpl();
+		int cancelled = 0;
+		try (Journal journal = new Journal(path, 1 << 20, false)) {
+			MarketplaceAuctionImpl marketAuction = new MarketplaceAuctionImpl(cache, 4, EventLog.DISABLED, journal);
+			for (int i = 0; i < 100; i++) {
+				marketAuction.addBid(new Bid.BidBuilder().itemID(i % 3).pricePerUnit(20 + i % 7)
+						.quantity(5).userId("Buyer").build());
+				Offer offer = new Offer.OfferBuilder().itemID(i % 3).pricePerUnit(24 + i % 5)
+						.quantity(3).userId("Seller").build();
+				marketAuction.addOffer(offer);
+				if (i % 10 == 0 && marketAuction.cancel(offer.getId())) {
+					cancelled++;
+				}
+			}
+		}
+
+		ReplayTool tool = ReplayTool.fromJournal(path);
+		assertEquals(200 + cancelled, tool.size());
+		ReplayTool.Result first = tool.replay();
+		ReplayTool.Result second = tool.replay();
+		assertEquals(tool.size(), first.getCommands());
+		assertEquals(100, first.getHistogram(ReplayTool.CommandType.BID).getCount());
+		assertEquals(ReplayTool.bookHash(cache), first.getBookHash());
+		assertEquals(first.getBookHash(), second.getBookHash());
+		assertEquals(first.getOrders(), second.getOrders());
+	}
+
+	@Test
+	public void testReplayLog() throws Exception {
+		Path path = folder.newFile("application.log").toPath();
+		Files.write(path, Arrays.asList(
+				"2024-01-01 10:00:00 INFO  MarketplaceAuctionImpl:1 - Bid entered: [ID = 1, ItemID = 1, PricePerUnit = 25, Quantity = 10, userId = Buyer]",
+				"2024-01-01 10:00:00 INFO  MarketplaceAuctionImpl:1 - Offer entered: [ID = 2, ItemID = 1, PricePerUnit = 24, Quantity = 4, userId = Seller]",
+				"2024-01-01 10:00:00 INFO  MarketplaceAuctionImpl:1 - Placed order: [ID = 1, ItemID = 1, PricePerUnit = 24, Quantity = 4, buyerId = Buyer, sellerID = Seller]",
+				"2024-01-01 10:00:00 INFO  MarketplaceAuctionImpl:1 - Bid amended: [ID = 1, ItemID = 1, PricePerUnit = 25, Quantity = 3, userId = Buyer]",
+				"2024-01-01 10:00:00 INFO  MarketplaceAuctionImpl:1 - Offer entered: [ID = 3, ItemID = 2, PricePerUnit = 30, Quantity = 4, userId = Seller]",
+				"2024-01-01 10:00:00 INFO  MarketplaceAuctionImpl:1 - Offer cancelled: [ID = 3, ItemID = 2, PricePerUnit = 30, Quantity = 4, userId = Seller]",
+				"something else"), StandardCharsets.UTF_8);
+
+		ReplayTool tool = ReplayTool.fromLog(path);
+		assertEquals(5, tool.size());
+		ReplayTool.Result result = tool.replay();
+		assertEquals(1, result.getOrders());
+		assertEquals(0, result.getFailed());
+
+		MarketplaceCacheImpl expected = new MarketplaceCacheImpl();
+		expected.addBid(new Bid(1, 1, 3, 25, "Buyer"));
+		assertEquals(ReplayTool.bookHash(expected), result.getBookHash());
+	}
+}
@@ -0,0 +1,164 @@
+package com.auction;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RingBufferMarketplaceAuctionTest {
+
+	private RingBufferMarketplaceAuction marketAuction;
+	private final AtomicInteger ordersReceived = new AtomicInteger();
+	private final AtomicInteger acksReceived = new AtomicInteger();
+	private final AtomicInteger rejectsReceived = new AtomicInteger();
+
+	@Before
+	public void setup() {
+		// small ring so producers wrap around it many times
+		marketAuction = new RingBufferMarketplaceAuction(new MarketplaceCacheImpl(), 8);
+		marketAuction.addExecutionListener(new ExecutionListener() {
+			@Override
+			public void onOrder(Order order) {
+				ordersReceived.incrementAndGet();
+			}
+
+			@Override
+			public void onAccepted(BookEntry entry) {
+				acksReceived.incrementAndGet();
+			}
+
+			@Override
+			public void onRejected(BookEntry entry, String reason) {
+				rejectsReceived.incrementAndGet();
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		marketAuction.close();
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testAddBid_Null() {
+		marketAuction.addBid(null);
+	}
+
+	@Test
+	public void testMatch() {
+		Bid bid = new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+				.quantity(10).userId("Buyer").build();
+		Offer offer = new Offer.OfferBuilder().itemID(1).pricePerUnit(24)
+				.quantity(10).userId("Seller").build();
+
+		marketAuction.addBid(bid);
+		marketAuction.addOffer(offer);
+		marketAuction.flush();
+
+		List<Order> orders = marketAuction.getOrdersForBuyer("Buyer");
+		assertEquals(1, orders.size());
+		assertEquals(Integer.valueOf(24), orders.get(0).getPricePerUnit());
+		assertEquals(1, ordersReceived.get());
+		assertEquals(2, acksReceived.get());
+		assertEquals(null, marketAuction.getBidPrice(1));
+	}
+
+	@Test
+	public void testConcurrentProducers() throws InterruptedException {
+		final int producers = 4;
+		final int ordersPerProducer = 500;
+		CountDownLatch countDownLatch = new CountDownLatch(producers * 2);
+
+		for (int p = 0; p < producers; p++) {
+			new Thread(() -> {
+				try {
+					for (int i = 0; i < ordersPerProducer; i++) {
+						marketAuction.addBid(new Bid.BidBuilder().itemID(1)
+								.pricePerUnit(10).quantity(10).userId("Buyer").build());
+					}
+				} finally {
+					countDownLatch.countDown();
+				}
+			}).start();
+			new Thread(() -> {
+				try {
+					for (int i = 0; i < ordersPerProducer; i++) {
+						marketAuction.addOffer(new Offer.OfferBuilder().itemID(1)
+								.pricePerUnit(10).quantity(10).userId("Seller").build());
+					}
+				} finally {
+					countDownLatch.countDown();
+				}
+			}).start();
+		}
+
+		countDownLatch.await();
+		marketAuction.flush();
+
+		int expected = producers * ordersPerProducer;
+		assertEquals(expected, marketAuction.getOrdersForBuyer("Buyer").size());
+		assertEquals(0, marketAuction.getBidForUser("Buyer").size());
+		assertEquals(0, marketAuction.getOfferForUser("Seller").size());
+		assertEquals(expected, ordersReceived.get());
+		assertEquals(expected * 2, acksReceived.get());
+	}
+
+	@Test
+	public void testAddEntries() {
+		Offer offer = new Offer.OfferBuilder().itemID(1).pricePerUnit(24)
+				.quantity(10).userId("Seller").build();
+		Bid bid = new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+				.quantity(4).userId("Buyer").build();
+
+		List<Order> orders = marketAuction.addEntries(Arrays.asList(offer, bid));
+		marketAuction.flush();
+
+		assertEquals(1, orders.size());
+		assertEquals(Integer.valueOf(4), orders.get(0).getQuantity());
+		assertEquals(1, ordersReceived.get());
+		assertEquals(2, acksReceived.get());
+		assertEquals(Integer.valueOf(24), marketAuction.getOfferPrice(1));
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testAddEntries_NullEntry() {
+		marketAuction.addBids(Arrays.asList((Bid) null));
+	}
+
+	@Test
+	public void testCancelAndAmend() {
+		Bid bid = new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+				.quantity(10).userId("Buyer").build();
+		Offer offer = new Offer.OfferBuilder().itemID(1).pricePerUnit(30)
+				.quantity(10).userId("Seller").build();
+		marketAuction.addBid(bid);
+		marketAuction.addOffer(offer);
+
+		assertEquals(true, marketAuction.amend(offer.getId(), 10, 26));
+		assertEquals(Integer.valueOf(26), marketAuction.getOfferPrice(1));
+		assertEquals(true, marketAuction.cancel(bid.getId()));
+		assertEquals(false, marketAuction.cancel(bid.getId()));
+		assertEquals(null, marketAuction.getBidPrice(1));
+	}
+
+	@Test
+	public void testRiskLimits() {
+		marketAuction.setRiskCheck(new RiskCheck(new RiskLimits.RiskLimitsBuilder()
+				.maxOrderQuantity(10).build()));
+		marketAuction.addBid(new Bid.BidBuilder().itemID(1).pricePerUnit(25)
+				.quantity(11).userId("Buyer").build());
+		marketAuction.addBid(new Bid.BidBuilder().itemID(1).pricePerUnit(24)
+				.quantity(10).userId("Buyer").build());
+		marketAuction.flush();
+
+		assertEquals(1, rejectsReceived.get());
+		assertEquals(1, acksReceived.get());
+		assertEquals(Integer.valueOf(24), marketAuction.getBidPrice(1));
+	}
+}
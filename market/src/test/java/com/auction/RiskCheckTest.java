@@ -0,0 +1,132 @@
+package com.auction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RiskCheckTest {
+
+	private MarketplaceAuctionImpl marketAuction;
+	private RiskCheck riskCheck;
+	private final List<String> rejected = new ArrayList<>();
+
+	@Before
+	public void setup() {
+		marketAuction = new MarketplaceAuctionImpl(new MarketplaceCacheImpl(), 4, EventLog.DISABLED);
+		riskCheck = new RiskCheck(new RiskLimits.RiskLimitsBuilder()
+				.maxOrderQuantity(100).maxOpenNotional(1000).build());
+		marketAuction.setRiskCheck(riskCheck);
+		marketAuction.addExecutionListener(new ExecutionListener() {
+			@Override
+			public void onOrder(Order order) {
+			}
+
+			@Override
+			public void onRejected(BookEntry entry, String reason) {
+				rejected.add(reason);
+			}
+		});
+	}
+
+	@Test(expected = RiskLimitException.class)
+	public void testMaxOrderQuantity() {
+		marketAuction.addBid(bid("Buyer", 1, 101));
+	}
+
+	@Test
+	public void testMaxOpenNotional() {
+		marketAuction.addBid(bid("Buyer", 10, 60));
+		try {
+			marketAuction.addBid(bid("Buyer", 10, 50));
+			fail();
+		} catch (RiskLimitException e) {
+			assertEquals(1, rejected.size());
+		}
+		assertEquals(600, marketAuction.getExposure("Buyer").getOpenBidNotional());
+
+		// fills free up notional
+		marketAuction.addOffer(new Offer.OfferBuilder().itemID(1).pricePerUnit(10)
+				.quantity(60).userId("Seller").build());
+		marketAuction.addBid(bid("Buyer", 10, 50));
+		assertEquals(Integer.valueOf(10), marketAuction.getBidPrice(1));
+	}
+
+	@Test
+	public void testAmendChecked() {
+		Bid bid = bid("Buyer", 10, 50);
+		marketAuction.addBid(bid);
+		try {
+			marketAuction.amend(bid.getId(), 50, 30);
+			fail();
+		} catch (RiskLimitException e) {
+			assertEquals(bid, e.getEntry());
+		}
+		assertEquals(Integer.valueOf(10), marketAuction.getBidPrice(1));
+		assertEquals(true, marketAuction.amend(bid.getId(), 40, 10));
+	}
+
+	@Test
+	public void testMaxOrdersPerSecond() {
+		riskCheck.setLimits("Flooder", new RiskLimits.RiskLimitsBuilder().maxOrdersPerSecond(3).build());
+
+		List<Order> orders = marketAuction.addBids(Arrays.asList(bid("Flooder", 1, 1),
+				bid("Flooder", 2, 1), bid("Flooder", 3, 1), bid("Flooder", 4, 1), bid("Buyer", 5, 1)));
+		assertEquals(0, orders.size());
+		assertEquals(1, rejected.size());
+		assertEquals(3, marketAuction.getBidForUser("Flooder").size());
+		assertEquals(Integer.valueOf(5), marketAuction.getBidPrice(1));
+	}
+
+	private static Bid bid(String userId, int price, int quantity) {
+		return new Bid.BidBuilder().itemID(1).pricePerUnit(price)
+				.quantity(quantity).userId(userId).build();
+	}
+
+	@Test
+	public void testExposureOnlyReadForNotionalLimit() {
+		MarketplaceCache cache = new MarketplaceCacheImpl() {
+			@Override
+			public UserExposure getExposure(String userId) {
+				throw new AssertionError("Exposure read for " + userId);
+			}
+		};
+		RiskCheck quantityOnly = new RiskCheck(new RiskLimits.RiskLimitsBuilder().maxOrderQuantity(100).build());
+		assertEquals(null, quantityOnly.check("Buyer", 10, 1000, 1000, cache));
+		assertEquals(null, new RiskCheck(RiskLimits.NONE).check("Buyer", 10, 1000, 1000, cache));
+	}
+
+	@Test
+	public void testNotionalReservedUntilReleased() {
+		MarketplaceCache cache = new MarketplaceCacheImpl();
+		// as if checked under two item locks at once, before either rests
+		assertEquals(null, riskCheck.check("Buyer", 60, 600, 600, cache));
+		assertEquals("Open notional above 1000", riskCheck.check("Buyer", 50, 500, 500, cache));
+		riskCheck.release("Buyer", 600);
+		assertEquals(null, riskCheck.check("Buyer", 50, 500, 500, cache));
+	}
+
+	@Test
+	public void testReducingAmendNotChecked() {
+		riskCheck.setLimits("Flooder", new RiskLimits.RiskLimitsBuilder().maxOrdersPerSecond(2).build());
+		Bid bid = bid("Flooder", 10, 50);
+		marketAuction.addBid(bid);
+		marketAuction.addBid(bid("Flooder", 9, 50));
+		// throttled users can still cut their exposure
+		assertEquals(true, marketAuction.amend(bid.getId(), 40, 10));
+		assertEquals(true, marketAuction.amend(bid.getId(), 30, 8));
+		assertEquals(0, rejected.size());
+		try {
+			marketAuction.amend(bid.getId(), 35, 8);
+			fail();
+		} catch (RiskLimitException e) {
+			assertEquals(1, rejected.size());
+		}
+		assertEquals(Integer.valueOf(30), marketAuction.getBidForUser("Flooder").get(1).getQuantity());
+	}
+}
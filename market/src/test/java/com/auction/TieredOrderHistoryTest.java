@@ -0,0 +1,104 @@
+package com.auction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TieredOrderHistoryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path path;
+	private TieredOrderHistory history;
+
+	@Before
+	public void setup() throws Exception {
+		path = folder.getRoot().toPath().resolve("orders");
+		// two hot orders per user and a buffer which fills every few orders
+		history = new TieredOrderHistory(path, 2, 256);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		history.close();
+	}
+
+	@Test
+	public void testReadAcrossTiers() throws Exception {
+		List<Order> bought = new ArrayList<>();
+		List<Order> sold = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			Order order = new Order.OrderBuilder().itemID(i % 3).pricePerUnit(100 + i)
+					.quantity(i + 1).buyerID(i % 2 == 0 ? "Buyer" : "Other")
+					.sellerID("Seller").build();
+			history.add(order);
+			if (i % 2 == 0) {
+				bought.add(order);
+			}
+			sold.add(order);
+		}
+
+		// spilled buffers are still read while the writer catches up
+		assertEquals(bought.toString(), history.getOrdersForBuyer("Buyer").toString());
+		history.flush();
+		assertTrue(Files.size(path) > 0);
+		assertEquals(bought.toString(), history.getOrdersForBuyer("Buyer").toString());
+		assertEquals(sold.toString(), history.getOrdersForSeller("Seller").toString());
+		assertEquals(25, history.getOrdersForBuyer("Other").size());
+		assertEquals(0, history.getOrdersForBuyer("Seller").size());
+		assertEquals(0, history.getOrdersForSeller("Nobody").size());
+	}
+
+	@Test
+	public void testHotOnly() {
+		Order order = new Order.OrderBuilder().itemID(1).pricePerUnit(100)
+				.quantity(1).buyerID("Buyer").sellerID("Seller").build();
+		history.add(order);
+
+		assertEquals(1, history.getOrdersForBuyer("Buyer").size());
+		assertEquals(order.toString(), history.getOrdersForSeller("Seller").get(0).toString());
+	}
+
+	@Test
+	public void testRecordLargerThanBuffer() {
+		StringBuilder longName = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			longName.append('x');
+		}
+		for (int i = 0; i < 5; i++) {
+			history.add(new Order.OrderBuilder().itemID(1).pricePerUnit(100 + i)
+					.quantity(1).buyerID(longName.toString()).sellerID("Seller").build());
+		}
+
+		List<Order> orders = history.getOrdersForBuyer(longName.toString());
+		assertEquals(5, orders.size());
+		assertEquals(Integer.valueOf(100), orders.get(0).getPricePerUnit());
+		assertEquals(Integer.valueOf(104), orders.get(4).getPricePerUnit());
+	}
+
+	@Test
+	public void testAuction() {
+		MarketplaceAuctionImpl marketAuction = new MarketplaceAuctionImpl(
+				new MarketplaceCacheImpl(history), 1, EventLog.DISABLED);
+		for (int i = 0; i < 10; i++) {
+			marketAuction.addOffer(new Offer.OfferBuilder().itemID(1).pricePerUnit(20)
+					.quantity(1).userId("Seller").build());
+		}
+		marketAuction.addBid(new Bid.BidBuilder().itemID(1).pricePerUnit(20)
+				.quantity(10).userId("Buyer").build());
+
+		assertEquals(10, marketAuction.getOrdersForBuyer("Buyer").size());
+		assertEquals(10, marketAuction.getOrdersForSeller("Seller").size());
+	}
+}